@@ -0,0 +1,513 @@
+package contactService;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * bounded read through cache in front of a slower ContactStore, e.g. a MappedContactStore or a remote backend.
+ *
+ * Lookups that miss load the contact from the backend and keep it, evicting by plain LRU or by Window TinyLFU.
+ * Window TinyLFU keeps 1% of the entries in an LRU window for new arrivals, and a new arrival only pushes out an
+ * older entry of the main region if a frequency sketch has seen it more often recently. That way one off scans
+ * do not flush out the contacts that are looked up all the time. Updates go through to the backend first and
+ * then refresh the cached contact, and deletes drop it. Bulk adds go straight to the backend so a large import
+ * does not evict the working set.
+ *
+ * Thread safe if the backend is. Hits only reorder the eviction queues when the eviction lock is free, so reads
+ * never wait for each other; a skipped reorder just makes the eviction order slightly less exact.
+ */
+public final class CachingContactStore implements ContactStore {
+
+    /**
+     * how the cache picks entries to evict
+     */
+    public enum EvictionPolicy {
+        LRU,
+        WINDOW_TINY_LFU
+    }
+
+
+    private static final int UNLINKED = -1;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ContactStore backend;
+    private final int maximumSize;
+    private final EvictionPolicy evictionPolicy;
+    private final ConcurrentHashMap<String, Node> cachedContacts;
+
+    // eviction state, guarded by evictionLock. LRU only uses the window queue
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * creates a Window TinyLFU cache
+     * @param backend store holding every contact
+     * @param maximumSize most contacts kept in the cache
+     */
+    public CachingContactStore(ContactStore backend, int maximumSize) {
+        this(backend, maximumSize, EvictionPolicy.WINDOW_TINY_LFU);
+    }
+
+
+    /**
+     * @param backend store holding every contact
+     * @param maximumSize most contacts kept in the cache
+     * @param evictionPolicy how entries are picked for eviction
+     */
+    public CachingContactStore(ContactStore backend, int maximumSize, EvictionPolicy evictionPolicy) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Invalid backend store. Expected not null");
+        }
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size. Expected greater than 0");
+        }
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("Invalid eviction policy. Expected not null");
+        }
+        this.backend = backend;
+        this.maximumSize = maximumSize;
+        this.evictionPolicy = evictionPolicy;
+        this.cachedContacts = new ConcurrentHashMap<String, Node>(Math.min(maximumSize, 1 << 16));
+
+        if (evictionPolicy == EvictionPolicy.LRU) {
+            this.windowMaximum = maximumSize;
+            this.protectedMaximum = 0;
+            this.sketch = null;
+        } else {
+            this.windowMaximum = Math.max(1, maximumSize / 100);
+            this.protectedMaximum = (maximumSize - windowMaximum) * 4 / 5; // 80% of the main region
+            this.sketch = new FrequencySketch(maximumSize);
+        }
+    }
+
+
+    /**
+     * returns the cached contact, loading it from the backend on a miss
+     * @param contactID
+     * @return the Contact, or null if the backend has no contact with that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        if (contactID == null) {
+            return backend.get(null);
+        }
+
+        Node node = cachedContacts.get(contactID);
+        if (node != null) {
+            hits.increment();
+            afterRead(node);
+            return node.contact;
+        }
+
+        misses.increment();
+        node = cachedContacts.computeIfAbsent(contactID, this::load); // concurrent misses for one ID load it once
+        if (node == null) {
+            return null;
+        }
+        afterWrite(node);
+        return node.contact;
+    }
+
+
+    /**
+     * @param contactID
+     * @return true if the contact is cached or the backend has it
+     */
+    @Override
+    public boolean contains(String contactID) {
+        return (contactID != null && cachedContacts.containsKey(contactID)) || backend.contains(contactID);
+    }
+
+
+    /**
+     * adds a contact to the backend and caches it
+     * @param contact new contact
+     */
+    @Override
+    public void add(Contact contact) {
+        backend.add(contact);
+
+        Node node = cachedContacts.computeIfAbsent(contact.getContactID(), contactID -> new Node(contactID, contact));
+        afterWrite(node);
+    }
+
+
+    /**
+     * adds contacts to the backend only, a bulk load would otherwise evict the whole working set
+     * @param contacts new contacts
+     */
+    @Override
+    public void addAll(List<Contact> contacts) {
+        backend.addAll(contacts);
+    }
+
+
+    /**
+     * writes an update through to the backend, then brings the cached contact up to date
+     * @param contact the contact being updated
+     * @param expectedValue details the update was based on
+     * @param newValue updated details
+     * @return true if the backend accepted the update
+     */
+    @Override
+    public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        String contactID = expectedValue.getContactID();
+
+        if (!backend.replace(contact, expectedValue, newValue)) {
+            invalidate(contactID); // the cached copy may be what is out of date, the caller's retry reloads it
+            return false;
+        }
+
+        // computeIfPresent waits for a load of the same ID in progress, so a copy read before the write is fixed too
+        Node[] dropped = new Node[1];
+        cachedContacts.computeIfPresent(contactID, (id, node) -> {
+            if (node.contact == contact || node.contact.compareAndSetValue(expectedValue, newValue)) {
+                return node; // heap backends cache the caller's own handle, view backends get the new value
+            }
+            dropped[0] = node;
+            return null;
+        });
+        if (dropped[0] != null) {
+            unlink(dropped[0]);
+        }
+        return true;
+    }
+
+
+    /**
+     * removes a contact from the backend and the cache
+     * @param contactID
+     * @return the removed Contact, or null if the backend had none
+     */
+    @Override
+    public Contact remove(String contactID) {
+        Contact removedContact = backend.remove(contactID);
+        invalidate(contactID); // after the backend, so a load racing the delete cannot put the contact back
+        return removedContact;
+    }
+
+
+    @Override
+    public int size() {
+        return backend.size();
+    }
+
+
+    @Override
+    public List<Contact> asList() {
+        return backend.asList();
+    }
+
+
+    @Override
+    public Scan openScan() {
+        return backend.openScan();
+    }
+
+
+    @Override
+    public boolean requiresLatin1() {
+        return backend.requiresLatin1();
+    }
+
+
+    /**
+     * @return long lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * @return long lookups that went to the backend
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * @return long contacts evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+
+    /**
+     * @return double share of lookups answered from the cache, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+
+    /**
+     * @return int number of contacts currently cached
+     */
+    public int getCachedCount() {
+        return cachedContacts.size();
+    }
+
+
+    /**
+     * @return int most contacts kept in the cache
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+
+    /**
+     * @return EvictionPolicy this cache evicts by
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+
+    /*
+     * loads a missing contact inside computeIfAbsent
+     */
+    private Node load(String contactID) {
+        Contact contact = backend.get(contactID);
+        return contact == null ? null : new Node(contactID, contact);
+    }
+
+
+    /*
+     * drops a cached contact and its place in the eviction queues
+     */
+    private void invalidate(String contactID) {
+        if (contactID == null) {
+            return;
+        }
+        Node node = cachedContacts.remove(contactID);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+
+    private void unlink(Node node) {
+        evictionLock.lock();
+        try {
+            node.retired = true; // stops a pending afterWrite from linking it
+            if (node.queue != UNLINKED) {
+                queueOf(node).remove(node);
+                node.queue = UNLINKED;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /*
+     * records a hit, skipped when another thread holds the eviction lock
+     */
+    private void afterRead(Node node) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (sketch != null) {
+                sketch.increment(node.hash);
+            }
+            if (!node.retired && node.queue != UNLINKED) {
+                onAccess(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /*
+     * links a newly cached contact into the window and evicts down to the maximum size
+     */
+    private void afterWrite(Node node) {
+        evictionLock.lock();
+        try {
+            if (node.retired || node.queue != UNLINKED) { // invalidated already, or linked by a concurrent loader
+                return;
+            }
+            if (sketch != null) {
+                sketch.increment(node.hash);
+            }
+            window.addFirst(node);
+            node.queue = WINDOW;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /*
+     * moves an accessed entry towards the safe end of its queue, promoting probation entries to protected
+     */
+    private void onAccess(Node node) {
+        if (node.queue == WINDOW) {
+            window.moveToFirst(node);
+        } else if (node.queue == PROTECTED) {
+            protectedQueue.moveToFirst(node);
+        } else {
+            probation.remove(node);
+            protectedQueue.addFirst(node);
+            node.queue = PROTECTED;
+
+            while (protectedQueue.size > protectedMaximum) { // demoted entries get another chance in probation
+                Node demoted = protectedQueue.last();
+                protectedQueue.remove(demoted);
+                probation.addFirst(demoted);
+                demoted.queue = PROBATION;
+            }
+        }
+    }
+
+
+    private void evict() {
+        if (sketch == null) {
+            while (window.size > maximumSize) {
+                evict(window.last());
+            }
+            return;
+        }
+
+        while (window.size > windowMaximum) { // window overflow becomes a candidate for the main region
+            Node candidate = window.last();
+            window.remove(candidate);
+            probation.addFirst(candidate);
+            candidate.queue = PROBATION;
+        }
+
+        while (window.size + probation.size + protectedQueue.size > maximumSize) {
+            Node victim = probation.last();
+            Node candidate = probation.first();
+
+            if (victim == null) {
+                evict(protectedQueue.size > 0 ? protectedQueue.last() : window.last());
+            } else if (victim == candidate) {
+                evict(victim);
+            } else if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                evict(victim); // the newcomer has been seen more often than the oldest entry it would replace
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+
+    private void evict(Node node) {
+        queueOf(node).remove(node);
+        node.queue = UNLINKED;
+        node.retired = true;
+        cachedContacts.remove(node.key, node);
+        evictions.increment();
+    }
+
+
+    private AccessQueue queueOf(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedQueue;
+        }
+    }
+
+
+    /*
+     * cached contact and its links in one of the eviction queues
+     */
+    private static final class Node {
+
+        final String key;
+        final int hash;
+        final Contact contact;
+
+        // guarded by evictionLock
+        Node previous;
+        Node next;
+        int queue = UNLINKED;
+        boolean retired;
+
+
+        Node(String key, Contact contact) {
+            this.key = key;
+            int h = key.hashCode();
+            this.hash = h ^ (h >>> 16);
+            this.contact = contact;
+        }
+    }
+
+
+    /*
+     * doubly linked list ordered from most to least recently used, with a sentinel so links are never null
+     */
+    private static final class AccessQueue {
+
+        private final Node sentinel = new Node("", null);
+        int size;
+
+
+        AccessQueue() {
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+        }
+
+
+        void addFirst(Node node) {
+            node.previous = sentinel;
+            node.next = sentinel.next;
+            sentinel.next.previous = node;
+            sentinel.next = node;
+            size++;
+        }
+
+
+        void remove(Node node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+
+        void moveToFirst(Node node) {
+            remove(node);
+            addFirst(node);
+        }
+
+
+        Node first() {
+            return size == 0 ? null : sentinel.next;
+        }
+
+
+        Node last() {
+            return size == 0 ? null : sentinel.previous;
+        }
+    }
+}
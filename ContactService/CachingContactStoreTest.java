@@ -0,0 +1,221 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the read through contact cache
+ */
+public class CachingContactStoreTest {
+
+
+    /**
+     * creates a Contact object with the given ID for reuse in tests
+     * @return created Contact object
+     */
+    private static Contact createContact(String contactID, int number) {
+        return new Contact(contactID, "First", "Last", String.format("%010d", number), number + " Cached Way");
+    }
+
+
+    /**
+     * fills a backend with numbered contacts whose IDs are "c" followed by the number
+     */
+    private static HashContactStore backendWith(int contactCount) {
+        HashContactStore backend = new HashContactStore();
+        for (int i = 0; i < contactCount; i++) {
+            backend.add(createContact("c" + i, i));
+        }
+        return backend;
+    }
+
+
+    /**
+     * Asserts that misses load from the backend once and later lookups are hits
+     */
+    @Test
+    void readThroughCountsHitsAndMisses() {
+        CachingContactStore testCache = new CachingContactStore(backendWith(10), 5);
+
+        assertEquals("0000000003", testCache.get("c3").getPhoneNumber());
+        assertSame(testCache.get("c3"), testCache.get("c3"));
+        assertNull(testCache.get("missing"));
+
+        assertEquals(2, testCache.getHitCount());
+        assertEquals(2, testCache.getMissCount());
+        assertEquals(0.5, testCache.getHitRate());
+        assertEquals(1, testCache.getCachedCount());
+        assertTrue(testCache.contains("c9"));
+        assertEquals(10, testCache.size());
+    }
+
+
+    /**
+     * Asserts that LRU keeps the most recently used contacts within the maximum size
+     */
+    @Test
+    void lruEvictsLeastRecentlyUsed() {
+        CachingContactStore testCache = new CachingContactStore(backendWith(10), 2, CachingContactStore.EvictionPolicy.LRU);
+
+        testCache.get("c0");
+        testCache.get("c1");
+        testCache.get("c0"); // c1 is now the least recently used
+        testCache.get("c2");
+
+        assertEquals(2, testCache.getCachedCount());
+        assertEquals(1, testCache.getEvictionCount());
+        long missesBefore = testCache.getMissCount();
+        testCache.get("c0");
+        testCache.get("c2");
+        assertEquals(missesBefore, testCache.getMissCount());
+    }
+
+
+    /**
+     * Asserts that a one off scan does not flush frequently used contacts out of a Window TinyLFU cache,
+     * while it does under LRU
+     */
+    @Test
+    void tinyLfuResistsScans() {
+        double[] hotHitRates = new double[2];
+        CachingContactStore.EvictionPolicy[] policies = {
+                CachingContactStore.EvictionPolicy.LRU, CachingContactStore.EvictionPolicy.WINDOW_TINY_LFU };
+
+        for (int p = 0; p < policies.length; p++) {
+            CachingContactStore testCache = new CachingContactStore(backendWith(5000), 200, policies[p]);
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 100; i++) {
+                    testCache.get("c" + i);
+                }
+            }
+            for (int i = 1000; i < 5000; i++) { // each contact looked up once
+                testCache.get("c" + i);
+            }
+
+            long hitsBefore = testCache.getHitCount();
+            for (int i = 0; i < 100; i++) {
+                testCache.get("c" + i);
+            }
+            hotHitRates[p] = (testCache.getHitCount() - hitsBefore) / 100.0;
+            assertTrue(testCache.getCachedCount() <= 200);
+        }
+
+        assertEquals(0.0, hotHitRates[0]);
+        assertTrue(hotHitRates[1] >= 0.9, "hot contacts kept: " + hotHitRates[1]);
+    }
+
+
+    /**
+     * Asserts that service updates reach both the backend and the cached view, and deletes drop the contact,
+     * over a backend that hands out a new view for every lookup
+     */
+    @Test
+    void updatesWriteThroughAndDeletesInvalidate() {
+        PackedContactStore backend = new PackedContactStore();
+        CachingContactStore testCache = new CachingContactStore(backend, 10);
+        ContactService testContactService = new ContactService(testCache, new TimestampContactIdGenerator(11));
+
+        String contactID = testContactService.addContacts(Arrays.asList(
+                new ContactRecord("John", "Doe", "0123456789", "1 Main St"))).getAddedContactIDs().get(0);
+        assertEquals(0, testCache.getCachedCount()); // bulk adds bypass the cache
+
+        Contact cached = testContactService.findContactObject(contactID);
+        testContactService.updateContactAddress(contactID, "2 Main St");
+        assertTrue(testContactService.updateContactLastName(contactID, "Roe", cached.getVersion()));
+
+        assertEquals("2 Main St", cached.getAddress());
+        assertEquals("Roe", testContactService.findContactObject(contactID).getLastName());
+        assertEquals("Roe", backend.get(contactID).getLastName());
+        assertEquals(2, backend.get(contactID).getVersion());
+
+        testContactService.deleteExistingContact(contactID);
+        assertEquals(0, testCache.getCachedCount());
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactObject(contactID));
+    }
+
+
+    /**
+     * Asserts that an update made around the cache is picked up after the next write attempt fails
+     */
+    @Test
+    void staleEntryIsDroppedWhenBackendRejectsReplace() {
+        PackedContactStore backend = new PackedContactStore();
+        backend.add(createContact("c0", 0));
+        CachingContactStore testCache = new CachingContactStore(backend, 10);
+
+        Contact cached = testCache.get("c0");
+        Contact direct = backend.get("c0");
+        assertTrue(backend.replace(direct, direct.getValue(), direct.getValue().withAddress("elsewhere")));
+
+        assertFalse(testCache.replace(cached, cached.getValue(), cached.getValue().withAddress("lost")));
+        assertEquals("elsewhere", testCache.get("c0").getAddress());
+    }
+
+
+    /**
+     * Asserts that invalid construction arguments are rejected
+     */
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CachingContactStore(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> new CachingContactStore(new HashContactStore(), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CachingContactStore(new HashContactStore(), 10, null));
+    }
+
+
+    /**
+     * Asserts that concurrent lookups, updates and evictions leave every cached contact equal to the backend's
+     */
+    @Test
+    void concurrentAccessKeepsCacheConsistent() throws Exception {
+        PackedContactStore backend = new PackedContactStore();
+        CachingContactStore testCache = new CachingContactStore(backend, 64);
+        ContactService testContactService = new ContactService(testCache, new TimestampContactIdGenerator(12));
+
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < 500; i++) {
+            records.add(new ContactRecord("First", "Last", String.format("%010d", i), "1 Main St"));
+        }
+        List<String> ids = testContactService.addContacts(records).getAddedContactIDs();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                workers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20000; i++) {
+                        String contactID = ids.get(Math.min(ids.size() - 1, (int) Math.abs(random.nextGaussian() * 60)));
+                        if (random.nextInt(4) == 0) {
+                            testContactService.updateContactAddress(contactID, "addr " + random.nextInt(1000));
+                        } else {
+                            testContactService.findContactObject(contactID);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(testCache.getCachedCount() <= 64);
+        assertTrue(testCache.getHitRate() > 0.5);
+        for (String contactID : ids) {
+            assertEquals(backend.get(contactID).getValue(), testCache.get(contactID).getValue());
+        }
+    }
+}
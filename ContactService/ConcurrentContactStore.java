@@ -0,0 +1,80 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * thread safe ContactStore backed by a ConcurrentHashMap keyed on contactID.
+ * Reads never lock. The list view is a snapshot taken when asList() is called, in no particular order.
+ */
+public class ConcurrentContactStore implements ContactStore {
+
+    private final ConcurrentMap<String, Contact> contacts = new ConcurrentHashMap<String, Contact>();
+
+
+    /**
+     * looks up a contact by its identifier
+     * @param contactID
+     * @return the stored Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        return contacts.get(contactID);
+    }
+
+
+    /**
+     * checks whether a contact with the given identifier is stored
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    @Override
+    public boolean contains(String contactID) {
+        return contacts.containsKey(contactID);
+    }
+
+
+    /**
+     * stores a new contact
+     * @param contact
+     */
+    @Override
+    public void add(Contact contact) {
+        if (contacts.putIfAbsent(contact.getContactID(), contact) != null) {
+            throw new IllegalArgumentException("Duplicate contactID");
+        }
+    }
+
+
+    /**
+     * removes a contact by its identifier
+     * @param contactID
+     * @return the removed Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact remove(String contactID) {
+        return contacts.remove(contactID);
+    }
+
+
+    /**
+     * @return number of stored contacts
+     */
+    @Override
+    public int size() {
+        return contacts.size();
+    }
+
+
+    /**
+     * copies the current contacts so callers can iterate without ConcurrentModificationException
+     * @return read only snapshot list of the stored contacts
+     */
+    @Override
+    public List<Contact> asList() {
+        return Collections.unmodifiableList(new ArrayList<Contact>(contacts.values()));
+    }
+}
@@ -3,27 +3,28 @@
  */
 package contactService;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 /**
- * class object to store contact details
+ * class object to store contact details.
+ * The details live in an immutable ContactValue behind an atomic reference, so every update swaps in a complete
+ * new value and readers never see a half updated contact.
  */
 public class Contact {
 
-    private static final int MAX_VAR_CHAR_LENGTH = 10;
-    private static final int MAX_ADDRESS_CHAR_LENGTH = 30;
+    static final int MAX_VAR_CHAR_LENGTH = 10;
+    static final int MAX_ADDRESS_CHAR_LENGTH = 30;
 
 
-    private String contactID;
-    private String firstName;
-    private String lastName;
-    private String phoneNumber;
-    private String address;
+    private final AtomicReference<ContactValue> currentValue;
 
 
     /**
      * private default constructor to stop creation of empty objects
      */
     private Contact(){
-
+        this.currentValue = null;
     }
 
     /**
@@ -36,18 +37,18 @@ public class Contact {
      *
      */
     public Contact(String contactID, String firstName, String lastName, String phoneNumber, String address) {
+        this(new ContactValue(contactID, firstName, lastName, phoneNumber, address));
+    }
 
-
-        if (contactID == null || contactID.length()>MAX_VAR_CHAR_LENGTH) {
-            throw new IllegalArgumentException("Invalid contactID. Expected not null & under 10 characters long");
+    /**
+     * creates a contact holding an already validated value
+     * @param value
+     */
+    Contact(ContactValue value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid contact value. Expected not null");
         }
-        this.contactID = contactID;
-
-        validateFirstName(firstName);
-        validateLastName(lastName);
-        validatePhoneNumber(phoneNumber);
-        validateAddress(address);
-
+        this.currentValue = new AtomicReference<ContactValue>(value);
     }
 
     /**
@@ -55,12 +56,7 @@ public class Contact {
      * @param firstName
      */
     protected void validateFirstName(String firstName) {
-
-        if (firstName == null || firstName.length()>MAX_VAR_CHAR_LENGTH) {
-            throw new IllegalArgumentException("Invalid first name. Expected not null or over 10 characters long");
-        }
-
-        this.firstName = firstName;
+        update(value -> value.withFirstName(firstName));
     }
 
 
@@ -69,12 +65,7 @@ public class Contact {
      * @param  lastName
      */
     protected void validateLastName(String lastName) {
-
-        if (lastName == null || lastName.length()>MAX_VAR_CHAR_LENGTH) {
-            throw new IllegalArgumentException("Invalid last name. Expected not null or over 10 characters long");
-        }
-        this.lastName = lastName;
-
+        update(value -> value.withLastName(lastName));
     }
 
 
@@ -83,11 +74,7 @@ public class Contact {
      * @param address
      */
     protected void validateAddress(String address) {
-
-        if (address == null || address.length()>MAX_ADDRESS_CHAR_LENGTH) {
-            throw new IllegalArgumentException("Invalid Address. Expected not null or over 30 characters long");
-        }
-        this.address = address;
+        update(value -> value.withAddress(address));
     }
 
 
@@ -96,11 +83,46 @@ public class Contact {
      * @param phoneNumber
      */
     protected void validatePhoneNumber(String phoneNumber) {
+        update(value -> value.withPhoneNumber(phoneNumber));
+    }
 
-        if (phoneNumber == null || phoneNumber.length() != MAX_VAR_CHAR_LENGTH) {
-            throw new IllegalArgumentException("Invalid phone number. Expected exactly 10 characters & not null");
-        }
-        this.phoneNumber = phoneNumber;
+
+    /**
+     * applies a copy on write update, retrying if another thread swapped the value first
+     * @param fieldUpdate builds the new value from the current one, throwing if the new field is invalid
+     * @return the value that was installed
+     */
+    ContactValue update(UnaryOperator<ContactValue> fieldUpdate) {
+        return currentValue.updateAndGet(fieldUpdate);
+    }
+
+
+    /**
+     * installs a new value only if the current value is still the expected one
+     * @param expectedValue value the caller based its update on
+     * @param newValue replacement value
+     * @return true if the value was replaced
+     */
+    boolean compareAndSetValue(ContactValue expectedValue, ContactValue newValue) {
+        return currentValue.compareAndSet(expectedValue, newValue);
+    }
+
+
+    /**
+     * getter method for the complete current contact details
+     * @return ContactValue immutable value, safe to cache or share
+     */
+    public ContactValue getValue() {
+        return currentValue.get();
+    }
+
+
+    /**
+     * getter method for the current contact version
+     * @return long version, incremented by every field update
+     */
+    public long getVersion() {
+        return currentValue.get().getVersion();
     }
 
 
@@ -109,7 +131,7 @@ public class Contact {
      * @return String contactID
      */
     public String getContactID() {
-        return contactID;
+        return currentValue.get().getContactID();
     }
 
 
@@ -118,7 +140,7 @@ public class Contact {
      * @return String firstName
      */
     public String getFirstName() {
-        return firstName;
+        return currentValue.get().getFirstName();
     }
 
 
@@ -127,7 +149,7 @@ public class Contact {
      * @return String lastName
      */
     public String getLastName() {
-        return lastName;
+        return currentValue.get().getLastName();
     }
 
 
@@ -136,7 +158,7 @@ public class Contact {
      * @return String phoneNumber
      */
     public String getPhoneNumber() {
-        return phoneNumber;
+        return currentValue.get().getPhoneNumber();
     }
 
 
@@ -145,6 +167,6 @@ public class Contact {
      * @return String address
      */
     public String getAddress() {
-        return address;
+        return currentValue.get().getAddress();
     }
 }
@@ -0,0 +1,91 @@
+package contactService;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * outcome of a ContactService bulk add: the IDs of the contacts that were added and the rows that were rejected
+ */
+public final class ContactBatchResult {
+
+    private final List<String> addedContactIDs;
+    private final List<RowFailure> failures;
+
+
+    /**
+     * @param addedContactIDs IDs of added contacts, in input row order
+     * @param failures rejected rows, in input row order
+     */
+    ContactBatchResult(List<String> addedContactIDs, List<RowFailure> failures) {
+        this.addedContactIDs = Collections.unmodifiableList(addedContactIDs);
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+
+    /**
+     * @return List of IDs given to the added contacts, in input row order
+     */
+    public List<String> getAddedContactIDs() {
+        return addedContactIDs;
+    }
+
+
+    /**
+     * @return List of rows that failed validation, in input row order
+     */
+    public List<RowFailure> getFailures() {
+        return failures;
+    }
+
+
+    /**
+     * @return number of contacts added
+     */
+    public int getAddedCount() {
+        return addedContactIDs.size();
+    }
+
+
+    /**
+     * a single rejected input row
+     */
+    public static final class RowFailure {
+
+        private final long rowIndex;
+        private final ContactValidationResult error;
+
+
+        /**
+         * @param rowIndex zero based position of the row in the input
+         * @param error result for the first invalid field
+         */
+        RowFailure(long rowIndex, ContactValidationResult error) {
+            this.rowIndex = rowIndex;
+            this.error = error;
+        }
+
+
+        /**
+         * @return long zero based position of the row in the input
+         */
+        public long getRowIndex() {
+            return rowIndex;
+        }
+
+
+        /**
+         * @return String validation error describing the first invalid field
+         */
+        public String getMessage() {
+            return error.getMessage();
+        }
+
+
+        /**
+         * @return ContactValidationResult code for the first invalid field
+         */
+        public ContactValidationResult getError() {
+            return error;
+        }
+    }
+}
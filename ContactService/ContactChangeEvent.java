@@ -0,0 +1,52 @@
+package contactService;
+
+/**
+ * one entry of a ContactChangeStream: a contact mutation and the sequence number it was published under
+ */
+public final class ContactChangeEvent {
+
+    private final long sequence;
+    private final ContactMutation mutation;
+
+
+    /**
+     * @param sequence position of the event in its stream
+     * @param mutation change that was applied
+     */
+    ContactChangeEvent(long sequence, ContactMutation mutation) {
+        this.sequence = sequence;
+        this.mutation = mutation;
+    }
+
+
+    /**
+     * @return long position of the event in its stream, starting at 0 with no gaps
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    /**
+     * @return ContactMutation change that was applied
+     */
+    public ContactMutation getMutation() {
+        return mutation;
+    }
+
+
+    /**
+     * @return ContactMutation.Type kind of change
+     */
+    public ContactMutation.Type getType() {
+        return mutation.getType();
+    }
+
+
+    /**
+     * @return String identifier of the changed contact
+     */
+    public String getContactID() {
+        return mutation.getContactID();
+    }
+}
@@ -0,0 +1,232 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ordered change data capture stream of every add, update and delete a ContactService applies, kept in a bounded
+ * ring buffer so downstream systems can follow changes instead of diffing getContactList().
+ *
+ * Publishing claims the next sequence number with one atomic increment and stores the event into its ring slot
+ * with one compare and set. Writers never wait for consumers: the ring keeps the latest capacity events and a
+ * consumer that falls further behind than that is told it was overrun and has to resynchronize. Consumers apply
+ * their own backpressure by watching getLag() and draining in batches. The ring holds on to every event it keeps,
+ * including the replaced contact values, so a larger ring means more objects surviving young collections; size it
+ * for the longest consumer pause it has to absorb rather than as large as possible.
+ *
+ * Any number of consumers can read independently through their own Subscription. A subscription's position is a
+ * plain sequence number, so a consumer can save it and resume from it later with subscribe(position) as long as
+ * those events are still in the ring.
+ *
+ * Events for one contact are in version order: ContactService applies and publishes every change while holding the
+ * contact's write lock, versioned updates included once a listener is registered. Every event carries the
+ * contact's version, which lets a consumer start from a full copy: subscribe first, then read getContactList(),
+ * then replay the stream skipping versions the copy already has.
+ */
+public class ContactChangeStream implements ContactMutationListener {
+
+    // largest ring, keeps the slot array within one Java array
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    // busy polls before a waiting consumer starts to sleep
+    private static final int SPIN_TRIES = 100;
+
+    // longest sleep between polls of a waiting consumer
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicReferenceArray<ContactChangeEvent> ring;
+    private final int mask;
+
+    // next sequence number to hand out
+    private final AtomicLong nextSequence = new AtomicLong();
+
+
+    /**
+     * creates an empty stream
+     * @param capacity number of events kept, a power of two between 2 and MAX_CAPACITY
+     */
+    ContactChangeStream(int capacity) {
+        if (capacity < 2 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Invalid change stream capacity. Expected a power of two up to "
+                    + MAX_CAPACITY);
+        }
+        this.ring = new AtomicReferenceArray<ContactChangeEvent>(capacity);
+        this.mask = capacity - 1;
+    }
+
+
+    /**
+     * appends a mutation to the stream, never blocks
+     * @param mutation change that was just applied to the store
+     */
+    @Override
+    public void onMutation(ContactMutation mutation) {
+        long sequence = nextSequence.getAndIncrement();
+        ContactChangeEvent event = new ContactChangeEvent(sequence, mutation);
+        int slot = (int) sequence & mask;
+
+        while (true) {
+            ContactChangeEvent current = ring.get(slot);
+            if (current != null && current.getSequence() > sequence) {
+                return; // a writer a whole lap ahead got here first, readers of this sequence were overrun anyway
+            }
+            if (ring.compareAndSet(slot, current, event)) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * @param fromSequence first sequence number to read, e.g. a position saved by an earlier subscription
+     * @return Subscription reading from fromSequence
+     */
+    public Subscription subscribe(long fromSequence) {
+        if (fromSequence < 0 || fromSequence > getNextSequence()) {
+            throw new IllegalArgumentException("Invalid sequence. Expected between 0 and " + getNextSequence());
+        }
+        return new Subscription(fromSequence);
+    }
+
+
+    /**
+     * @return Subscription that sees only events published from now on
+     */
+    public Subscription subscribeFromLatest() {
+        return new Subscription(getNextSequence());
+    }
+
+
+    /**
+     * @return long sequence number the next event will get, also the number of events published so far
+     */
+    public long getNextSequence() {
+        return nextSequence.get();
+    }
+
+
+    /**
+     * @return long lowest sequence number still guaranteed to be in the ring
+     */
+    public long getOldestSequence() {
+        return Math.max(0, getNextSequence() - ring.length());
+    }
+
+
+    /**
+     * @return int number of events the ring keeps
+     */
+    public int getCapacity() {
+        return ring.length();
+    }
+
+
+    /**
+     * one consumer's cursor into the stream. Subscriptions are cheap and independent of each other, but a single
+     * subscription must only be used by one thread at a time.
+     */
+    public final class Subscription {
+
+        private long position;
+
+
+        /*
+         * use ContactChangeStream.subscribe()
+         */
+        private Subscription(long position) {
+            this.position = position;
+        }
+
+
+        /**
+         * takes the next events that have been published, without waiting
+         * @param maxEvents largest number of events to return
+         * @return List of events in sequence order, empty if none are ready
+         * @throws IllegalStateException if events this subscription had not read yet were overwritten
+         */
+        public List<ContactChangeEvent> poll(int maxEvents) {
+            if (maxEvents < 1) {
+                throw new IllegalArgumentException("Invalid max events. Expected at least 1");
+            }
+
+            List<ContactChangeEvent> events = null;
+            while (events == null || events.size() < maxEvents) {
+                ContactChangeEvent event = ring.get((int) position & mask);
+
+                if (event == null || event.getSequence() < position) {
+                    break; // not published yet, later events wait so the order has no gaps
+                }
+                if (event.getSequence() > position) {
+                    throw new IllegalStateException("Change stream overrun. Events from sequence " + position
+                            + " were overwritten, resubscribe from " + getOldestSequence());
+                }
+
+                if (events == null) {
+                    events = new ArrayList<ContactChangeEvent>(Math.min(maxEvents, 64));
+                }
+                events.add(event);
+                position++;
+            }
+            return events == null ? Collections.<ContactChangeEvent>emptyList() : events;
+        }
+
+
+        /**
+         * takes the next events, waiting up to the timeout for at least one to be published. Only the consumer
+         * waits, writers never signal or slow down for it.
+         * @param maxEvents largest number of events to return
+         * @param timeout longest time to wait
+         * @param unit unit of timeout
+         * @return List of events in sequence order, empty if none arrived in time
+         * @throws InterruptedException if the thread was interrupted while waiting
+         * @throws IllegalStateException if events this subscription had not read yet were overwritten
+         */
+        public List<ContactChangeEvent> poll(int maxEvents, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long parkNanos = 1000;
+
+            for (int tries = 0; ; tries++) {
+                List<ContactChangeEvent> events = poll(maxEvents);
+                if (!events.isEmpty()) {
+                    return events;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return events;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (tries < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else { // backs off to sleeping so an idle consumer costs almost nothing
+                    LockSupport.parkNanos(Math.min(parkNanos, remaining));
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                }
+            }
+        }
+
+
+        /**
+         * @return long sequence number of the next event this subscription will read, save it to resume later
+         */
+        public long getPosition() {
+            return position;
+        }
+
+
+        /**
+         * @return long number of events published, or being published, that this subscription has not read
+         */
+        public long getLag() {
+            return getNextSequence() - position;
+        }
+    }
+}
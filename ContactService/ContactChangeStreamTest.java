@@ -0,0 +1,175 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the sequenced change data capture stream
+ */
+public class ContactChangeStreamTest {
+
+    private ContactService testContactService;
+
+
+    /**
+     * creates an empty service for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testContactService = new ContactService(new ConcurrentContactStore(), new TimestampContactIdGenerator(12));
+    }
+
+
+    /*
+     * adds a contact and returns its new ID
+     */
+    private String addContact(String firstName) {
+        return testContactService.addContacts(List.of(new ContactRecord(firstName, "Doe", "0123456789", "1 Main St")))
+                .getAddedContactIDs().get(0);
+    }
+
+
+    /**
+     * Asserts that adds, updates and deletes arrive in order with consecutive sequence numbers
+     */
+    @Test
+    void mutationsArriveInOrderWithConsecutiveSequences() {
+        assertThrows(IllegalStateException.class, () -> testContactService.getChangeStream());
+        String before = addContact("Before"); // not streamed, made before the stream was enabled
+
+        ContactChangeStream stream = testContactService.enableChangeStream(16);
+        assertSame(stream, testContactService.enableChangeStream());
+        ContactChangeStream.Subscription subscription = stream.subscribeFromLatest();
+
+        String contactID = addContact("John");
+        testContactService.updateContactFirstName(contactID, "Jack");
+        testContactService.deleteExistingContact(contactID);
+        testContactService.deleteExistingContact(before);
+
+        List<ContactChangeEvent> events = subscription.poll(10);
+        assertEquals(4, events.size());
+        assertEquals(ContactMutation.Type.ADD, events.get(0).getType());
+        assertEquals(ContactMutation.Type.UPDATE, events.get(1).getType());
+        assertEquals("Jack", events.get(1).getMutation().getCurrentValue().getFirstName());
+        assertEquals(ContactMutation.Type.DELETE, events.get(2).getType());
+        assertEquals(before, events.get(3).getContactID());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getSequence());
+        }
+        assertTrue(subscription.poll(10).isEmpty());
+        assertEquals(0, subscription.getLag());
+    }
+
+
+    /**
+     * Asserts that consumers read independently and can resume from a saved position
+     */
+    @Test
+    void consumersReadIndependentlyAndResumeFromSavedPosition() {
+        ContactChangeStream stream = testContactService.enableChangeStream(16);
+        ContactChangeStream.Subscription first = stream.subscribe(0);
+        ContactChangeStream.Subscription second = stream.subscribe(0);
+
+        for (int i = 0; i < 5; i++) {
+            addContact("Name" + i);
+        }
+
+        assertEquals(2, first.poll(2).size());
+        long savedPosition = first.getPosition();
+        assertEquals(5, second.poll(100).size());
+        assertEquals(3, first.getLag());
+
+        ContactChangeStream.Subscription resumed = stream.subscribe(savedPosition);
+        List<ContactChangeEvent> events = resumed.poll(100);
+        assertEquals(3, events.size());
+        assertEquals(2, events.get(0).getSequence());
+        assertEquals("Name2", events.get(0).getMutation().getCurrentValue().getFirstName());
+
+        assertThrows(IllegalArgumentException.class, () -> stream.subscribe(-1));
+        assertThrows(IllegalArgumentException.class, () -> stream.subscribe(6));
+        assertThrows(IllegalArgumentException.class, () -> first.poll(0));
+    }
+
+
+    /**
+     * Asserts that a consumer that falls more than a ring behind is told, and writers were not held up
+     */
+    @Test
+    void slowConsumerIsToldItWasOverrun() {
+        ContactChangeStream stream = testContactService.enableChangeStream(4);
+        ContactChangeStream.Subscription slow = stream.subscribe(0);
+
+        for (int i = 0; i < 10; i++) {
+            addContact("Name" + i);
+        }
+
+        assertEquals(10, stream.getNextSequence());
+        assertEquals(6, stream.getOldestSequence());
+        assertThrows(IllegalStateException.class, () -> slow.poll(10));
+
+        List<ContactChangeEvent> events = stream.subscribe(stream.getOldestSequence()).poll(10);
+        assertEquals(4, events.size());
+        assertEquals("Name9", events.get(3).getMutation().getCurrentValue().getFirstName());
+
+        assertThrows(IllegalArgumentException.class, () -> new ContactChangeStream(3));
+        assertThrows(IllegalArgumentException.class, () -> new ContactChangeStream(1));
+    }
+
+
+    /**
+     * Asserts that a consumer following concurrent writers sees every sequence once and ends on each contact's
+     * latest version
+     */
+    @Test
+    void consumerFollowsConcurrentWritersToLatestVersion() throws Exception {
+        ContactChangeStream stream = testContactService.enableChangeStream(1 << 14);
+        ContactChangeStream.Subscription subscription = stream.subscribeFromLatest();
+        List<String> contactIDs = new ArrayList<String>();
+        for (int i = 0; i < 32; i++) {
+            contactIDs.add(addContact("Name" + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    testContactService.updateContactAddress(contactIDs.get((i * 7 + writer) % 32), i + " Main St");
+                }
+            }));
+        }
+
+        Map<String, Long> latestVersions = new HashMap<String, Long>();
+        long expectedSequence = 0;
+        while (expectedSequence < 32 + 4000) {
+            List<ContactChangeEvent> events = subscription.poll(256, 10, TimeUnit.SECONDS);
+            assertFalse(events.isEmpty());
+            for (ContactChangeEvent event : events) {
+                assertEquals(expectedSequence++, event.getSequence());
+                latestVersions.merge(event.getContactID(), event.getMutation().getCurrentValue().getVersion(), Math::max);
+            }
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (String contactID : contactIDs) {
+            assertEquals(testContactService.findContactObject(contactID).getVersion(), latestVersions.get(contactID));
+        }
+        assertTrue(subscription.poll(1, 1, TimeUnit.MILLISECONDS).isEmpty());
+    }
+}
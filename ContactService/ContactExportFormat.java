@@ -0,0 +1,200 @@
+package contactService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * file formats ContactService can export contacts in, and import CSV and JSON Lines files from. Every format writes UTF-8 and includes each contact's version,
+ * so an export can be combined with a ContactChangeStream that carries the same versions.
+ *
+ * Records are encoded straight from the contact's fields into the export buffer, no per record String is built.
+ */
+public enum ContactExportFormat {
+
+    /**
+     * RFC 4180 comma separated values with a header line. Fields holding a comma, quote or line break are quoted.
+     */
+    CSV("csv") {
+        @Override
+        void writeHeader(ByteBuffer buffer) {
+            putAscii(buffer, "contactID,firstName,lastName,phoneNumber,address,version\n");
+        }
+
+        @Override
+        void writeContact(ByteBuffer buffer, ContactValue value) {
+            putCsvField(buffer, value.getContactID());
+            buffer.put((byte) ',');
+            putCsvField(buffer, value.getFirstName());
+            buffer.put((byte) ',');
+            putCsvField(buffer, value.getLastName());
+            buffer.put((byte) ',');
+            putCsvField(buffer, value.getPhoneNumber());
+            buffer.put((byte) ',');
+            putCsvField(buffer, value.getAddress());
+            buffer.put((byte) ',');
+            putDecimal(buffer, value.getVersion());
+            buffer.put((byte) '\n');
+        }
+    },
+
+    /**
+     * one JSON object per line with the fields contactID, firstName, lastName, phoneNumber, address and version
+     */
+    JSON_LINES("jsonl") {
+        @Override
+        void writeContact(ByteBuffer buffer, ContactValue value) {
+            putAscii(buffer, "{\"contactID\":");
+            putJsonString(buffer, value.getContactID());
+            putAscii(buffer, ",\"firstName\":");
+            putJsonString(buffer, value.getFirstName());
+            putAscii(buffer, ",\"lastName\":");
+            putJsonString(buffer, value.getLastName());
+            putAscii(buffer, ",\"phoneNumber\":");
+            putJsonString(buffer, value.getPhoneNumber());
+            putAscii(buffer, ",\"address\":");
+            putJsonString(buffer, value.getAddress());
+            putAscii(buffer, ",\"version\":");
+            putDecimal(buffer, value.getVersion());
+            putAscii(buffer, "}\n");
+        }
+    },
+
+    /**
+     * contacts back to back in the snapshot file's contact encoding: long version, then the five fields each as an
+     * unsigned byte length and that many UTF-8 bytes. No header, the file ends after the last contact.
+     */
+    BINARY("bin") {
+        @Override
+        void writeContact(ByteBuffer buffer, ContactValue value) {
+            ContactRecordCodec.writeContact(buffer, value);
+        }
+    };
+
+
+    // more than any contact needs in any format, JSON escaping every character as backslash-u included
+    static final int MAX_RECORD_BYTES = 1024;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final String fileExtension;
+
+
+    ContactExportFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+
+    /**
+     * @return String usual file name extension, without the dot
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+
+    /**
+     * writes whatever starts a file in this format, nothing for most formats
+     * @param buffer target with at least MAX_RECORD_BYTES remaining
+     */
+    void writeHeader(ByteBuffer buffer) {
+    }
+
+
+    /**
+     * writes one contact
+     * @param buffer target with at least MAX_RECORD_BYTES remaining
+     * @param value contact to write
+     */
+    abstract void writeContact(ByteBuffer buffer, ContactValue value);
+
+
+    /*
+     * writes text known to be ASCII, e.g. JSON keys
+     */
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+
+    /*
+     * writes a non negative number in decimal without going through Long.toString
+     */
+    private static void putDecimal(ByteBuffer buffer, long number) {
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        int end = buffer.position() + digits;
+        for (int position = end - 1; position >= buffer.position(); position--) {
+            buffer.put(position, (byte) ('0' + number % 10));
+            number /= 10;
+        }
+        buffer.position(end);
+    }
+
+
+    /*
+     * writes a CSV field, quoting it only if it holds a separator, quote or line break
+     */
+    private static void putCsvField(ByteBuffer buffer, String field) {
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!needsQuotes) {
+            ContactRecordCodec.putUtf8(buffer, field);
+            return;
+        }
+
+        buffer.put((byte) '"');
+        int runStart = 0;
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) == '"') { // doubles quotes, encoding the text between them in one go
+                ContactRecordCodec.putUtf8(buffer, field, runStart, i + 1);
+                buffer.put((byte) '"');
+                runStart = i + 1;
+            }
+        }
+        ContactRecordCodec.putUtf8(buffer, field, runStart, field.length());
+        buffer.put((byte) '"');
+    }
+
+
+    /*
+     * writes a quoted JSON string, escaping quotes, backslashes and control characters
+     */
+    private static void putJsonString(ByteBuffer buffer, String text) {
+        buffer.put((byte) '"');
+        int runStart = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            ContactRecordCodec.putUtf8(buffer, text, runStart, i);
+            runStart = i + 1;
+            buffer.put((byte) '\\');
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) c);
+            } else if (c == '\n') {
+                buffer.put((byte) 'n');
+            } else if (c == '\r') {
+                buffer.put((byte) 'r');
+            } else if (c == '\t') {
+                buffer.put((byte) 't');
+            } else {
+                buffer.put((byte) 'u').put((byte) '0').put((byte) '0');
+                buffer.put(HEX_DIGITS[c >> 4]).put(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        ContactRecordCodec.putUtf8(buffer, text, runStart, text.length());
+        buffer.put((byte) '"');
+    }
+}
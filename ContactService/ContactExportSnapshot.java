@@ -0,0 +1,82 @@
+package contactService;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * point in time view of a ContactService's contacts for exports and query scans, read through a ContactSnapshot so
+ * writers are never stopped for the scan. Positions of the store's scan let export files and scan tasks split the
+ * contacts in ranges.
+ *
+ * Nothing is copied up front: each range reads its contacts from the store one at a time, so the memory used does
+ * not grow with the number of contacts. Contacts deleted before the scan opened are read last, by forEachUnlisted().
+ */
+final class ContactExportSnapshot implements AutoCloseable {
+
+    private final ContactSnapshot snapshot;
+    private final ContactStore.Scan scan;
+    private final Set<String> unlisted;
+
+
+    /**
+     * @param snapshot snapshot to read, closed with this
+     * @param scan scan of the snapshot's store opened after it, closed with this
+     */
+    ContactExportSnapshot(ContactSnapshot snapshot, ContactStore.Scan scan) {
+        this.snapshot = snapshot;
+        this.scan = scan;
+        this.unlisted = snapshot.unlistedContactIDs();
+    }
+
+
+    /**
+     * @return int number of positions, not every position holds a contact
+     */
+    int size() {
+        return scan.positionCount();
+    }
+
+
+    /**
+     * hands the contacts at a range of positions to an action. Ranges can be read from several threads at once.
+     * @param from first position to read
+     * @param to position after the last one to read
+     * @param action called with each contact's value as of the snapshot
+     */
+    void forEach(int from, int to, Consumer<? super ContactValue> action) {
+        snapshot.forEach(scan, from, to, unlisted, action);
+    }
+
+
+    /**
+     * hands the contacts no range holds to an action, call once after every range has been read
+     * @param action called with each contact's value as of the snapshot
+     */
+    void forEachUnlisted(Consumer<? super ContactValue> action) {
+        snapshot.forEachUnlisted(unlisted, action);
+    }
+
+
+    /**
+     * @param chunkCount number of ranges wanted
+     * @return int array of chunkCount + 1 positions, range i runs from element i up to element i + 1
+     */
+    int[] chunkBoundaries(int chunkCount) {
+        int positions = scan.positionCount();
+        int[] boundaries = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            boundaries[i] = (int) ((long) positions * i / chunkCount);
+        }
+        return boundaries;
+    }
+
+
+    /**
+     * closes the scan and the snapshot, so writers stop keeping values for it
+     */
+    @Override
+    public void close() {
+        scan.close();
+        snapshot.close();
+    }
+}
@@ -0,0 +1,238 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for streaming point in time exports
+ */
+public class ContactExportTest {
+
+    private ContactService testContactService;
+
+
+    /**
+     * creates an empty service for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testContactService = new ContactService(new ConcurrentContactStore(), new TimestampContactIdGenerator(13));
+    }
+
+
+    /*
+     * adds a contact and returns its new ID
+     */
+    private String addContact(String firstName, String address) {
+        return testContactService.addContacts(List.of(new ContactRecord(firstName, "Doe", "0123456789", address)))
+                .getAddedContactIDs().get(0);
+    }
+
+
+    /*
+     * exports to memory and decodes the bytes as UTF-8
+     */
+    private String exportText(ContactExportFormat format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        testContactService.exportContacts(format, Channels.newChannel(output));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Asserts that CSV quotes only the fields that need it and keeps non-ASCII text intact
+     */
+    @Test
+    void csvExportQuotesOnlyFieldsThatNeedIt() throws IOException {
+        String plainID = addContact("John", "1 Main St");
+        String quotedID = addContact("Ren\u00e9e", "Flat 2, \"The\" Mews");
+
+        String csv = exportText(ContactExportFormat.CSV);
+
+        assertTrue(csv.startsWith("contactID,firstName,lastName,phoneNumber,address,version\n"));
+        assertTrue(csv.contains(plainID + ",John,Doe,0123456789,1 Main St,0\n"));
+        assertTrue(csv.contains(quotedID + ",Ren\u00e9e,Doe,0123456789,\"Flat 2, \"\"The\"\" Mews\",0\n"));
+        assertEquals(3, csv.split("\n").length);
+    }
+
+
+    /**
+     * Asserts that JSON Lines escapes quotes, backslashes and control characters
+     */
+    @Test
+    void jsonLinesExportEscapesSpecialCharacters() throws IOException {
+        String contactID = addContact("Jo\"\\", "Line\tTab \u0001");
+        testContactService.updateContactLastName(contactID, "\u017dupan");
+
+        String json = exportText(ContactExportFormat.JSON_LINES);
+
+        assertEquals("{\"contactID\":\"" + contactID + "\",\"firstName\":\"Jo\\\"\\\\\",\"lastName\":\"\u017dupan\","
+                + "\"phoneNumber\":\"0123456789\",\"address\":\"Line\\tTab \\u0001\",\"version\":1}\n", json);
+    }
+
+
+    /**
+     * Asserts that the binary format reads back with the snapshot contact decoder
+     */
+    @Test
+    void binaryExportReadsBackWithSnapshotDecoder() throws IOException {
+        Set<ContactValue> expected = new HashSet<ContactValue>();
+        for (int i = 0; i < 100; i++) {
+            String contactID = addContact("Name" + i, i + " \ud83c\udfe0 Way");
+            expected.add(testContactService.findContactObject(contactID).getValue());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(100, testContactService.exportContacts(ContactExportFormat.BINARY, Channels.newChannel(output)));
+
+        ByteBuffer buffer = ByteBuffer.wrap(output.toByteArray());
+        Set<ContactValue> exported = new HashSet<ContactValue>();
+        while (buffer.hasRemaining()) {
+            exported.add(ContactRecordCodec.readContact(buffer));
+        }
+        assertEquals(expected, exported);
+    }
+
+
+    /**
+     * Asserts that a parallel export splits the contacts over complete files with nothing lost or repeated
+     */
+    @Test
+    void parallelFileExportLosesAndRepeatsNothing(@TempDir Path directory) throws IOException {
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < 10000; i++) {
+            records.add(new ContactRecord("First", "Last", "0123456789", i + " Main St"));
+        }
+        List<String> contactIDs = testContactService.addContacts(records).getAddedContactIDs();
+
+        List<Path> files = testContactService.exportContacts(ContactExportFormat.CSV, directory, 4);
+
+        assertEquals(4, files.size());
+        assertEquals(directory.resolve("contacts-00003.csv"), files.get(3));
+        Set<String> exportedIDs = new HashSet<String>();
+        for (Path file : files) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals("contactID,firstName,lastName,phoneNumber,address,version", lines.get(0));
+            assertEquals(2500, lines.size() - 1);
+            for (String line : lines.subList(1, lines.size())) {
+                assertTrue(exportedIDs.add(line.substring(0, line.indexOf(','))));
+            }
+        }
+        assertEquals(new HashSet<String>(contactIDs), exportedIDs);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.exportContacts(ContactExportFormat.CSV, directory, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.exportContacts(ContactExportFormat.CSV, directory.resolve("missing"), 1));
+    }
+
+
+    /**
+     * Asserts that writes made while the store is being scanned do not show up in the export
+     */
+    @Test
+    void exportIgnoresWritesMadeDuringScan() throws IOException {
+        List<Runnable> duringScan = new ArrayList<Runnable>();
+        ConcurrentContactStore scanningStore = new ConcurrentContactStore() {
+            @Override
+            public List<Contact> asList() {
+                duringScan.forEach(Runnable::run); // writes land after the snapshot point, before the scan
+                return super.asList();
+            }
+        };
+        testContactService = new ContactService(scanningStore, new TimestampContactIdGenerator(13));
+        String updatedID = addContact("Original", "1 Main St");
+        String versionedID = addContact("Versioned", "1 Main St");
+        String deletedID = addContact("Deleted", "1 Main St");
+
+        duringScan.add(() -> testContactService.updateContactFirstName(updatedID, "Changed"));
+        duringScan.add(() -> testContactService.updateContactFirstName(versionedID, "Changed", 0));
+        duringScan.add(() -> testContactService.deleteExistingContact(deletedID));
+        duringScan.add(() -> addContact("Added", "1 Main St"));
+        duringScan.add(() -> testContactService.addNewContact("AlsoAdded", "Doe", "0123456789", "1 Main St"));
+
+        String csv = exportText(ContactExportFormat.CSV);
+
+        assertTrue(csv.contains(updatedID + ",Original,"));
+        assertTrue(csv.contains(versionedID + ",Versioned,"));
+        assertTrue(csv.contains(deletedID + ",Deleted,"));
+        assertFalse(csv.contains("Changed"));
+        assertFalse(csv.contains("Added"));
+        assertEquals(4, csv.split("\n").length);
+        assertEquals(4, scanningStore.size()); // the writes themselves went through
+    }
+
+
+    /**
+     * Asserts that an export read record by record from packed shards still holds exactly the contacts of its
+     * snapshot point when contacts are updated, deleted and added while the shards are being scanned
+     */
+    @Test
+    void packedStoreExportIsPointInTimeWhileScanning() throws IOException {
+        List<Runnable> duringScan = new ArrayList<Runnable>();
+        ShardedContactStore scanningStore = new ShardedContactStore(4, PackedContactStore::new) {
+            @Override
+            public Scan openScan() {
+                Scan scan = super.openScan();
+                return new Scan() {
+                    @Override
+                    public int positionCount() {
+                        return scan.positionCount();
+                    }
+
+                    @Override
+                    public void forEach(int from, int to, BiConsumer<String, ContactValue> action) {
+                        duringScan.forEach(Runnable::run); // writes land after the scan opened, before it reads
+                        duringScan.clear();
+                        scan.forEach(from, to, action);
+                    }
+
+                    @Override
+                    public void close() {
+                        scan.close();
+                    }
+                };
+            }
+        };
+        testContactService = new ContactService(scanningStore, new TimestampContactIdGenerator(13));
+        List<String> contactIDs = new ArrayList<String>();
+        for (int i = 0; i < 400; i++) {
+            contactIDs.add(addContact("Original", i + " Main St"));
+        }
+        for (int i = 0; i < 100; i++) {
+            String deletedID = contactIDs.get(i);
+            String updatedID = contactIDs.get(399 - i);
+            duringScan.add(() -> testContactService.deleteExistingContact(deletedID));
+            duringScan.add(() -> addContact("Added", "1 Main St")); // may not reuse a record the scan still needs
+            duringScan.add(() -> testContactService.updateContactFirstName(updatedID, "Changed"));
+        }
+
+        String csv = exportText(ContactExportFormat.CSV);
+
+        List<String> rows = List.of(csv.split("\n"));
+        Set<String> exportedIDs = new HashSet<String>();
+        for (String row : rows.subList(1, rows.size())) {
+            assertTrue(row.contains(",Original,"), row);
+            assertTrue(exportedIDs.add(row.substring(0, row.indexOf(','))), row);
+        }
+        assertEquals(new HashSet<String>(contactIDs), exportedIDs);
+        assertEquals(400, scanningStore.size()); // 100 deleted, 100 added
+    }
+}
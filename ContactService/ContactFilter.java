@@ -0,0 +1,233 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * immutable condition on a contact's fields for ContactService.queryContacts. Start from one of the static
+ * factories and combine with and(), or() and negate(). Name comparisons ignore case the same way the name indexes
+ * do, phone numbers and addresses are compared as given.
+ *
+ * Exact phone number, exact name and name prefix conditions can be answered from the secondary indexes. When a
+ * filter requires one of them, the whole filter being an and() of it with anything else, queryContacts looks up
+ * that condition's candidates instead of scanning every contact.
+ */
+public final class ContactFilter {
+
+    // conditions the secondary indexes can answer, in the order queryContacts prefers them
+    enum IndexedTerm {
+        PHONE_NUMBER,
+        LAST_NAME,
+        FIRST_NAME,
+        LAST_NAME_PREFIX,
+        FIRST_NAME_PREFIX
+    }
+
+    private static final ContactFilter ALL = new ContactFilter(value -> true, null, null);
+
+    private final Predicate<ContactValue> predicate;
+
+    // index lookup answering this condition on its own, null if it has none
+    private final IndexedTerm indexedTerm;
+    private final String indexKey;
+
+    // conditions this filter is an and() of, each required by it
+    private final List<ContactFilter> requiredTerms;
+
+
+    private ContactFilter(Predicate<ContactValue> predicate, IndexedTerm indexedTerm, String indexKey) {
+        this.predicate = predicate;
+        this.indexedTerm = indexedTerm;
+        this.indexKey = indexKey;
+        this.requiredTerms = Collections.singletonList(this);
+    }
+
+
+    private ContactFilter(Predicate<ContactValue> predicate, List<ContactFilter> requiredTerms) {
+        this.predicate = predicate;
+        this.indexedTerm = null;
+        this.indexKey = null;
+        this.requiredTerms = requiredTerms;
+    }
+
+
+    /**
+     * @return ContactFilter every contact passes
+     */
+    public static ContactFilter all() {
+        return ALL;
+    }
+
+
+    /**
+     * @param phoneNumber whole phone number
+     * @return ContactFilter for contacts with exactly that phone number
+     */
+    public static ContactFilter phoneNumberIs(String phoneNumber) {
+        String number = requireArgument(phoneNumber, "phone number");
+        return new ContactFilter(value -> value.getPhoneNumber().equals(number), IndexedTerm.PHONE_NUMBER, number);
+    }
+
+
+    /**
+     * @param prefix leading digits, such as an area code
+     * @return ContactFilter for contacts whose phone number starts with the prefix
+     */
+    public static ContactFilter phoneNumberStartsWith(String prefix) {
+        String digits = requireArgument(prefix, "phone number prefix");
+        return new ContactFilter(value -> value.getPhoneNumber().startsWith(digits), null, null);
+    }
+
+
+    /**
+     * @param firstName whole first name, any case
+     * @return ContactFilter for contacts with that first name
+     */
+    public static ContactFilter firstNameIs(String firstName) {
+        String name = ContactSecondaryIndexes.normalize(requireArgument(firstName, "first name"));
+        return new ContactFilter(value -> ContactSecondaryIndexes.normalize(value.getFirstName()).equals(name),
+                IndexedTerm.FIRST_NAME, name);
+    }
+
+
+    /**
+     * @param prefix start of the first name, any case
+     * @return ContactFilter for contacts whose first name starts with the prefix
+     */
+    public static ContactFilter firstNameStartsWith(String prefix) {
+        String name = ContactSecondaryIndexes.normalize(requireArgument(prefix, "first name prefix"));
+        return new ContactFilter(value -> ContactSecondaryIndexes.normalize(value.getFirstName()).startsWith(name),
+                IndexedTerm.FIRST_NAME_PREFIX, name);
+    }
+
+
+    /**
+     * @param lastName whole last name, any case
+     * @return ContactFilter for contacts with that last name
+     */
+    public static ContactFilter lastNameIs(String lastName) {
+        String name = ContactSecondaryIndexes.normalize(requireArgument(lastName, "last name"));
+        return new ContactFilter(value -> ContactSecondaryIndexes.normalize(value.getLastName()).equals(name),
+                IndexedTerm.LAST_NAME, name);
+    }
+
+
+    /**
+     * @param prefix start of the last name, any case
+     * @return ContactFilter for contacts whose last name starts with the prefix
+     */
+    public static ContactFilter lastNameStartsWith(String prefix) {
+        String name = ContactSecondaryIndexes.normalize(requireArgument(prefix, "last name prefix"));
+        return new ContactFilter(value -> ContactSecondaryIndexes.normalize(value.getLastName()).startsWith(name),
+                IndexedTerm.LAST_NAME_PREFIX, name);
+    }
+
+
+    /**
+     * @param text text to look for
+     * @return ContactFilter for contacts whose address contains the text
+     */
+    public static ContactFilter addressContains(String text) {
+        String part = requireArgument(text, "address text");
+        return new ContactFilter(value -> value.getAddress().contains(part), null, null);
+    }
+
+
+    /**
+     * @param predicate any condition on a contact's fields, must be safe to call from several threads at once
+     * @return ContactFilter for contacts the predicate accepts, always answered by a scan
+     */
+    public static ContactFilter matching(Predicate<ContactValue> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Invalid predicate. Expected not null");
+        }
+        return new ContactFilter(predicate, null, null);
+    }
+
+
+    /**
+     * @param other condition that must also hold
+     * @return ContactFilter for contacts passing both filters
+     */
+    public ContactFilter and(ContactFilter other) {
+        requireFilter(other);
+        List<ContactFilter> terms = new ArrayList<ContactFilter>(requiredTerms.size() + other.requiredTerms.size());
+        terms.addAll(requiredTerms);
+        terms.addAll(other.requiredTerms);
+        return new ContactFilter(predicate.and(other.predicate), Collections.unmodifiableList(terms));
+    }
+
+
+    /**
+     * @param other alternative condition
+     * @return ContactFilter for contacts passing either filter, always answered by a scan
+     */
+    public ContactFilter or(ContactFilter other) {
+        requireFilter(other);
+        return new ContactFilter(predicate.or(other.predicate), null, null);
+    }
+
+
+    /**
+     * @return ContactFilter for contacts this filter rejects, always answered by a scan
+     */
+    public ContactFilter negate() {
+        return new ContactFilter(predicate.negate(), null, null);
+    }
+
+
+    /**
+     * @param value contact to check
+     * @return boolean true if the contact passes
+     */
+    boolean test(ContactValue value) {
+        return predicate.test(value);
+    }
+
+
+    /**
+     * @return ContactFilter the most selective required condition the secondary indexes can answer, or null
+     */
+    ContactFilter indexedTerm() {
+        ContactFilter best = null;
+        for (ContactFilter term : requiredTerms) {
+            if (term.indexedTerm != null && (best == null || term.indexedTerm.compareTo(best.indexedTerm) < 0)) {
+                best = term;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * @return IndexedTerm lookup answering this condition, null unless it is a single indexed condition
+     */
+    IndexedTerm getIndexedTerm() {
+        return indexedTerm;
+    }
+
+
+    /**
+     * @return String phone number or normalized name the index is searched for
+     */
+    String getIndexKey() {
+        return indexKey;
+    }
+
+
+    private static String requireArgument(String argument, String name) {
+        if (argument == null) {
+            throw new IllegalArgumentException("Invalid " + name + ". Expected not null");
+        }
+        return argument;
+    }
+
+
+    private static void requireFilter(ContactFilter other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Invalid filter. Expected not null");
+        }
+    }
+}
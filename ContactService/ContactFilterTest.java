@@ -0,0 +1,171 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for contact queries built from composable filters, answered by index lookups or parallel scans
+ */
+public class ContactFilterTest {
+
+    private static final int CONTACT_COUNT = 50000;
+
+    private ContactStore testStore;
+    private ContactService testContactService;
+
+
+    /**
+     * fills a service with contacts spread over a few names, area codes and streets
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(19));
+
+        List<ContactRecord> records = new ArrayList<ContactRecord>(CONTACT_COUNT);
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            String phoneNumber = (200 + i % 7) + String.format("5550%03d", i % 1000);
+            records.add(new ContactRecord("First" + i % 100, "Last" + i % 1000, phoneNumber,
+                    i + (i % 3 == 0 ? " Main St" : " Side Rd")));
+        }
+        testContactService.addContacts(records);
+    }
+
+
+    /*
+     * @return Set of the contactIDs a filter accepts, checked one by one
+     */
+    private Set<String> expectedIDs(ContactFilter filter) {
+        return testStore.asList().stream().map(Contact::getValue).filter(filter::test)
+                .map(ContactValue::getContactID).collect(Collectors.toSet());
+    }
+
+
+    private Set<String> queriedIDs(ContactFilter filter) {
+        return new HashSet<String>(testContactService.queryContacts(filter, Integer.MAX_VALUE,
+                ContactValue::getContactID));
+    }
+
+
+    /**
+     * Asserts that combined filters find exactly the contacts passing every condition
+     */
+    @Test
+    void combinedFiltersFindContactsPassingEveryCondition() {
+        ContactFilter mainStreetAreaCode = ContactFilter.addressContains("Main St")
+                .and(ContactFilter.phoneNumberStartsWith("203"));
+        Set<String> found = queriedIDs(mainStreetAreaCode);
+
+        assertEquals(expectedIDs(mainStreetAreaCode), found);
+        assertEquals(CONTACT_COUNT / 21 + 1, found.size(), "every third contact on Main St, every seventh in 203");
+        for (ContactValue value : testContactService.queryContacts(mainStreetAreaCode, Integer.MAX_VALUE)) {
+            assertTrue(value.getAddress().endsWith("Main St") && value.getPhoneNumber().startsWith("203"));
+        }
+
+        ContactFilter either = ContactFilter.firstNameIs("FIRST7").or(ContactFilter.lastNameStartsWith("last99"))
+                .and(ContactFilter.addressContains("Side").negate());
+        assertEquals(expectedIDs(either), queriedIDs(either));
+        assertFalse(queriedIDs(either).isEmpty());
+
+        assertEquals(CONTACT_COUNT, queriedIDs(ContactFilter.all()).size());
+        assertTrue(queriedIDs(ContactFilter.phoneNumberIs("0000000000")).isEmpty());
+    }
+
+
+    /**
+     * Asserts that a limit cuts the scan short and that the projection only runs for returned matches
+     */
+    @Test
+    void limitStopsScanAndProjectsOnlyReturnedMatches() {
+        AtomicInteger projected = new AtomicInteger();
+        List<String> addresses = testContactService.queryContacts(ContactFilter.addressContains("Side Rd"), 25,
+                value -> {
+                    projected.incrementAndGet();
+                    return value.getAddress();
+                });
+
+        assertEquals(25, addresses.size());
+        assertTrue(addresses.stream().allMatch(address -> address.endsWith(" Side Rd")));
+        assertTrue(projected.get() < CONTACT_COUNT / 2, "the scan stopped before checking every contact");
+        assertEquals(1, testContactService.queryContacts(ContactFilter.all(), 1).size());
+    }
+
+
+    /**
+     * Asserts that with secondary indexes a filter requiring an indexed term only checks that term's candidates,
+     * and still returns what a scan would
+     */
+    @Test
+    void indexedQueryChecksOnlyCandidatesAndMatchesScan() {
+        testContactService.enableSecondaryIndexes();
+        AtomicInteger checked = new AtomicInteger();
+        ContactFilter counting = ContactFilter.matching(value -> {
+            checked.incrementAndGet();
+            return true;
+        });
+
+        ContactFilter byLastName = counting.and(ContactFilter.lastNameIs("last42"))
+                .and(ContactFilter.addressContains("Main"));
+        Set<String> expected = expectedIDs(byLastName);
+        checked.set(0);
+        assertEquals(expected, queriedIDs(byLastName));
+        assertEquals(CONTACT_COUNT / 1000, checked.get(), "only the 50 Last42 contacts were checked");
+
+        String phoneNumber = testStore.asList().get(0).getPhoneNumber();
+        ContactFilter byPhone = ContactFilter.firstNameStartsWith("first").and(counting)
+                .and(ContactFilter.phoneNumberIs(phoneNumber));
+        int expectedCount = expectedIDs(byPhone).size();
+        checked.set(0);
+        assertEquals(expectedCount, testContactService.queryContacts(byPhone, 100).size());
+        assertEquals(expectedCount, checked.get());
+
+        checked.set(0);
+        queriedIDs(counting.or(ContactFilter.lastNameIs("last42")));
+        assertEquals(CONTACT_COUNT, checked.get(), "an or() cannot use the index");
+    }
+
+
+    /**
+     * Asserts that index answered queries see updates made after the indexes were built
+     */
+    @Test
+    void indexedQuerySeesLaterUpdates() {
+        testContactService.enableSecondaryIndexes();
+        String contactID = testStore.asList().get(0).getContactID();
+
+        testContactService.updateContactLastName(contactID, "Renamed");
+
+        List<ContactValue> found = testContactService.queryContacts(ContactFilter.lastNameIs("renamed"), 10);
+        assertEquals(1, found.size());
+        assertEquals(contactID, found.get(0).getContactID());
+        assertEquals(1, found.get(0).getVersion());
+        assertEquals(Set.of(contactID), queriedIDs(ContactFilter.lastNameIs("RENAMED").and(ContactFilter.all())));
+    }
+
+
+    /**
+     * Asserts that unusable filters and arguments are refused
+     */
+    @Test
+    void invalidQueryThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> testContactService.queryContacts(null, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.queryContacts(ContactFilter.all(), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.queryContacts(ContactFilter.all(), 10, null));
+        assertThrows(IllegalArgumentException.class, () -> ContactFilter.addressContains(null));
+        assertThrows(IllegalArgumentException.class, () -> ContactFilter.matching(null));
+        assertThrows(IllegalArgumentException.class, () -> ContactFilter.all().and(null));
+        assertThrows(IllegalArgumentException.class, () -> ContactFilter.all().or(null));
+    }
+}
@@ -0,0 +1,396 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * typo tolerant search over first and last names that ContactService keeps up to date from its mutation events.
+ *
+ * Contacts share names heavily, so each field keeps a dictionary of distinct case folded names, each holding the
+ * contactIDs that currently have it, and a trigram inverted index over the dictionary. Posting lists are plain int
+ * arrays of name numbers, appended in increasing order because a name is numbered when it is first seen.
+ *
+ * A name that matches the query within k edits contains all but at most 3k of the query's trigrams, so a query
+ * merges the posting lists of its trigrams and only scores names that reach that count with a bounded Levenshtein
+ * distance. Distances are measured against the best matching part of the name, so "jon" finds "Jonathan" and
+ * "smtih" finds "Smith". Queries too short to prune this way score every name in the dictionary.
+ *
+ * Names stay in the dictionary when their last contact leaves them, they are few and are likely to come back. Like
+ * ContactSecondaryIndexes, entries are only hints: callers recheck each contact's current name.
+ */
+final class ContactFuzzyNameIndex implements ContactMutationListener {
+
+    // names per field, first names at FIRST and last names at LAST
+    private static final int FIRST = 0;
+    private static final int LAST = 1;
+
+    private final NameDictionary[] fields = { new NameDictionary(), new NameDictionary() };
+
+
+    @Override
+    public void onMutation(ContactMutation mutation) {
+        ContactValue previousValue = mutation.getPreviousValue();
+        ContactValue currentValue = mutation.getCurrentValue();
+
+        if (previousValue == null) {
+            index(currentValue);
+        } else if (currentValue == null) {
+            unindex(previousValue);
+        } else {
+            String contactID = currentValue.getContactID();
+            if (!previousValue.getFirstName().equals(currentValue.getFirstName())) {
+                fields[FIRST].remove(previousValue.getFirstName(), contactID);
+                fields[FIRST].add(currentValue.getFirstName(), contactID);
+            }
+            if (!previousValue.getLastName().equals(currentValue.getLastName())) {
+                fields[LAST].remove(previousValue.getLastName(), contactID);
+                fields[LAST].add(currentValue.getLastName(), contactID);
+            }
+        }
+    }
+
+
+    /**
+     * @param value contact to add under its first and last name, adding one twice changes nothing
+     */
+    void index(ContactValue value) {
+        fields[FIRST].add(value.getFirstName(), value.getContactID());
+        fields[LAST].add(value.getLastName(), value.getContactID());
+    }
+
+
+    /**
+     * @param value contact to drop from its first and last name
+     */
+    void unindex(ContactValue value) {
+        fields[FIRST].remove(value.getFirstName(), value.getContactID());
+        fields[LAST].remove(value.getLastName(), value.getContactID());
+    }
+
+
+    /**
+     * finds the names closest to a query in either field, best first: fewest edits, then the name whose length is
+     * closest to the query, then alphabetical with last names before first names
+     * @param query name or part of a name, any case
+     * @param maxDistance largest number of edits a match may need
+     * @return List of matching names with the contactIDs holding them
+     */
+    List<NameMatch> matchNames(String query, int maxDistance) {
+        char[] normalizedQuery = ContactSecondaryIndexes.normalize(query).toCharArray();
+        List<NameMatch> matches = new ArrayList<NameMatch>();
+        fields[LAST].match(normalizedQuery, maxDistance, true, matches);
+        fields[FIRST].match(normalizedQuery, maxDistance, false, matches);
+        Collections.sort(matches);
+        return matches;
+    }
+
+
+    /**
+     * @param lastName true for last names, false for first names
+     * @return int number of distinct names held for the field, including ones no contact has any more
+     */
+    int nameCount(boolean lastName) {
+        return fields[lastName ? LAST : FIRST].nameCount();
+    }
+
+
+    /**
+     * smallest edit distance between a query and any substring of a name, giving up once it is sure to exceed a bound
+     * @param query pattern, normalized
+     * @param name text searched, normalized
+     * @param maxDistance largest distance of interest
+     * @return int distance, or maxDistance + 1 if it is larger than maxDistance
+     */
+    static int substringDistance(char[] query, String name, int maxDistance) {
+        int queryLength = query.length;
+        int[] column = new int[queryLength + 1]; // column[i] edits to match query[0, i) ending at the current char
+        for (int i = 0; i <= queryLength; i++) {
+            column[i] = i;
+        }
+
+        int best = column[queryLength];
+        int lastActive = Math.min(queryLength, maxDistance); // rows past this exceed the bound, Ukkonen's cut off
+        for (int j = 0; j < name.length() && best > 0; j++) {
+            char c = name.charAt(j);
+            int diagonal = 0; // a match may start at any position of the name
+            column[0] = 0;
+            int limit = Math.min(queryLength, lastActive + 1);
+            for (int i = 1; i <= limit; i++) {
+                int above = column[i];
+                int cost = diagonal + (query[i - 1] == c ? 0 : 1);
+                int value = Math.min(cost, Math.min(above + 1, column[i - 1] + 1));
+                diagonal = above;
+                column[i] = value;
+            }
+            for (int i = limit + 1; i <= queryLength; i++) {
+                column[i] = maxDistance + 1; // not computed, known to be over the bound
+            }
+
+            lastActive = limit;
+            while (lastActive > 0 && column[lastActive] > maxDistance) {
+                lastActive--;
+            }
+            if (limit == queryLength) {
+                best = Math.min(best, column[queryLength]);
+            }
+        }
+        return Math.min(best, maxDistance + 1);
+    }
+
+
+    /*
+     * @return long key of the three chars starting at an index
+     */
+    private static long trigram(char[] chars, int start) {
+        return (long) chars[start] << 32 | (long) chars[start + 1] << 16 | chars[start + 2];
+    }
+
+
+    /**
+     * one name found by a query, ordered best match first
+     */
+    static final class NameMatch implements Comparable<NameMatch> {
+
+        final String name;
+        final boolean lastName;
+        final int distance;
+        final int lengthDifference;
+        final Set<String> contactIDs;
+
+
+        NameMatch(String name, boolean lastName, int distance, int lengthDifference, Set<String> contactIDs) {
+            this.name = name;
+            this.lastName = lastName;
+            this.distance = distance;
+            this.lengthDifference = lengthDifference;
+            this.contactIDs = contactIDs;
+        }
+
+
+        @Override
+        public int compareTo(NameMatch other) {
+            if (distance != other.distance) {
+                return Integer.compare(distance, other.distance);
+            }
+            if (lengthDifference != other.lengthDifference) {
+                return Integer.compare(lengthDifference, other.lengthDifference);
+            }
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Boolean.compare(other.lastName, lastName);
+        }
+
+
+        /**
+         * @param count number of IDs wanted
+         * @return List of the name's smallest contactIDs in order, all of them if it has no more than count
+         */
+        List<String> smallestContactIDs(int count) {
+            if (count >= contactIDs.size()) {
+                List<String> all = new ArrayList<String>(contactIDs);
+                Collections.sort(all);
+                return all;
+            }
+
+            PriorityQueue<String> largestKept = new PriorityQueue<String>(count + 1, Collections.reverseOrder());
+            for (String contactID : contactIDs) {
+                if (largestKept.size() < count) {
+                    largestKept.add(contactID);
+                } else if (contactID.compareTo(largestKept.peek()) < 0) {
+                    largestKept.poll();
+                    largestKept.add(contactID);
+                }
+            }
+            List<String> smallest = new ArrayList<String>(largestKept);
+            Collections.sort(smallest);
+            return smallest;
+        }
+    }
+
+
+    /*
+     * distinct names of one field with their contacts and a trigram index over them. Contacts join and leave a known
+     * name without locking; only numbering a new name and growing its posting lists takes the write lock, which
+     * queries exclude by holding the read lock while they merge posting lists.
+     */
+    private static final class NameDictionary {
+
+        private final Map<String, Set<String>> contactsByName = new ConcurrentHashMap<String, Set<String>>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // guarded by lock
+        private String[] names = new String[64];
+        private int nameCount;
+        private final Map<Long, IntPostingList> postings = new HashMap<Long, IntPostingList>();
+
+
+        void add(String name, String contactID) {
+            String normalizedName = ContactSecondaryIndexes.normalize(name);
+            Set<String> contactIDs = contactsByName.get(normalizedName);
+            if (contactIDs == null) {
+                contactIDs = addName(normalizedName);
+            }
+            contactIDs.add(contactID);
+        }
+
+
+        void remove(String name, String contactID) {
+            Set<String> contactIDs = contactsByName.get(ContactSecondaryIndexes.normalize(name));
+            if (contactIDs != null) {
+                contactIDs.remove(contactID);
+            }
+        }
+
+
+        int nameCount() {
+            lock.readLock().lock();
+            try {
+                return nameCount;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+
+        /*
+         * numbers a name seen for the first time and adds it to the posting list of each of its trigrams
+         * @return Set of contactIDs for the name
+         */
+        private Set<String> addName(String normalizedName) {
+            lock.writeLock().lock();
+            try {
+                Set<String> contactIDs = contactsByName.get(normalizedName);
+                if (contactIDs != null) { // another writer numbered it first
+                    return contactIDs;
+                }
+
+                int nameNumber = nameCount;
+                if (nameNumber == names.length) {
+                    names = Arrays.copyOf(names, nameNumber * 2);
+                }
+                names[nameNumber] = normalizedName;
+                nameCount = nameNumber + 1;
+
+                char[] chars = normalizedName.toCharArray();
+                for (int start = 0; start + 3 <= chars.length; start++) {
+                    IntPostingList list = postings.computeIfAbsent(trigram(chars, start), key -> new IntPostingList());
+                    if (list.size == 0 || list.values[list.size - 1] != nameNumber) { // once per repeated trigram
+                        list.add(nameNumber);
+                    }
+                }
+
+                contactIDs = ConcurrentHashMap.newKeySet();
+                contactsByName.put(normalizedName, contactIDs); // published after its postings
+                return contactIDs;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+
+        /*
+         * adds every name of the field within maxDistance of the query that still has contacts
+         */
+        void match(char[] query, int maxDistance, boolean lastName, List<NameMatch> matches) {
+            List<String> candidates = new ArrayList<String>();
+
+            lock.readLock().lock();
+            try {
+                int queryTrigramCount = Math.max(0, query.length - 2);
+                int requiredTrigrams = queryTrigramCount - 3 * maxDistance;
+                if (requiredTrigrams <= 0) { // nothing to prune on, score every name
+                    candidates.addAll(Arrays.asList(names).subList(0, nameCount));
+                } else {
+                    collectCandidates(query, requiredTrigrams, candidates);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            for (String name : candidates) {
+                if (query.length - name.length() > maxDistance) {
+                    continue; // too short to hold the query
+                }
+                int distance = substringDistance(query, name, maxDistance);
+                Set<String> contactIDs = contactsByName.get(name);
+                if (distance <= maxDistance && !contactIDs.isEmpty()) {
+                    matches.add(new NameMatch(name, lastName, distance, Math.abs(name.length() - query.length),
+                            contactIDs));
+                }
+            }
+        }
+
+
+        /*
+         * merges the sorted posting lists of the query's distinct trigrams, keeping names found in enough of them.
+         * Caller holds the read lock.
+         */
+        private void collectCandidates(char[] query, int requiredTrigrams, List<String> candidates) {
+            Map<Long, IntPostingList> queryPostings = new HashMap<Long, IntPostingList>();
+            for (int start = 0; start + 3 <= query.length; start++) {
+                long key = trigram(query, start);
+                IntPostingList list = postings.get(key);
+                queryPostings.put(key, list == null ? IntPostingList.EMPTY : list);
+            }
+            IntPostingList[] lists = queryPostings.values().toArray(new IntPostingList[0]);
+            int[] cursors = new int[lists.length];
+
+            // a repeated query trigram counts once, so lower the bound by the repeats
+            requiredTrigrams -= Math.max(0, query.length - 2) - lists.length;
+            if (requiredTrigrams <= 0) {
+                candidates.addAll(Arrays.asList(names).subList(0, nameCount));
+                return;
+            }
+
+            while (true) {
+                int lowest = Integer.MAX_VALUE;
+                for (int i = 0; i < lists.length; i++) {
+                    if (cursors[i] < lists[i].size) {
+                        lowest = Math.min(lowest, lists[i].values[cursors[i]]);
+                    }
+                }
+                if (lowest == Integer.MAX_VALUE) {
+                    return;
+                }
+
+                int count = 0;
+                for (int i = 0; i < lists.length; i++) {
+                    if (cursors[i] < lists[i].size && lists[i].values[cursors[i]] == lowest) {
+                        count++;
+                        cursors[i]++;
+                    }
+                }
+                if (count >= requiredTrigrams) {
+                    candidates.add(names[lowest]);
+                }
+            }
+        }
+    }
+
+
+    /*
+     * growable ascending list of name numbers
+     */
+    private static final class IntPostingList {
+
+        static final IntPostingList EMPTY = new IntPostingList();
+
+        int[] values = new int[4];
+        int size;
+
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for typo tolerant name search through the trigram index
+ */
+public class ContactFuzzyNameIndexTest {
+
+    private ContactStore testStore;
+    private ContactService testContactService;
+
+
+    /**
+     * creates an empty service for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(18));
+    }
+
+
+    private String add(String firstName, String lastName) {
+        return testContactService.addNewContact(firstName, lastName, "0123456789", "1 Main St").getContactID();
+    }
+
+
+    private List<String> lastNamesFound(String query, int maxDistance) {
+        return testContactService.findContactsByFuzzyName(query, maxDistance, 10).stream()
+                .map(Contact::getLastName).collect(Collectors.toList());
+    }
+
+
+    /**
+     * Asserts that the bounded distance matches the query against the best part of a name
+     */
+    @Test
+    void distanceMatchesBestPartOfName() {
+        assertEquals(0, ContactFuzzyNameIndex.substringDistance("jon".toCharArray(), "jonathan", 2));
+        assertEquals(0, ContactFuzzyNameIndex.substringDistance("than".toCharArray(), "jonathan", 2));
+        assertEquals(1, ContactFuzzyNameIndex.substringDistance("smyth".toCharArray(), "smith", 2));
+        assertEquals(2, ContactFuzzyNameIndex.substringDistance("smtih".toCharArray(), "smith", 2));
+        assertEquals(1, ContactFuzzyNameIndex.substringDistance("smth".toCharArray(), "smith", 2));
+        assertEquals(2, ContactFuzzyNameIndex.substringDistance("xyz".toCharArray(), "smith", 1));
+        assertEquals(3, ContactFuzzyNameIndex.substringDistance("doe".toCharArray(), "", 3));
+    }
+
+
+    /**
+     * Asserts that misspelled and partial names are found, best match first, in either name field
+     */
+    @Test
+    void fuzzySearchFindsMisspelledAndPartialNames() {
+        add("John", "Smith");
+        add("Jane", "Smyth");
+        add("Jonathan", "Doe");
+        add("Mary", "Schmidt");
+        add("Smith", "Jones");
+        testContactService.enableFuzzyNameSearch();
+
+        assertEquals(List.of("Smith", "Jones", "Smyth"), lastNamesFound("smith", 1));
+        assertEquals(List.of("Smith", "Jones"), lastNamesFound("SMITH", 0));
+        assertEquals(List.of("Smith", "Jones", "Smyth"), lastNamesFound("smtih", 2));
+        assertEquals(List.of("Doe"), lastNamesFound("nathan", 0));
+        assertEquals(List.of("Jones", "Doe"), lastNamesFound("jon", 0));
+        assertEquals(List.of("Jones", "Doe", "Smyth", "Smith"), lastNamesFound("jon", 1));
+        assertEquals(List.of(), lastNamesFound("zzzz", 1));
+
+        List<Contact> limited = testContactService.findContactsByFuzzyName("sm", 0, 2);
+        assertEquals(2, limited.size());
+    }
+
+
+    /**
+     * Asserts that a contact matching by both names is returned once and that a popular name fills the limit in
+     * contactID order
+     */
+    @Test
+    void fuzzySearchReportsEachContactOnceWithinLimit() {
+        String both = add("Anna", "Anna");
+        List<String> annes = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            annes.add(add("Anne", "Doe"));
+        }
+        testContactService.enableFuzzyNameSearch();
+
+        List<Contact> exact = testContactService.findContactsByFuzzyName("anna", 0, 10);
+        assertEquals(1, exact.size());
+        assertEquals(both, exact.get(0).getContactID());
+
+        List<String> found = testContactService.findContactsByFuzzyName("anne", 1, 5).stream()
+                .map(Contact::getContactID).collect(Collectors.toList());
+        annes.sort(Comparator.naturalOrder());
+        assertEquals(annes.subList(0, 5), found);
+    }
+
+
+    /**
+     * Asserts that the index follows name updates and deletes made after it was enabled
+     */
+    @Test
+    void indexFollowsNameUpdatesAndDeletes() {
+        String contactID = add("John", "Smith");
+        String otherID = add("Jane", "Doe");
+        testContactService.enableFuzzyNameSearch();
+
+        testContactService.updateContactLastName(contactID, "Walker");
+        assertEquals(List.of(), lastNamesFound("smith", 1));
+        assertEquals(List.of("Walker"), lastNamesFound("wlaker", 2));
+
+        testContactService.updateContactFirstName(otherID, "Rebecca");
+        assertEquals(List.of("Doe"), lastNamesFound("rebeca", 1));
+        assertEquals(List.of(), lastNamesFound("jane", 0));
+
+        testContactService.deleteExistingContact(otherID);
+        assertEquals(List.of(), lastNamesFound("rebecca", 0));
+
+        add("Jim", "Smith");
+        assertEquals(List.of("Smith"), lastNamesFound("smith", 0));
+    }
+
+
+    /**
+     * Asserts that trigram pruning finds exactly the contacts a full scan with the same distance finds
+     */
+    @Test
+    void trigramPruningMatchesFullScan() {
+        Random random = new Random(21);
+        String letters = "abcdeilmnorst";
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < 3000; i++) {
+            records.add(new ContactRecord(randomName(random, letters), randomName(random, letters), "0123456789",
+                    "1 Main St"));
+        }
+        testContactService.addContacts(records);
+        testContactService.enableFuzzyNameSearch();
+
+        for (int q = 0; q < 200; q++) {
+            String query = randomName(random, letters);
+            int maxDistance = random.nextInt(Math.min(3, query.length()));
+            char[] normalizedQuery = query.toCharArray();
+
+            List<String> expected = testStore.asList().stream()
+                    .filter(c -> ContactFuzzyNameIndex.substringDistance(normalizedQuery, c.getFirstName(),
+                            maxDistance) <= maxDistance
+                            || ContactFuzzyNameIndex.substringDistance(normalizedQuery, c.getLastName(),
+                            maxDistance) <= maxDistance)
+                    .map(Contact::getContactID).sorted().collect(Collectors.toList());
+            List<String> found = testContactService.findContactsByFuzzyName(query, maxDistance, Integer.MAX_VALUE)
+                    .stream().map(Contact::getContactID).sorted().collect(Collectors.toList());
+
+            assertEquals(expected, found, "query " + query + " within " + maxDistance);
+        }
+    }
+
+
+    /**
+     * Asserts that searching needs the index and sensible arguments
+     */
+    @Test
+    void invalidSearchThrowsException() {
+        assertThrows(IllegalStateException.class, () -> testContactService.findContactsByFuzzyName("doe", 1, 10));
+
+        testContactService.enableFuzzyNameSearch();
+        testContactService.enableFuzzyNameSearch();
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactsByFuzzyName(null, 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactsByFuzzyName("", 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactsByFuzzyName("doe", 3, 10));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactsByFuzzyName("doe", -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactsByFuzzyName("doe", 1, 0));
+    }
+
+
+    private static String randomName(Random random, String letters) {
+        int length = 2 + random.nextInt(9);
+        StringBuilder name = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            name.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return name.toString();
+    }
+}
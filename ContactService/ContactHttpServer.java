@@ -0,0 +1,382 @@
+package contactService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * small HTTP/JSON API over a ContactService on the JDK's built in com.sun.net.httpserver server:
+ *
+ *   POST   /contacts        create from {"firstName", "lastName", "phoneNumber", "address"}, 201 with the new ID,
+ *                            an Idempotency-Key header makes retries return the first request's contact
+ *   GET    /contacts/{id}   the contact as JSON with its version, also sent as the ETag
+ *   PATCH  /contacts/{id}   change the fields in the body as one update, If-Match: "version" makes it conditional
+ *   DELETE /contacts/{id}   204
+ *
+ * Bodies use the same JSON as a JSON_LINES export. Validation failures are 400, unknown contacts 404 and a failed
+ * If-Match 412, each with an {"error": message} body.
+ *
+ * Each request runs on its own virtual thread when the runtime has them (Java 21 and later), so a slow client only
+ * parks a cheap virtual thread and concurrency is not capped by a platform thread pool. Older runtimes fall back to
+ * a cached platform thread pool. Run standalone with: java contactService.ContactHttpServer [port]
+ *
+ * Creating a server changes no system properties. For many kept alive clients call
+ * applyRecommendedServerProperties() at startup, before any HttpServer is created, as main() does.
+ */
+public class ContactHttpServer {
+
+    public static final String CONTACTS_PATH = "/contacts";
+
+    // largest request body read, well above any valid contact
+    static final int MAX_BODY_BYTES = 1 << 14;
+
+    // pending connections the listening socket queues, the kernel may cap it lower
+    private static final int DEFAULT_BACKLOG = 4096;
+
+    private static final int DEFAULT_PORT = 8080;
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    // JDK server settings, read once when the first server in the process is created
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    private static final String MAX_IDLE_CONNECTIONS_PROPERTY = "sun.net.httpserver.maxIdleConnections";
+
+    // kept alive connections the JDK server holds between requests, it closes any beyond this
+    private static final int MAX_IDLE_CONNECTIONS = 16384;
+
+    private final ContactService service;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final boolean virtualThreads;
+
+
+    /**
+     * creates a server that is not started yet
+     * @param service service the requests run against
+     * @param address address to listen on, port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public ContactHttpServer(ContactService service, InetSocketAddress address) throws IOException {
+        this(service, address, DEFAULT_BACKLOG);
+    }
+
+
+    /**
+     * creates a server that is not started yet
+     * @param service service the requests run against
+     * @param address address to listen on, port 0 picks a free port
+     * @param backlog pending connections the listening socket queues
+     * @throws IOException if the address cannot be bound
+     */
+    public ContactHttpServer(ContactService service, InetSocketAddress address, int backlog) throws IOException {
+        if (service == null) {
+            throw new IllegalArgumentException("Invalid contact service. Expected not null");
+        }
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid server address. Expected not null");
+        }
+
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        this.service = service;
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.requestExecutor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor();
+        this.server = HttpServer.create(address, backlog);
+        server.createContext(CONTACTS_PATH, this::handle);
+        server.setExecutor(requestExecutor);
+    }
+
+
+    /**
+     * starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+
+    /**
+     * stops accepting requests and waits up to delaySeconds for those in progress
+     * @param delaySeconds longest wait for running requests
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+    }
+
+
+    /**
+     * @return InetSocketAddress address the server is bound to, with the real port if port 0 was asked for
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+
+    /**
+     * @return boolean true if requests run on virtual threads, false on the platform thread fallback
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+
+    /**
+     * sets the process wide JDK server properties this server is tuned for, keeping any already set, e.g. on the
+     * command line. The JDK server leaves Nagle's algorithm on, which holds each small response back until the
+     * client's delayed ACK, about 40 ms a request on Linux, and keeps only 200 idle connections, so every client
+     * past the 200th reconnects for each request. The JDK reads them once, so call this before the first
+     * HttpServer in the process is created. main() calls it, embedding code decides for itself.
+     */
+    public static void applyRecommendedServerProperties() {
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        if (System.getProperty(MAX_IDLE_CONNECTIONS_PROPERTY) == null) {
+            System.setProperty(MAX_IDLE_CONNECTIONS_PROPERTY, Integer.toString(MAX_IDLE_CONNECTIONS));
+        }
+    }
+
+
+    /**
+     * serves the concurrent service instance until the process is stopped
+     * @param args optional port, 8080 by default
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        applyRecommendedServerProperties();
+        ContactHttpServer httpServer = new ContactHttpServer(ContactService.getConcurrentServiceInstance(),
+                new InetSocketAddress(port));
+        httpServer.start();
+        System.out.println("Serving " + CONTACTS_PATH + " on port " + httpServer.getAddress().getPort()
+                + (httpServer.usesVirtualThreads() ? " with virtual threads" : " with platform threads"));
+    }
+
+
+    /*
+     * routes a request by path and method, turning service exceptions into status codes
+     */
+    private void handle(HttpExchange exchange) {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.equals(CONTACTS_PATH) || path.equals(CONTACTS_PATH + "/")) {
+                if (method.equals("POST")) {
+                    createContact(exchange);
+                } else {
+                    sendMethodNotAllowed(exchange, "POST");
+                }
+            } else if (path.startsWith(CONTACTS_PATH + "/")
+                    && path.indexOf('/', CONTACTS_PATH.length() + 1) < 0) {
+                String contactID = path.substring(CONTACTS_PATH.length() + 1);
+                switch (method) {
+                    case "GET":
+                        getContact(exchange, contactID);
+                        break;
+                    case "PATCH":
+                        patchContact(exchange, contactID);
+                        break;
+                    case "DELETE":
+                        service.deleteExistingContact(contactID);
+                        exchange.sendResponseHeaders(204, -1);
+                        break;
+                    default:
+                        sendMethodNotAllowed(exchange, "GET, PATCH, DELETE");
+                }
+            } else {
+                sendError(exchange, 404, "Not found");
+            }
+        } catch (ContactNotFoundException e) {
+            trySendError(exchange, 404, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            trySendError(exchange, 400, e.getMessage());
+        } catch (IOException e) {
+            // the client went away, there is nobody to answer
+        } catch (RuntimeException e) {
+            trySendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /*
+     * POST /contacts: validates the body and adds the contact, answering with its new ID. A request with an
+     * Idempotency-Key header that repeats an earlier one gets the first request's contact instead of a new one.
+     */
+    private void createContact(HttpExchange exchange) throws IOException {
+        ContactJsonParser body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+
+        Contact contact = service.addNewContact(body.fieldString(ContactJsonParser.FIRST_NAME),
+                body.fieldString(ContactJsonParser.LAST_NAME), body.fieldString(ContactJsonParser.PHONE_NUMBER),
+                body.fieldString(ContactJsonParser.ADDRESS),
+                exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY_HEADER));
+
+        String contactID = contact.getContactID();
+        exchange.getResponseHeaders().set("Location", CONTACTS_PATH + "/" + contactID);
+        send(exchange, 201, ("{\"contactID\":\"" + contactID + "\"}\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /*
+     * GET /contacts/{id}
+     */
+    private void getContact(HttpExchange exchange, String contactID) throws IOException {
+        sendContact(exchange, service.findContactObject(contactID).getValue());
+    }
+
+
+    /*
+     * PATCH /contacts/{id}: applies the fields present in the body as one update. A field set to null or a
+     * non string value is rejected like a null argument.
+     */
+    private void patchContact(HttpExchange exchange, String contactID) throws IOException {
+        ContactJsonParser body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+
+        ContactPatch patch = ContactPatch.forContact(contactID);
+        if (body.fieldStart(ContactJsonParser.FIRST_NAME) != ContactJsonParser.MISSING) {
+            patch = patch.withFirstName(body.fieldString(ContactJsonParser.FIRST_NAME));
+        }
+        if (body.fieldStart(ContactJsonParser.LAST_NAME) != ContactJsonParser.MISSING) {
+            patch = patch.withLastName(body.fieldString(ContactJsonParser.LAST_NAME));
+        }
+        if (body.fieldStart(ContactJsonParser.PHONE_NUMBER) != ContactJsonParser.MISSING) {
+            patch = patch.withPhoneNumber(body.fieldString(ContactJsonParser.PHONE_NUMBER));
+        }
+        if (body.fieldStart(ContactJsonParser.ADDRESS) != ContactJsonParser.MISSING) {
+            patch = patch.withAddress(body.fieldString(ContactJsonParser.ADDRESS));
+        }
+
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch == null) {
+            service.updateContact(patch);
+        } else if (!service.updateContact(patch, parseVersion(ifMatch))) {
+            sendError(exchange, 412, "Version conflict. Contact was changed since version " + ifMatch);
+            return;
+        }
+        sendContact(exchange, service.findContactObject(contactID).getValue());
+    }
+
+
+    /*
+     * reads and parses a JSON object body, answering 400 or 413 itself if it cannot
+     * @return ContactJsonParser holding the body's fields, or null if an error was sent
+     */
+    private static ContactJsonParser readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            sendError(exchange, 413, "Request body too large. Expected at most " + MAX_BODY_BYTES + " bytes");
+            return null;
+        }
+
+        ContactJsonParser parser = new ContactJsonParser(body);
+        if (!parser.parseObject(0, body.length)) {
+            sendError(exchange, 400, "Invalid request body. Expected a JSON object");
+            return null;
+        }
+        return parser;
+    }
+
+
+    /*
+     * @return long version from an If-Match value such as "3", W/"3" or 3
+     */
+    private static long parseVersion(String ifMatch) {
+        String version = ifMatch.trim();
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+        }
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid If-Match. Expected a contact version");
+        }
+    }
+
+
+    /*
+     * answers 200 with the contact in JSON Lines export form and its version as the ETag
+     */
+    private static void sendContact(HttpExchange exchange, ContactValue value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ContactExportFormat.MAX_RECORD_BYTES);
+        ContactExportFormat.JSON_LINES.writeContact(buffer, value);
+        exchange.getResponseHeaders().set("ETag", "\"" + value.getVersion() + "\"");
+        send(exchange, 200, Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+
+    private static void sendMethodNotAllowed(HttpExchange exchange, String allowedMethods) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowedMethods);
+        sendError(exchange, 405, "Method not allowed");
+    }
+
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        String escaped = message.replace("\\", "\\\\").replace("\"", "\\\"");
+        send(exchange, status, ("{\"error\":\"" + escaped + "\"}\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /*
+     * sends an error unless the response was already started
+     */
+    private static void trySendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+
+    /*
+     * @return ExecutorService starting a virtual thread per task, or null on runtimes before Java 21. Looked up
+     *         reflectively so the service still builds for Java 17.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+
+    private static ExecutorService newPlatformThreadExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "contact-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
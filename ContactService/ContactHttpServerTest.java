@@ -0,0 +1,195 @@
+package contactService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the HTTP/JSON front end, run against a server on a free local port
+ */
+public class ContactHttpServerTest {
+
+    private ContactStore testStore;
+    private ContactService testContactService;
+    private ContactHttpServer testServer;
+    private HttpClient client;
+    private String baseUrl;
+
+
+    /**
+     * starts a server over an empty service for each test
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(16));
+        testServer = new ContactHttpServer(testContactService,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        testServer.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + testServer.getAddress().getPort() + ContactHttpServer.CONTACTS_PATH;
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        testServer.stop(0);
+    }
+
+
+    /*
+     * sends a request with an optional JSON body and If-Match header
+     */
+    private HttpResponse<String> send(String method, String path, String body, String ifMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+
+    /*
+     * creates a contact over HTTP and returns its new ID
+     */
+    private String create(String firstName) throws Exception {
+        HttpResponse<String> response = send("POST", "", "{\"firstName\":\"" + firstName + "\",\"lastName\":\"Doe\","
+                + "\"phoneNumber\":\"0123456789\",\"address\":\"1 Main St\"}", null);
+        assertEquals(201, response.statusCode());
+        String location = response.headers().firstValue("Location").orElseThrow();
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+
+    /**
+     * Asserts that a contact can be created, read, patched and deleted
+     */
+    @Test
+    void contactIsCreatedReadPatchedAndDeleted() throws Exception {
+        String contactID = create("Ren\\u00e9e");
+        assertEquals("Ren\u00e9e", testContactService.findContactObject(contactID).getFirstName());
+
+        HttpResponse<String> read = send("GET", "/" + contactID, null, null);
+        assertEquals(200, read.statusCode());
+        assertEquals("{\"contactID\":\"" + contactID + "\",\"firstName\":\"Ren\u00e9e\",\"lastName\":\"Doe\","
+                + "\"phoneNumber\":\"0123456789\",\"address\":\"1 Main St\",\"version\":0}\n", read.body());
+        assertEquals("\"0\"", read.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<String> patched = send("PATCH", "/" + contactID,
+                "{\"lastName\":\"Smith\",\"address\":\"2 Side St\"}", null);
+        assertEquals(200, patched.statusCode());
+        assertTrue(patched.body().contains("\"lastName\":\"Smith\",\"phoneNumber\":\"0123456789\","
+                + "\"address\":\"2 Side St\",\"version\":1"));
+
+        assertEquals(204, send("DELETE", "/" + contactID, null, null).statusCode());
+        assertEquals(404, send("GET", "/" + contactID, null, null).statusCode());
+        assertEquals(404, send("DELETE", "/" + contactID, null, null).statusCode());
+        assertEquals(404, send("PATCH", "/" + contactID, "{\"lastName\":\"Smith\"}", null).statusCode());
+    }
+
+
+    /**
+     * Asserts that If-Match turns a patch into a compare and set on the contact's version
+     */
+    @Test
+    void ifMatchMakesPatchConditional() throws Exception {
+        String contactID = create("John");
+
+        assertEquals(200, send("PATCH", "/" + contactID, "{\"firstName\":\"Jack\"}", "\"0\"").statusCode());
+        HttpResponse<String> stale = send("PATCH", "/" + contactID, "{\"firstName\":\"Jim\"}", "\"0\"");
+        assertEquals(412, stale.statusCode());
+        assertEquals("Jack", testContactService.findContactObject(contactID).getFirstName());
+        assertEquals(400, send("PATCH", "/" + contactID, "{\"firstName\":\"Jim\"}", "latest").statusCode());
+    }
+
+
+    /**
+     * Asserts that a POST repeated with the same Idempotency-Key answers with the first contact instead of a new one
+     */
+    @Test
+    void repeatedIdempotencyKeyReturnsFirstContact() throws Exception {
+        String body = "{\"firstName\":\"John\",\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\","
+                + "\"address\":\"1 Main St\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Idempotency-Key", "order-42").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+
+        HttpResponse<String> first = client.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(201, first.statusCode());
+        assertEquals(201, retry.statusCode());
+        assertEquals(first.body(), retry.body());
+        assertEquals(1, testStore.size());
+
+        HttpResponse<String> reused = client.send(HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Idempotency-Key", "order-42")
+                .POST(HttpRequest.BodyPublishers.ofString(body.replace("John", "Jane"))).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, reused.statusCode());
+        assertEquals(1, testStore.size());
+    }
+
+
+    /**
+     * Asserts that bad input gets a 4xx status with an error message and changes nothing
+     */
+    @Test
+    void badRequestGetsClientErrorAndChangesNothing() throws Exception {
+        String contactID = create("John");
+
+        HttpResponse<String> badPhone = send("POST", "", "{\"firstName\":\"John\",\"lastName\":\"Doe\","
+                + "\"phoneNumber\":\"123\",\"address\":\"1 Main St\"}", null);
+        assertEquals(400, badPhone.statusCode());
+        assertEquals("{\"error\":\"" + ContactValidationResult.INVALID_PHONE_NUMBER.getMessage() + "\"}\n",
+                badPhone.body());
+
+        assertEquals(400, send("POST", "", "{\"firstName\":", null).statusCode());
+        assertEquals(400, send("POST", "", "{\"firstName\":\"John\"}", null).statusCode());
+        assertEquals(400, send("PATCH", "/" + contactID, "{\"firstName\":null}", null).statusCode());
+        assertEquals(400, send("PATCH", "/" + contactID, "{\"address\":\"" + "x".repeat(31) + "\"}", null)
+                .statusCode());
+        assertEquals(413, send("POST", "", "x".repeat(ContactHttpServer.MAX_BODY_BYTES + 1), null).statusCode());
+        assertEquals(405, send("GET", "", null, null).statusCode());
+        assertEquals(405, send("POST", "/" + contactID, "{}", null).statusCode());
+        assertEquals(404, send("GET", "/" + contactID + "/extra", null, null).statusCode());
+        assertEquals(0, testContactService.findContactObject(contactID).getVersion());
+    }
+
+
+    /**
+     * Asserts that many clients in flight at once are all served, on virtual threads where the runtime has them
+     */
+    @Test
+    void concurrentClientsAreAllServed() throws Exception {
+        assertEquals(Runtime.version().feature() >= 21, testServer.usesVirtualThreads());
+        String contactID = create("John");
+
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<CompletableFuture<HttpResponse<Void>>>();
+        for (int i = 0; i < 200; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + contactID))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"address\":\"" + i + " Main St\"}"))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+        assertEquals(200, testContactService.findContactObject(contactID).getVersion());
+    }
+}
@@ -0,0 +1,36 @@
+package contactService;
+
+/**
+ * strategy used by ContactService to create new contact identifiers
+ */
+public interface ContactIdGenerator {
+
+    /**
+     * creates a new contact identifier that has not been handed out before
+     * @return String identifier, at most 10 characters long
+     */
+    String nextContactID();
+
+
+    /**
+     * creates a block of new contact identifiers at once. Generators that can reserve IDs in bulk should override this.
+     * @param count number of identifiers wanted
+     * @return String array of count identifiers, each at most 10 characters long
+     */
+    default String[] nextContactIDs(int count) {
+        String[] contactIDs = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            contactIDs[i] = nextContactID();
+        }
+        return contactIDs;
+    }
+
+
+    /**
+     * @return long number of times the generator had to retry to hand out an ID, 0 for generators that never do
+     */
+    default long getRetryCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,158 @@
+package contactService;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * expiring table of client idempotency keys for ContactService.addNewContact, so a retried add returns the contact
+ * the first attempt created instead of adding a duplicate.
+ *
+ * Every key maps to a future of the contact created for it. The first request with a key installs the future and
+ * runs the add; requests with the same key that arrive while it runs wait for that same result, and later ones get
+ * it straight away until the key expires. A failed add removes its key so the client can retry it.
+ *
+ * Keys all live for the same time, so they expire in the order they were added. Each new key drops the expired keys
+ * at the head of an insertion ordered queue, which keeps expiry amortized O(1) without a cleanup thread.
+ */
+final class ContactIdempotencyTable {
+
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final Queue<Entry> expiryOrder = new ConcurrentLinkedQueue<Entry>();
+
+
+    /**
+     * @param ttlNanos how long a key is remembered after its first use
+     * @param nanoClock time source, System::nanoTime outside tests
+     */
+    ContactIdempotencyTable(long ttlNanos, LongSupplier nanoClock) {
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("Invalid idempotency key time to live. Expected more than 0");
+        }
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+    }
+
+
+    /**
+     * runs the add once per key
+     * @param idempotencyKey client chosen key
+     * @param record fields of the contact to add, a reused key must come with the same fields
+     * @param add adds the contact, only called by the first request with the key
+     * @return Contact created by the first request with this key
+     * @throws IllegalArgumentException if the key was used for different fields, or whatever the add threw
+     */
+    Contact addOnce(String idempotencyKey, ContactRecord record, Supplier<Contact> add) {
+        long now = nanoClock.getAsLong();
+
+        while (true) {
+            Entry existing = entries.get(idempotencyKey);
+            if (existing != null && now - existing.expiresAtNanos >= 0) {
+                entries.remove(idempotencyKey, existing); // expired, sweeping just has not reached it yet
+                continue;
+            }
+
+            if (existing != null) {
+                if (!sameFields(existing.record, record)) {
+                    throw new IllegalArgumentException("Invalid idempotency key. Expected the same contact fields "
+                            + "as the first request with this key");
+                }
+                return awaitContact(existing);
+            }
+
+            Entry entry = new Entry(idempotencyKey, record, now + ttlNanos);
+            if (entries.putIfAbsent(idempotencyKey, entry) != null) {
+                continue; // another request claimed the key first
+            }
+            expiryOrder.add(entry);
+            removeExpired(now);
+
+            try {
+                Contact contact = add.get();
+                entry.contact.complete(contact);
+                return contact;
+            } catch (RuntimeException | Error e) {
+                entries.remove(idempotencyKey, entry); // nothing was added, a retry should try again
+                entry.contact.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * @return int number of keys held, expired keys included until they are swept
+     */
+    int size() {
+        return entries.size();
+    }
+
+
+    /*
+     * drops keys from the head of the queue while they have expired
+     */
+    private void removeExpired(long now) {
+        Entry head;
+        while ((head = expiryOrder.peek()) != null && now - head.expiresAtNanos >= 0) {
+            if (expiryOrder.remove(head)) {
+                entries.remove(head.idempotencyKey, head);
+            }
+        }
+    }
+
+
+    private static boolean sameFields(ContactRecord first, ContactRecord retry) {
+        return Objects.equals(first.getFirstName(), retry.getFirstName())
+                && Objects.equals(first.getLastName(), retry.getLastName())
+                && Objects.equals(first.getPhoneNumber(), retry.getPhoneNumber())
+                && Objects.equals(first.getAddress(), retry.getAddress());
+    }
+
+
+    /*
+     * waits for the first request's add and passes on its exception if it failed
+     */
+    private static Contact awaitContact(Entry entry) {
+        try {
+            return entry.contact.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+
+    /*
+     * one key with the fields it was first used for and the contact it created
+     */
+    private static final class Entry {
+
+        final String idempotencyKey;
+        final ContactRecord record;
+        final long expiresAtNanos;
+        final CompletableFuture<Contact> contact = new CompletableFuture<Contact>();
+
+
+        Entry(String idempotencyKey, ContactRecord record, long expiresAtNanos) {
+            this.idempotencyKey = idempotencyKey;
+            this.record = record;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
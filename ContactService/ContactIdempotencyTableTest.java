@@ -0,0 +1,156 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for contact creation that returns the new contact and honors client idempotency keys
+ */
+public class ContactIdempotencyTableTest {
+
+    private ContactStore testStore;
+    private ContactService testContactService;
+
+
+    /**
+     * creates an empty service for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(17));
+    }
+
+
+    /**
+     * Asserts that addNewContact returns the contact it stored
+     */
+    @Test
+    void addNewContactReturnsStoredContact() {
+        Contact contact = testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St");
+
+        assertEquals("John", contact.getFirstName());
+        assertEquals(0, contact.getVersion());
+        assertSame(contact, testContactService.findContactObject(contact.getContactID()));
+    }
+
+
+    /**
+     * Asserts that a repeated key returns the first contact without adding another, while new or no keys add
+     */
+    @Test
+    void repeatedKeyReturnsFirstContactWithoutAdding() {
+        Contact first = testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "key-1");
+        Contact retry = testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "key-1");
+
+        assertSame(first, retry);
+        assertEquals(1, testStore.size());
+
+        Contact other = testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "key-2");
+        testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", null);
+        testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", null);
+
+        assertNotEquals(first.getContactID(), other.getContactID());
+        assertEquals(4, testStore.size());
+    }
+
+
+    /**
+     * Asserts that keys are checked, that a key cannot be reused for other fields and that a rejected add does not
+     * use its key up
+     */
+    @Test
+    void invalidKeyThrowsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", ""));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "k".repeat(256)));
+
+        testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "key-1");
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("Jane", "Doe", "0123456789", "1 Main St", "key-1"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("Jane", "Doe", "012345678", "1 Main St", "key-2"));
+        Contact corrected = testContactService.addNewContact("Jane", "Doe", "0123456789", "1 Main St", "key-2");
+
+        assertEquals("Jane", corrected.getFirstName());
+        assertEquals(2, testStore.size());
+    }
+
+
+    /**
+     * Asserts that a key is forgotten once its time to live has passed and that expired keys are swept
+     */
+    @Test
+    void expiredKeyIsForgottenAndSwept() {
+        AtomicLong clock = new AtomicLong();
+        ContactIdempotencyTable table = new ContactIdempotencyTable(100, clock::get);
+        ContactRecord record = new ContactRecord("John", "Doe", "0123456789", "1 Main St");
+        AtomicInteger adds = new AtomicInteger();
+
+        Contact first = table.addOnce("key-1", record,
+                () -> testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St"));
+        clock.set(99);
+        assertSame(first, table.addOnce("key-1", record, () -> {
+            adds.incrementAndGet();
+            return null;
+        }));
+        assertEquals(0, adds.get());
+
+        clock.set(100);
+        Contact second = table.addOnce("key-1", record,
+                () -> testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St"));
+        assertNotSame(first, second);
+
+        clock.set(150);
+        table.addOnce("key-2", record, () -> second);
+        clock.set(250);
+        table.addOnce("key-3", record, () -> second);
+        assertEquals(1, table.size());
+
+        assertThrows(IllegalArgumentException.class, () -> new ContactIdempotencyTable(0, clock::get));
+    }
+
+
+    /**
+     * Asserts that concurrent calls with one key create a single contact and all return it
+     */
+    @Test
+    void concurrentRepeatsCreateOneContact() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Contact>> results = new ArrayList<Future<Contact>>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St", "key-1");
+                }));
+            }
+            start.countDown();
+
+            Contact first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Contact> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, testStore.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
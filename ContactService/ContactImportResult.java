@@ -0,0 +1,71 @@
+package contactService;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * outcome of a ContactService file import: how many rows were read and added, which were rejected, and how fast
+ */
+public final class ContactImportResult {
+
+    private final long rowCount;
+    private final long importedCount;
+    private final List<ContactBatchResult.RowFailure> failures;
+    private final long elapsedNanos;
+
+
+    /**
+     * @param rowCount data rows read, header excluded
+     * @param importedCount contacts added
+     * @param failures rejected rows, in file order
+     * @param elapsedNanos time from opening the file to the last insert
+     */
+    ContactImportResult(long rowCount, long importedCount, List<ContactBatchResult.RowFailure> failures,
+                        long elapsedNanos) {
+        this.rowCount = rowCount;
+        this.importedCount = importedCount;
+        this.failures = Collections.unmodifiableList(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    /**
+     * @return long number of data rows read, not counting a CSV header or blank lines
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+
+    /**
+     * @return long number of contacts added to the service
+     */
+    public long getImportedCount() {
+        return importedCount;
+    }
+
+
+    /**
+     * @return List of rows that could not be parsed or failed validation, in file order. The row index counts data
+     *         rows from 0 the same way getRowCount() does.
+     */
+    public List<ContactBatchResult.RowFailure> getFailures() {
+        return failures;
+    }
+
+
+    /**
+     * @return long nanoseconds the import took
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+
+    /**
+     * @return double rows read per second over the whole import
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowCount * 1e9 / elapsedNanos;
+    }
+}
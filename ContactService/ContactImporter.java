@@ -0,0 +1,642 @@
+package contactService;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * streaming CSV and JSON Lines reader behind ContactService.importContacts, run as a three stage pipeline.
+ *
+ * A reader thread copies the file out of memory mapped windows into pooled chunk buffers, cutting each chunk at its
+ * last complete row. Parser threads split the rows of a chunk into fields that stay byte ranges of the chunk buffer,
+ * unescaping quoted or escaped fields in place, and check the ranges with ContactValidator's UTF-8 checks. Only rows
+ * that pass become Strings and ContactRecords. The calling thread takes the parsed chunks in file order and adds
+ * them with ContactService.addContacts, one batch per chunk. Bounded queues between the stages keep a fast reader
+ * from running ahead of the inserts, so memory use does not grow with the file.
+ *
+ * Rows are counted from 0 without the CSV header and without blank lines. A CSV file needs a header naming the
+ * firstName, lastName, phoneNumber and address columns, in any order. A JSON Lines row is an object with those keys.
+ * Other columns and keys, such as the contactID and version an export writes, are ignored because imported contacts
+ * get new IDs.
+ */
+final class ContactImporter {
+
+    // bytes per chunk, each chunk is parsed as one task and inserted as one batch
+    static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+
+    // bytes of the file mapped at a time, chunks are copied out of the current window
+    private static final long MAP_WINDOW_BYTES = 256L << 20;
+
+    // parsed chunks waiting for the inserter, per parser thread
+    private static final int CHUNKS_PER_PARSER = 2;
+
+    // placeholder for a rejected row in a parsed chunk's record list
+    private static final ContactRecord REJECTED = new ContactRecord(null, null, null, null);
+
+    private final ContactService service;
+    private final ContactExportFormat format;
+    private final int parserThreads;
+    private final int chunkBytes;
+
+
+    /**
+     * @param service service the rows are added to
+     * @param format CSV or JSON_LINES
+     * @param parserThreads number of threads parsing and validating chunks
+     * @param chunkBytes bytes per chunk, also the longest row that can be read
+     */
+    ContactImporter(ContactService service, ContactExportFormat format, int parserThreads, int chunkBytes) {
+        if (format != ContactExportFormat.CSV && format != ContactExportFormat.JSON_LINES) {
+            throw new IllegalArgumentException("Unsupported import format. Expected CSV or JSON_LINES");
+        }
+        if (parserThreads < 1) {
+            throw new IllegalArgumentException("Invalid parser thread count. Expected at least 1");
+        }
+        this.service = service;
+        this.format = format;
+        this.parserThreads = parserThreads;
+        this.chunkBytes = chunkBytes;
+    }
+
+
+    /**
+     * reads the whole file and adds its valid rows
+     * @param file file to read
+     * @return ContactImportResult row counts, rejected rows and timing
+     * @throws IOException if the file cannot be read
+     */
+    ContactImportResult importFile(Path file) throws IOException {
+        long startNanos = System.nanoTime();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, task -> {
+            Thread thread = new Thread(task, "contact-import-parser-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BlockingQueue<Future<ParsedChunk>> parsedChunks =
+                    new ArrayBlockingQueue<Future<ParsedChunk>>(parserThreads * CHUNKS_PER_PARSER);
+            ChunkReader chunkReader = new ChunkReader(channel, parsers, parsedChunks);
+            Thread readerThread = new Thread(chunkReader, "contact-import-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+
+            try {
+                return insertChunks(parsedChunks, startNanos);
+            } finally {
+                readerThread.interrupt(); // only matters if inserting failed part way
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+    }
+
+
+    /*
+     * takes parsed chunks in file order and adds their records, numbering rows across chunks
+     */
+    private ContactImportResult insertChunks(BlockingQueue<Future<ParsedChunk>> parsedChunks, long startNanos)
+            throws IOException {
+        long rowCount = 0;
+        long importedCount = 0;
+        List<ContactBatchResult.RowFailure> failures = new ArrayList<ContactBatchResult.RowFailure>();
+
+        while (true) {
+            ParsedChunk chunk = takeChunk(parsedChunks);
+            if (chunk == null) {
+                break; // end of file
+            }
+
+            List<ContactBatchResult.RowFailure> chunkFailures = new ArrayList<ContactBatchResult.RowFailure>();
+            List<ContactRecord> validRecords = new ArrayList<ContactRecord>(chunk.records.size());
+            long[] validRows = new long[chunk.records.size()];
+
+            for (int row = 0; row < chunk.records.size(); row++) {
+                ContactRecord record = chunk.records.get(row);
+                if (record == REJECTED) {
+                    chunkFailures.add(new ContactBatchResult.RowFailure(rowCount + row, chunk.errors[row]));
+                } else {
+                    validRows[validRecords.size()] = rowCount + row;
+                    validRecords.add(record);
+                }
+            }
+
+            if (!validRecords.isEmpty()) {
+                ContactBatchResult batchResult = service.addContacts(validRecords);
+                importedCount += batchResult.getAddedContactIDs().size();
+                for (ContactBatchResult.RowFailure failure : batchResult.getFailures()) { // back to file rows
+                    chunkFailures.add(new ContactBatchResult.RowFailure(validRows[(int) failure.getRowIndex()],
+                            failure.getError()));
+                }
+                chunkFailures.sort(Comparator.comparingLong(ContactBatchResult.RowFailure::getRowIndex));
+            }
+
+            failures.addAll(chunkFailures);
+            rowCount += chunk.records.size();
+        }
+
+        return new ContactImportResult(rowCount, importedCount, failures, System.nanoTime() - startNanos);
+    }
+
+
+    /*
+     * waits for the next chunk, passing on whatever stopped the reader or a parser
+     * @return ParsedChunk next chunk, or null at the end of the file
+     */
+    private static ParsedChunk takeChunk(BlockingQueue<Future<ParsedChunk>> parsedChunks) throws IOException {
+        try {
+            return parsedChunks.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing contacts", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Contact import failed", cause);
+        }
+    }
+
+
+    /*
+     * reader stage: fills chunk buffers from the file and hands each chunk to the parsers. Runs on its own thread.
+     */
+    private final class ChunkReader implements Runnable {
+
+        private final FileChannel channel;
+        private final ExecutorService parsers;
+        private final BlockingQueue<Future<ParsedChunk>> parsedChunks;
+
+        // buffers parsers have finished with, taken again before a new one is allocated
+        private final BlockingQueue<byte[]> freeBuffers;
+        private final int bufferLimit;
+        private int buffersAllocated;
+        private int bufferBytes;
+
+        private long position;
+        private long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+
+        ChunkReader(FileChannel channel, ExecutorService parsers, BlockingQueue<Future<ParsedChunk>> parsedChunks) {
+            this.channel = channel;
+            this.parsers = parsers;
+            this.parsedChunks = parsedChunks;
+            this.bufferLimit = parserThreads * CHUNKS_PER_PARSER + 2; // queued chunks plus the two being filled
+            this.freeBuffers = new ArrayBlockingQueue<byte[]>(bufferLimit);
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                readChunks();
+                parsedChunks.put(CompletableFuture.completedFuture(null)); // end of file
+            } catch (InterruptedException e) {
+                // the inserter gave up, nobody is waiting for more chunks
+            } catch (Exception | Error e) {
+                try {
+                    parsedChunks.put(CompletableFuture.failedFuture(e));
+                } catch (InterruptedException interrupted) {
+                    // the inserter gave up
+                }
+            }
+        }
+
+
+        private void readChunks() throws IOException, InterruptedException {
+            fileSize = channel.size();
+            bufferBytes = (int) Math.max(1, Math.min(chunkBytes, fileSize));
+            boolean csv = format == ContactExportFormat.CSV;
+            int[] columnFields = null;
+            boolean firstRead = true;
+            boolean skippingRow = false;
+
+            byte[] buffer = takeBuffer();
+            int filled = 0;
+
+            while (true) {
+                filled += read(buffer, filled);
+                boolean endOfFile = position == fileSize;
+                int start = 0;
+
+                if (firstRead) {
+                    firstRead = false;
+                    if (filled >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB
+                            && buffer[2] == (byte) 0xBF) {
+                        start = 3; // UTF-8 byte order mark
+                    }
+                    if (csv) {
+                        int headerEnd = findCsvRowEnd(buffer, start, filled);
+                        if (headerEnd == filled && !endOfFile) {
+                            throw new IllegalArgumentException("Invalid import file. Expected a CSV header line");
+                        }
+                        columnFields = parseCsvHeader(buffer, start, trimRowEnd(buffer, start, headerEnd));
+                        start = Math.min(headerEnd + 1, filled);
+                    }
+                }
+
+                if (skippingRow) { // drops the rest of a row too long for a chunk
+                    int rowEnd = indexOf(buffer, (byte) '\n', start, filled);
+                    skippingRow = rowEnd == filled && !endOfFile;
+                    if (skippingRow) {
+                        filled = 0;
+                        continue;
+                    }
+                    start = Math.min(rowEnd + 1, filled);
+                }
+
+                int end = endOfFile ? filled : lastRowEnd(buffer, start, filled, csv);
+                if (end == 0 && filled == buffer.length && !endOfFile) { // one row fills the whole chunk
+                    ParsedChunk oversized = new ParsedChunk(1);
+                    oversized.reject(ContactValidationResult.MALFORMED_RECORD);
+                    service.recordValidationFailure(ContactValidationResult.MALFORMED_RECORD);
+                    parsedChunks.put(CompletableFuture.completedFuture(oversized));
+                    skippingRow = true;
+                    filled = 0;
+                    continue;
+                }
+
+                byte[] next = endOfFile ? null : takeBuffer();
+                int carried = filled - end;
+                if (next != null) { // the partial last row starts the next chunk
+                    System.arraycopy(buffer, end, next, 0, carried);
+                }
+
+                if (end > start) {
+                    byte[] chunk = buffer;
+                    int chunkStart = start;
+                    int[] chunkColumns = columnFields;
+                    parsedChunks.put(parsers.submit(() -> {
+                        try {
+                            return new ChunkParser(chunk, chunkColumns).parse(chunkStart, end);
+                        } finally {
+                            freeBuffers.put(chunk);
+                        }
+                    }));
+                } else {
+                    freeBuffers.put(buffer);
+                }
+
+                if (endOfFile) {
+                    return;
+                }
+                buffer = next;
+                filled = carried;
+            }
+        }
+
+
+        /*
+         * reuses a buffer a parser is done with, or allocates one while under the limit
+         */
+        private byte[] takeBuffer() throws InterruptedException {
+            byte[] buffer = freeBuffers.poll();
+            if (buffer == null) {
+                if (buffersAllocated < bufferLimit) {
+                    buffersAllocated++;
+                    return new byte[bufferBytes];
+                }
+                buffer = freeBuffers.take();
+            }
+            return buffer;
+        }
+
+
+        /*
+         * copies file bytes from the current position into the buffer, mapping the next window as needed
+         * @return int number of bytes copied, 0 at the end of the file
+         */
+        private int read(byte[] buffer, int offset) throws IOException {
+            int wanted = (int) Math.min(buffer.length - offset, fileSize - position);
+            int copied = 0;
+
+            while (copied < wanted) {
+                if (window == null || position >= windowStart + window.capacity()) {
+                    windowStart = position;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAP_WINDOW_BYTES, fileSize - position));
+                }
+                int count = (int) Math.min(wanted - copied, windowStart + window.capacity() - position);
+                window.get((int) (position - windowStart), buffer, offset + copied, count);
+                copied += count;
+                position += count;
+            }
+            return copied;
+        }
+    }
+
+
+    /*
+     * finds where the last complete row in a range ends
+     * @return int index just past the last row's line break, or start if the range holds no complete row
+     */
+    private static int lastRowEnd(byte[] bytes, int start, int end, boolean csv) {
+        if (!csv) { // JSON strings cannot hold a raw line break, the last one ends a row
+            for (int i = end - 1; i >= start; i--) {
+                if (bytes[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return start;
+        }
+
+        int rowEnd = start;
+        boolean quoted = false;
+        for (int i = start; i < end; i++) { // a line break inside quotes belongs to the field
+            byte b = bytes[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                rowEnd = i + 1;
+            }
+        }
+        return rowEnd;
+    }
+
+
+    /*
+     * @return int index of the line break ending the CSV row that starts at start, or end if there is none
+     */
+    private static int findCsvRowEnd(byte[] bytes, int start, int end) {
+        boolean quoted = false;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+
+    /*
+     * @return int index of the first matching byte, or end if there is none
+     */
+    private static int indexOf(byte[] bytes, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+
+    /*
+     * @return int end of the row without a trailing carriage return
+     */
+    private static int trimRowEnd(byte[] bytes, int start, int end) {
+        return end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+    }
+
+
+    /*
+     * maps each CSV column to the contact field it holds
+     * @return int array with the field index of every column, -1 for columns that are ignored
+     */
+    private static int[] parseCsvHeader(byte[] bytes, int start, int end) {
+        List<Integer> columnFields = new ArrayList<Integer>();
+        boolean[] seen = new boolean[ContactJsonParser.FIELD_COUNT];
+        int columnStart = start;
+
+        while (columnStart <= end) {
+            int columnEnd = indexOf(bytes, (byte) ',', columnStart, end);
+            int nameStart = columnStart;
+            int nameEnd = columnEnd;
+            if (nameEnd - nameStart >= 2 && bytes[nameStart] == '"' && bytes[nameEnd - 1] == '"') {
+                nameStart++;
+                nameEnd--;
+            }
+
+            int field = ContactJsonParser.matchFieldName(bytes, nameStart, nameEnd);
+            if (field >= 0 && seen[field]) {
+                field = -1; // a repeated column is ignored, the first one counts
+            }
+            if (field >= 0) {
+                seen[field] = true;
+            }
+            columnFields.add(field);
+            columnStart = columnEnd + 1;
+        }
+
+        for (boolean found : seen) {
+            if (!found) {
+                throw new IllegalArgumentException("Invalid import file. Expected a CSV header with firstName, "
+                        + "lastName, phoneNumber and address columns");
+            }
+        }
+        return columnFields.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+    /*
+     * rows of one chunk in row order, rejected rows held as REJECTED with their error alongside
+     */
+    private static final class ParsedChunk {
+
+        final List<ContactRecord> records;
+        ContactValidationResult[] errors;
+
+
+        ParsedChunk(int expectedRows) {
+            records = new ArrayList<ContactRecord>(expectedRows);
+        }
+
+
+        void accept(ContactRecord record) {
+            records.add(record);
+        }
+
+
+        void reject(ContactValidationResult error) {
+            if (errors == null) {
+                errors = new ContactValidationResult[Math.max(16, records.size() + 1)];
+            } else if (errors.length <= records.size()) {
+                errors = Arrays.copyOf(errors, Math.max(errors.length * 2, records.size() + 1));
+            }
+            errors[records.size()] = error;
+            records.add(REJECTED);
+        }
+    }
+
+
+    /*
+     * parser stage for one chunk. Field positions point into the chunk buffer, which the parser may rewrite in place
+     * where a field is unescaped.
+     */
+    private final class ChunkParser {
+
+        private final byte[] bytes;
+        private final int[] columnFields;
+
+        // where each contact field of the current row is, -1 if the row does not have it
+        private final int[] fieldStarts = new int[ContactJsonParser.FIELD_COUNT];
+        private final int[] fieldLengths = new int[ContactJsonParser.FIELD_COUNT];
+
+        private final ContactJsonParser json;
+
+
+        ChunkParser(byte[] bytes, int[] columnFields) {
+            this.bytes = bytes;
+            this.columnFields = columnFields;
+            this.json = new ContactJsonParser(bytes);
+        }
+
+
+        ParsedChunk parse(int start, int end) {
+            ParsedChunk chunk = new ParsedChunk((end - start) / 64);
+            boolean csv = format == ContactExportFormat.CSV;
+            int rowStart = start;
+
+            while (rowStart < end) {
+                int rowEnd = csv ? findCsvRowEnd(bytes, rowStart, end) : indexOf(bytes, (byte) '\n', rowStart, end);
+                int contentEnd = trimRowEnd(bytes, rowStart, rowEnd);
+
+                if (contentEnd > rowStart) { // blank lines are not rows
+                    Arrays.fill(fieldStarts, ContactJsonParser.MISSING);
+                    boolean wellFormed = csv ? parseCsvRow(rowStart, contentEnd) : parseJsonRow(rowStart, contentEnd);
+                    ContactValidationResult result = wellFormed ? validateRow()
+                            : ContactValidationResult.MALFORMED_RECORD;
+
+                    if (result.isValid()) {
+                        chunk.accept(new ContactRecord(field(ContactJsonParser.FIRST_NAME),
+                                field(ContactJsonParser.LAST_NAME), field(ContactJsonParser.PHONE_NUMBER),
+                                field(ContactJsonParser.ADDRESS)));
+                    } else {
+                        chunk.reject(result);
+                        service.recordValidationFailure(result);
+                    }
+                }
+                rowStart = rowEnd + 1;
+            }
+            return chunk;
+        }
+
+
+        /*
+         * checks the field byte ranges without decoding them, a missing field fails like a null one
+         */
+        private ContactValidationResult validateRow() {
+            ContactValidationResult result = ContactValidationResult.VALID;
+            for (int field = 0; field < ContactJsonParser.FIELD_COUNT && result.isValid(); field++) {
+                result = ContactJsonParser.checkField(field, fieldStarts[field] < 0 ? null : bytes, fieldStarts[field],
+                        fieldLengths[field]);
+            }
+            return result;
+        }
+
+
+        /*
+         * decodes a field of a row that passed validation, the only place a String is made
+         */
+        private String field(int field) {
+            return new String(bytes, fieldStarts[field], fieldLengths[field], StandardCharsets.UTF_8);
+        }
+
+
+        /*
+         * reads a JSON Lines row, keeping the string values of the contact field keys
+         * @return boolean false if the row is not a single JSON object of plain values
+         */
+        private boolean parseJsonRow(int start, int end) {
+            if (!json.parseObject(start, end)) {
+                return false;
+            }
+            for (int field = 0; field < ContactJsonParser.FIELD_COUNT; field++) {
+                fieldStarts[field] = json.fieldStart(field);
+                fieldLengths[field] = json.fieldLength(field);
+            }
+            return true;
+        }
+
+
+        /*
+         * splits an RFC 4180 row into fields, unescaping doubled quotes in place
+         * @return boolean false if the row is malformed or does not have one field per header column
+         */
+        private boolean parseCsvRow(int start, int end) {
+            int column = 0;
+            int position = start;
+
+            while (true) {
+                int valueStart;
+                int valueLength;
+
+                if (position < end && bytes[position] == '"') {
+                    valueStart = position + 1;
+                    int write = valueStart;
+                    int read = valueStart;
+                    boolean closed = false;
+
+                    while (read < end) {
+                        byte b = bytes[read++];
+                        if (b != '"') {
+                            bytes[write++] = b;
+                        } else if (read < end && bytes[read] == '"') { // doubled quote
+                            bytes[write++] = '"';
+                            read++;
+                        } else {
+                            closed = true;
+                            break;
+                        }
+                    }
+                    if (!closed || (read < end && bytes[read] != ',')) {
+                        return false;
+                    }
+                    valueLength = write - valueStart;
+                    position = read;
+                } else {
+                    valueStart = position;
+                    while (position < end && bytes[position] != ',') {
+                        if (bytes[position] == '"') {
+                            return false; // quotes only belong around a whole field
+                        }
+                        position++;
+                    }
+                    valueLength = position - valueStart;
+                }
+
+                if (column >= columnFields.length) {
+                    return false;
+                }
+                int field = columnFields[column++];
+                if (field >= 0) {
+                    fieldStarts[field] = valueStart;
+                    fieldLengths[field] = valueLength;
+                }
+
+                if (position >= end) {
+                    return column == columnFields.length;
+                }
+                position++; // past the comma
+            }
+        }
+    }
+}
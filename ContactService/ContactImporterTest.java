@@ -0,0 +1,207 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the pipelined CSV and JSON Lines importer
+ */
+public class ContactImporterTest {
+
+    private ContactStore testStore;
+    private ContactService testContactService;
+
+    @TempDir
+    Path directory;
+
+
+    /**
+     * creates an empty service for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(14));
+    }
+
+
+    /*
+     * writes text to a file in the test folder
+     */
+    private Path writeFile(String name, String text) throws IOException {
+        return Files.write(directory.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /*
+     * @return Set of every contact's fields joined with a bar, ignoring IDs
+     */
+    private static Set<String> fieldsOf(ContactStore store) {
+        return store.asList().stream()
+                .map(c -> c.getFirstName() + "|" + c.getLastName() + "|" + c.getPhoneNumber() + "|" + c.getAddress())
+                .collect(Collectors.toSet());
+    }
+
+
+    /*
+     * @return List of the failed rows as index:error
+     */
+    private static List<String> failuresOf(ContactImportResult result) {
+        return result.getFailures().stream().map(f -> f.getRowIndex() + ":" + f.getError())
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Asserts that CSV columns are found by header name and quoted fields keep commas, quotes and line breaks
+     */
+    @Test
+    void csvImportFindsColumnsByHeaderAndKeepsQuotedFields() throws IOException {
+        Path file = writeFile("contacts.csv", "\ufeffaddress,ignored,phoneNumber,lastName,firstName\r\n"
+                + "1 Main St,x,0123456789,Doe,John\r\n"
+                + "\r\n"
+                + "\"Flat 2, \"\"The\"\" Mews\",,0123456789,Doe,Ren\u00e9e\n"
+                + "\"Line one\nLine two\",,0123456789,\"Doe\",Jane\n"
+                + "1 Main St,,012345678,Doe,Short\n"
+                + "1 Main St,,0123456789,Doe\n"
+                + "1 Main St,,0123456789,Doe,Bad\"Quote\"\n"
+                + "1 Main St,,0123456789,Doe,Last");
+
+        ContactImportResult result = testContactService.importContacts(ContactExportFormat.CSV, file, 2);
+
+        assertEquals(7, result.getRowCount());
+        assertEquals(4, result.getImportedCount());
+        assertEquals(List.of("3:INVALID_PHONE_NUMBER", "4:MALFORMED_RECORD", "5:MALFORMED_RECORD"),
+                failuresOf(result));
+        assertEquals(Set.of("John|Doe|0123456789|1 Main St", "Ren\u00e9e|Doe|0123456789|Flat 2, \"The\" Mews",
+                "Jane|Doe|0123456789|Line one\nLine two", "Last|Doe|0123456789|1 Main St"),
+                fieldsOf(testStore));
+        assertTrue(result.getRowsPerSecond() > 0);
+    }
+
+
+    /**
+     * Asserts that JSON Lines strings are unescaped, unknown keys skipped and broken objects reported by row
+     */
+    @Test
+    void jsonLinesImportUnescapesAndReportsBrokenRows() throws IOException {
+        Path file = writeFile("contacts.jsonl",
+                "{\"firstName\":\"Ren\\u00e9e\",\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\","
+                        + "\"address\":\"\\ud83c\\udfe0 \\\"Home\\\"\\n\",\"version\":3,\"tags\":null}\n"
+                        + " { \"address\" : \"1 Main St\" , \"phoneNumber\":\"0123456789\", \"lastName\":\"Doe\","
+                        + "\"firstName\":\"J\\/D\" } \n"
+                        + "{\"firstName\":null,\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\",\"address\":\"x\"}\n"
+                        + "{\"firstName\":\"John\",\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\"}\n"
+                        + "{\"firstName\":\"John\",\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\",\"address\":\n"
+                        + "{\"firstName\":\"\\ud83c\",\"lastName\":\"Doe\",\"phoneNumber\":\"0123456789\","
+                        + "\"address\":\"x\"}\n"
+                        + "[1, 2]\n");
+
+        ContactImportResult result = testContactService.importContacts(ContactExportFormat.JSON_LINES, file, 1);
+
+        assertEquals(7, result.getRowCount());
+        assertEquals(2, result.getImportedCount());
+        assertEquals(List.of("2:INVALID_FIRST_NAME", "3:INVALID_ADDRESS", "4:MALFORMED_RECORD",
+                "5:MALFORMED_RECORD", "6:MALFORMED_RECORD"), failuresOf(result));
+        assertEquals(Set.of("Ren\u00e9e|Doe|0123456789|\ud83c\udfe0 \"Home\"\n", "J/D|Doe|0123456789|1 Main St"),
+                fieldsOf(testStore));
+    }
+
+
+    /**
+     * Asserts that an export imports back into another service with the same contact fields
+     */
+    @Test
+    void exportImportsBackWithSameFields() throws IOException {
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < 3000; i++) {
+            records.add(new ContactRecord("N\u00e4me" + i % 100, "Doe,\"" + i % 7, "0123456789",
+                    i + " \ud83c\udfe0 Way\n\tapt " + i % 13));
+        }
+        testContactService.addContacts(records);
+
+        for (ContactExportFormat format : List.of(ContactExportFormat.CSV, ContactExportFormat.JSON_LINES)) {
+            Path file = testContactService.exportContacts(format, directory, 1).get(0);
+            ContactStore importingStore = new ConcurrentContactStore();
+            ContactService importingService = new ContactService(importingStore, new TimestampContactIdGenerator(15));
+
+            ContactImportResult result = importingService.importContacts(format, file, 3);
+
+            assertEquals(3000, result.getImportedCount());
+            assertTrue(result.getFailures().isEmpty());
+            assertEquals(fieldsOf(testStore), fieldsOf(importingStore));
+        }
+    }
+
+
+    /**
+     * Asserts that rows split across small chunks are read once and numbered in file order, and that a row longer
+     * than a chunk is rejected without losing the rows after it
+     */
+    @Test
+    void rowsSplitAcrossChunksAreReadOnceInOrder() throws IOException {
+        StringBuilder csv = new StringBuilder("firstName,lastName,phoneNumber,address\n");
+        for (int i = 0; i < 500; i++) {
+            String phoneNumber = i % 50 == 0 ? "bad" : "0123456789";
+            csv.append("Name").append(i).append(",\"Doe\n").append(i % 3).append("\",").append(phoneNumber)
+                    .append(',').append(i).append(" Main St\n");
+            if (i == 250) {
+                csv.append("Long,Doe,0123456789,").append("x".repeat(300)).append('\n');
+            }
+        }
+        Path file = writeFile("contacts.csv", csv.toString());
+
+        ContactImportResult result = testContactService.importContacts(ContactExportFormat.CSV, file, 3, 96);
+
+        assertEquals(501, result.getRowCount());
+        assertEquals(490, result.getImportedCount());
+        List<String> expectedFailures = new ArrayList<String>();
+        for (int row = 0; row < 501; row++) {
+            if (row == 251) {
+                expectedFailures.add(row + ":MALFORMED_RECORD");
+            } else if ((row > 251 ? row - 1 : row) % 50 == 0) {
+                expectedFailures.add(row + ":INVALID_PHONE_NUMBER");
+            }
+        }
+        assertEquals(expectedFailures, failuresOf(result));
+        assertTrue(fieldsOf(testStore).contains("Name499|Doe\n1|0123456789|499 Main St"));
+    }
+
+
+    /**
+     * Asserts that unusable arguments and CSV files without the needed columns are refused
+     */
+    @Test
+    void invalidImportThrowsException() throws IOException {
+        Path noAddress = writeFile("partial.csv", "firstName,lastName,phoneNumber\nJohn,Doe,0123456789\n");
+        Path empty = writeFile("empty.jsonl", "");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.importContacts(ContactExportFormat.CSV, noAddress));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.importContacts(ContactExportFormat.BINARY, noAddress));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.importContacts(null, noAddress));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.importContacts(ContactExportFormat.CSV, directory.resolve("missing.csv")));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.importContacts(ContactExportFormat.CSV, noAddress, 0));
+
+        ContactImportResult result = testContactService.importContacts(ContactExportFormat.JSON_LINES, empty);
+        assertEquals(0, result.getRowCount());
+        assertEquals(0, testStore.size());
+    }
+}
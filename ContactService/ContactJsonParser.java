@@ -0,0 +1,331 @@
+package contactService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * reads a flat JSON object of contact fields straight from UTF-8 bytes, for the importer's JSON Lines rows and the
+ * HTTP API's request bodies. String values are unescaped in place and left as byte ranges of the caller's buffer,
+ * so they can be validated before any String is made. Keys other than the four contact fields are skipped, and
+ * nested objects or arrays make the object malformed.
+ */
+final class ContactJsonParser {
+
+    static final int FIRST_NAME = 0;
+    static final int LAST_NAME = 1;
+    static final int PHONE_NUMBER = 2;
+    static final int ADDRESS = 3;
+    static final int FIELD_COUNT = 4;
+
+    // field start of a key the object does not have
+    static final int MISSING = -1;
+
+    // field start of a key whose value is null, a number or a boolean instead of a string
+    static final int NOT_TEXT = -2;
+
+    // JSON keys and CSV column names, in field order
+    private static final byte[][] FIELD_NAMES = {
+            "firstName".getBytes(StandardCharsets.US_ASCII),
+            "lastName".getBytes(StandardCharsets.US_ASCII),
+            "phoneNumber".getBytes(StandardCharsets.US_ASCII),
+            "address".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final byte[] bytes;
+
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldLengths = new int[FIELD_COUNT];
+
+    // range of the last string read
+    private int stringStart;
+    private int stringLength;
+
+
+    /**
+     * @param bytes buffer holding the objects, rewritten in place where strings are unescaped
+     */
+    ContactJsonParser(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+
+    /**
+     * @param bytes buffer holding the name
+     * @param start index of the first byte
+     * @param end index past the last byte
+     * @return int index of the contact field the byte range names, or -1 if it names none
+     */
+    static int matchFieldName(byte[] bytes, int start, int end) {
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if (Arrays.equals(bytes, start, end, FIELD_NAMES[field], 0, FIELD_NAMES[field].length)) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * checks one field's UTF-8 bytes with the ContactValidator check for that field
+     * @param field field index
+     * @param utf8 buffer holding the field, null for a missing field
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return ContactValidationResult VALID or the field's INVALID result
+     */
+    static ContactValidationResult checkField(int field, byte[] utf8, int offset, int length) {
+        switch (field) {
+            case FIRST_NAME:
+                return ContactValidator.checkFirstName(utf8, offset, length);
+            case LAST_NAME:
+                return ContactValidator.checkLastName(utf8, offset, length);
+            case PHONE_NUMBER:
+                return ContactValidator.checkPhoneNumber(utf8, offset, length);
+            default:
+                return ContactValidator.checkAddress(utf8, offset, length);
+        }
+    }
+
+
+    /**
+     * @param field field index
+     * @return int index of the field's first byte, or MISSING or NOT_TEXT
+     */
+    int fieldStart(int field) {
+        return fieldStarts[field];
+    }
+
+
+    /**
+     * @param field field index
+     * @return int number of bytes in the field, only meaningful if fieldStart() is not negative
+     */
+    int fieldLength(int field) {
+        return fieldLengths[field];
+    }
+
+
+    /**
+     * @param field field index
+     * @return String decoded field, or null if the object has no string for it
+     */
+    String fieldString(int field) {
+        return fieldStarts[field] < 0 ? null
+                : new String(bytes, fieldStarts[field], fieldLengths[field], StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * reads one object, leaving the contact fields it has in fieldStart() and fieldLength()
+     * @param start index of the object's first byte, whitespace before the brace is allowed
+     * @param end index past the object, only whitespace may follow the closing brace
+     * @return boolean false if the range is not a single JSON object of plain values
+     */
+    boolean parseObject(int start, int end) {
+        Arrays.fill(fieldStarts, MISSING);
+        int position = skipWhitespace(start, end);
+        if (position >= end || bytes[position] != '{') {
+            return false;
+        }
+        position = skipWhitespace(position + 1, end);
+
+        if (position < end && bytes[position] == '}') {
+            position++;
+        } else {
+            while (true) {
+                position = readString(position, end);
+                if (position < 0) {
+                    return false;
+                }
+                int field = matchFieldName(bytes, stringStart, stringStart + stringLength);
+
+                position = skipWhitespace(position, end);
+                if (position >= end || bytes[position] != ':') {
+                    return false;
+                }
+                position = skipWhitespace(position + 1, end);
+
+                if (position < end && bytes[position] == '"') {
+                    position = readString(position, end);
+                    if (position < 0) {
+                        return false;
+                    }
+                    if (field >= 0) {
+                        fieldStarts[field] = stringStart;
+                        fieldLengths[field] = stringLength;
+                    }
+                } else {
+                    int valueStart = position;
+                    position = skipLiteral(position, end);
+                    if (position == valueStart) {
+                        return false;
+                    }
+                    if (field >= 0) {
+                        fieldStarts[field] = NOT_TEXT;
+                    }
+                }
+
+                position = skipWhitespace(position, end);
+                if (position >= end) {
+                    return false;
+                }
+                byte separator = bytes[position];
+                position = skipWhitespace(position + 1, end);
+                if (separator == '}') {
+                    break;
+                }
+                if (separator != ',') {
+                    return false;
+                }
+            }
+        }
+        return skipWhitespace(position, end) == end;
+    }
+
+
+    /*
+     * reads a JSON string starting at its opening quote, unescaping it in place into stringStart and
+     * stringLength. An escape is never shorter than the UTF-8 it stands for, so writing never passes reading.
+     * @return int index past the closing quote, or -1 if the string is malformed
+     */
+    private int readString(int position, int end) {
+        if (position >= end || bytes[position] != '"') {
+            return -1;
+        }
+        stringStart = position + 1;
+        int write = stringStart;
+        int read = stringStart;
+
+        while (read < end) {
+            byte b = bytes[read++];
+            if (b == '"') {
+                stringLength = write - stringStart;
+                return read;
+            }
+            if ((b & 0xFF) < 0x20) {
+                return -1; // control characters have to be escaped
+            }
+            if (b != '\\') {
+                bytes[write++] = b;
+                continue;
+            }
+            if (read >= end) {
+                return -1;
+            }
+
+            byte escape = bytes[read++];
+            switch (escape) {
+                case '"': case '\\': case '/':
+                    bytes[write++] = escape;
+                    break;
+                case 'b':
+                    bytes[write++] = '\b';
+                    break;
+                case 'f':
+                    bytes[write++] = '\f';
+                    break;
+                case 'n':
+                    bytes[write++] = '\n';
+                    break;
+                case 'r':
+                    bytes[write++] = '\r';
+                    break;
+                case 't':
+                    bytes[write++] = '\t';
+                    break;
+                case 'u':
+                    int codePoint = readHex4(read, end);
+                    if (codePoint < 0) {
+                        return -1;
+                    }
+                    read += 4;
+                    if (Character.isHighSurrogate((char) codePoint)) { // must be followed by its low half
+                        int low = read + 1 < end && bytes[read] == '\\' && bytes[read + 1] == 'u'
+                                ? readHex4(read + 2, end) : -1;
+                        if (low < 0 || !Character.isLowSurrogate((char) low)) {
+                            return -1;
+                        }
+                        codePoint = Character.toCodePoint((char) codePoint, (char) low);
+                        read += 6;
+                    } else if (Character.isLowSurrogate((char) codePoint)) {
+                        return -1;
+                    }
+                    write = putUtf8(codePoint, write);
+                    break;
+                default:
+                    return -1;
+            }
+        }
+        return -1; // no closing quote
+    }
+
+
+    /*
+     * @return int value of four hex digits, or -1 if they are not all there
+     */
+    private int readHex4(int position, int end) {
+        if (position + 4 > end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = position; i < position + 4; i++) {
+            int digit = Character.digit(bytes[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+
+    /*
+     * writes a code point as UTF-8
+     * @return int index past the written bytes
+     */
+    private int putUtf8(int codePoint, int write) {
+        if (codePoint < 0x80) {
+            bytes[write++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            bytes[write++] = (byte) (0xC0 | codePoint >> 6);
+            bytes[write++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            bytes[write++] = (byte) (0xE0 | codePoint >> 12);
+            bytes[write++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[write++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            bytes[write++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[write++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            bytes[write++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[write++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        return write;
+    }
+
+
+    /*
+     * skips a number, true, false or null
+     * @return int index past the literal, unchanged if there is none
+     */
+    private int skipLiteral(int position, int end) {
+        while (position < end) {
+            byte b = bytes[position];
+            boolean literal = (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || b == '-' || b == '+'
+                    || b == '.' || b == 'E';
+            if (!literal) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+
+    private int skipWhitespace(int position, int end) {
+        while (position < end && (bytes[position] == ' ' || bytes[position] == '\t' || bytes[position] == '\r'
+                || bytes[position] == '\n')) {
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,107 @@
+package contactService;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * command line report comparing bytes per contact for the heap and packed contact stores, and the footprint of an
+ * empty ContactTenants tenant. Run with: java -Xmx4g contactService.ContactMemoryReport [contactCount]
+ */
+public final class ContactMemoryReport {
+
+    private static final int DEFAULT_CONTACT_COUNT = 1000000;
+
+
+    /*
+     * static entry point only
+     */
+    private ContactMemoryReport() {
+    }
+
+
+    /**
+     * fills each store type with the same contacts and prints heap and direct memory used per contact
+     * @param args optional contact count
+     */
+    public static void main(String[] args) {
+        int contactCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CONTACT_COUNT;
+
+        System.out.printf("%-28s %14s %14s %14s%n", "store", "heap B/contact", "direct B/contact", "total B/contact");
+        report("HashContactStore", contactCount, HashContactStore::new);
+        report("PackedContactStore (heap)", contactCount, () -> new PackedContactStore(false));
+        report("PackedContactStore (direct)", contactCount, () -> new PackedContactStore(true));
+        reportTenants(Math.max(1, contactCount / 100));
+    }
+
+
+    /*
+     * creates empty tenants and prints the heap each one costs
+     */
+    private static void reportTenants(int tenantCount) {
+        long heapBefore = usedHeap();
+
+        ContactTenants tenants = new ContactTenants();
+        for (int i = 0; i < tenantCount; i++) {
+            tenants.createTenant("tenant-" + i, 1L << 30);
+        }
+
+        double heapPerTenant = (usedHeap() - heapBefore) / (double) tenantCount;
+        System.out.printf("%nempty tenant: %.0f heap bytes each, over %d tenants%n", heapPerTenant, tenantCount);
+
+        if (tenants.getTenantIDs().size() != tenantCount) { // keeps the tenants reachable until after measuring
+            throw new IllegalStateException("Registry lost tenants");
+        }
+    }
+
+
+    /*
+     * measures one store type and prints a row of the report
+     */
+    private static void report(String storeName, int contactCount, Supplier<ContactStore> storeFactory) {
+        TimestampContactIdGenerator generator = new TimestampContactIdGenerator(0);
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+
+        ContactStore store = storeFactory.get();
+        for (int i = 0; i < contactCount; i++) {
+            store.add(new Contact(generator.nextContactID(), "First" + (i % 10000), "Last" + (i % 5000),
+                    String.format("%010d", i), (i % 100000) + " Example Street"));
+        }
+
+        double heapPerContact = (usedHeap() - heapBefore) / (double) contactCount;
+        double directPerContact = (usedDirect() - directBefore) / (double) contactCount;
+        System.out.printf("%-28s %14.1f %14.1f %14.1f%n", storeName, heapPerContact, directPerContact,
+                heapPerContact + directPerContact);
+
+        if (store.size() != contactCount) { // keeps the store reachable until after measuring
+            throw new IllegalStateException("Store lost contacts");
+        }
+    }
+
+
+    /*
+     * heap in use after encouraging a full collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    /*
+     * bytes held by direct ByteBuffers
+     */
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,205 @@
+package contactService;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * point in time copy of a ContactService's metrics, see ContactService.enableMetrics()
+ */
+public final class ContactMetricsSnapshot {
+
+    /**
+     * service calls that are counted and timed
+     */
+    public enum Operation {
+        FIND_CONTACT,
+        CREATE_CONTACT_ID,
+        ADD_CONTACT,
+        ADD_CONTACTS,
+        DELETE_CONTACT,
+        UPDATE_CONTACT,
+        UPDATE_CONTACT_IF_VERSION,
+        UPDATE_CONTACTS
+    }
+
+
+    private final Map<Operation, OperationStats> operations;
+    private final Map<ContactValidationResult, Long> validationFailures;
+    private final long contactNotFoundCount;
+    private final long versionConflictCount;
+    private final long idRetryCount;
+    private final int storeSize;
+
+
+    ContactMetricsSnapshot(Map<Operation, OperationStats> operations, Map<ContactValidationResult, Long> validationFailures,
+                           long contactNotFoundCount, long versionConflictCount, long idRetryCount, int storeSize) {
+        this.operations = Collections.unmodifiableMap(operations);
+        this.validationFailures = Collections.unmodifiableMap(validationFailures);
+        this.contactNotFoundCount = contactNotFoundCount;
+        this.versionConflictCount = versionConflictCount;
+        this.idRetryCount = idRetryCount;
+        this.storeSize = storeSize;
+    }
+
+
+    /**
+     * @param operation service call
+     * @return OperationStats counts and latencies for the call
+     */
+    public OperationStats getOperation(Operation operation) {
+        return operations.get(operation);
+    }
+
+
+    /**
+     * @return Map of rejected fields, keyed by the failed check, for single and bulk adds and updates
+     */
+    public Map<ContactValidationResult, Long> getValidationFailures() {
+        return validationFailures;
+    }
+
+
+    /**
+     * @return long number of calls that failed with "Contact not found"
+     */
+    public long getContactNotFoundCount() {
+        return contactNotFoundCount;
+    }
+
+
+    /**
+     * @return long number of versioned updates rejected because the contact had changed
+     */
+    public long getVersionConflictCount() {
+        return versionConflictCount;
+    }
+
+
+    /**
+     * @return long times the ID generator retried, e.g. after losing a race or running out of sequence numbers
+     */
+    public long getIdRetryCount() {
+        return idRetryCount;
+    }
+
+
+    /**
+     * @return int number of contacts in the store when the snapshot was taken
+     */
+    public int getStoreSize() {
+        return storeSize;
+    }
+
+
+    /**
+     * @return String human readable dump, one line per operation with latencies in microseconds
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%-26s %12s %10s %9s %9s %9s %9s %9s %9s%n", "operation", "calls",
+                "failures", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+
+        for (Map.Entry<Operation, OperationStats> entry : operations.entrySet()) {
+            OperationStats stats = entry.getValue();
+            text.append(String.format(Locale.ROOT, "%-26s %12d %10d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), stats.getCount(), stats.getFailureCount(), stats.getMeanNanos() / 1000.0,
+                    stats.getPercentileNanos(50) / 1000.0, stats.getPercentileNanos(90) / 1000.0,
+                    stats.getPercentileNanos(99) / 1000.0, stats.getPercentileNanos(99.9) / 1000.0,
+                    stats.getMaxNanos() / 1000.0));
+        }
+
+        text.append(String.format(Locale.ROOT, "store size %d, contact not found %d, version conflicts %d, ID retries %d%n",
+                storeSize, contactNotFoundCount, versionConflictCount, idRetryCount));
+        text.append("validation failures");
+        for (Map.Entry<ContactValidationResult, Long> entry : validationFailures.entrySet()) {
+            text.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return text.append(System.lineSeparator()).toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+
+    /**
+     * call count, failures and sampled latency distribution of one operation
+     */
+    public static final class OperationStats {
+
+        private final long count;
+        private final long failureCount;
+        private final long[] latencyBuckets;
+        private final long totalSampledNanos;
+        private final long maxNanos;
+        private final long sampledCount;
+
+
+        OperationStats(long count, long failureCount, long[] latencyBuckets, long totalSampledNanos, long maxNanos) {
+            this.count = count;
+            this.failureCount = failureCount;
+            this.latencyBuckets = latencyBuckets;
+            this.totalSampledNanos = totalSampledNanos;
+            this.maxNanos = maxNanos;
+
+            long sampled = 0;
+            for (long bucketCount : latencyBuckets) {
+                sampled += bucketCount;
+            }
+            this.sampledCount = sampled;
+        }
+
+
+        /**
+         * @return long number of calls, successful or not. Estimated from the sampled calls unless every call is
+         *         measured, see ContactService.enableMetrics(int)
+         */
+        public long getCount() {
+            return count;
+        }
+
+
+        /**
+         * @return long exact number of calls that threw
+         */
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+
+        /**
+         * @return long number of calls whose latency was recorded
+         */
+        public long getSampledCount() {
+            return sampledCount;
+        }
+
+
+        /**
+         * @param percentile between 0 and 100, e.g. 99.9
+         * @return long latency in nanoseconds, accurate to about 3%
+         */
+        public long getPercentileNanos(double percentile) {
+            return LatencyHistogram.valueAtPercentile(latencyBuckets, percentile);
+        }
+
+
+        /**
+         * @return double mean sampled latency in nanoseconds
+         */
+        public double getMeanNanos() {
+            return sampledCount == 0 ? 0.0 : (double) totalSampledNanos / sampledCount;
+        }
+
+
+        /**
+         * @return long largest sampled latency in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
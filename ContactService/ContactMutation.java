@@ -0,0 +1,93 @@
+package contactService;
+
+/**
+ * describes a single change ContactService made to its store, passed to every ContactMutationListener
+ */
+public final class ContactMutation {
+
+    /**
+     * kind of change made to a contact
+     */
+    public enum Type {
+        ADD,
+        UPDATE,
+        DELETE
+    }
+
+
+    private final Type type;
+    private final ContactValue previousValue;
+    private final ContactValue currentValue;
+
+
+    /**
+     * @param type kind of change
+     * @param previousValue contact details before the change, null for ADD
+     * @param currentValue contact details after the change, null for DELETE
+     */
+    ContactMutation(Type type, ContactValue previousValue, ContactValue currentValue) {
+        this.type = type;
+        this.previousValue = previousValue;
+        this.currentValue = currentValue;
+    }
+
+
+    /**
+     * @param value the added contact
+     * @return ContactMutation describing the add
+     */
+    static ContactMutation added(ContactValue value) {
+        return new ContactMutation(Type.ADD, null, value);
+    }
+
+
+    /**
+     * @param previousValue contact before the update
+     * @param currentValue contact after the update
+     * @return ContactMutation describing the update
+     */
+    static ContactMutation updated(ContactValue previousValue, ContactValue currentValue) {
+        return new ContactMutation(Type.UPDATE, previousValue, currentValue);
+    }
+
+
+    /**
+     * @param previousValue the deleted contact
+     * @return ContactMutation describing the delete
+     */
+    static ContactMutation deleted(ContactValue previousValue) {
+        return new ContactMutation(Type.DELETE, previousValue, null);
+    }
+
+
+    /**
+     * @return Type kind of change
+     */
+    public Type getType() {
+        return type;
+    }
+
+
+    /**
+     * @return String identifier of the changed contact
+     */
+    public String getContactID() {
+        return currentValue != null ? currentValue.getContactID() : previousValue.getContactID();
+    }
+
+
+    /**
+     * @return ContactValue contact details before the change, null for ADD
+     */
+    public ContactValue getPreviousValue() {
+        return previousValue;
+    }
+
+
+    /**
+     * @return ContactValue contact details after the change, null for DELETE
+     */
+    public ContactValue getCurrentValue() {
+        return currentValue;
+    }
+}
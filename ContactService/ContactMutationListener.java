@@ -0,0 +1,14 @@
+package contactService;
+
+/**
+ * callback registered with ContactService to observe every add, update and delete it applies.
+ * Called on the writing thread while the write lock for the contactID is held, so changes to one contact arrive in
+ * order. Implementations must be quick and must not call back into ContactService write methods.
+ */
+public interface ContactMutationListener {
+
+    /**
+     * @param mutation change that was just applied to the store
+     */
+    void onMutation(ContactMutation mutation);
+}
@@ -0,0 +1,16 @@
+package contactService;
+
+/**
+ * thrown when a contactID does not name a stored contact. It is an IllegalArgumentException with the message
+ * "Contact not found", like every other rejected argument, so callers only catch it when they answer a missing
+ * contact differently from invalid input, e.g. the HTTP API's 404.
+ */
+public class ContactNotFoundException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+
+    public ContactNotFoundException() {
+        super(ContactValidationResult.CONTACT_NOT_FOUND.getMessage());
+    }
+}
@@ -0,0 +1,166 @@
+package contactService;
+
+/**
+ * immutable set of field changes for one contact, applied by ContactService as a single update: one lookup, one
+ * new version and one mutation event however many fields change. Start from forContact() and add changes with
+ * the withXxx methods; fields that are not set keep their current value.
+ */
+public final class ContactPatch {
+
+    private final String contactID;
+    private final String firstName;
+    private final String lastName;
+    private final String phoneNumber;
+    private final String address;
+
+
+    /*
+     * use forContact() and the withXxx methods
+     */
+    private ContactPatch(String contactID, String firstName, String lastName, String phoneNumber, String address) {
+        this.contactID = contactID;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.phoneNumber = phoneNumber;
+        this.address = address;
+    }
+
+
+    /**
+     * @param contactID contact the patch changes
+     * @return ContactPatch changing nothing yet
+     */
+    public static ContactPatch forContact(String contactID) {
+        return new ContactPatch(ContactValue.validateContactID(contactID), null, null, null, null);
+    }
+
+
+    /**
+     * @param firstName new first name, checked when the patch is applied
+     * @return copy of this patch that also changes the first name
+     */
+    public ContactPatch withFirstName(String firstName) {
+        return new ContactPatch(contactID, requireValue(firstName, ContactValidationResult.INVALID_FIRST_NAME),
+                lastName, phoneNumber, address);
+    }
+
+
+    /**
+     * @param lastName new last name, checked when the patch is applied
+     * @return copy of this patch that also changes the last name
+     */
+    public ContactPatch withLastName(String lastName) {
+        return new ContactPatch(contactID, firstName,
+                requireValue(lastName, ContactValidationResult.INVALID_LAST_NAME), phoneNumber, address);
+    }
+
+
+    /**
+     * @param phoneNumber new phone number, checked when the patch is applied
+     * @return copy of this patch that also changes the phone number
+     */
+    public ContactPatch withPhoneNumber(String phoneNumber) {
+        return new ContactPatch(contactID, firstName, lastName,
+                requireValue(phoneNumber, ContactValidationResult.INVALID_PHONE_NUMBER), address);
+    }
+
+
+    /**
+     * @param address new address, checked when the patch is applied
+     * @return copy of this patch that also changes the address
+     */
+    public ContactPatch withAddress(String address) {
+        return new ContactPatch(contactID, firstName, lastName, phoneNumber,
+                requireValue(address, ContactValidationResult.INVALID_ADDRESS));
+    }
+
+
+    /**
+     * checks every field the patch sets, without throwing
+     * @return VALID or the result for the first invalid field, in constructor order
+     */
+    public ContactValidationResult validate() {
+        ContactValidationResult result = ContactValidationResult.VALID;
+        if (firstName != null) {
+            result = ContactValidator.checkFirstName(firstName);
+        }
+        if (result.isValid() && lastName != null) {
+            result = ContactValidator.checkLastName(lastName);
+        }
+        if (result.isValid() && phoneNumber != null) {
+            result = ContactValidator.checkPhoneNumber(phoneNumber);
+        }
+        if (result.isValid() && address != null) {
+            result = ContactValidator.checkAddress(address);
+        }
+        return result;
+    }
+
+
+    /**
+     * @return true if the patch changes no field
+     */
+    public boolean isEmpty() {
+        return firstName == null && lastName == null && phoneNumber == null && address == null;
+    }
+
+
+    /**
+     * @param currentValue details the patch is applied to
+     * @return ContactValue with every change at the next version, or currentValue itself for an empty patch
+     */
+    ContactValue applyTo(ContactValue currentValue) {
+        return isEmpty() ? currentValue : currentValue.withFields(firstName, lastName, phoneNumber, address);
+    }
+
+
+    /**
+     * @return String contact the patch changes
+     */
+    public String getContactID() {
+        return contactID;
+    }
+
+
+    /**
+     * @return String new first name, null if unchanged
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+
+    /**
+     * @return String new last name, null if unchanged
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+
+    /**
+     * @return String new phone number, null if unchanged
+     */
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+
+    /**
+     * @return String new address, null if unchanged
+     */
+    public String getAddress() {
+        return address;
+    }
+
+
+    /*
+     * null means "unchanged" inside a patch, so it is rejected as a new value with the field's usual message
+     */
+    private static String requireValue(String value, ContactValidationResult nullResult) {
+        if (value == null) {
+            throw new IllegalArgumentException(nullResult.getMessage());
+        }
+        return value;
+    }
+}
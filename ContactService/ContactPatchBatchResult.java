@@ -0,0 +1,40 @@
+package contactService;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * outcome of a ContactService batch update: how many patches were applied and which ones were rejected
+ */
+public final class ContactPatchBatchResult {
+
+    private final int updatedCount;
+    private final List<ContactBatchResult.RowFailure> failures;
+
+
+    /**
+     * @param updatedCount number of patches applied
+     * @param failures rejected patches, in input order
+     */
+    ContactPatchBatchResult(int updatedCount, List<ContactBatchResult.RowFailure> failures) {
+        this.updatedCount = updatedCount;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+
+    /**
+     * @return number of patches applied
+     */
+    public int getUpdatedCount() {
+        return updatedCount;
+    }
+
+
+    /**
+     * @return List of patches that were invalid or named a missing contact, in input order. The row index is the
+     *         patch's position in the input list
+     */
+    public List<ContactBatchResult.RowFailure> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,160 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for multi-field ContactPatch updates, single and batched
+ */
+public class ContactPatchTest {
+
+    private ContactService testContactService;
+    private List<ContactMutation> mutations;
+
+
+    /**
+     * creates a service with one contact and records every mutation it publishes
+     */
+    @BeforeEach
+    void setUp() {
+        testContactService = new ContactService(new ConcurrentContactStore(), new TimestampContactIdGenerator(7));
+        mutations = new ArrayList<ContactMutation>();
+        testContactService.addMutationListener(mutations::add);
+    }
+
+
+    /*
+     * adds a contact and clears the recorded add event
+     */
+    private String addContact(String firstName) {
+        String contactID = testContactService.addContacts(Arrays.asList(
+                new ContactRecord(firstName, "Doe", "0123456789", "1 Main St"))).getAddedContactIDs().get(0);
+        mutations.clear();
+        return contactID;
+    }
+
+
+    /**
+     * Asserts that several fields change together with one version bump and one event
+     */
+    @Test
+    void patchChangesFieldsWithOneVersionAndOneEvent() {
+        String contactID = addContact("John");
+        long version = testContactService.findContactObject(contactID).getVersion();
+
+        testContactService.updateContact(ContactPatch.forContact(contactID)
+                .withFirstName("Jack").withPhoneNumber("9876543210").withAddress("2 Main St"));
+
+        Contact contact = testContactService.findContactObject(contactID);
+        assertEquals("Jack", contact.getFirstName());
+        assertEquals("Doe", contact.getLastName());
+        assertEquals("9876543210", contact.getPhoneNumber());
+        assertEquals("2 Main St", contact.getAddress());
+        assertEquals(version + 1, contact.getVersion());
+        assertEquals(1, mutations.size());
+        assertEquals(ContactMutation.Type.UPDATE, mutations.get(0).getType());
+    }
+
+
+    /**
+     * Asserts that one invalid field rejects the whole patch before anything changes
+     */
+    @Test
+    void invalidPatchThrowsExceptionAndChangesNothing() {
+        String contactID = addContact("John");
+        ContactPatch patch = ContactPatch.forContact(contactID).withFirstName("Jack").withPhoneNumber("123");
+
+        assertEquals(ContactValidationResult.INVALID_PHONE_NUMBER, patch.validate());
+        assertThrows(IllegalArgumentException.class, () -> testContactService.updateContact(patch));
+        assertEquals("John", testContactService.findContactObject(contactID).getFirstName());
+        assertTrue(mutations.isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () -> ContactPatch.forContact(contactID).withAddress(null));
+        assertThrows(IllegalArgumentException.class, () -> ContactPatch.forContact(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.updateContact(ContactPatch.forContact("missing").withFirstName("Jack")));
+    }
+
+
+    /**
+     * Asserts that an empty patch neither bumps the version nor publishes an event
+     */
+    @Test
+    void emptyPatchChangesNothing() {
+        String contactID = addContact("John");
+        long version = testContactService.findContactObject(contactID).getVersion();
+        ContactPatch patch = ContactPatch.forContact(contactID);
+
+        assertTrue(patch.isEmpty());
+        testContactService.updateContact(patch);
+        assertTrue(testContactService.updateContact(patch, version));
+        assertEquals(version, testContactService.findContactObject(contactID).getVersion());
+        assertTrue(mutations.isEmpty());
+    }
+
+
+    /**
+     * Asserts that a versioned patch only applies at the expected version
+     */
+    @Test
+    void versionedPatchOnlyAppliesAtExpectedVersion() {
+        String contactID = addContact("John");
+        long version = testContactService.findContactObject(contactID).getVersion();
+        ContactPatch patch = ContactPatch.forContact(contactID).withFirstName("Jack").withLastName("Roe");
+
+        assertFalse(testContactService.updateContact(patch, version + 1));
+        assertTrue(testContactService.updateContact(patch, version));
+        assertFalse(testContactService.updateContact(patch, version));
+
+        Contact contact = testContactService.findContactObject(contactID);
+        assertEquals("Jack", contact.getFirstName());
+        assertEquals("Roe", contact.getLastName());
+        assertEquals(version + 1, contact.getVersion());
+        assertEquals(1, mutations.size());
+    }
+
+
+    /**
+     * Asserts that a batch applies valid patches in order and reports the rest by row
+     */
+    @Test
+    void batchUpdateAppliesValidPatchesAndReportsRest() {
+        List<String> contactIDs = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            contactIDs.add(addContact("John"));
+        }
+
+        List<ContactPatch> patches = new ArrayList<ContactPatch>();
+        for (String contactID : contactIDs) {
+            patches.add(ContactPatch.forContact(contactID).withFirstName("Jack"));
+        }
+        patches.add(ContactPatch.forContact(contactIDs.get(0)).withFirstName("Jill")); // same contact, applied later
+        patches.add(null);
+        patches.add(ContactPatch.forContact(contactIDs.get(1)).withAddress(
+                "This address is far too long to be accepted"));
+        patches.add(ContactPatch.forContact("missing").withFirstName("Jack"));
+
+        ContactPatchBatchResult result = testContactService.updateContacts(patches);
+
+        assertEquals(51, result.getUpdatedCount());
+        assertEquals(3, result.getFailures().size());
+        assertEquals(51, result.getFailures().get(0).getRowIndex());
+        assertEquals(ContactValidationResult.NULL_RECORD, result.getFailures().get(0).getError());
+        assertEquals(52, result.getFailures().get(1).getRowIndex());
+        assertEquals(ContactValidationResult.INVALID_ADDRESS, result.getFailures().get(1).getError());
+        assertEquals(53, result.getFailures().get(2).getRowIndex());
+        assertEquals(ContactValidationResult.CONTACT_NOT_FOUND, result.getFailures().get(2).getError());
+
+        assertEquals("Jill", testContactService.findContactObject(contactIDs.get(0)).getFirstName());
+        assertEquals("Jack", testContactService.findContactObject(contactIDs.get(49)).getFirstName());
+        assertEquals("1 Main St", testContactService.findContactObject(contactIDs.get(1)).getAddress());
+        assertEquals(51, mutations.size());
+    }
+}
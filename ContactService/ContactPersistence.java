@@ -0,0 +1,264 @@
+package contactService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * durable storage for a ContactService: a write ahead log of every mutation plus periodic binary snapshots.
+ *
+ * open() loads the newest snapshot into the service's store, replays the log records written after it, and then
+ * logs every further add, update and delete. Snapshots are taken while writes continue, so the log is replayed from
+ * the point where the snapshot started. Replay is idempotent because log records carry the full contact and its
+ * version, and an update only replaces a contact with a lower version.
+ *
+ * Log records are written after the store has applied their change. Once a log write fails, every later add,
+ * update or delete still changes the store and reaches the other mutation listeners, such as indexes and the change
+ * stream, but is not logged: it is in memory and not durable. The failure is kept for getLogFailure() and reported
+ * by sync() and close() as IOException. A failed scheduled snapshot is kept for getScheduledSnapshotFailure() and
+ * reported by the next takeSnapshot() or close().
+ */
+public final class ContactPersistence implements Closeable {
+
+    private final Path directory;
+    private final ContactService contactService;
+    private final ContactWriteAheadLog writeAheadLog;
+    private final ScheduledExecutorService snapshotScheduler;
+
+    // one snapshot at a time
+    private final Object snapshotLock = new Object();
+
+    // latest scheduled snapshot failure that takeSnapshot() or close() has not reported yet
+    private final AtomicReference<Exception> scheduledSnapshotFailure = new AtomicReference<Exception>();
+
+
+    /*
+     * use open()
+     */
+    private ContactPersistence(Path directory, ContactService contactService, ContactWriteAheadLog writeAheadLog,
+                               long snapshotIntervalMillis) {
+        this.directory = directory;
+        this.contactService = contactService;
+        this.writeAheadLog = writeAheadLog;
+
+        if (snapshotIntervalMillis > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread snapshotThread = new Thread(runnable, "contact-snapshot");
+                snapshotThread.setDaemon(true);
+                return snapshotThread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::takeScheduledSnapshot, snapshotIntervalMillis,
+                    snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+
+    /**
+     * recovers the service's contacts from a directory and starts logging its mutations there
+     * @param directory folder for log segments and snapshots, created if missing
+     * @param contactService service to recover into, its store has to be empty
+     * @param options fsync, group commit and snapshot settings
+     * @return ContactPersistence attached to the service
+     */
+    public static ContactPersistence open(Path directory, ContactService contactService, PersistenceOptions options)
+            throws IOException {
+        if (directory == null || contactService == null || options == null) {
+            throw new IllegalArgumentException("Invalid persistence arguments. Expected not null");
+        }
+        if (contactService.getContactStore().size() != 0) {
+            throw new IllegalStateException("Contact store must be empty before recovery");
+        }
+
+        Files.createDirectories(directory);
+        long nextLogSequenceNumber = recover(directory, contactService.getContactStore());
+
+        ContactWriteAheadLog writeAheadLog = new ContactWriteAheadLog(directory, nextLogSequenceNumber, options);
+        ContactPersistence persistence = new ContactPersistence(directory, contactService, writeAheadLog,
+                options.getSnapshotIntervalMillis());
+        contactService.addMutationListener(writeAheadLog);
+        return persistence;
+    }
+
+
+    /**
+     * waits until every mutation made before this call is on disk
+     */
+    public void sync() throws IOException {
+        writeAheadLog.sync();
+    }
+
+
+    /**
+     * @return IOException why the log stopped recording mutations, or null while every mutation is logged
+     */
+    public IOException getLogFailure() {
+        return writeAheadLog.getWriteFailure();
+    }
+
+
+    /**
+     * writes a snapshot of the store and deletes the log segments and snapshots it replaces.
+     * Writes can continue meanwhile if the store is thread safe, otherwise call this from the owning thread.
+     * @throws IOException if the snapshot fails, or without taking one if a scheduled snapshot failed since the
+     *         last report. The failure is reported once, calling again takes the snapshot.
+     */
+    public void takeSnapshot() throws IOException {
+        reportScheduledSnapshotFailure();
+        writeSnapshot();
+    }
+
+
+    /**
+     * @return Exception latest failure of a scheduled snapshot not yet reported by takeSnapshot() or close(), or
+     *         null. Scheduled snapshots are retried at the next interval and the log keeps everything needed.
+     */
+    public Exception getScheduledSnapshotFailure() {
+        return scheduledSnapshotFailure.get();
+    }
+
+
+    /*
+     * writes a snapshot, see takeSnapshot()
+     */
+    private void writeSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long replayFrom = writeAheadLog.rollSegment(); // every earlier record is already applied to the store
+            Path snapshot = ContactSnapshotFile.write(directory, replayFrom, contactService.getContactStore().asList());
+
+            for (Path olderSnapshot : ContactSnapshotFile.listSnapshots(directory)) {
+                if (!olderSnapshot.equals(snapshot)) {
+                    Files.deleteIfExists(olderSnapshot);
+                }
+            }
+            writeAheadLog.deleteSegmentsBefore(replayFrom);
+        }
+    }
+
+
+    /**
+     * stops logging, flushes and forces the log, and stops scheduled snapshots
+     * @throws IOException if the log failed, or if a scheduled snapshot failed since the last report
+     */
+    @Override
+    public void close() throws IOException {
+        contactService.removeMutationListener(writeAheadLog);
+
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+            try {
+                snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeAheadLog.close();
+        reportScheduledSnapshotFailure();
+    }
+
+
+    /*
+     * scheduled snapshot task, a failed snapshot is retried at the next interval and the log keeps everything needed
+     */
+    private void takeScheduledSnapshot() {
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException failed) {
+            scheduledSnapshotFailure.set(failed);
+        }
+    }
+
+
+    /*
+     * throws the scheduled snapshot failure not reported yet, once
+     */
+    private void reportScheduledSnapshotFailure() throws IOException {
+        Exception failed = scheduledSnapshotFailure.getAndSet(null);
+        if (failed != null) {
+            throw new IOException("Scheduled contact snapshot failed", failed);
+        }
+    }
+
+
+    /*
+     * loads the newest snapshot and replays the log on top of it
+     * @return long sequence number for the next log record
+     */
+    private static long recover(Path directory, ContactStore contactStore) throws IOException {
+        deleteUnfinishedSnapshots(directory);
+
+        long replayFrom = 0;
+        List<Path> snapshots = ContactSnapshotFile.listSnapshots(directory);
+        if (!snapshots.isEmpty()) {
+            replayFrom = ContactSnapshotFile.read(snapshots.get(0), value -> contactStore.add(new Contact(value)));
+        }
+
+        long nextLogSequenceNumber = replayFrom;
+        List<Path> segments = ContactWriteAheadLog.listSegments(directory);
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            long[] lastReplayed = { nextLogSequenceNumber - 1 };
+            long finalReplayFrom = replayFrom;
+
+            long intactBytes = ContactWriteAheadLog.readSegment(segment, record -> {
+                if (record.logSequenceNumber >= finalReplayFrom) {
+                    replay(contactStore, record);
+                }
+                lastReplayed[0] = Math.max(lastReplayed[0], record.logSequenceNumber);
+            });
+            nextLogSequenceNumber = lastReplayed[0] + 1;
+
+            if (intactBytes < Files.size(segment)) { // torn write from a crash, only expected at the very end
+                if (i != segments.size() - 1) {
+                    throw new IOException("Contact log segment is corrupt before the end of the log: " + segment);
+                }
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(intactBytes);
+                }
+            }
+        }
+
+        return nextLogSequenceNumber;
+    }
+
+
+    /*
+     * applies one log record to the store being recovered, also how ContactReplica applies the primary's records
+     */
+    static void replay(ContactStore contactStore, ContactRecordCodec.DecodedMutation record) {
+        if (record.type == ContactRecordCodec.TYPE_DELETE) {
+            contactStore.remove(record.deletedContactID);
+            return;
+        }
+
+        Contact existing = contactStore.get(record.value.getContactID());
+        if (existing == null) {
+            contactStore.add(new Contact(record.value));
+        } else if (record.value.getVersion() > existing.getVersion()) { // older versions are already covered
+            contactStore.replace(existing, existing.getValue(), record.value);
+        }
+    }
+
+
+    /*
+     * removes temporary files left behind by a snapshot that was interrupted
+     */
+    private static void deleteUnfinishedSnapshots(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.tmp")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for write ahead logging, snapshots and recovery
+ */
+public class ContactPersistenceTest {
+
+    @TempDir
+    Path dataDirectory;
+
+
+    /**
+     * creates a service over its own store
+     * @return ContactService for a single test
+     */
+    private static ContactService createService(ContactStore store) {
+        return new ContactService(store, new TimestampContactIdGenerator(7));
+    }
+
+
+    /**
+     * copies every contact value in a store, keyed on contactID
+     * @return Map of contactID to ContactValue
+     */
+    private static Map<String, ContactValue> contents(ContactStore store) {
+        Map<String, ContactValue> values = new HashMap<String, ContactValue>();
+        for (Contact contact : store.asList()) {
+            values.put(contact.getContactID(), contact.getValue());
+        }
+        return values;
+    }
+
+
+    /**
+     * Asserts that adds, updates and deletes are all recovered from the log after a restart
+     */
+    @Test
+    void logReplayRestoresContacts() throws IOException {
+        HashContactStore firstStore = new HashContactStore();
+        ContactService firstService = createService(firstStore);
+
+        try (ContactPersistence persistence = ContactPersistence.open(dataDirectory, firstService, PersistenceOptions.defaults())) {
+            for (int i = 0; i < 100; i++) {
+                firstService.addNewContact("First" + i, "Last", String.format("%010d", i), "1 Log Lane");
+            }
+            String updatedID = firstStore.asList().get(10).getContactID();
+            String deletedID = firstStore.asList().get(20).getContactID();
+            firstService.updateContactAddress(updatedID, "2 Updated Road");
+            firstService.updateContactPhoneNumber(updatedID, "5555555555");
+            firstService.deleteExistingContact(deletedID);
+            persistence.sync();
+        }
+
+        HashContactStore recoveredStore = new HashContactStore();
+        try (ContactPersistence recovered = ContactPersistence.open(dataDirectory, createService(recoveredStore), PersistenceOptions.defaults())) {
+            assertEquals(contents(firstStore), contents(recoveredStore));
+            assertEquals(99, recoveredStore.size());
+            assertNull(recovered.getLogFailure());
+        }
+    }
+
+
+    /**
+     * Asserts that a snapshot plus the log written after it restores the store, and older segments are removed
+     */
+    @Test
+    void snapshotPlusLogTailRestoresContacts() throws IOException {
+        HashContactStore firstStore = new HashContactStore();
+        ContactService firstService = createService(firstStore);
+
+        try (ContactPersistence persistence = ContactPersistence.open(dataDirectory, firstService, PersistenceOptions.defaults())) {
+            for (int i = 0; i < 50; i++) {
+                firstService.addNewContact("Before", "Snapshot", String.format("%010d", i), "1 Snap Street");
+            }
+            persistence.takeSnapshot();
+            for (int i = 0; i < 50; i++) {
+                firstService.addNewContact("After", "Snapshot", String.format("%010d", i), "1 Tail Street");
+            }
+            firstService.deleteExistingContact(firstStore.asList().get(0).getContactID());
+        }
+
+        assertEquals(1, ContactSnapshotFile.listSnapshots(dataDirectory).size());
+        assertEquals(1, ContactWriteAheadLog.listSegments(dataDirectory).size());
+
+        HashContactStore recoveredStore = new HashContactStore();
+        try (ContactPersistence recovered = ContactPersistence.open(dataDirectory, createService(recoveredStore), PersistenceOptions.defaults())) {
+            assertEquals(contents(firstStore), contents(recoveredStore));
+            assertNull(recovered.getLogFailure());
+        }
+    }
+
+
+    /**
+     * Asserts that a partially written record at the end of the log is discarded instead of failing recovery
+     */
+    @Test
+    void tornLogTailIsTruncated() throws IOException {
+        HashContactStore firstStore = new HashContactStore();
+        ContactService firstService = createService(firstStore);
+
+        try (ContactPersistence persistence = ContactPersistence.open(dataDirectory, firstService, PersistenceOptions.defaults())) {
+            firstService.addNewContact("Kept", "Contact", "0123456789", "1 Torn Terrace");
+            assertNull(persistence.getLogFailure());
+        }
+
+        Path lastSegment = ContactWriteAheadLog.listSegments(dataDirectory).get(0);
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3 })); // header of a record that never finished
+        }
+
+        HashContactStore recoveredStore = new HashContactStore();
+        ContactService recoveredService = createService(recoveredStore);
+        try (ContactPersistence recovered = ContactPersistence.open(dataDirectory, recoveredService, PersistenceOptions.defaults())) {
+            assertEquals(contents(firstStore), contents(recoveredStore));
+            recoveredService.addNewContact("New", "Contact", "9876543210", "2 Torn Terrace");
+            assertNull(recovered.getLogFailure());
+        }
+
+        HashContactStore finalStore = new HashContactStore();
+        try (ContactPersistence reopened = ContactPersistence.open(dataDirectory, createService(finalStore), PersistenceOptions.defaults())) {
+            assertEquals(2, finalStore.size());
+            assertNull(reopened.getLogFailure());
+        }
+    }
+
+
+    /**
+     * Asserts that scheduled snapshots taken while many threads write still recover to the final state
+     */
+    @Test
+    void concurrentWritesWithScheduledSnapshotsRecover() throws Exception {
+        ConcurrentContactStore firstStore = new ConcurrentContactStore();
+        ContactService firstService = createService(firstStore);
+        PersistenceOptions options = PersistenceOptions.defaults().withSnapshotIntervalMillis(20);
+
+        try (ContactPersistence persistence = ContactPersistence.open(dataDirectory, firstService, options)) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        firstService.addNewContact("First", "Last", String.format("%010d", i), "1 Busy Road");
+                    }
+                    for (Contact contact : firstStore.asList()) {
+                        try {
+                            firstService.updateContactFirstName(contact.getContactID(), "Updated");
+                            if (contact.getPhoneNumber().endsWith("7")) {
+                                firstService.deleteExistingContact(contact.getContactID());
+                            }
+                        } catch (IllegalArgumentException deletedByAnotherThread) {
+                            assertEquals("Contact not found", deletedByAnotherThread.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+            assertNull(persistence.getScheduledSnapshotFailure(), "snapshots succeed while threads write");
+        }
+
+        ConcurrentContactStore recoveredStore = new ConcurrentContactStore();
+        try (ContactPersistence recovered = ContactPersistence.open(dataDirectory, createService(recoveredStore), PersistenceOptions.defaults())) {
+            assertEquals(contents(firstStore), contents(recoveredStore));
+            assertNull(recovered.getLogFailure());
+        }
+    }
+
+
+    /**
+     * Asserts that a failed scheduled snapshot is kept for callers and reported once by the next takeSnapshot()
+     */
+    @Test
+    void scheduledSnapshotFailureIsReported() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ConcurrentContactStore failingStore = new ConcurrentContactStore() {
+            @Override
+            public List<Contact> asList() {
+                if (failing.get()) {
+                    throw new IllegalStateException("Store unavailable");
+                }
+                return super.asList();
+            }
+        };
+        ContactService service = createService(failingStore);
+        PersistenceOptions options = PersistenceOptions.defaults().withSnapshotIntervalMillis(10);
+
+        try (ContactPersistence persistence = ContactPersistence.open(dataDirectory, service, options)) {
+            service.addNewContact("First", "Last", "0123456789", "1 Snap Street");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (persistence.getScheduledSnapshotFailure() == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals("Store unavailable", persistence.getScheduledSnapshotFailure().getMessage());
+
+            failing.set(false);
+            Thread.sleep(50); // lets a scheduled snapshot that was already failing finish
+            IOException reported = assertThrows(IOException.class, persistence::takeSnapshot);
+            assertEquals("Store unavailable", reported.getCause().getMessage());
+            assertNull(persistence.getScheduledSnapshotFailure());
+
+            persistence.takeSnapshot();
+            assertEquals(1, ContactSnapshotFile.listSnapshots(dataDirectory).size());
+        }
+    }
+
+
+    /**
+     * Asserts that once the log has failed, later writes still reach the indexes and change stream registered after
+     * it, and the failure is kept for sync()
+     */
+    @Test
+    void failedLogDoesNotHideWritesFromLaterListeners() throws IOException {
+        ContactService service = createService(new ConcurrentContactStore());
+        ContactWriteAheadLog writeAheadLog = new ContactWriteAheadLog(dataDirectory, 0, PersistenceOptions.defaults());
+        service.addMutationListener(writeAheadLog);
+        service.enableSecondaryIndexes();
+        ContactChangeStream.Subscription subscription = service.enableChangeStream(16).subscribeFromLatest();
+
+        String contactID = service.addNewContact("First", "Before", "0123456789", "1 Log Lane").getContactID();
+        writeAheadLog.close(); // stands in for a failed log, it no longer records anything
+        service.updateContactLastName(contactID, "After");
+
+        assertEquals(contactID, service.findContactsByLastName("After").get(0).getContactID());
+        assertTrue(service.findContactsByLastName("Before").isEmpty());
+        List<ContactChangeEvent> events = subscription.poll(10);
+        assertEquals(2, events.size());
+        assertEquals("After", events.get(1).getMutation().getCurrentValue().getLastName());
+
+        assertEquals("Contact log is closed", writeAheadLog.getWriteFailure().getMessage());
+        IOException reported = assertThrows(IOException.class, writeAheadLog::sync);
+        assertEquals("Contact log is closed", reported.getCause().getMessage());
+    }
+}
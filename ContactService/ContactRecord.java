@@ -0,0 +1,59 @@
+package contactService;
+
+/**
+ * unvalidated input row for ContactService bulk adds, holding the fields of a contact that does not have an ID yet
+ */
+public final class ContactRecord {
+
+    private final String firstName;
+    private final String lastName;
+    private final String phoneNumber;
+    private final String address;
+
+
+    /**
+     * ContactRecord constructor, fields are validated when the record is added to a ContactService
+     * @param firstName
+     * @param lastName
+     * @param phoneNumber
+     * @param address
+     */
+    public ContactRecord(String firstName, String lastName, String phoneNumber, String address) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.phoneNumber = phoneNumber;
+        this.address = address;
+    }
+
+
+    /**
+     * @return String firstName
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+
+    /**
+     * @return String lastName
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+
+    /**
+     * @return String phoneNumber
+     */
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+
+    /**
+     * @return String address
+     */
+    public String getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,240 @@
+package contactService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * compact binary encoding of contacts and contact mutations, shared by the write ahead log and snapshot files.
+ *
+ * A mutation record is laid out as
+ *   int bodyLength | int crc32(body) | body
+ * where body is
+ *   byte type | long logSequenceNumber | contact
+ * and a contact is
+ *   long version | five fields, each as an unsigned byte length followed by that many UTF-8 bytes.
+ * DELETE records only carry the contactID field.
+ */
+final class ContactRecordCodec {
+
+    static final byte TYPE_ADD = 1;
+    static final byte TYPE_UPDATE = 2;
+    static final byte TYPE_DELETE = 3;
+
+    // 30 characters of up to 3 UTF-8 bytes each fit in an unsigned byte length
+    private static final int MAX_FIELD_BYTES = Contact.MAX_ADDRESS_CHAR_LENGTH * 3;
+
+    static final int MAX_CONTACT_BYTES = Long.BYTES + 5 * (1 + MAX_FIELD_BYTES);
+    static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    static final int MAX_RECORD_BYTES = RECORD_HEADER_BYTES + 1 + Long.BYTES + MAX_CONTACT_BYTES;
+
+
+    /*
+     * static helpers only
+     */
+    private ContactRecordCodec() {
+    }
+
+
+    /**
+     * writes one mutation record at the buffer's position
+     * @param buffer target with at least MAX_RECORD_BYTES remaining
+     * @param mutation change to encode
+     * @param logSequenceNumber position of the record in the log
+     */
+    static void writeMutation(ByteBuffer buffer, ContactMutation mutation, long logSequenceNumber) {
+        int recordStart = buffer.position();
+        buffer.position(recordStart + RECORD_HEADER_BYTES); // header is filled in once the body length is known
+
+        switch (mutation.getType()) {
+            case ADD:
+                buffer.put(TYPE_ADD);
+                buffer.putLong(logSequenceNumber);
+                writeContact(buffer, mutation.getCurrentValue());
+                break;
+            case UPDATE:
+                buffer.put(TYPE_UPDATE);
+                buffer.putLong(logSequenceNumber);
+                writeContact(buffer, mutation.getCurrentValue());
+                break;
+            default:
+                buffer.put(TYPE_DELETE);
+                buffer.putLong(logSequenceNumber);
+                writeString(buffer, mutation.getContactID());
+                break;
+        }
+
+        int bodyStart = recordStart + RECORD_HEADER_BYTES;
+        int bodyLength = buffer.position() - bodyStart;
+        buffer.putInt(recordStart, bodyLength);
+        buffer.putInt(recordStart + Integer.BYTES, checksum(buffer, bodyStart, bodyLength));
+    }
+
+
+    /**
+     * reads one mutation record at the buffer's position
+     * @param buffer source positioned at the start of a record
+     * @return DecodedMutation, or null if the buffer holds an incomplete or corrupt record (a torn log tail)
+     */
+    static DecodedMutation readMutation(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            return null;
+        }
+
+        int recordStart = buffer.position();
+        int bodyLength = buffer.getInt(recordStart);
+        int expectedChecksum = buffer.getInt(recordStart + Integer.BYTES);
+        int bodyStart = recordStart + RECORD_HEADER_BYTES;
+
+        if (bodyLength <= 1 + Long.BYTES || bodyLength > MAX_RECORD_BYTES - RECORD_HEADER_BYTES
+                || buffer.limit() - bodyStart < bodyLength
+                || checksum(buffer, bodyStart, bodyLength) != expectedChecksum) {
+            return null;
+        }
+
+        buffer.position(bodyStart);
+        byte type = buffer.get();
+        long logSequenceNumber = buffer.getLong();
+
+        try {
+            switch (type) {
+                case TYPE_ADD:
+                case TYPE_UPDATE:
+                    return new DecodedMutation(type, logSequenceNumber, null, readContact(buffer));
+                case TYPE_DELETE:
+                    return new DecodedMutation(type, logSequenceNumber, readString(buffer), null);
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException corruptField) { // checksum matched but fields break the Contact rules
+            return null;
+        } finally {
+            buffer.position(bodyStart + bodyLength);
+        }
+    }
+
+
+    /**
+     * writes the version and fields of a contact
+     * @param buffer target with at least MAX_CONTACT_BYTES remaining
+     * @param value contact to encode
+     */
+    static void writeContact(ByteBuffer buffer, ContactValue value) {
+        buffer.putLong(value.getVersion());
+        writeString(buffer, value.getContactID());
+        writeString(buffer, value.getFirstName());
+        writeString(buffer, value.getLastName());
+        writeString(buffer, value.getPhoneNumber());
+        writeString(buffer, value.getAddress());
+    }
+
+
+    /**
+     * reads a contact written by writeContact, validating every field
+     * @param buffer source positioned at the start of a contact
+     * @return ContactValue at its stored version
+     */
+    static ContactValue readContact(ByteBuffer buffer) {
+        long version = buffer.getLong();
+        return ContactValue.restore(readString(buffer), readString(buffer), readString(buffer), readString(buffer),
+                readString(buffer), version);
+    }
+
+
+    /*
+     * writes a length prefixed UTF-8 string, encoding straight into the buffer
+     */
+    private static void writeString(ByteBuffer buffer, String text) {
+        int lengthPosition = buffer.position();
+        buffer.position(lengthPosition + 1); // length is filled in once the encoded size is known
+        putUtf8(buffer, text);
+        buffer.put(lengthPosition, (byte) (buffer.position() - lengthPosition - 1));
+    }
+
+
+    /**
+     * encodes text as UTF-8 at the buffer's position without building a byte array. Unpaired surrogates are
+     * written as '?', the same as String.getBytes().
+     * @param buffer target with at least 3 bytes per char remaining
+     * @param text characters to encode
+     */
+    static void putUtf8(ByteBuffer buffer, CharSequence text) {
+        putUtf8(buffer, text, 0, text.length());
+    }
+
+
+    /**
+     * encodes part of a text as UTF-8, see putUtf8(ByteBuffer, CharSequence)
+     * @param buffer target with at least 3 bytes per char remaining
+     * @param text characters to encode
+     * @param start index of the first char to encode
+     * @param end index after the last char to encode
+     */
+    static void putUtf8(ByteBuffer buffer, CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+
+    /*
+     * reads a length prefixed UTF-8 string
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /*
+     * CRC32 of a byte range, without moving the buffer's position
+     */
+    private static int checksum(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(start + length).position(start);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * mutation read back from the log
+     */
+    static final class DecodedMutation {
+
+        final byte type;
+        final long logSequenceNumber;
+        final String deletedContactID;
+        final ContactValue value;
+
+
+        DecodedMutation(byte type, long logSequenceNumber, String deletedContactID, ContactValue value) {
+            this.type = type;
+            this.logSequenceNumber = logSequenceNumber;
+            this.deletedContactID = deletedContactID;
+            this.value = value;
+        }
+    }
+}
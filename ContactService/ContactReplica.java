@@ -0,0 +1,388 @@
+package contactService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * read only copy of a primary ContactService, kept up to date by a ContactReplicationPrimary over TCP.
+ *
+ * A follower thread connects to the primary, loads a full copy or resumes from the primary's log, applies every
+ * change in order and reconnects with backoff whenever the connection drops. Reads never wait for it: a full copy
+ * is loaded into a separate store that replaces the current one once complete.
+ *
+ * Reads are bounded in staleness. findContactObject() answers only if the replica is known to hold every change the
+ * primary made up to the staleness bound ago, measured on the replica's own clock, and throws
+ * IllegalStateException otherwise so the caller can go to the primary instead. promote() turns the replica into a
+ * writable ContactService for failover.
+ *
+ * Run standalone with: java contactService.ContactReplica host port [maxStalenessMillis], then send lines
+ * "await sequence", "get contactID" or "quit" on standard input.
+ */
+public final class ContactReplica implements Closeable {
+
+    private static final long INITIAL_RECONNECT_DELAY_MILLIS = 50;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 2000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long DEFAULT_MAX_STALENESS_MILLIS = 1000;
+
+    // how long the command line await waits
+    private static final long AWAIT_TIMEOUT_SECONDS = 30;
+
+    private final InetSocketAddress primaryAddress;
+    private final long maxStalenessNanos;
+    private final Thread followerThread;
+
+    // contacts as of appliedSequence, replaced whole when a full copy has loaded
+    private volatile ContactStore contactStore = new ConcurrentContactStore();
+
+    // primary whose stream appliedSequence counts in, NO_PRIMARY before the first full copy
+    private volatile long primaryID = ContactReplicationProtocol.NO_PRIMARY;
+    private volatile long appliedSequence;
+
+    // replica System.nanoTime() of the latest ping the applied changes are known to cover, or NO_PING
+    private volatile long freshAsOfNanos = ContactReplicationProtocol.NO_PING;
+
+    private final AtomicInteger fullCopyCount = new AtomicInteger();
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+
+    /*
+     * use connect()
+     */
+    private ContactReplica(InetSocketAddress primaryAddress, long maxStalenessNanos) {
+        this.primaryAddress = primaryAddress;
+        this.maxStalenessNanos = maxStalenessNanos;
+        this.followerThread = new Thread(this::follow, "contact-replica");
+        this.followerThread.setDaemon(true);
+    }
+
+
+    /**
+     * starts following a primary. Returns at once, the first full copy loads in the background.
+     * @param primaryAddress address of a ContactReplicationPrimary
+     * @param maxStaleness how far behind the primary reads may be
+     * @param unit unit of maxStaleness
+     * @return ContactReplica following the primary
+     */
+    public static ContactReplica connect(InetSocketAddress primaryAddress, long maxStaleness, TimeUnit unit) {
+        if (primaryAddress == null) {
+            throw new IllegalArgumentException("Invalid primary address. Expected not null");
+        }
+        if (maxStaleness <= 0 || unit == null) {
+            throw new IllegalArgumentException("Invalid max staleness. Expected a positive duration");
+        }
+        ContactReplica replica = new ContactReplica(primaryAddress, unit.toNanos(maxStaleness));
+        replica.followerThread.start();
+        return replica;
+    }
+
+
+    /**
+     * looks up a contact within the staleness bound
+     * @param contactID contact to look up
+     * @return Contact copy of the replicated contact, changing it does not change the replica
+     * @throws IllegalStateException if the replica may be further behind the primary than the bound
+     * @throws ContactNotFoundException if the contact does not exist
+     */
+    public Contact findContactObject(String contactID) {
+        if (getStalenessNanos() > maxStalenessNanos) { // a store read after the check is at least that fresh
+            throw new IllegalStateException("Replica is stale. Expected to be at most "
+                    + TimeUnit.NANOSECONDS.toMillis(maxStalenessNanos) + " ms behind the primary");
+        }
+
+        Contact contact = contactStore.get(contactID);
+        if (contact == null) {
+            throw new ContactNotFoundException();
+        }
+        return new Contact(contact.getValue());
+    }
+
+
+    /**
+     * @return long nanoseconds since the replica last knew it had every change of the primary, Long.MAX_VALUE if
+     *         it never did
+     */
+    public long getStalenessNanos() {
+        long freshAsOf = freshAsOfNanos;
+        return freshAsOf == ContactReplicationProtocol.NO_PING ? Long.MAX_VALUE : System.nanoTime() - freshAsOf;
+    }
+
+
+    /**
+     * @return long primary change stream sequence of the next change to apply, compare with the primary's
+     *         getNextSequence()
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+
+    /**
+     * waits until the replica has applied every change before a primary sequence and is within its staleness
+     * bound, e.g. to read its own writes
+     * @param sequence value of the primary's getNextSequence() after the writes
+     * @param timeout longest time to wait
+     * @param unit unit of timeout
+     * @return boolean true if the replica got there in time
+     */
+    public boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (primaryID == ContactReplicationProtocol.NO_PRIMARY || appliedSequence < sequence
+                || getStalenessNanos() > maxStalenessNanos) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+
+    /**
+     * @return int number of contacts in the replica
+     */
+    public int size() {
+        return contactStore.size();
+    }
+
+
+    /**
+     * @return boolean true while connected to the primary
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+
+    /**
+     * stops following the primary and makes the replica's contacts writable, for failover. Other replicas load a
+     * full copy when they connect to a primary started on the returned service.
+     * @return ContactService over the replicated contacts, handing out IDs from this process's node number
+     */
+    public ContactService promote() throws IOException {
+        close();
+        return new ContactService(contactStore, ContactService.DEFAULT_ID_GENERATOR);
+    }
+
+
+    /**
+     * stops following the primary, the replicated contacts stay readable through promote()
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket currentSocket = socket;
+        if (currentSocket != null) {
+            currentSocket.close();
+        }
+        followerThread.interrupt();
+        try {
+            followerThread.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * follows a primary from the command line, answering "await sequence", "get contactID" and "quit" lines
+     * @param args primary host, primary port and an optional max staleness in milliseconds
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java contactService.ContactReplica host port [maxStalenessMillis]");
+            return;
+        }
+        long maxStalenessMillis = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_STALENESS_MILLIS;
+        ContactReplica replica = connect(new InetSocketAddress(args[0], Integer.parseInt(args[1])),
+                maxStalenessMillis, TimeUnit.MILLISECONDS);
+        System.out.println("following " + args[0] + ":" + args[1]);
+
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for (String line = commands.readLine(); line != null && !line.equals("quit"); line = commands.readLine()) {
+            String[] command = line.trim().split(" ");
+            if (command[0].equals("await") && command.length == 2) {
+                boolean reached = replica.awaitSequence(Long.parseLong(command[1]), AWAIT_TIMEOUT_SECONDS,
+                        TimeUnit.SECONDS);
+                System.out.println((reached ? "applied " : "timeout ") + replica.getAppliedSequence() + " "
+                        + replica.size());
+            } else if (command[0].equals("get") && command.length == 2) {
+                try {
+                    Contact contact = replica.findContactObject(command[1]);
+                    System.out.println("found " + contact.getFirstName() + " " + contact.getLastName() + " "
+                            + contact.getVersion());
+                } catch (IllegalArgumentException notFound) {
+                    System.out.println("missing");
+                } catch (IllegalStateException stale) {
+                    System.out.println("stale");
+                }
+            } else {
+                System.out.println("unknown command");
+            }
+        }
+        replica.close();
+    }
+
+
+    /**
+     * @return int number of full copies loaded so far, for tests
+     */
+    int getFullCopyCount() {
+        return fullCopyCount.get();
+    }
+
+
+    /**
+     * @return ContactStore the replica currently reads from, for tests
+     */
+    ContactStore getContactStore() {
+        return contactStore;
+    }
+
+
+    /**
+     * drops the connection as a network failure would, the follower reconnects, for tests
+     */
+    void dropConnection() throws IOException {
+        Socket currentSocket = socket;
+        if (currentSocket != null) {
+            currentSocket.close();
+        }
+    }
+
+
+    /*
+     * follower thread: connects and replicates until closed, backing off between failed attempts
+     */
+    private void follow() {
+        long reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLIS;
+
+        while (!closed) {
+            try (Socket newSocket = new Socket()) {
+                socket = newSocket;
+                if (closed) { // close() may have missed the socket
+                    break;
+                }
+                newSocket.connect(primaryAddress, CONNECT_TIMEOUT_MILLIS);
+                newSocket.setTcpNoDelay(true);
+                connected = true;
+                reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLIS;
+                replicate(newSocket);
+            } catch (IOException disconnected) { // primary down or unreachable, try again
+            } finally {
+                connected = false;
+                socket = null;
+            }
+
+            if (!closed) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(reconnectDelayMillis));
+                reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+
+    /*
+     * one connection: says where to resume, then applies frames until the connection drops
+     */
+    private void replicate(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(),
+                ContactReplicationProtocol.STREAM_BUFFER_BYTES));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(),
+                ContactReplicationProtocol.STREAM_BUFFER_BYTES));
+
+        out.writeByte(ContactReplicationProtocol.HELLO);
+        out.writeLong(primaryID);
+        out.writeLong(appliedSequence);
+        sendPing(out);
+
+        ByteBuffer batch = ContactReplicationProtocol.newBatchBuffer();
+        ContactStore loadingStore = null; // full copy in progress, not visible to reads yet
+
+        while (true) {
+            byte frameType = in.readByte();
+            switch (frameType) {
+                case ContactReplicationProtocol.SNAPSHOT_START:
+                    loadingStore = new ConcurrentContactStore();
+                    break;
+                case ContactReplicationProtocol.RECORDS:
+                    ContactReplicationProtocol.readRecords(in, batch);
+                    applyRecords(batch, loadingStore);
+                    break;
+                case ContactReplicationProtocol.SNAPSHOT_END:
+                    if (loadingStore == null) {
+                        throw new IOException("Replication copy ended without starting");
+                    }
+                    long copiedPrimaryID = in.readLong();
+                    long resumeSequence = in.readLong();
+                    contactStore = loadingStore; // before the sequence, so awaitSequence() callers see the copy
+                    appliedSequence = resumeSequence;
+                    primaryID = copiedPrimaryID;
+                    loadingStore = null;
+                    fullCopyCount.incrementAndGet();
+                    break;
+                case ContactReplicationProtocol.MARK:
+                    long pingNanos = in.readLong();
+                    long markSequence = in.readLong();
+                    if (loadingStore == null && pingNanos != ContactReplicationProtocol.NO_PING
+                            && appliedSequence >= markSequence
+                            && (freshAsOfNanos == ContactReplicationProtocol.NO_PING
+                            || pingNanos - freshAsOfNanos > 0)) {
+                        freshAsOfNanos = pingNanos;
+                    }
+                    sendPing(out);
+                    break;
+                default:
+                    throw new IOException("Unknown replication frame " + frameType);
+            }
+        }
+    }
+
+
+    /*
+     * applies the records of one RECORDS frame, to the copy being loaded or to the live store in log order
+     */
+    private void applyRecords(ByteBuffer batch, ContactStore loadingStore) throws IOException {
+        while (batch.hasRemaining()) {
+            ContactRecordCodec.DecodedMutation record = ContactRecordCodec.readMutation(batch);
+            if (record == null) {
+                throw new IOException("Corrupt replication record");
+            }
+
+            if (loadingStore != null) {
+                ContactPersistence.replay(loadingStore, record);
+            } else if (record.logSequenceNumber == appliedSequence) {
+                ContactPersistence.replay(contactStore, record);
+                appliedSequence = record.logSequenceNumber + 1;
+            } else {
+                throw new IOException("Replication gap. Expected sequence " + appliedSequence + " but got "
+                        + record.logSequenceNumber);
+            }
+        }
+    }
+
+
+    private static void sendPing(DataOutputStream out) throws IOException {
+        out.writeByte(ContactReplicationProtocol.PING);
+        out.writeLong(System.nanoTime());
+        out.flush();
+    }
+}
@@ -0,0 +1,365 @@
+package contactService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ships a ContactService's ordered stream of adds, updates and deletes to ContactReplicas over TCP.
+ *
+ * The log replicas follow is the service's ContactChangeStream. A connecting replica names the primary it last
+ * followed and the next sequence it needs. If that is this primary and the events are still in the stream's ring,
+ * it catches up from the log. Otherwise it first gets a full copy read from an MVCC ContactSnapshot, so writers
+ * never wait for it, followed by every event published since the copy began. Replaying those over the copy skips
+ * versions it already has, the rule crash recovery uses too. A replica that falls behind by more than the ring
+ * gets a new full copy the same way, so size the log for the longest replica pause to absorb.
+ *
+ * Records are encoded with ContactRecordCodec and sent up to 256 per frame, see ContactReplicationProtocol. Each
+ * replica connection has a sender thread and a thread reading its pings; accepting runs on one more thread.
+ */
+public final class ContactReplicationPrimary implements Closeable {
+
+    // events kept for replicas to catch up from, unless the service's change stream is already enabled
+    private static final int DEFAULT_LOG_CAPACITY = 1 << 16;
+
+    // wait after a failed accept, doubled on every further failure in a row, e.g. while out of file descriptors
+    private static final long INITIAL_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final ContactService service;
+    private final ContactChangeStream stream;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    // tells replicas whether their position belongs to this primary's stream
+    private final long primaryID;
+
+    private final Set<Socket> replicaSockets = ConcurrentHashMap.newKeySet();
+
+    // latest failure to accept a replica, null once one is accepted again
+    private volatile IOException acceptFailure;
+
+    private volatile boolean closed;
+
+
+    /*
+     * use start()
+     */
+    private ContactReplicationPrimary(ContactService service, ContactChangeStream stream, ServerSocket serverSocket) {
+        this.service = service;
+        this.stream = stream;
+        this.serverSocket = serverSocket;
+
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == ContactReplicationProtocol.NO_PRIMARY);
+        this.primaryID = id;
+
+        this.acceptThread = new Thread(this::acceptReplicas, "contact-replication-accept");
+        this.acceptThread.setDaemon(true);
+    }
+
+
+    /**
+     * starts serving replicas on every interface with a 65536 event log
+     * @param service service whose changes are replicated
+     * @param port port to listen on, 0 picks a free port
+     * @return ContactReplicationPrimary accepting replicas
+     * @throws IOException if the port cannot be bound
+     */
+    public static ContactReplicationPrimary start(ContactService service, int port) throws IOException {
+        return start(service, new InetSocketAddress(port), DEFAULT_LOG_CAPACITY);
+    }
+
+
+    /**
+     * starts serving replicas. Enables the service's change stream, changes made before are only sent as part of
+     * full copies.
+     * @param service service whose changes are replicated
+     * @param address address to listen on, port 0 picks a free port
+     * @param logCapacity events kept for catching up, a power of two. Ignored if the change stream is enabled.
+     * @return ContactReplicationPrimary accepting replicas
+     * @throws IOException if the address cannot be bound
+     */
+    public static ContactReplicationPrimary start(ContactService service, InetSocketAddress address, int logCapacity)
+            throws IOException {
+        if (service == null) {
+            throw new IllegalArgumentException("Invalid contact service. Expected not null");
+        }
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid replication address. Expected not null");
+        }
+
+        ContactChangeStream stream = service.enableChangeStream(logCapacity);
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(address);
+        } catch (IOException bindFailed) {
+            serverSocket.close();
+            throw bindFailed;
+        }
+
+        ContactReplicationPrimary primary = new ContactReplicationPrimary(service, stream, serverSocket);
+        primary.acceptThread.start();
+        return primary;
+    }
+
+
+    /**
+     * @return int port replicas connect to
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    /**
+     * @return long sequence the next change will get. A replica whose getAppliedSequence() reached it has every
+     *         change made before this call.
+     */
+    public long getNextSequence() {
+        return stream.getNextSequence();
+    }
+
+
+    /**
+     * @return int number of replicas connected
+     */
+    public int getReplicaCount() {
+        return replicaSockets.size();
+    }
+
+
+    /**
+     * @return IOException why accepting the latest replica connection failed, or null if the last accept worked.
+     *         Accepting is retried with a backoff of up to a second while it keeps failing.
+     */
+    public IOException getAcceptFailure() {
+        return acceptFailure;
+    }
+
+
+    /**
+     * stops accepting replicas and disconnects the connected ones. The service keeps its change stream.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : replicaSockets) {
+            socket.close(); // fails the sender's next write and the ping reader's read
+        }
+        acceptThread.interrupt(); // ends an accept backoff early
+        try {
+            acceptThread.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /*
+     * accept thread: starts a sender for every replica that connects
+     */
+    private void acceptReplicas() {
+        long backoffMillis = INITIAL_ACCEPT_BACKOFF_MILLIS;
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException acceptFailed) {
+                if (closed) {
+                    return;
+                }
+                acceptFailure = acceptFailed;
+                try {
+                    Thread.sleep(backoffMillis); // failures such as EMFILE repeat at once, do not spin on them
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_ACCEPT_BACKOFF_MILLIS);
+                continue;
+            }
+            backoffMillis = INITIAL_ACCEPT_BACKOFF_MILLIS;
+            acceptFailure = null;
+
+            replicaSockets.add(socket);
+            if (closed) { // close() may have missed the socket
+                replicaSockets.remove(socket);
+                closeQuietly(socket);
+                continue;
+            }
+            try {
+                socket.setTcpNoDelay(true); // frames are flushed whole, no point holding small ones back
+            } catch (IOException disconnected) { // the replica reconnects
+                replicaSockets.remove(socket);
+                closeQuietly(socket);
+                continue;
+            }
+            Thread sender = new Thread(() -> serveReplica(socket), "contact-replication-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+
+    /*
+     * sender thread of one replica: resumes it from the log or sends a full copy, then streams changes and marks
+     * until either side closes the connection
+     */
+    private void serveReplica(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(),
+                    ContactReplicationProtocol.STREAM_BUFFER_BYTES));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                    ContactReplicationProtocol.STREAM_BUFFER_BYTES));
+
+            if (in.readByte() != ContactReplicationProtocol.HELLO) {
+                throw new IOException("Expected a replica hello");
+            }
+            long followedPrimaryID = in.readLong();
+            long nextSequence = in.readLong();
+            if (in.readByte() != ContactReplicationProtocol.PING) { // sent with the hello, so the first mark has it
+                throw new IOException("Expected a replica ping");
+            }
+
+            AtomicLong latestPing = new AtomicLong(in.readLong());
+            Thread pingReader = new Thread(() -> readPings(socket, in, latestPing), "contact-replication-pings");
+            pingReader.setDaemon(true);
+            pingReader.start();
+
+            ByteBuffer batch = ContactReplicationProtocol.newBatchBuffer();
+            ContactChangeStream.Subscription subscription = followedPrimaryID == primaryID
+                    && nextSequence >= stream.getOldestSequence() && nextSequence <= stream.getNextSequence()
+                    ? stream.subscribe(nextSequence)
+                    : sendFullCopy(out, batch);
+
+            long markPing = latestPing.get();
+            long markSequence = stream.getNextSequence();
+            if (subscription.getPosition() >= markSequence) { // resumed with nothing missed, reads can start now
+                writeMark(out, markPing, markSequence);
+                markSequence = -1;
+            }
+            out.flush();
+
+            while (!closed) {
+                if (markSequence < 0) { // the ping is read first, so the mark covers every change made before it
+                    markPing = latestPing.get();
+                    markSequence = stream.getNextSequence();
+                }
+
+                List<ContactChangeEvent> events;
+                try {
+                    events = subscription.poll(ContactReplicationProtocol.MAX_BATCH_RECORDS,
+                            ContactReplicationProtocol.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (IllegalStateException overrun) { // fell out of the log
+                    subscription = sendFullCopy(out, batch);
+                    markSequence = -1;
+                    out.flush();
+                    continue;
+                }
+
+                for (ContactChangeEvent event : events) {
+                    ContactRecordCodec.writeMutation(batch, event.getMutation(), event.getSequence());
+                }
+                if (!events.isEmpty()) {
+                    ContactReplicationProtocol.writeRecords(out, batch);
+                }
+                if (subscription.getPosition() >= markSequence) {
+                    writeMark(out, markPing, markSequence);
+                    markSequence = -1;
+                }
+                out.flush();
+            }
+        } catch (IOException disconnected) { // the replica reconnects and resumes
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicaSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+
+    /*
+     * sends every contact of an MVCC snapshot, then the sequence to resume the log from
+     * @return Subscription positioned at the first event the copy may not include
+     */
+    private ContactChangeStream.Subscription sendFullCopy(DataOutputStream out, ByteBuffer batch) throws IOException {
+        ContactChangeStream.Subscription subscription = stream.subscribeFromLatest(); // before the snapshot opens
+        out.writeByte(ContactReplicationProtocol.SNAPSHOT_START);
+
+        try (ContactSnapshot snapshot = service.openSnapshot()) {
+            snapshot.forEach(value -> { // read from the store one contact at a time, never all at once
+                if (batch.remaining() < ContactRecordCodec.MAX_RECORD_BYTES) {
+                    try {
+                        ContactReplicationProtocol.writeRecords(out, batch);
+                    } catch (IOException disconnected) {
+                        throw new UncheckedIOException(disconnected);
+                    }
+                }
+                ContactRecordCodec.writeMutation(batch, ContactMutation.added(value),
+                        ContactReplicationProtocol.SNAPSHOT_RECORD_SEQUENCE);
+            });
+        } catch (UncheckedIOException disconnected) {
+            throw disconnected.getCause();
+        }
+        if (batch.position() > 0) {
+            ContactReplicationProtocol.writeRecords(out, batch);
+        }
+
+        out.writeByte(ContactReplicationProtocol.SNAPSHOT_END);
+        out.writeLong(primaryID);
+        out.writeLong(subscription.getPosition());
+        return subscription;
+    }
+
+
+    private static void writeMark(DataOutputStream out, long ping, long sequence) throws IOException {
+        out.writeByte(ContactReplicationProtocol.MARK);
+        out.writeLong(ping);
+        out.writeLong(sequence);
+    }
+
+
+    /*
+     * ping thread of one replica: keeps the latest ping for the sender's marks, closes the socket once the replica
+     * goes away so the sender stops too
+     */
+    private static void readPings(Socket socket, DataInputStream in, AtomicLong latestPing) {
+        try {
+            while (true) {
+                if (in.readByte() != ContactReplicationProtocol.PING) {
+                    throw new IOException("Expected a replica ping");
+                }
+                latestPing.set(in.readLong());
+            }
+        } catch (IOException disconnected) {
+            closeQuietly(socket);
+        }
+    }
+
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package contactService;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * frames exchanged between a ContactReplicationPrimary and its ContactReplicas over one TCP connection.
+ *
+ * Every frame is a type byte followed by its fields, big endian:
+ *   replica to primary
+ *     HELLO           long primaryID | long nextSequence    once, right after connecting
+ *     PING            long replicaNanos                     after HELLO and after every MARK
+ *   primary to replica
+ *     SNAPSHOT_START                                        a full copy follows, start from an empty store
+ *     RECORDS         int byteLength | records              ContactRecordCodec mutation records back to back
+ *     SNAPSHOT_END    long primaryID | long nextSequence    the copy is complete, log records follow from here
+ *     MARK            long replicaNanos | long sequence     every record before sequence has been sent
+ *
+ * Log records carry their change stream sequence as the codec's log sequence number, records of a full copy carry
+ * SNAPSHOT_RECORD_SEQUENCE. A MARK echoes the latest PING the primary had received before it read the stream's next
+ * sequence, so a replica that has applied up to that sequence holds every change made before it sent the ping, by
+ * its own clock. That bounds staleness without comparing clocks between machines.
+ */
+final class ContactReplicationProtocol {
+
+    static final byte HELLO = 1;
+    static final byte PING = 2;
+    static final byte SNAPSHOT_START = 3;
+    static final byte RECORDS = 4;
+    static final byte SNAPSHOT_END = 5;
+    static final byte MARK = 6;
+
+    // primaryID of a replica that has never loaded a full copy, never handed out by a primary
+    static final long NO_PRIMARY = 0;
+
+    // replicaNanos of a MARK sent before any PING arrived
+    static final long NO_PING = Long.MIN_VALUE;
+
+    // log sequence number of the records in a full copy
+    static final long SNAPSHOT_RECORD_SEQUENCE = -1;
+
+    // records per RECORDS frame at most
+    static final int MAX_BATCH_RECORDS = 256;
+
+    // longest a primary waits for new changes before it sends a MARK anyway
+    static final long HEARTBEAT_MILLIS = 50;
+
+    // socket buffer per direction
+    static final int STREAM_BUFFER_BYTES = 1 << 16;
+
+
+    /*
+     * static helpers only
+     */
+    private ContactReplicationProtocol() {
+    }
+
+
+    /**
+     * @return ByteBuffer big enough for MAX_BATCH_RECORDS records of any size
+     */
+    static ByteBuffer newBatchBuffer() {
+        return ByteBuffer.allocate(MAX_BATCH_RECORDS * ContactRecordCodec.MAX_RECORD_BYTES);
+    }
+
+
+    /**
+     * sends the records encoded into a batch buffer as one RECORDS frame and clears the buffer
+     * @param out connection to the replica, not flushed
+     * @param batch heap buffer filled from position 0
+     */
+    static void writeRecords(DataOutputStream out, ByteBuffer batch) throws IOException {
+        out.writeByte(RECORDS);
+        out.writeInt(batch.position());
+        out.write(batch.array(), 0, batch.position());
+        batch.clear();
+    }
+
+
+    /**
+     * reads the body of a RECORDS frame into a batch buffer
+     * @param in connection from the primary, positioned after the frame type
+     * @param batch buffer from newBatchBuffer(), left ready to decode
+     */
+    static void readRecords(DataInputStream in, ByteBuffer batch) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > batch.capacity()) {
+            throw new IOException("Invalid replication batch of " + length + " bytes");
+        }
+        batch.clear();
+        in.readFully(batch.array(), 0, length);
+        batch.limit(length);
+    }
+}
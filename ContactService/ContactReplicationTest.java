@@ -0,0 +1,268 @@
+package contactService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for primary to replica replication over local TCP, in process and with replicas in their own JVMs
+ */
+public class ContactReplicationTest {
+
+    private ContactStore primaryStore;
+    private ContactService primaryService;
+    private ContactReplicationPrimary primary;
+    private final List<ContactReplica> replicas = new ArrayList<ContactReplica>();
+
+
+    @BeforeEach
+    void setUp() {
+        primaryStore = new ConcurrentContactStore();
+        primaryService = new ContactService(primaryStore, new TimestampContactIdGenerator(25));
+        primaryService.addContacts(records(500, "Before"));
+    }
+
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (ContactReplica replica : replicas) {
+            replica.close();
+        }
+        if (primary != null) {
+            primary.close();
+        }
+    }
+
+
+    private static List<ContactRecord> records(int count, String lastName) {
+        List<ContactRecord> records = new ArrayList<ContactRecord>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new ContactRecord("First" + i, lastName, String.format("555%07d", i), i + " Replica Rd"));
+        }
+        return records;
+    }
+
+
+    private void startPrimary(int logCapacity) throws IOException {
+        primary = ContactReplicationPrimary.start(primaryService,
+                new InetSocketAddress("localhost", 0), logCapacity);
+    }
+
+
+    private ContactReplica connectReplica(long maxStalenessMillis) {
+        ContactReplica replica = ContactReplica.connect(new InetSocketAddress("localhost", primary.getPort()),
+                maxStalenessMillis, TimeUnit.MILLISECONDS);
+        replicas.add(replica);
+        return replica;
+    }
+
+
+    private static Map<String, String> contents(ContactStore store) {
+        Map<String, String> contents = new HashMap<String, String>();
+        for (Contact contact : store.asList()) {
+            contents.put(contact.getContactID(), contact.getVersion() + " " + contact.getFirstName() + " "
+                    + contact.getLastName() + " " + contact.getPhoneNumber() + " " + contact.getAddress());
+        }
+        return contents;
+    }
+
+
+    /*
+     * updates, deletes and adds a few contacts on the primary
+     * @return String[] an updated contactID and a deleted contactID
+     */
+    private String[] writeSome(String lastName) {
+        List<Contact> contacts = primaryStore.asList();
+        String updatedID = contacts.get(0).getContactID();
+        String deletedID = contacts.get(1).getContactID();
+
+        primaryService.updateContactLastName(updatedID, lastName);
+        primaryService.updateContactFirstName(updatedID, "Updated");
+        primaryService.deleteExistingContact(deletedID);
+        primaryService.addContacts(records(20, lastName));
+        return new String[] { updatedID, deletedID };
+    }
+
+
+    /**
+     * Asserts that a replica loads a full copy, follows later changes in order, and after a dropped connection
+     * catches up from the log without another full copy
+     */
+    @Test
+    void replicaCatchesUpFromLogAfterFullCopy() throws Exception {
+        startPrimary(1 << 12);
+        ContactReplica replica = connectReplica(5000);
+        String[] changed = writeSome("Streamed");
+
+        assertTrue(replica.awaitSequence(primary.getNextSequence(), 10, TimeUnit.SECONDS));
+        assertEquals(contents(primaryStore), contents(replica.getContactStore()));
+        assertEquals("Streamed", replica.findContactObject(changed[0]).getLastName());
+        assertThrows(IllegalArgumentException.class, () -> replica.findContactObject(changed[1]));
+        assertEquals(1, replica.getFullCopyCount());
+
+        replica.dropConnection();
+        writeSome("WhileAway");
+        assertTrue(replica.awaitSequence(primary.getNextSequence(), 10, TimeUnit.SECONDS));
+        assertEquals(contents(primaryStore), contents(replica.getContactStore()));
+        assertEquals(1, replica.getFullCopyCount(), "the log still had every missed change");
+    }
+
+
+    /**
+     * Asserts that a replica ends up identical to the primary while writers run, even when it falls out of a tiny
+     * log and has to reload full copies
+     */
+    @Test
+    void replicaConvergesUnderConcurrentWrites() throws Exception {
+        startPrimary(16);
+        ContactReplica replica = connectReplica(5000);
+
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 50; round++) {
+                writeSome("Round" + round);
+            }
+        });
+        writer.start();
+        writer.join();
+
+        assertTrue(replica.awaitSequence(primary.getNextSequence(), 20, TimeUnit.SECONDS));
+        assertEquals(contents(primaryStore), contents(replica.getContactStore()));
+    }
+
+
+    /**
+     * Asserts that reads answer while the replica is known to be fresh and are refused once it cannot be
+     */
+    @Test
+    void staleReplicaRefusesReads() throws Exception {
+        startPrimary(1 << 12);
+        ContactReplica replica = connectReplica(300);
+        String contactID = primaryStore.asList().get(2).getContactID();
+
+        assertTrue(replica.awaitSequence(primary.getNextSequence(), 10, TimeUnit.SECONDS));
+        assertTrue(replica.getStalenessNanos() <= TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals("Before", replica.findContactObject(contactID).getLastName());
+        assertTrue(replica.isConnected());
+
+        primary.close();
+        primary = null;
+        Thread.sleep(400);
+        assertTrue(replica.getStalenessNanos() > TimeUnit.MILLISECONDS.toNanos(300));
+        assertThrows(IllegalStateException.class, () -> replica.findContactObject(contactID));
+    }
+
+
+    /**
+     * Asserts that a promoted replica keeps the primary's contacts, takes writes, and can serve replicas itself
+     */
+    @Test
+    void promotedReplicaKeepsContactsAndTakesWrites() throws Exception {
+        startPrimary(1 << 12);
+        ContactReplica replica = connectReplica(5000);
+        assertTrue(replica.awaitSequence(primary.getNextSequence(), 10, TimeUnit.SECONDS));
+        primary.close();
+        primary = null;
+
+        ContactService promoted = replica.promote();
+        assertEquals(contents(primaryStore), contents(promoted.getContactStore()));
+        String addedID = promoted.addNewContact("After", "Failover", "5551112222", "1 New Primary Way")
+                .getContactID();
+
+        primaryService = promoted;
+        primaryStore = promoted.getContactStore();
+        startPrimary(1 << 12);
+        ContactReplica follower = connectReplica(5000);
+        assertTrue(follower.awaitSequence(primary.getNextSequence(), 10, TimeUnit.SECONDS));
+        assertEquals("Failover", follower.findContactObject(addedID).getLastName());
+        assertEquals(501, follower.size());
+    }
+
+
+    /**
+     * Asserts that replicas running as separate JVMs follow the primary, and that a replica process started after
+     * another was killed loads a full copy that includes what it missed
+     */
+    @Test
+    void replicaProcessesFollowPrimaryAcrossRestarts() throws Exception {
+        startPrimary(1 << 12);
+        ReplicaProcess first = new ReplicaProcess(primary.getPort());
+        ReplicaProcess second = new ReplicaProcess(primary.getPort());
+        try {
+            String[] changed = writeSome("Processes");
+            long sequence = primary.getNextSequence();
+            int size = primaryStore.size();
+
+            for (ReplicaProcess process : new ReplicaProcess[] { first, second }) {
+                assertEquals("applied " + sequence + " " + size, process.command("await " + sequence));
+                assertEquals("found Updated Processes 2", process.command("get " + changed[0]));
+                assertEquals("missing", process.command("get " + changed[1]));
+            }
+
+            first.kill();
+            changed = writeSome("AfterKill");
+            sequence = primary.getNextSequence();
+            first = new ReplicaProcess(primary.getPort());
+
+            String expected = "found Updated AfterKill " + primaryService.findContactObject(changed[0]).getVersion();
+            assertEquals("applied " + sequence + " " + primaryStore.size(), first.command("await " + sequence));
+            assertEquals(expected, first.command("get " + changed[0]));
+            assertEquals("applied " + sequence + " " + primaryStore.size(), second.command("await " + sequence));
+            assertEquals(expected, second.command("get " + changed[0]));
+        } finally {
+            first.kill();
+            second.kill();
+        }
+    }
+
+
+    /*
+     * a ContactReplica main() in its own JVM, driven over its standard input and output
+     */
+    private static final class ReplicaProcess {
+
+        private final Process process;
+        private final Writer commands;
+        private final BufferedReader replies;
+
+
+        ReplicaProcess(int port) throws IOException {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    "contactService.ContactReplica", "localhost", Integer.toString(port), "5000")
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            commands = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            replies = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(replies.readLine().startsWith("following localhost:"));
+        }
+
+
+        String command(String line) throws IOException {
+            commands.write(line + "\n");
+            commands.flush();
+            return replies.readLine();
+        }
+
+
+        void kill() throws InterruptedException {
+            process.destroyForcibly();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+}
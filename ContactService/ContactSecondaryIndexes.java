@@ -0,0 +1,154 @@
+package contactService;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * secondary lookups ContactService keeps up to date from its mutation events: an exact phone number index and
+ * case insensitive sorted indexes on last and first name for prefix search.
+ *
+ * Entries are only hints. Events for one contact arrive in version order, but events for different contacts are
+ * applied concurrently and a contact can change between the index lookup and the read, so callers resolve each
+ * contactID through the store and recheck the field before returning a contact. The same check hides entries for
+ * contacts deleted after the lookup.
+ */
+final class ContactSecondaryIndexes implements ContactMutationListener {
+
+    private final PhoneNumberIndex phoneNumbers = new PhoneNumberIndex();
+    private final NamePrefixIndex lastNames = new NamePrefixIndex();
+    private final NamePrefixIndex firstNames = new NamePrefixIndex();
+
+
+    @Override
+    public void onMutation(ContactMutation mutation) {
+        ContactValue previousValue = mutation.getPreviousValue();
+        ContactValue currentValue = mutation.getCurrentValue();
+
+        if (previousValue == null) {
+            index(currentValue);
+        } else if (currentValue == null) {
+            unindex(previousValue);
+        } else { // an update touches only the fields that changed
+            String contactID = currentValue.getContactID();
+
+            if (!previousValue.getPhoneNumber().equals(currentValue.getPhoneNumber())) {
+                phoneNumbers.remove(previousValue.getPhoneNumber(), contactID);
+                phoneNumbers.add(currentValue.getPhoneNumber(), contactID);
+            }
+            if (!previousValue.getLastName().equals(currentValue.getLastName())) {
+                lastNames.remove(previousValue.getLastName(), contactID);
+                lastNames.add(currentValue.getLastName(), contactID);
+            }
+            if (!previousValue.getFirstName().equals(currentValue.getFirstName())) {
+                firstNames.remove(previousValue.getFirstName(), contactID);
+                firstNames.add(currentValue.getFirstName(), contactID);
+            }
+        }
+    }
+
+
+    /**
+     * adds a contact to every index, adding one that is already indexed changes nothing
+     * @param value contact to index
+     */
+    void index(ContactValue value) {
+        String contactID = value.getContactID();
+        phoneNumbers.add(value.getPhoneNumber(), contactID);
+        lastNames.add(value.getLastName(), contactID);
+        firstNames.add(value.getFirstName(), contactID);
+    }
+
+
+    /**
+     * @param value contact to drop from every index
+     */
+    void unindex(ContactValue value) {
+        String contactID = value.getContactID();
+        phoneNumbers.remove(value.getPhoneNumber(), contactID);
+        lastNames.remove(value.getLastName(), contactID);
+        firstNames.remove(value.getFirstName(), contactID);
+    }
+
+
+    /**
+     * @param phoneNumber exact number to look up
+     * @return List of contactIDs that may have the number
+     */
+    List<String> phoneNumberCandidates(String phoneNumber) {
+        return phoneNumbers.get(phoneNumber);
+    }
+
+
+    /**
+     * @return NamePrefixIndex over last names
+     */
+    NamePrefixIndex lastNames() {
+        return lastNames;
+    }
+
+
+    /**
+     * @return NamePrefixIndex over first names
+     */
+    NamePrefixIndex firstNames() {
+        return firstNames;
+    }
+
+
+    /**
+     * @param name name as stored on the contact
+     * @return the case folded form names are indexed and compared by
+     */
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * sorted set of "normalized name \0 contactID" keys. Names never contain \0, so every key for one name sorts
+     * directly after the name and a prefix maps to one contiguous range of the set.
+     */
+    static final class NamePrefixIndex {
+
+        private static final char SEPARATOR = '\0';
+        private static final char RANGE_END = '\uffff';
+
+        private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<String>();
+
+
+        void add(String name, String contactID) {
+            keys.add(normalize(name) + SEPARATOR + contactID);
+        }
+
+
+        void remove(String name, String contactID) {
+            keys.remove(normalize(name) + SEPARATOR + contactID);
+        }
+
+
+        /**
+         * @param prefix name prefix, matched case insensitively
+         * @param exact true to match the whole name rather than a prefix
+         * @return Iterator over candidate contactIDs in name then contactID order, weakly consistent
+         */
+        Iterator<String> candidates(String prefix, boolean exact) {
+            String from = exact ? normalize(prefix) + SEPARATOR : normalize(prefix);
+            Iterator<String> range = keys.subSet(from, true, from + RANGE_END, false).iterator();
+
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return range.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    String key = range.next();
+                    return key.substring(key.lastIndexOf(SEPARATOR) + 1);
+                }
+            };
+        }
+    }
+}
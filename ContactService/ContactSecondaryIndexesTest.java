@@ -0,0 +1,213 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the phone number and name indexes kept by ContactService
+ */
+public class ContactSecondaryIndexesTest {
+
+    private ContactService testContactService;
+
+
+    /**
+     * creates an indexed service over a fresh concurrent store for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testContactService = new ContactService(new ConcurrentContactStore(), new TimestampContactIdGenerator(5));
+        testContactService.enableSecondaryIndexes();
+    }
+
+
+    /**
+     * adds contacts in one batch
+     * @return List of the new contactIDs in row order
+     */
+    private List<String> addContacts(ContactRecord... records) {
+        return testContactService.addContacts(Arrays.asList(records)).getAddedContactIDs();
+    }
+
+
+    private static List<String> contactIDsOf(List<Contact> contacts) {
+        List<String> contactIDs = new ArrayList<String>(contacts.size());
+        for (Contact contact : contacts) {
+            contactIDs.add(contact.getContactID());
+        }
+        return contactIDs;
+    }
+
+
+    /**
+     * Asserts that phone lookups follow adds, updates and deletes, including numbers shared by contacts
+     */
+    @Test
+    void phoneNumberIndexFollowsMutations() {
+        List<String> ids = addContacts(
+                new ContactRecord("Ann", "Lee", "5551234567", "1 Main St"),
+                new ContactRecord("Bob", "Lee", "5551234567", "1 Main St"),
+                new ContactRecord("Cal", "Ng", "5559999999", "2 Main St"));
+
+        assertEquals(2, testContactService.findContactsByPhoneNumber("5551234567").size());
+        assertEquals(ids.subList(2, 3), contactIDsOf(testContactService.findContactsByPhoneNumber("5559999999")));
+
+        testContactService.updateContactPhoneNumber(ids.get(0), "5550000000");
+        assertEquals(ids.subList(1, 2), contactIDsOf(testContactService.findContactsByPhoneNumber("5551234567")));
+        assertEquals(ids.subList(0, 1), contactIDsOf(testContactService.findContactsByPhoneNumber("5550000000")));
+
+        testContactService.deleteExistingContact(ids.get(1));
+        assertTrue(testContactService.findContactsByPhoneNumber("5551234567").isEmpty());
+        assertTrue(testContactService.findContactsByPhoneNumber("0000000000").isEmpty());
+    }
+
+
+    /**
+     * Asserts that numbers which are not all digits fall back to the string keyed map
+     */
+    @Test
+    void nonNumericPhoneNumbersAreFound() {
+        List<String> ids = addContacts(new ContactRecord("Ann", "Lee", "555-123-45", "1 Main St"));
+
+        assertEquals(ids, contactIDsOf(testContactService.findContactsByPhoneNumber("555-123-45")));
+
+        testContactService.deleteExistingContact(ids.get(0));
+        assertTrue(testContactService.findContactsByPhoneNumber("555-123-45").isEmpty());
+    }
+
+
+    /**
+     * Asserts that last name search is case insensitive, sorted by name and bounded by the limit
+     */
+    @Test
+    void lastNamePrefixSearchIsCaseInsensitiveSortedAndLimited() {
+        List<String> ids = addContacts(
+                new ContactRecord("Ann", "Smithers", "5550000001", "1 Main St"),
+                new ContactRecord("Bob", "smith", "5550000002", "1 Main St"),
+                new ContactRecord("Cal", "Smyth", "5550000003", "1 Main St"),
+                new ContactRecord("Dee", "Jones", "5550000004", "1 Main St"));
+
+        assertEquals(Arrays.asList(ids.get(1), ids.get(0)),
+                contactIDsOf(testContactService.findContactsByLastNamePrefix("SMITH", 10)));
+        assertEquals(Arrays.asList(ids.get(1), ids.get(0), ids.get(2)),
+                contactIDsOf(testContactService.findContactsByLastNamePrefix("sm", 10)));
+        assertEquals(Arrays.asList(ids.get(1)), contactIDsOf(testContactService.findContactsByLastNamePrefix("sm", 1)));
+        assertEquals(4, testContactService.findContactsByLastNamePrefix("", 10).size());
+
+        assertEquals(Arrays.asList(ids.get(1)), contactIDsOf(testContactService.findContactsByLastName("Smith")));
+    }
+
+
+    /**
+     * Asserts that name updates and deletes move and drop index entries
+     */
+    @Test
+    void nameIndexesFollowMutations() {
+        List<String> ids = addContacts(new ContactRecord("Ann", "Smith", "5550000001", "1 Main St"));
+
+        testContactService.updateContactLastName(ids.get(0), "Jones");
+        assertTrue(testContactService.findContactsByLastNamePrefix("Smi", 10).isEmpty());
+        assertEquals(ids, contactIDsOf(testContactService.findContactsByLastNamePrefix("Jo", 10)));
+
+        long version = testContactService.findContactObject(ids.get(0)).getVersion();
+        assertTrue(testContactService.updateContactFirstName(ids.get(0), "Beth", version));
+        assertTrue(testContactService.findContactsByFirstNamePrefix("An", 10).isEmpty());
+        assertEquals(ids, contactIDsOf(testContactService.findContactsByFirstNamePrefix("be", 10)));
+
+        testContactService.deleteExistingContact(ids.get(0));
+        assertTrue(testContactService.findContactsByLastNamePrefix("Jo", 10).isEmpty());
+        assertTrue(testContactService.findContactsByFirstNamePrefix("Be", 10).isEmpty());
+    }
+
+
+    /**
+     * Asserts that enabling the indexes picks up contacts added before, and that lookups need them enabled
+     */
+    @Test
+    void enablingIndexesPicksUpExistingContacts() {
+        ContactService unindexedService = new ContactService(new HashContactStore(), new TimestampContactIdGenerator(6));
+        unindexedService.addNewContact("Ann", "Smith", "5550000001", "1 Main St");
+
+        assertThrows(IllegalStateException.class, () -> unindexedService.findContactsByPhoneNumber("5550000001"));
+
+        unindexedService.enableSecondaryIndexes();
+        unindexedService.enableSecondaryIndexes(); // second call is a no op
+        assertEquals(1, unindexedService.findContactsByPhoneNumber("5550000001").size());
+        assertEquals(1, unindexedService.findContactsByLastNamePrefix("sm", 10).size());
+
+        assertThrows(IllegalArgumentException.class, () -> unindexedService.findContactsByLastNamePrefix(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> unindexedService.findContactsByFirstNamePrefix("A", 0));
+    }
+
+
+    /**
+     * Asserts that the primitive phone table keeps every entry reachable through growth and removals
+     */
+    @Test
+    void phoneNumberIndexKeepsEntriesThroughGrowthAndRemovals() {
+        PhoneNumberIndex index = new PhoneNumberIndex();
+        int numbers = 20000;
+
+        for (int i = 0; i < numbers; i++) {
+            index.add(String.format("%010d", i), "id" + i);
+        }
+        for (int i = 0; i < numbers; i += 2) {
+            index.remove(String.format("%010d", i), "id" + i);
+        }
+        for (int i = 0; i < numbers; i++) {
+            List<String> contactIDs = index.get(String.format("%010d", i));
+            assertEquals(i % 2 == 0 ? List.of() : List.of("id" + i), contactIDs);
+        }
+    }
+
+
+    /**
+     * Asserts that the indexes agree with the store after threads concurrently update phone numbers
+     */
+    @Test
+    void indexesStayConsistentUnderConcurrentUpdates() throws Exception {
+        int threads = 4;
+        int contactsPerThread = 500;
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < threads * contactsPerThread; i++) {
+            records.add(new ContactRecord("Ann", "Lee", String.format("%010d", i), "1 Main St"));
+        }
+        List<String> ids = testContactService.addContacts(records).getAddedContactIDs();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    for (int round = 1; round <= 5; round++) {
+                        for (int i = thread; i < ids.size(); i += threads) {
+                            testContactService.updateContactPhoneNumber(ids.get(i), String.format("%02d%08d", round, i));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(List.of(ids.get(i)),
+                    contactIDsOf(testContactService.findContactsByPhoneNumber(String.format("%02d%08d", 5, i))));
+            assertTrue(testContactService.findContactsByPhoneNumber(String.format("%02d%08d", 4, i)).isEmpty());
+        }
+    }
+}
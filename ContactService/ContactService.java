@@ -1,29 +1,182 @@
 package contactService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 /*
- * Singleton service class to manage Contact class objects
+ * Singleton service class to manage Contact class objects.
+ * getServiceInstance() is meant for single threaded callers, getConcurrentServiceInstance() can be shared by
+ * request handler threads: lookups never lock and writes lock one stripe of contactIDs at a time.
+ * getShardedServiceInstance() is also thread safe and spreads contacts over independently locked packed shards,
+ * which take Latin-1 text only.
+ * ContactTenants hosts many isolated thread safe instances, one per tenant, in the same JVM.
  * @author E. Johnson
  */
 public class ContactService {
 
     private static final int MAX_VAR_CHAR_LENGTH = 10;
 
-    // A list of the Contact Objects
-    private static List<Contact> contactList = new ArrayList<Contact>();
+    // system property holding this process's node number for contact ID generation
+    private static final String NODE_ID_PROPERTY = "contactService.nodeId";
 
-    // creates a single static ContactService class object
-    private static ContactService activeServiceInstance = null;
+    // system property overriding the number of shards used by getShardedServiceInstance()
+    private static final String SHARD_COUNT_PROPERTY = "contactService.shards";
+
+    // system property overriding how many seconds addNewContact remembers an idempotency key
+    private static final String IDEMPOTENCY_KEY_TTL_PROPERTY = "contactService.idempotencyKeyTtlSeconds";
+
+    // idempotency keys are remembered for ten minutes unless the property says otherwise
+    private static final long DEFAULT_IDEMPOTENCY_KEY_TTL_SECONDS = 600;
+
+    // longest idempotency key addNewContact accepts
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    // number of rows a bulk add validates and inserts at a time, bounds memory for very large inputs
+    private static final int BULK_CHUNK_SIZE = 65536;
+
+    // rows per fork join task when validating a bulk chunk
+    private static final int BULK_VALIDATION_THRESHOLD = 1024;
+
+    // number of write locks contactIDs are spread over, must be a power of two
+    private static final int WRITE_LOCK_STRIPES = 64;
+
+    // counters of lock free updates in progress, a power of two. Stripes share them, so tenants stay small.
+    private static final int LOCK_FREE_COUNTERS = 16;
+
+    // ints from one lock free update counter to the next, keeps each on its own cache line
+    private static final int LOCK_FREE_COUNTER_STRIDE = 16;
+
+    // enableMetrics() measures one call in this many
+    private static final int DEFAULT_LATENCY_SAMPLE_INTERVAL = 64;
+
+    // events kept by enableChangeStream()
+    private static final int DEFAULT_CHANGE_STREAM_CAPACITY = 1 << 12;
+
+    // snapshot contacts per fork join task when a query scans
+    private static final int QUERY_SCAN_THRESHOLD = 16384;
+
+    // size of the reusable buffer each export writer encodes into
+    private static final int EXPORT_BUFFER_BYTES = 1 << 18;
+
+    // one generator per process so service instances sharing a node number never hand out the same ID
+    static final ContactIdGenerator DEFAULT_ID_GENERATOR =
+            new TimestampContactIdGenerator(Integer.getInteger(NODE_ID_PROPERTY, 0));
+
+    // hash indexed storage for the Contact Objects
+    private final ContactStore contactStore;
+
+    // strategy that hands out new contact IDs
+    private final ContactIdGenerator contactIdGenerator;
+
+    // the store keeps fields as Latin-1 bytes, so other text is rejected along with the field checks
+    private final boolean latin1Only;
+
+    // striped locks serializing writes to the same contactID
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+
+    // compare and set updates in progress without their write lock, see beginLockFreeUpdate()
+    private final AtomicIntegerArray lockFreeUpdates =
+            new AtomicIntegerArray(LOCK_FREE_COUNTERS * LOCK_FREE_COUNTER_STRIDE);
+
+    // bulk adds insert and publish a chunk under the read lock, so export snapshots can wait for chunks in flight
+    private final ReentrantReadWriteLock bulkAddLock = new ReentrantReadWriteLock();
+
+    // observers told about every add, update and delete, e.g. the write ahead log
+    private final List<ContactMutationListener> mutationListeners = new CopyOnWriteArrayList<ContactMutationListener>();
+
+    // contacts created per client idempotency key, so retried adds do not create duplicates
+    private final ContactIdempotencyTable idempotencyKeys =
+            new ContactIdempotencyTable(idempotencyKeyTtlNanos(), System::nanoTime);
+
+    // phone number and name lookups, null until enableSecondaryIndexes() is called
+    private volatile ContactSecondaryIndexes secondaryIndexes;
+
+    // call counters and latency histograms, null until enableMetrics() is called
+    private volatile ContactServiceMetrics metrics;
+
+    // sequenced event ring for downstream consumers, null until enableChangeStream() is called
+    private volatile ContactChangeStream changeStream;
+
+    // trigram index for typo tolerant name search, null until enableFuzzyNameSearch() is called
+    private volatile ContactFuzzyNameIndex fuzzyNameIndex;
+
+    // values kept for open snapshots, null until openSnapshot() is first called
+    private volatile ContactVersionChains versionChains;
+
+
+    /*
+     * lazily creates the single threaded service instance, class initialization publishes it safely
+     */
+    private static final class ServiceInstanceHolder {
+        private static final ContactService INSTANCE = new ContactService(new HashContactStore(), DEFAULT_ID_GENERATOR);
+    }
+
+
+    /*
+     * lazily creates the thread safe service instance, class initialization publishes it safely
+     */
+    private static final class ConcurrentServiceInstanceHolder {
+        private static final ContactService INSTANCE =
+                new ContactService(new ConcurrentContactStore(), DEFAULT_ID_GENERATOR);
+    }
+
+
+    /*
+     * lazily creates the sharded service instance, class initialization publishes it safely
+     */
+    private static final class ShardedServiceInstanceHolder {
+        private static final ContactService INSTANCE = new ContactService(
+                new ShardedContactStore(defaultShardCount(), PackedContactStore::new), DEFAULT_ID_GENERATOR);
+    }
 
 
     /*
-     * private constructor to prevent creation of additional/empty object instances
+     * constructs a contact service over a specific store and ID generator
+     * @param ContactStore storage for the service's contacts
+     * @param ContactIdGenerator source of new contact IDs
      */
-    private ContactService() {
+    ContactService(ContactStore contactStore, ContactIdGenerator contactIdGenerator) {
+        if (contactStore == null) {
+            throw new IllegalArgumentException("Invalid contact store. Expected not null");
+        }
+        if (contactIdGenerator == null) {
+            throw new IllegalArgumentException("Invalid contact ID generator. Expected not null");
+        }
+        this.contactStore = contactStore;
+        this.contactIdGenerator = contactIdGenerator;
+        this.latin1Only = contactStore.requiresLatin1();
+
+        for (int i = 0; i < WRITE_LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
     }
 
 
@@ -32,38 +185,80 @@ public class ContactService {
      * @return the contact service instance (new or existing)
      */
     public static ContactService getServiceInstance() {
+        return ServiceInstanceHolder.INSTANCE; // holder class is initialized on first call only
+    }
+
+
+    /*
+     * Return the thread safe contact service, backed by a concurrent store
+     * @return the shared concurrent contact service instance
+     */
+    public static ContactService getConcurrentServiceInstance() {
+        return ConcurrentServiceInstanceHolder.INSTANCE;
+    }
+
+
+    /*
+     * Return the thread safe contact service backed by a sharded packed store. Writes to different shards never
+     * share a lock, so write throughput keeps growing with cores where a single packed store would serialize.
+     * Packed records hold Latin-1 text only: fields with other characters are rejected as NOT_LATIN_1 before a
+     * contact gets an ID, where the other instances accept them.
+     * @return the shared sharded contact service instance
+     */
+    public static ContactService getShardedServiceInstance() {
+        return ShardedServiceInstanceHolder.INSTANCE;
+    }
 
-        if (activeServiceInstance == null) { // if service instance does not exist
-            activeServiceInstance = new ContactService(); // creates a new instance
+
+    /*
+     * shard count from the system property, or four shards per core rounded up to a power of two
+     * @return int power of two shard count
+     */
+    static int defaultShardCount() {
+        int requested = Integer.getInteger(SHARD_COUNT_PROPERTY, 4 * Runtime.getRuntime().availableProcessors());
+        if (requested < 1) {
+            throw new IllegalStateException("Invalid " + SHARD_COUNT_PROPERTY + ". Expected a positive number");
         }
+        requested = Math.min(requested, ShardedContactStore.MAX_SHARDS);
+        int shardCount = Integer.highestOneBit(requested);
+        return shardCount < requested ? shardCount << 1 : shardCount;
+    }
 
-        return activeServiceInstance; // returns the existing or new service instance
+
+    /*
+     * @return long nanoseconds addNewContact remembers an idempotency key, from the system property if set
+     */
+    private static long idempotencyKeyTtlNanos() {
+        long seconds = Long.getLong(IDEMPOTENCY_KEY_TTL_PROPERTY, DEFAULT_IDEMPOTENCY_KEY_TTL_SECONDS);
+        if (seconds < 1) {
+            throw new IllegalStateException("Invalid " + IDEMPOTENCY_KEY_TTL_PROPERTY + ". Expected a positive number");
+        }
+        return TimeUnit.SECONDS.toNanos(seconds);
     }
 
 
     /*
-     * creates a new contact ID and checks to ensure not duplicate value
+     * creates a new contact ID from the service's ID generator
      * @return String newly generated ID
      */
     public String createUniqueContactID() {
-        String newContactID = null;
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            String newContactID = contactIdGenerator.nextContactID();
 
-        boolean idMatchFound;
-
-        do {
-            idMatchFound = false;
-            String rawUUIDString = UUID.randomUUID().toString().replace("-", ""); // creates random ID using UUID and removes any - symbols
-            newContactID = rawUUIDString.substring(0, MAX_VAR_CHAR_LENGTH); // shortens UUID to first 10 characters
-
-            for (Contact currentContactInstance : contactList) {    // iterates through list of contacts checking for matching contactID
-                if (currentContactInstance.getContactID().equals(newContactID)) {    // if contactID parameter is equal to contactID value of currentInstance
-                    idMatchFound = true; // sets matchfound to true
-                    break; // breaks for each loop to generate a new contactID
-                }
+            if (newContactID == null || newContactID.length() > MAX_VAR_CHAR_LENGTH) { // guards against misbehaving generators
+                throw new IllegalStateException("Invalid generated contactID. Expected not null & under 10 characters long");
             }
-        } while(idMatchFound); // continue looping for valid ID until no matches found
 
-        return newContactID;
+            succeeded = true;
+            return newContactID;
+        } finally {
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.CREATE_CONTACT_ID, startNanos, succeeded);
+            }
+        }
     }
 
     /*
@@ -71,25 +266,37 @@ public class ContactService {
      * @param String contact identifier
      */
     public Contact findContactObject(String contactID){
+        ContactServiceMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return lookupContact(contactID);
+        }
 
-        Contact contactObject = null; // creates a null contact object
-
+        long startNanos = metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            Contact contactObject = lookupContact(contactID);
+            succeeded = true;
+            return contactObject;
+        } finally {
+            metrics.record(ContactMetricsSnapshot.Operation.FIND_CONTACT, startNanos, succeeded);
+        }
+    }
 
-        // creates an iterator for Contact objects and assigns it the list of contacts to be iterated through
-        Iterator<Contact> contactIterator = contactList.iterator();
 
-        while (contactIterator.hasNext()) { // while there is a next object in arrayList
+    /*
+     * finds a contact for findContactObject and the update paths, which count their own calls
+     * @param String contact identifier
+     * @return the existing contact
+     */
+    private Contact lookupContact(String contactID) {
 
-            Contact currentContactInstance = contactIterator.next(); // currentContactInstance is assigned to next object in list
+        Contact contactObject = contactStore.get(contactID); // O(1) lookup through the store's contactID index
 
-            if (currentContactInstance.getContactID().equals(contactID)) {	// if contactID parameter is equal to contactID value of currentInstance
-                contactObject = currentContactInstance; // value of contact is assigned to the existing object
-            }
-        }
         // if no object is found
         if (contactObject == null) {
+            recordContactNotFound();
             // throws an exception instead of returning a null contact object
-            throw new IllegalArgumentException("Contact not found");
+            throw new ContactNotFoundException();
         }
 
         // return the existing contact instance to the caller
@@ -103,18 +310,250 @@ public class ContactService {
      * @param String last name
      * @param String phoneNumber
      * @param String address
+     * @return Contact as created, with its new contactID
+     */
+    public Contact addNewContact(String firstName, String lastName, String phoneNumber, String address){
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            requireValid(checkStorable(ContactValidator.checkFields(firstName, lastName, phoneNumber, address),
+                    firstName, lastName, phoneNumber, address)); // before an ID is used up
+            Contact newContact = new Contact(createUniqueContactID(), firstName, lastName, phoneNumber, address);
+
+            ReentrantLock writeLock = writeLockFor(newContact.getContactID());
+            writeLock.lock(); // orders the add event before any update to the new contact
+            try {
+                recordAdd(newContact.getContactID());
+                contactStore.add(newContact); // add newly instantiated contact object to the store
+                publishMutation(ContactMutation.added(newContact.getValue()));
+            } finally {
+                writeLock.unlock();
+            }
+            succeeded = true;
+            return newContact;
+        } finally {
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.ADD_CONTACT, startNanos, succeeded);
+            }
+        }
+    }
+
+    /*
+     * creates a new contact object at most once per idempotency key. A retry with a key seen in the last
+     * contactService.idempotencyKeyTtlSeconds (600 by default) returns the contact the first call created instead of
+     * adding another, and a retry racing the first call waits for it.
+     * @param String first name
+     * @param String last name
+     * @param String phoneNumber
+     * @param String address
+     * @param String client chosen key of 1 to 255 characters, or null to always add
+     * @return Contact created by the first call with this key
+     */
+    public Contact addNewContact(String firstName, String lastName, String phoneNumber, String address,
+                                 String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return addNewContact(firstName, lastName, phoneNumber, address);
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid idempotency key. Expected 1 to "
+                    + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        return idempotencyKeys.addOnce(idempotencyKey, new ContactRecord(firstName, lastName, phoneNumber, address),
+                () -> addNewContact(firstName, lastName, phoneNumber, address));
+    }
+
+    /*
+     * adds many contacts in one call. Rows are validated in parallel, IDs are reserved in blocks and each chunk of
+     * valid rows goes into the store as a single batch. Invalid rows are reported instead of aborting the batch.
+     * @param Iterable rows to add
+     * @return ContactBatchResult with the new IDs and any rejected rows
+     */
+    public ContactBatchResult addContacts(Iterable<ContactRecord> records) {
+        if (records == null) {
+            throw new IllegalArgumentException("Invalid contact records. Expected not null");
+        }
+
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            List<String> addedContactIDs = new ArrayList<String>();
+            List<ContactBatchResult.RowFailure> failures = new ArrayList<ContactBatchResult.RowFailure>();
+            ContactRecord[] chunk = new ContactRecord[BULK_CHUNK_SIZE];
+            Iterator<ContactRecord> recordIterator = records.iterator();
+            long chunkStartRow = 0;
+
+            while (recordIterator.hasNext()) {
+                int chunkSize = 0;
+                while (chunkSize < BULK_CHUNK_SIZE && recordIterator.hasNext()) { // buffers one chunk of rows
+                    chunk[chunkSize++] = recordIterator.next();
+                }
+
+                addContactChunk(chunk, chunkSize, chunkStartRow, addedContactIDs, failures);
+                chunkStartRow += chunkSize;
+            }
+
+            succeeded = true;
+            return new ContactBatchResult(addedContactIDs, failures);
+        } finally {
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.ADD_CONTACTS, startNanos, succeeded);
+            }
+        }
+    }
+
+
+    /*
+     * adds many contacts from a stream, see addContacts(Iterable)
+     * @param Stream rows to add
+     * @return ContactBatchResult with the new IDs and any rejected rows
+     */
+    public ContactBatchResult addContacts(Stream<ContactRecord> records) {
+        if (records == null) {
+            throw new IllegalArgumentException("Invalid contact records. Expected not null");
+        }
+        return addContacts(records::iterator);
+    }
+
+
+    /*
+     * validates one chunk of rows, gives the valid ones IDs and inserts them
+     * @param ContactRecord[] buffered rows, only the first chunkSize are used
+     * @param int number of rows in the chunk
+     * @param long input row number of the first row in the chunk
+     * @param List collects the new contact IDs
+     * @param List collects the rejected rows
+     */
+    private void addContactChunk(ContactRecord[] chunk, int chunkSize, long chunkStartRow,
+                                 List<String> addedContactIDs, List<ContactBatchResult.RowFailure> failures) {
+        ContactValidationResult[] validationResults = new ContactValidationResult[chunkSize];
+        ForkJoinPool.commonPool().invoke(new ValidateRowsTask(chunk, validationResults, 0, chunkSize, latin1Only));
+
+        int validRows = 0;
+        for (int i = 0; i < chunkSize; i++) {
+            if (validationResults[i].isValid()) {
+                validRows++;
+            } else {
+                failures.add(new ContactBatchResult.RowFailure(chunkStartRow + i, validationResults[i]));
+                recordValidationFailure(validationResults[i]);
+            }
+        }
+
+        String[] newContactIDs = contactIdGenerator.nextContactIDs(validRows); // one reservation for the whole chunk
+        List<Contact> newContacts = new ArrayList<Contact>(validRows);
+        int nextID = 0;
+
+        for (int i = 0; i < chunkSize; i++) {
+            if (validationResults[i].isValid()) {
+                ContactRecord record = chunk[i]; // fields were checked by ValidateRowsTask, only the ID is new
+                String contactID = ContactValue.validateContactID(newContactIDs[nextID++]);
+                newContacts.add(new Contact(ContactValue.ofValidated(contactID, record.getFirstName(),
+                        record.getLastName(), record.getPhoneNumber(), record.getAddress())));
+                addedContactIDs.add(contactID);
+            }
+            chunk[i] = null; // lets the buffered row be collected
+        }
+
+        bulkAddLock.readLock().lock();
+        try {
+            if (versionChains != null) {
+                for (Contact newContact : newContacts) {
+                    recordAdd(newContact.getContactID());
+                }
+            }
+            contactStore.addAll(newContacts);
+
+            if (!mutationListeners.isEmpty()) { // new IDs are not handed out yet, so no updates can race these events
+                for (Contact newContact : newContacts) {
+                    publishMutation(ContactMutation.added(newContact.getValue()));
+                }
+            }
+        } finally {
+            bulkAddLock.readLock().unlock();
+        }
+    }
+
+
+    /*
+     * fork join task validating a range of bulk rows, recording the result code for each row. Uses the non
+     * throwing ContactValidator, so bad rows cost no exception or stack trace.
      */
-    public void addNewContact(String firstName, String lastName, String phoneNumber, String address){
-        Contact newContact = new Contact(createUniqueContactID(), firstName, lastName, phoneNumber, address);
-        contactList.add(newContact); // add newly instantiated contact object to list of objects
+    private static final class ValidateRowsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ContactRecord[] records;
+        private final ContactValidationResult[] validationResults;
+        private final int start;
+        private final int end;
+        private final boolean latin1Only;
+
+
+        ValidateRowsTask(ContactRecord[] records, ContactValidationResult[] validationResults, int start, int end,
+                         boolean latin1Only) {
+            this.records = records;
+            this.validationResults = validationResults;
+            this.start = start;
+            this.end = end;
+            this.latin1Only = latin1Only;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (end - start <= BULK_VALIDATION_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    ContactValidationResult result = ContactValidator.checkRecord(records[i]);
+                    if (result.isValid() && latin1Only) {
+                        ContactRecord record = records[i];
+                        result = ContactValidator.checkLatin1Fields(record.getFirstName(), record.getLastName(),
+                                record.getPhoneNumber(), record.getAddress());
+                    }
+                    validationResults[i] = result;
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1; // splits the range in half until it is small enough
+            invokeAll(new ValidateRowsTask(records, validationResults, start, middle, latin1Only),
+                    new ValidateRowsTask(records, validationResults, middle, end, latin1Only));
+        }
     }
 
+
     /*
      * Deletes a contact object from the list using contactID
      * @param String contact identifier
      */
     public void deleteExistingContact(String contactID) {
-        contactList.remove(findContactObject(contactID));
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        ReentrantLock writeLock = writeLockFor(contactID);
+        writeLock.lock();
+        try {
+            ContactVersionChains chains = versionChains;
+            if (chains != null && chains.isRecording()) { // open snapshots need the value before it goes
+                Contact existing = contactStore.get(contactID);
+                if (existing != null) {
+                    chains.recordChange(existing.getValue());
+                }
+            }
+            Contact removedContact = contactStore.remove(contactID); // single indexed removal, no list search
+
+            if (removedContact == null) {
+                recordContactNotFound();
+                throw new ContactNotFoundException();
+            }
+            publishMutation(ContactMutation.deleted(removedContact.getValue()));
+            succeeded = true;
+        } finally {
+            writeLock.unlock();
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.DELETE_CONTACT, startNanos, succeeded);
+            }
+        }
     }
 
 
@@ -124,7 +563,8 @@ public class ContactService {
      * @param String first name
      */
     public void updateContactFirstName(String contactID, String firstName){
-        findContactObject(contactID).validateFirstName(firstName);
+        updateContact(contactID, checkStorable(ContactValidator.checkFirstName(firstName), firstName),
+                value -> value.withFirstName(firstName));
     }
 
 
@@ -135,7 +575,8 @@ public class ContactService {
      * @param String last name
      */
     public void updateContactLastName(String contactID, String lastName){
-        findContactObject(contactID).validateLastName(lastName);
+        updateContact(contactID, checkStorable(ContactValidator.checkLastName(lastName), lastName),
+                value -> value.withLastName(lastName));
     }
 
 
@@ -146,7 +587,8 @@ public class ContactService {
      * @param String phone number
      */
     public void updateContactPhoneNumber(String contactID, String phoneNumber){
-        findContactObject(contactID).validatePhoneNumber(phoneNumber);
+        updateContact(contactID, checkStorable(ContactValidator.checkPhoneNumber(phoneNumber), phoneNumber),
+                value -> value.withPhoneNumber(phoneNumber));
     }
 
 
@@ -156,16 +598,1262 @@ public class ContactService {
      * @param String address
      */
     public void updateContactAddress(String contactID, String address){
-        findContactObject(contactID).validateAddress(address);
+        updateContact(contactID, checkStorable(ContactValidator.checkAddress(address), address),
+                value -> value.withAddress(address));
+    }
+
+
+    /*
+     * Updates firstName only if the contact is still at the expected version. Does not take a write lock.
+     * @param String contact identifier
+     * @param String first name
+     * @param long version the caller read before deciding on the update
+     * @return true if applied, false if the contact was changed by someone else first
+     */
+    public boolean updateContactFirstName(String contactID, String firstName, long expectedVersion){
+        return compareAndSetContact(contactID, expectedVersion,
+                checkStorable(ContactValidator.checkFirstName(firstName), firstName),
+                value -> value.withFirstName(firstName));
+    }
+
+
+    /*
+     * Updates lastName only if the contact is still at the expected version. Does not take a write lock.
+     * @param String contact identifier
+     * @param String last name
+     * @param long version the caller read before deciding on the update
+     * @return true if applied, false if the contact was changed by someone else first
+     */
+    public boolean updateContactLastName(String contactID, String lastName, long expectedVersion){
+        return compareAndSetContact(contactID, expectedVersion,
+                checkStorable(ContactValidator.checkLastName(lastName), lastName),
+                value -> value.withLastName(lastName));
+    }
+
+
+    /*
+     * Updates phone number only if the contact is still at the expected version. Does not take a write lock.
+     * @param String contact identifier
+     * @param String phone number
+     * @param long version the caller read before deciding on the update
+     * @return true if applied, false if the contact was changed by someone else first
+     */
+    public boolean updateContactPhoneNumber(String contactID, String phoneNumber, long expectedVersion){
+        return compareAndSetContact(contactID, expectedVersion,
+                checkStorable(ContactValidator.checkPhoneNumber(phoneNumber), phoneNumber),
+                value -> value.withPhoneNumber(phoneNumber));
+    }
+
+
+    /*
+     * Updates address only if the contact is still at the expected version. Does not take a write lock.
+     * @param String contact identifier
+     * @param String address
+     * @param long version the caller read before deciding on the update
+     * @return true if applied, false if the contact was changed by someone else first
+     */
+    public boolean updateContactAddress(String contactID, String address, long expectedVersion){
+        return compareAndSetContact(contactID, expectedVersion,
+                checkStorable(ContactValidator.checkAddress(address), address),
+                value -> value.withAddress(address));
+    }
+
+
+    /*
+     * applies several field changes to a contact as one update: a single lookup, every field validated before
+     * anything changes, one new version and one mutation event, so a persisted service logs one record
+     * @param ContactPatch changes to apply
+     */
+    public void updateContact(ContactPatch patch) {
+        if (patch == null) {
+            throw new IllegalArgumentException("Invalid contact patch. Expected not null");
+        }
+        updateContact(patch.getContactID(), validatePatch(patch), patch::applyTo);
+    }
+
+
+    /*
+     * applies a patch only if the contact is still at the expected version. Does not take a write lock.
+     * @param ContactPatch changes to apply
+     * @param long version the caller read before building the patch
+     * @return true if applied, false if the contact was changed by someone else first
+     */
+    public boolean updateContact(ContactPatch patch, long expectedVersion) {
+        if (patch == null) {
+            throw new IllegalArgumentException("Invalid contact patch. Expected not null");
+        }
+        return compareAndSetContact(patch.getContactID(), expectedVersion, validatePatch(patch), patch::applyTo);
+    }
+
+
+    /*
+     * applies many patches in one pass. Every patch is validated first, then the valid ones are grouped by write
+     * lock stripe so each stripe is locked once for all of its patches, applied in input order. Each patch is
+     * still its own atomic update with its own event; invalid patches and missing contacts are reported instead
+     * of aborting the batch.
+     * @param List patches to apply
+     * @return ContactPatchBatchResult with the number applied and the rejected patches
+     */
+    public ContactPatchBatchResult updateContacts(List<ContactPatch> patches) {
+        if (patches == null) {
+            throw new IllegalArgumentException("Invalid contact patches. Expected not null");
+        }
+
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            ContactPatch[] patchArray = patches.toArray(new ContactPatch[0]);
+            List<ContactBatchResult.RowFailure> failures = new ArrayList<ContactBatchResult.RowFailure>();
+
+            // counting sort of the valid patches by stripe, keeping input order within a stripe
+            int[] stripeOf = new int[patchArray.length];
+            int[] stripeStarts = new int[WRITE_LOCK_STRIPES + 1];
+            for (int i = 0; i < patchArray.length; i++) {
+                ContactValidationResult result = patchArray[i] == null
+                        ? ContactValidationResult.NULL_RECORD : validatePatch(patchArray[i]);
+
+                if (result.isValid()) {
+                    stripeOf[i] = stripeFor(patchArray[i].getContactID());
+                    stripeStarts[stripeOf[i] + 1]++;
+                } else {
+                    stripeOf[i] = -1;
+                    failures.add(new ContactBatchResult.RowFailure(i, result));
+                    recordValidationFailure(result);
+                }
+            }
+            for (int stripe = 0; stripe < WRITE_LOCK_STRIPES; stripe++) {
+                stripeStarts[stripe + 1] += stripeStarts[stripe];
+            }
+            int[] rowsByStripe = new int[stripeStarts[WRITE_LOCK_STRIPES]];
+            int[] nextSlot = stripeStarts.clone();
+            for (int i = 0; i < patchArray.length; i++) {
+                if (stripeOf[i] >= 0) {
+                    rowsByStripe[nextSlot[stripeOf[i]]++] = i;
+                }
+            }
+
+            int updatedCount = 0;
+            for (int stripe = 0; stripe < WRITE_LOCK_STRIPES; stripe++) {
+                if (stripeStarts[stripe] == stripeStarts[stripe + 1]) {
+                    continue;
+                }
+
+                writeLocks[stripe].lock();
+                try {
+                    for (int slot = stripeStarts[stripe]; slot < stripeStarts[stripe + 1]; slot++) {
+                        int row = rowsByStripe[slot];
+                        if (applyPatchLocked(patchArray[row])) {
+                            updatedCount++;
+                        } else {
+                            failures.add(new ContactBatchResult.RowFailure(row, ContactValidationResult.CONTACT_NOT_FOUND));
+                        }
+                    }
+                } finally {
+                    writeLocks[stripe].unlock();
+                }
+            }
+
+            failures.sort(Comparator.comparingLong(ContactBatchResult.RowFailure::getRowIndex));
+            succeeded = true;
+            return new ContactPatchBatchResult(updatedCount, failures);
+        } finally {
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.UPDATE_CONTACTS, startNanos, succeeded);
+            }
+        }
+    }
+
+
+    /*
+     * applies one validated batch patch while its stripe is locked
+     * @param ContactPatch patch to apply
+     * @return false if the contact does not exist
+     */
+    private boolean applyPatchLocked(ContactPatch patch) {
+        while (true) { // retries if a lock free compare and set update slipped in
+            Contact contact = contactStore.get(patch.getContactID());
+            if (contact == null) {
+                recordContactNotFound();
+                return false;
+            }
+            if (applyUpdate(contact, patch::applyTo)) {
+                return true;
+            }
+        }
+    }
+
+
+    /*
+     * swaps in an updated contact value if the current version matches, validating the new field first
+     * @param String contact identifier
+     * @param long expected current version
+     * @param ContactValidationResult check of the new field value
+     * @param UnaryOperator builds the new value
+     * @return true if the new value was installed
+     */
+    private boolean compareAndSetContact(String contactID, long expectedVersion, ContactValidationResult fieldCheck,
+                                         UnaryOperator<ContactValue> fieldUpdate) {
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        try {
+            Contact contact = lookupContact(contactID);
+            ContactValue currentValue = contact.getValue();
+
+            if (currentValue.getVersion() != expectedVersion) { // stale read, caller has to re-read and retry
+                recordVersionConflict();
+                succeeded = true;
+                return false;
+            }
+
+            requireValid(fieldCheck);
+            ContactValue updatedValue = fieldUpdate.apply(currentValue);
+            if (updatedValue == currentValue) { // an empty patch writes nothing and publishes nothing
+                succeeded = true;
+                return true;
+            }
+            boolean replaced;
+            int counter = (stripeFor(contactID) & (LOCK_FREE_COUNTERS - 1)) * LOCK_FREE_COUNTER_STRIDE;
+            if (beginLockFreeUpdate(counter)) {
+                try {
+                    replaced = contactStore.replace(contact, currentValue, updatedValue);
+                } finally {
+                    lockFreeUpdates.decrementAndGet(counter);
+                }
+            } else {
+                ReentrantLock writeLock = writeLockFor(contactID);
+                writeLock.lock(); // listeners see the update and its event as one step, ordered with deletes
+                try {
+                    ContactVersionChains chains = versionChains;
+                    if (chains != null && chains.isRecording()) { // currentValue was read unlocked, recheck it
+                        Contact latest = contactStore.get(contactID);
+                        replaced = latest != null && latest.getVersion() == expectedVersion;
+                        if (replaced) {
+                            chains.recordChange(currentValue);
+                            replaced = contactStore.replace(contact, currentValue, updatedValue);
+                        }
+                    } else {
+                        replaced = contactStore.replace(contact, currentValue, updatedValue);
+                    }
+                    if (replaced && contactStore.contains(contactID)) { // skips the event if the contact was deleted meanwhile
+                        publishMutation(ContactMutation.updated(currentValue, updatedValue));
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+
+            if (!replaced) {
+                recordVersionConflict();
+            }
+            succeeded = true;
+            return replaced;
+        } finally {
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.UPDATE_CONTACT_IF_VERSION, startNanos, succeeded);
+            }
+        }
+    }
+
+
+    /*
+     * announces a compare and set update that skips its write lock, which is only allowed while there are no
+     * listeners and no snapshots. The counter goes up before the check, and openSnapshot() and addMutationListener()
+     * install the version chains or the listener before they wait for the counters to drain, so each side sees the
+     * other: either the update takes its write lock, or it finishes before the stamp is pinned or the listener
+     * starts listening.
+     * @param int index of the counter for the contact's stripe
+     * @return true if the update may go ahead without its write lock, the caller then decrements the counter
+     */
+    private boolean beginLockFreeUpdate(int counter) {
+        lockFreeUpdates.incrementAndGet(counter);
+        if (mutationListeners.isEmpty() && versionChains == null) {
+            return true;
+        }
+        lockFreeUpdates.decrementAndGet(counter);
+        return false;
+    }
+
+
+    /*
+     * waits for compare and set updates that started without their write lock before a listener or the version
+     * chains were installed. They are a store replace away from done, so this spins.
+     */
+    private void awaitLockFreeUpdates() {
+        for (int counter = 0; counter < lockFreeUpdates.length(); counter += LOCK_FREE_COUNTER_STRIDE) {
+            while (lockFreeUpdates.get(counter) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+
+    /*
+     * runs a field update against a contact while holding the write lock for its contactID
+     * @param String contact identifier
+     * @param ContactValidationResult check of the new field value, reported after a missing contact
+     * @param UnaryOperator builds the new value from the current one
+     */
+    private void updateContact(String contactID, ContactValidationResult fieldCheck, UnaryOperator<ContactValue> fieldUpdate) {
+        ContactServiceMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? ContactServiceMetrics.NOT_TIMED : metrics.startTimer();
+        boolean succeeded = false;
+        ReentrantLock writeLock = writeLockFor(contactID);
+        writeLock.lock();
+        try {
+            while (true) { // retries if a lock free compare and set update slipped in
+                Contact contact = lookupContact(contactID); // re-read, some stores hand out temporary views
+                requireValid(fieldCheck);
+
+                if (applyUpdate(contact, fieldUpdate)) {
+                    succeeded = true;
+                    return;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+            if (metrics != null) {
+                metrics.record(ContactMetricsSnapshot.Operation.UPDATE_CONTACT, startNanos, succeeded);
+            }
+        }
+    }
+
+
+    /*
+     * makes one attempt at installing an updated value and publishes it. The caller holds the contact's write lock.
+     * @param Contact contact to update
+     * @param UnaryOperator builds the new value, returning the current one if nothing changes
+     * @return false if a lock free update changed the contact first
+     */
+    private boolean applyUpdate(Contact contact, UnaryOperator<ContactValue> fieldUpdate) {
+        ContactValue previousValue = contact.getValue();
+        ContactValue updatedValue = fieldUpdate.apply(previousValue);
+
+        if (updatedValue == previousValue) { // an empty patch writes nothing and publishes nothing
+            return true;
+        }
+        recordChange(previousValue);
+        if (!contactStore.replace(contact, previousValue, updatedValue)) {
+            return false;
+        }
+        publishMutation(ContactMutation.updated(previousValue, updatedValue));
+        return true;
+    }
+
+
+    /*
+     * adds the Latin-1 check to a passed field check when the store only takes Latin-1 text
+     * @param ContactValidationResult check of the field
+     * @param CharSequence field value
+     * @return the field check, or NOT_LATIN_1
+     */
+    private ContactValidationResult checkStorable(ContactValidationResult fieldCheck, CharSequence value) {
+        return fieldCheck.isValid() && latin1Only ? ContactValidator.checkLatin1(value) : fieldCheck;
+    }
+
+
+    /*
+     * adds the Latin-1 check to passed checks of a new contact's fields when the store only takes Latin-1 text
+     * @return the fields check, or NOT_LATIN_1
+     */
+    private ContactValidationResult checkStorable(ContactValidationResult fieldsCheck, CharSequence firstName,
+                                                  CharSequence lastName, CharSequence phoneNumber,
+                                                  CharSequence address) {
+        return fieldsCheck.isValid() && latin1Only
+                ? ContactValidator.checkLatin1Fields(firstName, lastName, phoneNumber, address) : fieldsCheck;
+    }
+
+
+    /*
+     * validates a patch's fields, including the Latin-1 check when the store needs it
+     * @param ContactPatch patch to check
+     * @return VALID or the result for the first invalid field
+     */
+    private ContactValidationResult validatePatch(ContactPatch patch) {
+        return checkStorable(patch.validate(), patch.getFirstName(), patch.getLastName(), patch.getPhoneNumber(),
+                patch.getAddress());
+    }
+
+
+    /*
+     * throws the validator's message for a failed check, counting the failure when metrics are enabled
+     * @param ContactValidationResult check to enforce
+     */
+    private void requireValid(ContactValidationResult result) {
+        if (!result.isValid()) {
+            recordValidationFailure(result);
+            throw new IllegalArgumentException(result.getMessage());
+        }
+    }
+
+
+    // also used by ContactImporter for rows it rejects before they reach addContacts
+    void recordValidationFailure(ContactValidationResult result) {
+        ContactServiceMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordValidationFailure(result);
+        }
+    }
+
+
+    private void recordContactNotFound() {
+        ContactServiceMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordContactNotFound();
+        }
+    }
+
+
+    private void recordVersionConflict() {
+        ContactServiceMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordVersionConflict();
+        }
+    }
+
+
+    /*
+     * starts counting calls, failures and latencies of every public operation. One call in 64 is sampled for
+     * call counts and latency, failures are counted exactly. Calling it again keeps the existing metrics.
+     */
+    public void enableMetrics() {
+        enableMetrics(DEFAULT_LATENCY_SAMPLE_INTERVAL);
+    }
+
+
+    /*
+     * starts counting calls, failures and latencies of every public operation
+     * @param int sample one call in this many, a power of two. 1 measures every call, at several times the cost
+     */
+    public synchronized void enableMetrics(int latencySampleInterval) {
+        if (metrics == null) {
+            metrics = new ContactServiceMetrics(latencySampleInterval);
+        }
+    }
+
+
+    /*
+     * @return ContactMetricsSnapshot copy of the current counters, histograms and store size
+     * @throws IllegalStateException if enableMetrics() has not been called
+     */
+    public ContactMetricsSnapshot getMetricsSnapshot() {
+        ContactServiceMetrics currentMetrics = metrics;
+        if (currentMetrics == null) {
+            throw new IllegalStateException("Metrics are not enabled");
+        }
+        return currentMetrics.snapshot(contactStore.size(), contactIdGenerator.getRetryCount());
+    }
+
+
+    /*
+     * starts publishing every add, update and delete to a change stream keeping the latest 4096 events
+     * @return ContactChangeStream to subscribe to
+     */
+    public ContactChangeStream enableChangeStream() {
+        return enableChangeStream(DEFAULT_CHANGE_STREAM_CAPACITY);
+    }
+
+
+    /*
+     * starts publishing every add, update and delete to a sequenced change stream. Changes made before this call
+     * are not in the stream, consumers start from getContactList(). Calling it again returns the existing stream.
+     * @param int number of events kept for slow consumers, a power of two
+     * @return ContactChangeStream to subscribe to
+     */
+    public synchronized ContactChangeStream enableChangeStream(int capacity) {
+        if (changeStream == null) {
+            ContactChangeStream stream = new ContactChangeStream(capacity);
+            addMutationListener(stream);
+            changeStream = stream;
+        }
+        return changeStream;
+    }
+
+
+    /*
+     * @return ContactChangeStream the service publishes its changes to
+     * @throws IllegalStateException if enableChangeStream() has not been called
+     */
+    public ContactChangeStream getChangeStream() {
+        ContactChangeStream currentStream = changeStream;
+        if (currentStream == null) {
+            throw new IllegalStateException("Change stream is not enabled");
+        }
+        return currentStream;
+    }
+
+
+    /*
+     * writes every contact as of one point in time to a channel. Writers keep going while the export runs; contacts
+     * are read from the store one at a time and encoded through a single reusable buffer, so memory use stays flat.
+     * @param ContactExportFormat file format to write
+     * @param WritableByteChannel destination, left open
+     * @return long number of contacts written
+     */
+    public long exportContacts(ContactExportFormat format, WritableByteChannel channel) throws IOException {
+        if (format == null) {
+            throw new IllegalArgumentException("Invalid export format. Expected not null");
+        }
+        if (channel == null) {
+            throw new IllegalArgumentException("Invalid export channel. Expected not null");
+        }
+
+        try (ContactExportSnapshot snapshot = openExportSnapshot()) {
+            return writeExport(snapshot, 0, snapshot.size(), format, channel)
+                    + writeExportUnlisted(snapshot, format, channel);
+        }
+    }
+
+
+    /*
+     * writes every contact as of one point in time to fileCount files written in parallel, named
+     * contacts-00000.<extension> and so on. Each file is complete on its own, CSV files all start with the header.
+     * @param ContactExportFormat file format to write
+     * @param Path existing folder for the files, files with the same names are replaced
+     * @param int number of files to split the contacts over
+     * @return List of the files written, in order
+     */
+    public List<Path> exportContacts(ContactExportFormat format, Path directory, int fileCount) throws IOException {
+        if (format == null) {
+            throw new IllegalArgumentException("Invalid export format. Expected not null");
+        }
+        if (directory == null || !Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Invalid export directory. Expected an existing directory");
+        }
+        if (fileCount < 1) {
+            throw new IllegalArgumentException("Invalid export file count. Expected at least 1");
+        }
+
+        List<Path> files = new ArrayList<Path>(fileCount);
+        try (ContactExportSnapshot snapshot = openExportSnapshot()) {
+            int[] boundaries = snapshot.chunkBoundaries(fileCount);
+            List<Callable<Long>> fileWrites = new ArrayList<Callable<Long>>(fileCount);
+
+            for (int i = 0; i < fileCount; i++) {
+                Path file = directory.resolve(String.format("contacts-%05d.%s", i, format.getFileExtension()));
+                int from = boundaries[i];
+                int to = boundaries[i + 1];
+                files.add(file);
+                fileWrites.add(() -> {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                        return writeExport(snapshot, from, to, format, channel);
+                    }
+                });
+            }
+
+            try {
+                for (Future<Long> fileWrite : ForkJoinPool.commonPool().invokeAll(fileWrites)) {
+                    fileWrite.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while exporting contacts", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException("Contact export failed", e.getCause());
+            }
+
+            // contacts deleted before the scan opened are read once every range is done, the last file gets them
+            try (FileChannel channel = FileChannel.open(files.get(fileCount - 1), StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                writeExportUnlisted(snapshot, format, channel);
+            }
+        }
+        return files;
+    }
+
+
+    /*
+     * adds every valid row of a CSV or JSON Lines file, such as one written by exportContacts. The file is read,
+     * parsed and inserted in a pipeline with one parser thread per processor, see importContacts(format, file, int).
+     * @param ContactExportFormat CSV or JSON_LINES
+     * @param Path file to read
+     * @return ContactImportResult row counts, rejected rows and rows per second
+     */
+    public ContactImportResult importContacts(ContactExportFormat format, Path file) throws IOException {
+        return importContacts(format, file, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /*
+     * adds every valid row of a CSV or JSON Lines file. A reader thread maps the file and cuts it into chunks, parser
+     * threads validate each row's fields as UTF-8 byte ranges and only decode rows that pass, and the calling thread
+     * adds each chunk's rows with addContacts in file order. Imported contacts get new IDs, the file's contactID and
+     * version are ignored. CSV needs a header naming the firstName, lastName, phoneNumber and address columns.
+     * @param ContactExportFormat CSV or JSON_LINES
+     * @param Path file to read
+     * @param int number of parser threads
+     * @return ContactImportResult row counts, rejected rows and rows per second
+     */
+    public ContactImportResult importContacts(ContactExportFormat format, Path file, int parserThreads)
+            throws IOException {
+        return importContacts(format, file, parserThreads, ContactImporter.DEFAULT_CHUNK_BYTES);
+    }
+
+
+    /*
+     * importContacts with a chosen chunk size, rows longer than a chunk are rejected as malformed
+     */
+    ContactImportResult importContacts(ContactExportFormat format, Path file, int parserThreads, int chunkBytes)
+            throws IOException {
+        if (format == null) {
+            throw new IllegalArgumentException("Invalid import format. Expected not null");
+        }
+        if (file == null || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Invalid import file. Expected an existing file");
+        }
+        return new ContactImporter(this, format, parserThreads, chunkBytes).importFile(file);
+    }
+
+
+    /*
+     * opens an MVCC snapshot with a scan of the store that export and query threads can split by position
+     * @return ContactExportSnapshot of the contacts at the snapshot point, close it when done
+     */
+    private ContactExportSnapshot openExportSnapshot() {
+        ContactSnapshot snapshot = openSnapshot();
+        try {
+            return new ContactExportSnapshot(snapshot, contactStore.openScan()); // the scan opens after the stamp
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+
+    /*
+     * encodes a range of snapshot contacts into a reusable buffer and writes it out whenever it fills up
+     * @return long number of contacts written
+     */
+    private static long writeExport(ContactExportSnapshot snapshot, int from, int to, ContactExportFormat format,
+                                    WritableByteChannel channel) throws IOException {
+        ExportWriter writer = new ExportWriter(format, channel);
+        format.writeHeader(writer.buffer);
+        try {
+            snapshot.forEach(from, to, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return writer.finish();
+    }
+
+
+    /*
+     * encodes the snapshot contacts deleted before its scan opened, without a header, see writeExport
+     * @return long number of contacts written
+     */
+    private static long writeExportUnlisted(ContactExportSnapshot snapshot, ContactExportFormat format,
+                                            WritableByteChannel channel) throws IOException {
+        ExportWriter writer = new ExportWriter(format, channel);
+        try {
+            snapshot.forEachUnlisted(writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return writer.finish();
+    }
+
+
+    /*
+     * encodes contacts handed over by a snapshot scan into one reusable buffer, draining it to a channel as it fills
+     */
+    private static final class ExportWriter implements Consumer<ContactValue> {
+
+        private final ContactExportFormat format;
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(EXPORT_BUFFER_BYTES);
+        private long written;
+
+
+        ExportWriter(ContactExportFormat format, WritableByteChannel channel) {
+            this.format = format;
+            this.channel = channel;
+        }
+
+
+        @Override
+        public void accept(ContactValue value) {
+            if (buffer.remaining() < ContactExportFormat.MAX_RECORD_BYTES) {
+                try {
+                    drainExportBuffer(buffer, channel);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // ends the scan, writeExport rethrows the cause
+                }
+            }
+            format.writeContact(buffer, value);
+            written++;
+        }
+
+
+        /*
+         * writes out what is left in the buffer
+         * @return long number of contacts written
+         */
+        long finish() throws IOException {
+            drainExportBuffer(buffer, channel);
+            return written;
+        }
+    }
+
+
+    /*
+     * writes out everything in the buffer and clears it for reuse
+     */
+    private static void drainExportBuffer(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    /*
+     * opens a consistent read only view of every contact as of now. Opening costs the same however many contacts
+     * there are: writers are held back only while the snapshot's stamp is taken, after that they carry on and keep
+     * the values they replace or delete until no open snapshot needs them. Close the snapshot when done with it.
+     * @return ContactSnapshot of the contacts at this point
+     */
+    public ContactSnapshot openSnapshot() {
+        ContactVersionChains chains;
+        long stamp;
+
+        lockAllWriters();
+        try {
+            chains = versionChains;
+            if (chains == null) {
+                chains = new ContactVersionChains();
+                versionChains = chains; // from now on updates take their write lock, see compareAndSetContact
+                awaitLockFreeUpdates(); // ones that checked before are part of this snapshot
+            }
+            stamp = chains.pin();
+        } finally {
+            unlockAllWriters();
+        }
+        return new ContactSnapshot(contactStore, chains, stamp);
+    }
+
+
+    /*
+     * notes for open snapshots that a contact is about to be added. The caller holds its write lock or the bulk add
+     * lock.
+     * @param String contactID of the new contact
+     */
+    private void recordAdd(String contactID) {
+        ContactVersionChains chains = versionChains;
+        if (chains != null) {
+            chains.recordAdd(contactID);
+        }
+    }
+
+
+    /*
+     * keeps a value that is about to be replaced for open snapshots. The caller holds the contact's write lock.
+     * @param ContactValue value the store still has
+     */
+    private void recordChange(ContactValue previousValue) {
+        ContactVersionChains chains = versionChains;
+        if (chains != null) {
+            chains.recordChange(previousValue);
+        }
+    }
+
+
+    /*
+     * holds back every writer: all write lock stripes in order, then bulk adds. Lookups keep going.
+     */
+    private void lockAllWriters() {
+        bulkAddLock.writeLock().lock();
+        for (ReentrantLock writeLock : writeLocks) { // always taken in stripe order, so callers cannot deadlock
+            writeLock.lock();
+        }
+    }
+
+
+    /*
+     * releases the locks taken by lockAllWriters()
+     */
+    private void unlockAllWriters() {
+        for (int i = WRITE_LOCK_STRIPES - 1; i >= 0; i--) {
+            writeLocks[i].unlock();
+        }
+        bulkAddLock.writeLock().unlock();
+    }
+
+
+    /*
+     * builds the phone number and name indexes from the current contacts and keeps them up to date from then on.
+     * Writers to existing contacts wait while the indexes are built. Calling it again does nothing.
+     */
+    public void enableSecondaryIndexes() {
+        for (ReentrantLock writeLock : writeLocks) { // always taken in stripe order, so enablers cannot deadlock
+            writeLock.lock();
+        }
+        try {
+            if (secondaryIndexes != null) {
+                return;
+            }
+
+            ContactSecondaryIndexes indexes = new ContactSecondaryIndexes();
+            addMutationListener(indexes); // registered first, so bulk adds racing the scan are still indexed
+            for (Contact contact : contactStore.asList()) {
+                indexes.index(contact.getValue());
+            }
+            secondaryIndexes = indexes;
+        } finally {
+            for (int i = WRITE_LOCK_STRIPES - 1; i >= 0; i--) {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+
+    /*
+     * finds every contact with a phone number
+     * @param String exact phone number
+     * @return List of matching contacts, empty if none
+     */
+    public List<Contact> findContactsByPhoneNumber(String phoneNumber) {
+        List<String> candidateIDs = requireSecondaryIndexes().phoneNumberCandidates(phoneNumber);
+
+        List<Contact> matches = new ArrayList<Contact>(candidateIDs.size());
+        for (String contactID : candidateIDs) {
+            Contact contact = contactStore.get(contactID);
+            if (contact != null && contact.getPhoneNumber().equals(phoneNumber)) { // index entries are only hints
+                matches.add(contact);
+            }
+        }
+        return matches;
+    }
+
+
+    /*
+     * finds contacts whose last name is exactly the given one, ignoring case
+     * @param String last name
+     * @return List of matching contacts ordered by contactID
+     */
+    public List<Contact> findContactsByLastName(String lastName) {
+        return findContactsByName(requireSecondaryIndexes().lastNames(), lastName, true, Integer.MAX_VALUE, true);
+    }
+
+
+    /*
+     * finds contacts whose last name starts with a prefix, ignoring case
+     * @param String last name prefix
+     * @param int maximum number of contacts to return
+     * @return List of matching contacts ordered by last name
+     */
+    public List<Contact> findContactsByLastNamePrefix(String prefix, int limit) {
+        return findContactsByName(requireSecondaryIndexes().lastNames(), prefix, false, limit, true);
+    }
+
+
+    /*
+     * finds contacts whose first name starts with a prefix, ignoring case
+     * @param String first name prefix
+     * @param int maximum number of contacts to return
+     * @return List of matching contacts ordered by first name
+     */
+    public List<Contact> findContactsByFirstNamePrefix(String prefix, int limit) {
+        return findContactsByName(requireSecondaryIndexes().firstNames(), prefix, false, limit, false);
+    }
+
+
+    /*
+     * walks a name index range, keeping candidates whose current name still matches
+     * @param NamePrefixIndex index to search
+     * @param String name or name prefix
+     * @param boolean true to match the whole name
+     * @param int maximum number of contacts to return
+     * @param boolean true to check last names, false for first names
+     * @return List of matching contacts in index order
+     */
+    private List<Contact> findContactsByName(ContactSecondaryIndexes.NamePrefixIndex index, String name, boolean exact,
+                                             int limit, boolean lastName) {
+        if (name == null) {
+            throw new IllegalArgumentException("Invalid name. Expected not null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit. Expected greater than 0");
+        }
+
+        String normalizedName = ContactSecondaryIndexes.normalize(name);
+        List<Contact> matches = new ArrayList<Contact>(Math.min(limit, 16));
+        Iterator<String> candidateIDs = index.candidates(name, exact);
+
+        while (candidateIDs.hasNext() && matches.size() < limit) {
+            Contact contact = contactStore.get(candidateIDs.next());
+            if (contact == null) { // deleted since it was indexed
+                continue;
+            }
+
+            String currentName = ContactSecondaryIndexes.normalize(lastName ? contact.getLastName() : contact.getFirstName());
+            if (exact ? currentName.equals(normalizedName) : currentName.startsWith(normalizedName)) {
+                matches.add(contact);
+            }
+        }
+        return matches;
+    }
+
+
+    /*
+     * @return ContactSecondaryIndexes of this service
+     * @throws IllegalStateException if enableSecondaryIndexes() has not been called
+     */
+    private ContactSecondaryIndexes requireSecondaryIndexes() {
+        ContactSecondaryIndexes indexes = secondaryIndexes;
+        if (indexes == null) {
+            throw new IllegalStateException("Secondary indexes are not enabled");
+        }
+        return indexes;
+    }
+
+
+    /*
+     * builds the trigram index over first and last names and keeps it up to date from then on, so
+     * findContactsByFuzzyName() does not scan every contact. Writers to existing contacts wait while it is built.
+     * Calling it again does nothing.
+     */
+    public void enableFuzzyNameSearch() {
+        for (ReentrantLock writeLock : writeLocks) { // always taken in stripe order, so enablers cannot deadlock
+            writeLock.lock();
+        }
+        try {
+            if (fuzzyNameIndex != null) {
+                return;
+            }
+
+            ContactFuzzyNameIndex index = new ContactFuzzyNameIndex();
+            addMutationListener(index); // registered first, so bulk adds racing the scan are still indexed
+            for (Contact contact : contactStore.asList()) {
+                index.index(contact.getValue());
+            }
+            fuzzyNameIndex = index;
+        } finally {
+            for (int i = WRITE_LOCK_STRIPES - 1; i >= 0; i--) {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+
+    /*
+     * finds contacts whose first or last name contains the query with at most maxDistance typos, ignoring case.
+     * Contacts come best match first: fewest edits, then names closest to the query's length, then by name and
+     * contactID. A contact matching through both names is listed once, at its better match.
+     * @param String name or part of a name
+     * @param int largest number of inserted, deleted or changed characters a match may need
+     * @param int maximum number of contacts to return
+     * @return List of matching contacts
+     * @throws IllegalStateException if enableFuzzyNameSearch() has not been called
+     */
+    public List<Contact> findContactsByFuzzyName(String query, int maxDistance, int limit) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Invalid name. Expected at least 1 character");
+        }
+        if (maxDistance < 0 || maxDistance >= query.length()) {
+            throw new IllegalArgumentException("Invalid maximum distance. Expected 0 to the query length - 1");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit. Expected greater than 0");
+        }
+        ContactFuzzyNameIndex index = fuzzyNameIndex;
+        if (index == null) {
+            throw new IllegalStateException("Fuzzy name search is not enabled");
+        }
+
+        Map<String, Contact> matches = new LinkedHashMap<String, Contact>();
+        for (ContactFuzzyNameIndex.NameMatch nameMatch : index.matchNames(query, maxDistance)) {
+            // limit IDs always fill the result unless some were matched already or are stale, then take them all
+            List<String> contactIDs = nameMatch.smallestContactIDs(limit);
+            boolean full = addNameMatches(nameMatch, contactIDs, matches, limit);
+            if (!full && contactIDs.size() < nameMatch.contactIDs.size()) {
+                full = addNameMatches(nameMatch, nameMatch.smallestContactIDs(Integer.MAX_VALUE), matches, limit);
+            }
+            if (full) {
+                break;
+            }
+        }
+        return new ArrayList<Contact>(matches.values());
+    }
+
+
+    /*
+     * adds the contacts of one matched name that still have that name, in contactID order
+     * @param NameMatch name found by the index
+     * @param List contactIDs of the name to try
+     * @param Map matches so far by contactID
+     * @param int maximum number of matches
+     * @return boolean true if the limit was reached
+     */
+    private boolean addNameMatches(ContactFuzzyNameIndex.NameMatch nameMatch, List<String> contactIDs,
+                                   Map<String, Contact> matches, int limit) {
+        for (String contactID : contactIDs) {
+            if (matches.size() >= limit) {
+                return true;
+            }
+            if (matches.containsKey(contactID)) {
+                continue;
+            }
+            Contact contact = contactStore.get(contactID);
+            if (contact == null) { // deleted since it was indexed
+                continue;
+            }
+            String currentName = nameMatch.lastName ? contact.getLastName() : contact.getFirstName();
+            if (ContactSecondaryIndexes.normalize(currentName).equals(nameMatch.name)) { // index entries are only hints
+                matches.put(contactID, contact);
+            }
+        }
+        return matches.size() >= limit;
+    }
+
+
+    /*
+     * finds contacts passing a filter. A filter that requires an exact phone number or name, or a name prefix, is
+     * answered from the secondary indexes when they are enabled, reading current values. Anything else is a parallel
+     * fork join scan over a point in time snapshot taken like an export's, so writers are not held back while it runs.
+     * @param ContactFilter condition to check
+     * @param int maximum number of contacts to return, the scan stops early once it has found them
+     * @return List of matching contact values, in store order for a scan and index order otherwise. Which
+     *         contacts a scan returns when more than limit match is unspecified.
+     */
+    public List<ContactValue> queryContacts(ContactFilter filter, int limit) {
+        return queryContacts(filter, limit, Function.identity());
+    }
+
+
+    /*
+     * finds contacts passing a filter and returns only what the projection takes from each, see
+     * queryContacts(filter, limit). The projection runs on the scanning threads, only for matches.
+     * @param ContactFilter condition to check
+     * @param int maximum number of results
+     * @param Function projection from a matching contact's value to the result, must be thread safe
+     * @return List of projected results
+     */
+    public <R> List<R> queryContacts(ContactFilter filter, int limit,
+                                     Function<? super ContactValue, ? extends R> projection) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Invalid filter. Expected not null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit. Expected greater than 0");
+        }
+        if (projection == null) {
+            throw new IllegalArgumentException("Invalid projection. Expected not null");
+        }
+
+        ContactSecondaryIndexes indexes = secondaryIndexes;
+        ContactFilter indexedTerm = indexes == null ? null : filter.indexedTerm();
+        if (indexedTerm != null) {
+            return queryIndex(indexes, indexedTerm, filter, limit, projection);
+        }
+
+        try (ContactExportSnapshot snapshot = openExportSnapshot()) {
+            List<R> results = ForkJoinPool.commonPool().invoke(
+                    new QueryScanTask<R>(snapshot, filter, projection, new AtomicInteger(), limit, 0, snapshot.size()));
+            if (results.size() < limit) {
+                snapshot.forEachUnlisted(value -> {
+                    if (results.size() < limit && filter.test(value)) {
+                        results.add(projection.apply(value));
+                    }
+                });
+            }
+            return results.size() > limit ? new ArrayList<R>(results.subList(0, limit)) : results;
+        }
+    }
+
+
+    /*
+     * answers a query from the index candidates of one of its required terms, checking the whole filter against
+     * each candidate's current value
+     */
+    private <R> List<R> queryIndex(ContactSecondaryIndexes indexes, ContactFilter indexedTerm, ContactFilter filter,
+                                   int limit, Function<? super ContactValue, ? extends R> projection) {
+        String key = indexedTerm.getIndexKey();
+        Iterator<String> candidateIDs;
+        switch (indexedTerm.getIndexedTerm()) {
+            case PHONE_NUMBER:
+                candidateIDs = indexes.phoneNumberCandidates(key).iterator();
+                break;
+            case LAST_NAME:
+            case LAST_NAME_PREFIX:
+                candidateIDs = indexes.lastNames().candidates(key,
+                        indexedTerm.getIndexedTerm() == ContactFilter.IndexedTerm.LAST_NAME);
+                break;
+            default:
+                candidateIDs = indexes.firstNames().candidates(key,
+                        indexedTerm.getIndexedTerm() == ContactFilter.IndexedTerm.FIRST_NAME);
+        }
+
+        List<R> results = new ArrayList<R>(Math.min(limit, 16));
+        while (candidateIDs.hasNext() && results.size() < limit) {
+            Contact contact = contactStore.get(candidateIDs.next());
+            if (contact == null) { // deleted since it was indexed
+                continue;
+            }
+            ContactValue value = contact.getValue();
+            if (filter.test(value)) { // index entries are only hints, so the indexed term is checked again too
+                results.add(projection.apply(value));
+            }
+        }
+        return results;
+    }
+
+
+    /*
+     * fork join task checking a range of snapshot contacts against a query filter. Every task shares a count of
+     * matches found, and ranges stop being split or scanned once it reaches the limit.
+     */
+    private static final class QueryScanTask<R> extends RecursiveTask<List<R>> {
+
+        private static final long serialVersionUID = 1L;
+
+        // how often a range rechecks the shared match count
+        private static final int LIMIT_CHECK_INTERVAL = 1024;
+
+        private final ContactExportSnapshot snapshot;
+        private final ContactFilter filter;
+        private final Function<? super ContactValue, ? extends R> projection;
+        private final AtomicInteger found;
+        private final int limit;
+        private final int start;
+        private final int end;
+
+
+        QueryScanTask(ContactExportSnapshot snapshot, ContactFilter filter,
+                      Function<? super ContactValue, ? extends R> projection, AtomicInteger found, int limit,
+                      int start, int end) {
+            this.snapshot = snapshot;
+            this.filter = filter;
+            this.projection = projection;
+            this.found = found;
+            this.limit = limit;
+            this.start = start;
+            this.end = end;
+        }
+
+
+        @Override
+        protected List<R> compute() {
+            if (found.get() >= limit) {
+                return new ArrayList<R>(0);
+            }
+
+            if (end - start <= QUERY_SCAN_THRESHOLD) {
+                List<R> results = new ArrayList<R>();
+                int[] checked = { 0 };
+                boolean[] limitReached = { false };
+                snapshot.forEach(start, end, value -> {
+                    if (checked[0]++ % LIMIT_CHECK_INTERVAL == 0 && found.get() >= limit) {
+                        limitReached[0] = true; // the rest of the range is only read past
+                    }
+                    if (!limitReached[0] && filter.test(value)) {
+                        results.add(projection.apply(value));
+                        found.incrementAndGet();
+                    }
+                });
+                return results;
+            }
+
+            int middle = (start + end) >>> 1; // splits the range in half until it is small enough
+            QueryScanTask<R> second = new QueryScanTask<R>(snapshot, filter, projection, found, limit, middle, end);
+            second.fork();
+            List<R> results = new QueryScanTask<R>(snapshot, filter, projection, found, limit, start, middle)
+                    .compute();
+            results.addAll(second.join()); // keeps store order
+            return results;
+        }
+    }
+
+
+    /*
+     * registers a listener that is called after every add, update and delete
+     * @param ContactMutationListener listener to add
+     */
+    public void addMutationListener(ContactMutationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Invalid mutation listener. Expected not null");
+        }
+        mutationListeners.add(listener);
+        awaitLockFreeUpdates(); // updates that checked for listeners before this are done, later ones publish
+    }
+
+
+    /*
+     * unregisters a mutation listener
+     * @param ContactMutationListener listener to remove
+     */
+    public void removeMutationListener(ContactMutationListener listener) {
+        mutationListeners.remove(listener);
+    }
+
+
+    /*
+     * hands a mutation to every registered listener. A failing listener does not keep the change from the ones after
+     * it, the store already has it; the first failure is rethrown once all have seen it.
+     * @param ContactMutation change that was just applied
+     */
+    private void publishMutation(ContactMutation mutation) {
+        RuntimeException failure = null;
+        for (ContactMutationListener listener : mutationListeners) {
+            try {
+                listener.onMutation(mutation);
+            } catch (RuntimeException failed) {
+                if (failure == null) {
+                    failure = failed;
+                } else {
+                    failure.addSuppressed(failed);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    /*
+     * gives same package collaborators such as ContactPersistence direct access to the backing store
+     * @return ContactStore used by this service
+     */
+    ContactStore getContactStore() {
+        return contactStore;
+    }
+
+
+    /*
+     * picks the write lock stripe for a contactID
+     * @param String contact identifier
+     * @return ReentrantLock guarding writes to that contactID
+     */
+    private ReentrantLock writeLockFor(String contactID) {
+        if (contactID == null) {
+            throw new ContactNotFoundException();
+        }
+        return writeLocks[stripeFor(contactID)];
+    }
+
+
+    /*
+     * @param String non null contact identifier
+     * @return int index of the write lock stripe for the contactID
+     */
+    private static int stripeFor(String contactID) {
+        int hash = contactID.hashCode();
+        return (hash ^ (hash >>> 16)) & (WRITE_LOCK_STRIPES - 1); // spreads high bits into the stripe index
     }
 
 
     /*
      * getter method for contact list with contacts. Used in testing the list length
-     * @return Contact List
+     * @return read only Contact List view of the service instance's store
      */
     public static List<Contact> getContactList() {
-        return contactList;
+        return getServiceInstance().contactStore.asList();
     }
 
 
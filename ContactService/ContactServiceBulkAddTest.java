@@ -0,0 +1,88 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the ContactService bulk add path
+ */
+public class ContactServiceBulkAddTest {
+
+    private HashContactStore testStore;
+    private ContactService testContactService;
+
+
+    /**
+     * creates a service over a fresh store for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new HashContactStore();
+        testContactService = new ContactService(testStore, new TimestampContactIdGenerator(6));
+    }
+
+
+    /**
+     * Asserts that invalid rows are reported by index while the valid rows around them are still added
+     */
+    @Test
+    void invalidRowsAreReportedWithoutAbortingBatch() {
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        records.add(new ContactRecord("John", "Doe", "9876543210", "321 Test Way"));
+        records.add(new ContactRecord("John", "Doe", "12345", "321 Test Way"));
+        records.add(null);
+        records.add(new ContactRecord("Jane", "Doe", "0123456789", "123 Test Lane"));
+
+        ContactBatchResult result = testContactService.addContacts(records);
+
+        assertEquals(2, result.getAddedCount());
+        assertEquals(2, testStore.size());
+        assertEquals(2, result.getFailures().size());
+        assertEquals(1, result.getFailures().get(0).getRowIndex());
+        assertTrue(result.getFailures().get(0).getMessage().startsWith("Invalid phone number"));
+        assertEquals(ContactValidationResult.INVALID_PHONE_NUMBER, result.getFailures().get(0).getError());
+        assertEquals(2, result.getFailures().get(1).getRowIndex());
+        assertEquals(ContactValidationResult.NULL_RECORD, result.getFailures().get(1).getError());
+        assertEquals("Jane", testContactService.findContactObject(result.getAddedContactIDs().get(1)).getFirstName());
+    }
+
+
+    /**
+     * Asserts that a stream spanning several chunks is added completely with IDs in row order
+     */
+    @Test
+    void largeStreamIsAddedAcrossChunks() {
+        int rowCount = 150000;
+
+        ContactBatchResult result = testContactService.addContacts(IntStream.range(0, rowCount)
+                .mapToObj(row -> new ContactRecord("First", "Last", String.format("%010d", row),
+                        row % 1000 == 0 ? null : "1 Bulk Road")));
+
+        assertEquals(rowCount - 150, result.getAddedCount());
+        assertEquals(150, result.getFailures().size());
+        assertEquals(result.getAddedCount(), testStore.size());
+        assertEquals(149000, result.getFailures().get(149).getRowIndex());
+
+        List<String> addedIDs = result.getAddedContactIDs();
+        for (int i = 1; i < addedIDs.size(); i++) {
+            assertTrue(addedIDs.get(i).compareTo(addedIDs.get(i - 1)) > 0);
+        }
+        assertEquals("0000000001", testContactService.findContactObject(addedIDs.get(0)).getPhoneNumber());
+    }
+
+
+    /**
+     * Asserts that a null input throws an exception
+     */
+    @Test
+    void nullRecordsThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> testContactService.addContacts((Iterable<ContactRecord>) null));
+    }
+}
@@ -0,0 +1,180 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * stress tests for ContactService backed by a ConcurrentContactStore
+ */
+public class ContactServiceConcurrencyTest {
+
+    private static final int WRITER_THREADS = 8;
+    private static final int CONTACTS_PER_THREAD = 2000;
+
+    // records the last ID handed out on each thread so writers know which contacts they created
+    private static final ThreadLocal<String> lastGeneratedID = new ThreadLocal<String>();
+
+    private ConcurrentContactStore testStore;
+    private ContactService testContactService;
+
+
+    /**
+     * creates a concurrent service over a fresh store for each test
+     */
+    @BeforeEach
+    void setUp() {
+        TimestampContactIdGenerator generator = new TimestampContactIdGenerator(3);
+        testStore = new ConcurrentContactStore();
+        testContactService = new ContactService(testStore, () -> {
+            String contactID = generator.nextContactID();
+            lastGeneratedID.set(contactID);
+            return contactID;
+        });
+    }
+
+
+    /**
+     * builds a phone number unique to a writer thread and contact index
+     * @return String 10 digit phone number
+     */
+    private static String phoneNumberFor(int thread, int index) {
+        return String.format("%02d%08d", thread, index);
+    }
+
+
+    /**
+     * Asserts that concurrent adds, updates and deletes from many threads lose nothing while readers iterate
+     */
+    @Test
+    void concurrentAddUpdateDeleteLosesNoUpdates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_THREADS + 1);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicBoolean writersDone = new AtomicBoolean(false);
+        List<Future<List<String>>> writers = new ArrayList<Future<List<String>>>();
+
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                startSignal.await();
+                List<String> keptIDs = new ArrayList<String>();
+
+                for (int i = 0; i < CONTACTS_PER_THREAD; i++) {
+                    testContactService.addNewContact("First", "Last", "0000000000", "1 Stress Way");
+                    String contactID = lastGeneratedID.get();
+                    testContactService.updateContactPhoneNumber(contactID, phoneNumberFor(thread, i));
+                    testContactService.updateContactLastName(contactID, "T" + thread);
+
+                    if (i % 2 == 0) {
+                        testContactService.deleteExistingContact(contactID);
+                    } else {
+                        keptIDs.add(contactID);
+                    }
+                }
+                return keptIDs;
+            }));
+        }
+
+        Future<Integer> reader = executor.submit(() -> {
+            startSignal.await();
+            int passes = 0;
+            while (!writersDone.get()) {
+                for (Contact contact : testStore.asList()) { // must never throw ConcurrentModificationException
+                    assertNotNull(contact.getPhoneNumber());
+                }
+                passes++;
+            }
+            return passes;
+        });
+
+        startSignal.countDown();
+        List<String> allKeptIDs = new ArrayList<String>();
+        for (Future<List<String>> writer : writers) {
+            allKeptIDs.addAll(writer.get(60, TimeUnit.SECONDS));
+        }
+        writersDone.set(true);
+        assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+        executor.shutdown();
+
+        assertEquals(WRITER_THREADS * CONTACTS_PER_THREAD / 2, testStore.size());
+        assertEquals(allKeptIDs.size(), testStore.size());
+
+        for (String contactID : allKeptIDs) {
+            Contact contact = testContactService.findContactObject(contactID);
+            String thread = contact.getLastName().substring(1);
+            assertTrue(contact.getPhoneNumber().startsWith(String.format("%02d", Integer.parseInt(thread))));
+        }
+    }
+
+
+    /**
+     * Asserts that threads racing to update and delete the same contact only ever see "Contact not found"
+     */
+    @Test
+    void racingUpdatesAndDeleteOnSameContact() throws Exception {
+        testContactService.addNewContact("First", "Last", "0000000000", "1 Stress Way");
+        String contactID = testStore.asList().get(0).getContactID();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_THREADS);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<Integer>> updaters = new ArrayList<Future<Integer>>();
+
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            int thread = t;
+            updaters.add(executor.submit(() -> {
+                startSignal.await();
+                int applied = 0;
+                for (int i = 0; i < 10000; i++) {
+                    try {
+                        testContactService.updateContactAddress(contactID, "Thread " + thread + " Way " + i);
+                        applied++;
+                        if (thread == 0 && i == 5000) {
+                            testContactService.deleteExistingContact(contactID);
+                        }
+                    } catch (IllegalArgumentException expected) {
+                        assertEquals("Contact not found", expected.getMessage());
+                    }
+                }
+                return applied;
+            }));
+        }
+
+        startSignal.countDown();
+        assertTrue(updaters.get(0).get(60, TimeUnit.SECONDS) > 5000); // thread 0 deletes only after its own updates
+        for (Future<Integer> updater : updaters) {
+            updater.get(60, TimeUnit.SECONDS); // other threads may start after the delete and apply nothing
+        }
+        executor.shutdown();
+
+        assertFalse(testStore.contains(contactID));
+    }
+
+
+    /**
+     * Asserts that the concurrent service instance is a single safely published object
+     */
+    @Test
+    void concurrentServiceInstanceIsSingleton() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<ContactService>> instances = new ArrayList<Future<ContactService>>();
+
+        for (int t = 0; t < 4; t++) {
+            instances.add(executor.submit(ContactService::getConcurrentServiceInstance));
+        }
+        for (Future<ContactService> instance : instances) {
+            assertSame(ContactService.getConcurrentServiceInstance(), instance.get());
+        }
+        assertNotSame(ContactService.getServiceInstance(), ContactService.getConcurrentServiceInstance());
+        executor.shutdown();
+    }
+}
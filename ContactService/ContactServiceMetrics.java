@@ -0,0 +1,135 @@
+package contactService;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * lock free counters and latency histograms for one ContactService.
+ *
+ * Only one call in latencySampleInterval is measured: a sampled call is timed and adds the whole interval to its
+ * operation's call count. Two System.nanoTime() reads and a shared counter increment cost about as much as a
+ * cached lookup, so measuring every call would more than double its cost, while an unsampled call only draws a
+ * thread local random number. Failures, missing contacts, version conflicts and validation failures are rare
+ * and are always counted exactly.
+ */
+final class ContactServiceMetrics {
+
+    // returned by startTimer() for calls that are not sampled
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final ContactMetricsSnapshot.Operation[] OPERATIONS = ContactMetricsSnapshot.Operation.values();
+    private static final ContactValidationResult[] VALIDATION_RESULTS = ContactValidationResult.values();
+
+    private final int latencySampleInterval;
+    private final int latencySampleMask;
+
+    private final LongAdder[] calls = newAdders(OPERATIONS.length);
+    private final LongAdder[] failures = newAdders(OPERATIONS.length);
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] validationFailures = newAdders(VALIDATION_RESULTS.length);
+    private final LongAdder contactNotFound = new LongAdder();
+    private final LongAdder versionConflicts = new LongAdder();
+
+
+    /**
+     * @param latencySampleInterval measure one call in this many, a power of two. 1 measures every call exactly
+     */
+    ContactServiceMetrics(int latencySampleInterval) {
+        if (latencySampleInterval <= 0 || Integer.bitCount(latencySampleInterval) != 1) {
+            throw new IllegalArgumentException("Invalid latency sample interval. Expected a power of two");
+        }
+        this.latencySampleInterval = latencySampleInterval;
+        this.latencySampleMask = latencySampleInterval - 1;
+
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+
+    /**
+     * @return long start time to pass to record(), or NOT_TIMED if this call is not sampled
+     */
+    long startTimer() {
+        if ((ThreadLocalRandom.current().nextInt() & latencySampleMask) != 0) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+
+    /**
+     * records a finished call, counting and timing it if it was sampled
+     * @param operation service method that ran
+     * @param startNanos value returned by startTimer()
+     * @param succeeded false if the call threw
+     */
+    void record(ContactMetricsSnapshot.Operation operation, long startNanos, boolean succeeded) {
+        int index = operation.ordinal();
+        if (startNanos != NOT_TIMED) {
+            latencies[index].record(System.nanoTime() - startNanos);
+            calls[index].add(latencySampleInterval); // stands in for the unsampled calls around it
+        }
+        if (!succeeded) {
+            failures[index].increment();
+        }
+    }
+
+
+    /**
+     * @param result failed check, counted under its field
+     */
+    void recordValidationFailure(ContactValidationResult result) {
+        validationFailures[result.ordinal()].increment();
+    }
+
+
+    void recordContactNotFound() {
+        contactNotFound.increment();
+    }
+
+
+    void recordVersionConflict() {
+        versionConflicts.increment();
+    }
+
+
+    /**
+     * @param storeSize current number of contacts
+     * @param idRetryCount retries reported by the ID generator
+     * @return ContactMetricsSnapshot copy of every counter and histogram
+     */
+    ContactMetricsSnapshot snapshot(int storeSize, long idRetryCount) {
+        Map<ContactMetricsSnapshot.Operation, ContactMetricsSnapshot.OperationStats> operations =
+                new EnumMap<ContactMetricsSnapshot.Operation, ContactMetricsSnapshot.OperationStats>(
+                        ContactMetricsSnapshot.Operation.class);
+        for (ContactMetricsSnapshot.Operation operation : OPERATIONS) {
+            int index = operation.ordinal();
+            LatencyHistogram latency = latencies[index];
+            operations.put(operation, new ContactMetricsSnapshot.OperationStats(calls[index].sum(),
+                    failures[index].sum(), latency.bucketCounts(), latency.totalNanos(), latency.maxNanos()));
+        }
+
+        Map<ContactValidationResult, Long> failuresByField =
+                new EnumMap<ContactValidationResult, Long>(ContactValidationResult.class);
+        for (ContactValidationResult result : VALIDATION_RESULTS) {
+            if (!result.isValid() && result != ContactValidationResult.CONTACT_NOT_FOUND) { // counted separately
+                failuresByField.put(result, validationFailures[result.ordinal()].sum());
+            }
+        }
+
+        return new ContactMetricsSnapshot(operations, failuresByField, contactNotFound.sum(), versionConflicts.sum(),
+                idRetryCount, storeSize);
+    }
+
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,125 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for ContactService metrics and the latency histogram behind them
+ */
+public class ContactServiceMetricsTest {
+
+    private ContactService testContactService;
+
+
+    /**
+     * creates a service timing every call for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testContactService = new ContactService(new ConcurrentContactStore(), new TimestampContactIdGenerator(7));
+        testContactService.enableMetrics(1);
+    }
+
+
+    /**
+     * Asserts that calls, failures, not found lookups and version conflicts are counted per operation
+     */
+    @Test
+    void callsAndFailuresAreCountedPerOperation() {
+        testContactService.addNewContact("John", "Doe", "0123456789", "1 Main St");
+        String contactID = testContactService.addContacts(Arrays.asList(
+                new ContactRecord("Jane", "Doe", "0123456789", "1 Main St"))).getAddedContactIDs().get(0);
+
+        testContactService.findContactObject(contactID);
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactObject("missing"));
+        testContactService.updateContactAddress(contactID, "2 Main St");
+        assertFalse(testContactService.updateContactAddress(contactID, "3 Main St", 0));
+        testContactService.deleteExistingContact(contactID);
+        assertThrows(IllegalArgumentException.class, () -> testContactService.deleteExistingContact(contactID));
+
+        ContactMetricsSnapshot snapshot = testContactService.getMetricsSnapshot();
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.ADD_CONTACT).getCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.ADD_CONTACTS).getCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.CREATE_CONTACT_ID).getCount());
+        assertEquals(2, snapshot.getOperation(ContactMetricsSnapshot.Operation.FIND_CONTACT).getCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.FIND_CONTACT).getFailureCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.UPDATE_CONTACT).getCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.UPDATE_CONTACT_IF_VERSION).getCount());
+        assertEquals(2, snapshot.getOperation(ContactMetricsSnapshot.Operation.DELETE_CONTACT).getCount());
+        assertEquals(1, snapshot.getOperation(ContactMetricsSnapshot.Operation.DELETE_CONTACT).getFailureCount());
+        assertEquals(2, snapshot.getContactNotFoundCount());
+        assertEquals(1, snapshot.getVersionConflictCount());
+        assertEquals(1, snapshot.getStoreSize());
+
+        ContactMetricsSnapshot.OperationStats finds = snapshot.getOperation(ContactMetricsSnapshot.Operation.FIND_CONTACT);
+        assertEquals(2, finds.getSampledCount());
+        assertTrue(finds.getPercentileNanos(100) >= finds.getPercentileNanos(50));
+        assertTrue(snapshot.toText().contains("FIND_CONTACT"));
+    }
+
+
+    /**
+     * Asserts that rejected fields are counted by field for single adds, updates and bulk rows
+     */
+    @Test
+    void validationFailuresAreCountedByField() {
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("John", "Doe", "12345", "1 Main St"));
+        List<String> ids = testContactService.addContacts(Arrays.asList(
+                new ContactRecord("John", "Doe", "0123456789", "1 Main St"),
+                new ContactRecord("John", null, "0123456789", "1 Main St"),
+                null)).getAddedContactIDs();
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.updateContactAddress(ids.get(0), "1234567890123456789012345678901"));
+
+        ContactMetricsSnapshot snapshot = testContactService.getMetricsSnapshot();
+        assertEquals(1L, snapshot.getValidationFailures().get(ContactValidationResult.INVALID_PHONE_NUMBER));
+        assertEquals(1L, snapshot.getValidationFailures().get(ContactValidationResult.INVALID_LAST_NAME));
+        assertEquals(1L, snapshot.getValidationFailures().get(ContactValidationResult.INVALID_ADDRESS));
+        assertEquals(1L, snapshot.getValidationFailures().get(ContactValidationResult.NULL_RECORD));
+        assertEquals(0L, snapshot.getValidationFailures().get(ContactValidationResult.INVALID_FIRST_NAME));
+        assertEquals(0, snapshot.getOperation(ContactMetricsSnapshot.Operation.CREATE_CONTACT_ID).getCount());
+    }
+
+
+    /**
+     * Asserts that metrics have to be enabled before a snapshot is taken
+     */
+    @Test
+    void metricsSnapshotWithoutEnablingThrowsException() {
+        ContactService unmeasuredService = new ContactService(new HashContactStore(), new TimestampContactIdGenerator(8));
+
+        assertThrows(IllegalStateException.class, unmeasuredService::getMetricsSnapshot);
+        assertThrows(IllegalArgumentException.class, () -> unmeasuredService.enableMetrics(3));
+    }
+
+
+    /**
+     * Asserts that histogram buckets cover every value and percentiles stay within the bucket precision
+     */
+    @Test
+    void latencyHistogramStaysWithinBucketPrecision() {
+        for (long value : new long[] { 0, 1, 63, 64, 65, 1000, 123456789, (1L << 41) - 1 }) {
+            int bucket = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.highestValueIn(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValueIn(bucket - 1) < value);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex((1L << 41) - 1));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100000; nanos++) {
+            histogram.record(nanos);
+        }
+        long[] buckets = histogram.bucketCounts();
+        assertEquals(50000, LatencyHistogram.valueAtPercentile(buckets, 50), 50000 * 0.04);
+        assertEquals(99000, LatencyHistogram.valueAtPercentile(buckets, 99), 99000 * 0.04);
+        assertEquals(100000, histogram.maxNanos());
+        assertEquals(0, LatencyHistogram.valueAtPercentile(new long[LatencyHistogram.BUCKETS], 99));
+    }
+}
@@ -22,9 +22,7 @@ public class ContactServiceTest {
         validTestContact = null;
 
         testContactService = ContactService.getServiceInstance();
-        testContactService.addNewContact("FirstName","LastName","0123456789","123 Test Lane");
-        int lastContactIndex = ContactService.getContactList().size() - 1;
-        validTestContact = ContactService.getContactList().get(lastContactIndex);
+        validTestContact = testContactService.addNewContact("FirstName","LastName","0123456789","123 Test Lane");
     }
 
 
@@ -58,13 +56,12 @@ public class ContactServiceTest {
     void addNewContactDoesNotThrowException() {
 
         assertDoesNotThrow(() -> {
-            testContactService.addNewContact("John","Doe","9876543210","321 Test Way");
-
-            int newContactIndex = ContactService.getContactList().size() - 1;
-            String addContactTestId = ContactService.getContactList().get(newContactIndex).getContactID();
+            Contact addedContact = testContactService.addNewContact("John","Doe","9876543210","321 Test Way");
+            String addContactTestId = addedContact.getContactID();
 
             assertEquals(2, ContactService.getContactList().size());
-            assertEquals(ContactService.getContactList().get(newContactIndex).getFirstName(), "John");
+            assertEquals(addedContact.getFirstName(), "John");
+            assertSame(addedContact, testContactService.findContactObject(addContactTestId));
 
             testContactService.deleteExistingContact(addContactTestId);
         });
@@ -0,0 +1,134 @@
+package contactService;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * fixed size record slabs shared by the PackedContactStores of one ContactTenants registry.
+ *
+ * A store takes a slab whenever it fills the ones it has, and hands all of them back when its tenant is removed.
+ * Returned slabs are zeroed, so no tenant ever reads another's records, and kept for the next store that grows, up
+ * to a byte limit, instead of being left to the garbage collector. Direct slabs in particular are slow to allocate
+ * and are only freed by a collection, so reusing them keeps tenant churn from piling up native memory.
+ */
+final class ContactSlabPool {
+
+    private final int slabShift;
+    private final boolean offHeap;
+    private final int maxPooledSlabs;
+
+    // guarded by this
+    private final ArrayDeque<ByteBuffer> pooledSlabs = new ArrayDeque<ByteBuffer>();
+    private long leasedSlabs;
+
+
+    /**
+     * @param slabRecords records per slab, a power of two
+     * @param offHeap true to allocate slabs as direct buffers outside the Java heap
+     * @param maxPooledBytes most bytes of returned slabs kept for reuse
+     */
+    ContactSlabPool(int slabRecords, boolean offHeap, long maxPooledBytes) {
+        if (slabRecords < 1 || Integer.bitCount(slabRecords) != 1
+                || (long) slabRecords * FixedWidthContactRecord.RECORD_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid slab size. Expected a power of two number of records");
+        }
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("Invalid pooled byte limit. Expected 0 or more");
+        }
+        this.slabShift = Integer.numberOfTrailingZeros(slabRecords);
+        this.offHeap = offHeap;
+        this.maxPooledSlabs = (int) Math.min(Integer.MAX_VALUE, maxPooledBytes / getSlabBytes());
+    }
+
+
+    /**
+     * @return int log2 of the records per slab
+     */
+    int getSlabShift() {
+        return slabShift;
+    }
+
+
+    /**
+     * @return int bytes per slab
+     */
+    int getSlabBytes() {
+        return (1 << slabShift) * FixedWidthContactRecord.RECORD_BYTES;
+    }
+
+
+    /**
+     * @return true if slabs are allocated outside the Java heap
+     */
+    boolean isOffHeap() {
+        return offHeap;
+    }
+
+
+    /**
+     * @return ByteBuffer zeroed slab, reused if one is pooled
+     */
+    ByteBuffer take() {
+        synchronized (this) {
+            leasedSlabs++;
+            ByteBuffer pooled = pooledSlabs.pollFirst();
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        return offHeap ? ByteBuffer.allocateDirect(getSlabBytes()) : ByteBuffer.allocate(getSlabBytes());
+    }
+
+
+    /**
+     * takes slabs back from a store that no longer uses them
+     * @param slabs slabs handed out by take()
+     */
+    void giveBack(ByteBuffer[] slabs) {
+        for (ByteBuffer slab : slabs) {
+            zero(slab); // outside the lock, other stores keep growing meanwhile
+        }
+
+        synchronized (this) {
+            leasedSlabs -= slabs.length;
+            for (ByteBuffer slab : slabs) {
+                if (pooledSlabs.size() == maxPooledSlabs) {
+                    break;
+                }
+                pooledSlabs.addFirst(slab); // most recently used first, still warm in cache
+            }
+        }
+    }
+
+
+    /**
+     * @return long bytes of slabs currently in use by stores
+     */
+    synchronized long getLeasedBytes() {
+        return leasedSlabs * getSlabBytes();
+    }
+
+
+    /**
+     * @return long bytes of zeroed slabs waiting for reuse
+     */
+    synchronized long getPooledBytes() {
+        return (long) pooledSlabs.size() * getSlabBytes();
+    }
+
+
+    private static void zero(ByteBuffer slab) {
+        if (slab.hasArray()) {
+            Arrays.fill(slab.array(), slab.arrayOffset(), slab.arrayOffset() + slab.capacity(), (byte) 0);
+            return;
+        }
+        int offset = 0;
+        for (; offset + Long.BYTES <= slab.capacity(); offset += Long.BYTES) {
+            slab.putLong(offset, 0L);
+        }
+        for (; offset < slab.capacity(); offset++) {
+            slab.put(offset, (byte) 0);
+        }
+    }
+}
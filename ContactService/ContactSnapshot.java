@@ -0,0 +1,154 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * consistent point in time view of a ContactService's contacts, from ContactService.openSnapshot(). Opening one
+ * costs the same however many contacts there are, and writers carry on while it is read: they keep the values they
+ * replace or delete for as long as a snapshot that may need them is open. Close every snapshot, ideally with
+ * try-with-resources, so those values can be dropped.
+ *
+ * Reads after close() throw IllegalStateException. A snapshot can be read from several threads at once.
+ */
+public final class ContactSnapshot implements AutoCloseable {
+
+    private final ContactStore contactStore;
+    private final ContactVersionChains versionChains;
+    private final long stamp;
+
+    private volatile boolean closed;
+
+
+    ContactSnapshot(ContactStore contactStore, ContactVersionChains versionChains, long stamp) {
+        this.contactStore = contactStore;
+        this.versionChains = versionChains;
+        this.stamp = stamp;
+    }
+
+
+    /**
+     * @param contactID contact to look up
+     * @return ContactValue the contact had when the snapshot was opened, or null if it did not exist then
+     */
+    public ContactValue get(String contactID) {
+        requireOpen();
+        if (contactID == null) {
+            return null;
+        }
+        Contact contact = contactStore.get(contactID); // store first, then the records of anything changed since
+        return versionChains.valueAt(contactID, contact == null ? null : contact.getValue(), stamp);
+    }
+
+
+    /**
+     * hands every contact of the snapshot to an action, in no particular order. The store is read one contact at a
+     * time through ContactStore.openScan(), so this does not build a list of the contacts.
+     * @param action called once per contact with its value as of the snapshot
+     */
+    public void forEach(Consumer<? super ContactValue> action) {
+        requireOpen();
+        try (ContactStore.Scan scan = contactStore.openScan()) {
+            Set<String> unlisted = unlistedContactIDs();
+            forEach(scan, 0, scan.positionCount(), unlisted, action);
+            forEachUnlisted(unlisted, action);
+        }
+    }
+
+
+    /**
+     * @return Set of the contactIDs changed before a scan opened just now. A scan visits every contact stored when
+     *         it opened, the rest of these were deleted before and are only found through their records. Visits
+     *         take contacts out of the set, it is safe for scan ranges read on several threads.
+     */
+    Set<String> unlistedContactIDs() {
+        Set<String> unlisted = ConcurrentHashMap.newKeySet();
+        unlisted.addAll(versionChains.changedContactIDs());
+        return unlisted;
+    }
+
+
+    /**
+     * hands the contacts at a range of a scan opened after this snapshot to an action, as of the snapshot
+     * @param scan scan of this snapshot's store
+     * @param from first position to read
+     * @param to position after the last one to read
+     * @param unlisted set from unlistedContactIDs(), visited contacts are taken out
+     * @param action called with each contact's value as of the snapshot
+     */
+    void forEach(ContactStore.Scan scan, int from, int to, Set<String> unlisted,
+                 Consumer<? super ContactValue> action) {
+        scan.forEach(from, to, (contactID, currentValue) -> {
+            ContactValue value = versionChains.valueAt(contactID, currentValue, stamp);
+            if (value != null) {
+                action.accept(value);
+            }
+            if (!unlisted.isEmpty()) {
+                unlisted.remove(contactID);
+            }
+        });
+    }
+
+
+    /**
+     * hands the contacts no scan range visited to an action, call once every range has been read
+     * @param unlisted set from unlistedContactIDs()
+     * @param action called with each contact's value as of the snapshot
+     */
+    void forEachUnlisted(Set<String> unlisted, Consumer<? super ContactValue> action) {
+        for (String contactID : unlisted) {
+            ContactValue value = get(contactID);
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+
+    /**
+     * @return List of every contact's value as of the snapshot, in no particular order
+     */
+    public List<ContactValue> asList() {
+        List<ContactValue> values = new ArrayList<ContactValue>(contactStore.size());
+        forEach(values::add);
+        return values;
+    }
+
+
+    /**
+     * @return long commit stamp the snapshot reads at, later snapshots have larger stamps
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+
+    /**
+     * @return ContactVersionChains records this snapshot reads, for tests
+     */
+    ContactVersionChains getVersionChains() {
+        return versionChains;
+    }
+
+
+    /**
+     * releases the snapshot, calling it again does nothing
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            versionChains.unpin(stamp);
+        }
+    }
+
+
+    private void requireOpen() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package contactService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * compact binary snapshot of every contact in a store.
+ *
+ * Layout: int magic | int format | long logSequenceNumber | (byte 1 | contact)* | byte 0 | long count | int crc32
+ * where contact is the ContactRecordCodec contact encoding and the checksum covers everything before it.
+ * logSequenceNumber is the first log record that has to be replayed on top of the snapshot.
+ */
+final class ContactSnapshotFile {
+
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final int FORMAT = 1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int TRAILER_BYTES = 1 + Long.BYTES + Integer.BYTES;
+
+
+    /*
+     * static helpers only
+     */
+    private ContactSnapshotFile() {
+    }
+
+
+    /**
+     * writes a snapshot to a temporary file, forces it, renames it into place and forces the directory
+     * @param directory folder holding snapshot files
+     * @param logSequenceNumber first log record not guaranteed to be reflected in the contacts
+     * @param contacts contacts to write
+     * @return Path of the finished snapshot
+     */
+    static Path write(Path directory, long logSequenceNumber, Iterable<Contact> contacts) throws IOException {
+        Path snapshot = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, logSequenceNumber, SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long count = 0;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(FORMAT).putLong(logSequenceNumber);
+
+            for (Contact contact : contacts) {
+                if (buffer.remaining() < 1 + ContactRecordCodec.MAX_CONTACT_BYTES) {
+                    writeBuffer(channel, buffer, crc);
+                }
+                buffer.put((byte) 1);
+                ContactRecordCodec.writeContact(buffer, contact.getValue());
+                count++;
+            }
+
+            if (buffer.remaining() < TRAILER_BYTES) {
+                writeBuffer(channel, buffer, crc);
+            }
+            buffer.put((byte) 0).putLong(count);
+            writeBuffer(channel, buffer, crc);
+            buffer.putInt((int) crc.getValue());
+            writeBuffer(channel, buffer, null);
+            channel.force(true);
+        }
+
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        ContactWriteAheadLog.forceDirectory(directory); // the rename has to be on disk before older files are deleted
+        return snapshot;
+    }
+
+
+    /**
+     * reads a snapshot, validating its checksum before handing out any contact
+     * @param snapshot snapshot file
+     * @param contactConsumer receives every contact in the snapshot
+     * @return long first log sequence number to replay after the snapshot
+     * @throws IOException if the file is truncated or corrupt
+     */
+    static long read(Path snapshot, Consumer<ContactValue> contactConsumer) throws IOException {
+        verifyChecksum(snapshot);
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            boolean endOfFile = ContactWriteAheadLog.fill(channel, buffer);
+            buffer.flip();
+
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                throw new IOException("Not a contact snapshot: " + snapshot);
+            }
+            long logSequenceNumber = buffer.getLong();
+            long count = 0;
+
+            while (true) {
+                if (buffer.remaining() < 1 + ContactRecordCodec.MAX_CONTACT_BYTES && !endOfFile) {
+                    buffer.compact();
+                    endOfFile = ContactWriteAheadLog.fill(channel, buffer);
+                    buffer.flip();
+                }
+                if (buffer.get() == 0) {
+                    break;
+                }
+                contactConsumer.accept(ContactRecordCodec.readContact(buffer));
+                count++;
+            }
+
+            if (buffer.getLong() != count) {
+                throw new IOException("Contact snapshot count mismatch: " + snapshot);
+            }
+            return logSequenceNumber;
+        }
+    }
+
+
+    /**
+     * @param directory folder holding snapshot files
+     * @return List of finished snapshot files, newest (highest sequence number) first
+     */
+    static List<Path> listSnapshots(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                snapshots.add(file);
+            }
+        }
+        snapshots.sort((first, second) -> second.getFileName().compareTo(first.getFileName())); // zero padded names
+        return snapshots;
+    }
+
+
+    /*
+     * writes the buffer's contents, adding them to the running checksum
+     */
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    /*
+     * recomputes the checksum over everything but the trailing checksum and compares
+     */
+    private static void verifyChecksum(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long checkedBytes = channel.size() - Integer.BYTES;
+            if (checkedBytes < HEADER_BYTES + TRAILER_BYTES - Integer.BYTES) {
+                throw new IOException("Contact snapshot is truncated: " + snapshot);
+            }
+
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            long position = 0;
+
+            while (position < checkedBytes) {
+                buffer.clear().limit((int) Math.min(BUFFER_BYTES, checkedBytes - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Contact snapshot is truncated: " + snapshot);
+                }
+                buffer.flip();
+                crc.update(buffer);
+                position += read;
+            }
+
+            ByteBuffer storedChecksum = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(storedChecksum, checkedBytes);
+            storedChecksum.flip();
+
+            if (storedChecksum.remaining() != Integer.BYTES || storedChecksum.getInt() != (int) crc.getValue()) {
+                throw new IOException("Contact snapshot checksum mismatch: " + snapshot);
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for MVCC snapshots: consistent reads while writers carry on, and reclamation of kept values
+ */
+public class ContactSnapshotTest {
+
+    private static final List<Supplier<ContactStore>> STORES = List.of(ConcurrentContactStore::new,
+            PackedContactStore::new, () -> new ShardedContactStore(4, PackedContactStore::new));
+
+
+    private static ContactService newService(ContactStore store, int contactCount) {
+        ContactService service = new ContactService(store, new TimestampContactIdGenerator(23));
+        List<ContactRecord> records = new ArrayList<ContactRecord>(contactCount);
+        for (int i = 0; i < contactCount; i++) {
+            records.add(new ContactRecord("First" + i, "Last" + i, String.format("555%07d", i), i + " Main St"));
+        }
+        service.addContacts(records);
+        return service;
+    }
+
+
+    private static Map<String, ContactValue> byID(List<ContactValue> values) {
+        Map<String, ContactValue> map = new HashMap<String, ContactValue>();
+        for (ContactValue value : values) {
+            assertNull(map.put(value.getContactID(), value), "each contact appears once");
+        }
+        return map;
+    }
+
+
+    private static void assertSameValue(ContactValue expected, ContactValue actual) {
+        assertEquals(expected.getContactID(), actual.getContactID());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getPhoneNumber(), actual.getPhoneNumber());
+        assertEquals(expected.getAddress(), actual.getAddress());
+    }
+
+
+    /**
+     * Asserts that a snapshot keeps showing the contacts as they were when it was opened after updates, deletes and
+     * adds, while the service itself shows the changes
+     */
+    @Test
+    void snapshotIgnoresLaterWrites() {
+        for (Supplier<ContactStore> stores : STORES) {
+            ContactStore store = stores.get();
+            ContactService service = newService(store, 100);
+            List<Contact> contacts = store.asList();
+            Map<String, ContactValue> before = new HashMap<String, ContactValue>();
+            for (Contact contact : contacts) {
+                before.put(contact.getContactID(), contact.getValue());
+            }
+            String updatedID = contacts.get(0).getContactID();
+            String deletedID = contacts.get(1).getContactID();
+            String versionedID = contacts.get(2).getContactID();
+
+            try (ContactSnapshot snapshot = service.openSnapshot()) {
+                service.updateContactLastName(updatedID, "Renamed");
+                service.updateContactAddress(updatedID, "1 New Rd");
+                service.deleteExistingContact(deletedID);
+                assertTrue(service.updateContactFirstName(versionedID, "Changed", 0));
+                assertFalse(service.updateContactFirstName(versionedID, "Stale", 0));
+                String addedID = service.addNewContact("New", "Person", "5551234567", "2 New Rd").getContactID();
+
+                assertEquals("Renamed", service.findContactObject(updatedID).getLastName());
+                assertNull(store.get(deletedID));
+
+                assertSameValue(before.get(updatedID), snapshot.get(updatedID));
+                assertSameValue(before.get(deletedID), snapshot.get(deletedID));
+                assertSameValue(before.get(versionedID), snapshot.get(versionedID));
+                assertNull(snapshot.get(addedID), "added after the snapshot was opened");
+                assertNull(snapshot.get(null));
+
+                Map<String, ContactValue> seen = byID(snapshot.asList());
+                assertEquals(before.keySet(), seen.keySet());
+                for (ContactValue value : seen.values()) {
+                    assertSameValue(before.get(value.getContactID()), value);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that reading a snapshot twice while another thread keeps updating, deleting and adding contacts gives
+     * the same contents both times
+     */
+    @Test
+    void snapshotIsConsistentUnderConcurrentWrites() throws InterruptedException {
+        for (Supplier<ContactStore> stores : STORES) {
+            ContactStore store = stores.get();
+            ContactService service = newService(store, 5000);
+            List<String> contactIDs = new ArrayList<String>();
+            for (Contact contact : store.asList()) {
+                contactIDs.add(contact.getContactID());
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                int i = 0;
+                while (running.get()) {
+                    String contactID = contactIDs.get(i % contactIDs.size());
+                    if (i % 50 == 7 && store.contains(contactID)) {
+                        service.deleteExistingContact(contactID);
+                    } else if (i % 50 == 13) {
+                        contactIDs.add(service.addNewContact("Added", "Later", "5550000000", "Elsewhere")
+                                .getContactID());
+                    } else if (store.contains(contactID)) {
+                        service.updateContactAddress(contactID, i + " Moved Ave");
+                    }
+                    i++;
+                }
+            });
+            writer.start();
+            try {
+                for (int round = 0; round < 5; round++) {
+                    try (ContactSnapshot snapshot = service.openSnapshot()) {
+                        Map<String, ContactValue> first = byID(snapshot.asList());
+                        Thread.sleep(5);
+                        Map<String, ContactValue> second = byID(snapshot.asList());
+
+                        assertEquals(first.keySet(), second.keySet());
+                        for (ContactValue value : first.values()) {
+                            assertSameValue(value, second.get(value.getContactID()));
+                            assertSameValue(value, snapshot.get(value.getContactID()));
+                        }
+                    }
+                }
+            } finally {
+                running.set(false);
+                writer.join();
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that the first snapshot of a service waits for a compare and set update that skipped its write lock
+     * just before, instead of pinning its stamp while the update still lands unrecorded
+     */
+    @Test
+    void firstSnapshotWaitsForLockFreeUpdate() throws Exception {
+        CountDownLatch replacing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ContactStore store = new ConcurrentContactStore() {
+            @Override
+            public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+                replacing.countDown(); // holds the update between its lock free check and its write
+                try {
+                    release.await();
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.replace(contact, expectedValue, newValue);
+            }
+        };
+        ContactService service = newService(store, 1);
+        String contactID = store.asList().get(0).getContactID();
+
+        Thread updater = new Thread(() -> service.updateContactAddress(contactID, "1 Raced Rd", 0));
+        updater.start();
+        assertTrue(replacing.await(10, TimeUnit.SECONDS));
+
+        AtomicReference<ContactSnapshot> snapshot = new AtomicReference<ContactSnapshot>();
+        AtomicReference<ContactValue> firstRead = new AtomicReference<ContactValue>();
+        Thread opener = new Thread(() -> {
+            snapshot.set(service.openSnapshot());
+            firstRead.set(snapshot.get().get(contactID));
+        });
+        opener.start();
+        Thread.sleep(100); // gives the opener time to pin a stamp if it did not wait
+        release.countDown();
+        updater.join();
+        opener.join();
+
+        try (ContactSnapshot opened = snapshot.get()) {
+            assertEquals(1, firstRead.get().getVersion(), "the update finished before the stamp was pinned");
+            assertSameValue(firstRead.get(), opened.get(contactID));
+        }
+    }
+
+
+    /**
+     * Asserts that the first snapshot of fresh services, opened while threads run lock free compare and set
+     * updates, reads the same contents every time
+     */
+    @Test
+    void firstSnapshotIsConsistentUnderLockFreeUpdates() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            ContactStore store = new ConcurrentContactStore();
+            ContactService service = newService(store, 64);
+            List<String> contactIDs = new ArrayList<String>();
+            for (Contact contact : store.asList()) {
+                contactIDs.add(contact.getContactID());
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> updaters = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                Thread updater = new Thread(() -> {
+                    while (running.get()) {
+                        String contactID = contactIDs.get(ThreadLocalRandom.current().nextInt(contactIDs.size()));
+                        long version = store.get(contactID).getVersion();
+                        service.updateContactAddress(contactID, version + " CAS Ave", version);
+                    }
+                });
+                updaters.add(updater);
+                updater.start();
+            }
+
+            try {
+                Thread.sleep(1);
+                try (ContactSnapshot snapshot = service.openSnapshot()) {
+                    Map<String, ContactValue> first = byID(snapshot.asList());
+                    Thread.sleep(2);
+                    Map<String, ContactValue> second = byID(snapshot.asList());
+
+                    assertEquals(64, first.size());
+                    for (ContactValue value : first.values()) {
+                        assertSameValue(value, second.get(value.getContactID()));
+                    }
+                }
+            } finally {
+                running.set(false);
+                for (Thread updater : updaters) {
+                    updater.join();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Asserts that kept values are only held while a snapshot that can read them is open
+     */
+    @Test
+    void oldVersionsAreReclaimedAfterSnapshotCloses() {
+        ContactStore store = new ConcurrentContactStore();
+        ContactService service = newService(store, 10);
+        String contactID = store.asList().get(0).getContactID();
+
+        ContactSnapshot first = service.openSnapshot();
+        ContactVersionChains chains = first.getVersionChains();
+        service.updateContactAddress(contactID, "1 First Rd");
+        ContactSnapshot second = service.openSnapshot();
+        service.updateContactAddress(contactID, "2 Second Rd");
+        assertEquals(2, chains.recordCount());
+        assertTrue(second.getStamp() > first.getStamp());
+
+        first.close();
+        assertEquals(1, chains.recordCount(), "only the change after the second snapshot is still needed");
+        assertEquals("1 First Rd", second.get(contactID).getAddress());
+
+        second.close();
+        second.close();
+        assertEquals(0, chains.recordCount());
+        service.updateContactAddress(contactID, "3 Third Rd");
+        assertEquals(0, chains.recordCount(), "nothing is recorded without open snapshots");
+    }
+
+
+    /**
+     * Asserts that a closed snapshot refuses reads
+     */
+    @Test
+    void closedSnapshotReadThrowsException() {
+        ContactService service = newService(new ConcurrentContactStore(), 3);
+        ContactSnapshot snapshot = service.openSnapshot();
+        assertEquals(3, snapshot.asList().size());
+        snapshot.close();
+
+        assertThrows(IllegalStateException.class, () -> snapshot.get("anything"));
+        assertThrows(IllegalStateException.class, snapshot::asList);
+        assertThrows(IllegalStateException.class, () -> snapshot.forEach(value -> { }));
+    }
+}
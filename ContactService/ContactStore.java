@@ -0,0 +1,148 @@
+package contactService;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * storage abstraction used by ContactService to hold Contact objects keyed on contactID
+ */
+public interface ContactStore {
+
+    /**
+     * looks up a contact by its identifier
+     * @param contactID
+     * @return the stored Contact, or null if no contact has that ID
+     */
+    Contact get(String contactID);
+
+
+    /**
+     * checks whether a contact with the given identifier is stored
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    boolean contains(String contactID);
+
+
+    /**
+     * stores a new contact
+     * @param contact
+     * @throws IllegalArgumentException if a contact with the same ID is already stored
+     */
+    void add(Contact contact);
+
+
+    /**
+     * stores a batch of new contacts. Stores that can insert more cheaply in bulk should override this.
+     * @param contacts
+     * @throws IllegalArgumentException if any contact ID is already stored
+     */
+    default void addAll(List<Contact> contacts) {
+        for (Contact contact : contacts) {
+            add(contact);
+        }
+    }
+
+
+    /**
+     * replaces a stored contact's details if they are still the expected value. Stores that keep contacts in the
+     * Contact objects they hand out just swap the object's value, stores that hand out temporary views override this
+     * to update their own storage.
+     * @param contact Contact returned by get() for the contact being changed
+     * @param expectedValue value the update was based on
+     * @param newValue replacement value
+     * @return true if the value was replaced, false if the contact changed since expectedValue was read
+     */
+    default boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        return contact.compareAndSetValue(expectedValue, newValue);
+    }
+
+
+    /**
+     * removes a contact by its identifier
+     * @param contactID
+     * @return the removed Contact, or null if no contact has that ID
+     */
+    Contact remove(String contactID);
+
+
+    /**
+     * @return number of stored contacts
+     */
+    int size();
+
+
+    /**
+     * @return true if the store keeps fields as one byte per char and rejects text outside Latin-1. ContactService
+     *         then checks for it along with the other field checks, before a contact gets an ID.
+     */
+    default boolean requiresLatin1() {
+        return false;
+    }
+
+
+    /**
+     * starts reading the stored contacts one at a time, in ranges of positions that several threads can read at once.
+     * Every contact stored when this returns is handed over exactly once, by the range holding its position, even if
+     * it is updated or removed before the scan gets there. Contacts added later may or may not be. The default scans
+     * a copy of asList(); stores that build Contact views override it so a scan never holds every contact at once.
+     * @return Scan of the store, close it when done
+     */
+    default Scan openScan() {
+        List<Contact> contacts = asList();
+        return new Scan() {
+            @Override
+            public int positionCount() {
+                return contacts.size();
+            }
+
+            @Override
+            public void forEach(int from, int to, BiConsumer<String, ContactValue> action) {
+                for (int position = from; position < to; position++) {
+                    Contact contact = contacts.get(position);
+                    action.accept(contact.getContactID(), contact.getValue());
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+
+    /**
+     * read only list of the stored contacts, in no particular order. Single threaded stores happen to list contacts
+     * in the order they were added until the first delete, which may move any contact; thread safe stores may
+     * return a snapshot in any order.
+     * @return List of Contact objects
+     */
+    List<Contact> asList();
+
+
+    /**
+     * positions of a store's contacts as of openScan(). Stores may hold back reusing the space of removed contacts
+     * until the scan is closed.
+     */
+    interface Scan extends AutoCloseable {
+
+        /**
+         * @return int number of positions, ranges run from 0 up to it
+         */
+        int positionCount();
+
+
+        /**
+         * hands over the contacts at a range of positions
+         * @param from first position to read
+         * @param to position after the last one to read
+         * @param action called with each contactID and its current value, or null if the contact was removed since
+         *        the scan opened. Stores that hand out Contact objects may pass a removed contact's last value instead.
+         */
+        void forEach(int from, int to, BiConsumer<String, ContactValue> action);
+
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,64 @@
+package contactService;
+
+/**
+ * one tenant's size against its memory quota, from ContactTenants.getUsage()
+ */
+public final class ContactTenantUsage {
+
+    private final String tenantID;
+    private final int contactCount;
+    private final long allocatedBytes;
+    private final long memoryQuotaBytes;
+
+
+    /**
+     * @param tenantID tenant reported on
+     * @param contactCount contacts the tenant holds
+     * @param allocatedBytes bytes of record slabs, index and free list the tenant's store holds
+     * @param memoryQuotaBytes most bytes of record slabs the tenant may hold
+     */
+    ContactTenantUsage(String tenantID, int contactCount, long allocatedBytes, long memoryQuotaBytes) {
+        this.tenantID = tenantID;
+        this.contactCount = contactCount;
+        this.allocatedBytes = allocatedBytes;
+        this.memoryQuotaBytes = memoryQuotaBytes;
+    }
+
+
+    /**
+     * @return String tenant reported on
+     */
+    public String getTenantID() {
+        return tenantID;
+    }
+
+
+    /**
+     * @return int number of contacts the tenant holds
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+
+
+    /**
+     * @return long bytes the tenant's store holds for records, its index and its free list
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+
+    /**
+     * @return long most bytes of record slabs the tenant may hold
+     */
+    public long getMemoryQuotaBytes() {
+        return memoryQuotaBytes;
+    }
+
+
+    @Override
+    public String toString() {
+        return tenantID + ": " + contactCount + " contacts, " + allocatedBytes + " of " + memoryQuotaBytes + " bytes";
+    }
+}
@@ -0,0 +1,177 @@
+package contactService;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * registry of tenant scoped ContactServices inside one JVM, so many customers can be served without a process
+ * each or one shared list of everyone's contacts.
+ *
+ * Every tenant gets its own thread safe ContactService over its own PackedContactStore, so its contacts, write
+ * locks, indexes, snapshots and idempotency keys are invisible to other tenants, and a contactID from one tenant is
+ * never found in another. What tenants share is everything that does not need to be per tenant: record slabs come
+ * from one ContactSlabPool and go back to it when a tenant is removed, contact IDs come from the process wide
+ * generator, and bulk validation and query scans run on the common fork join pool. The registry starts no threads.
+ *
+ * An empty tenant costs a few KB: the service's lock stripes and the store's initial index. Slabs are only taken
+ * once contacts are added, and each tenant stops at its memory quota. getUsage() reports a tenant's size against its
+ * quota; call and latency metrics are opt in per tenant through the tenant service's enableMetrics().
+ */
+public final class ContactTenants {
+
+    // records per slab, 88KB slabs so small tenants do not hold on to much unused memory
+    private static final int DEFAULT_SLAB_RECORDS = 1024;
+
+    // returned slabs kept for reuse unless the constructor says otherwise
+    private static final long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+
+    // longest tenantID the registry accepts
+    private static final int MAX_TENANT_ID_LENGTH = 64;
+
+    private final ContactSlabPool slabPool;
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+
+
+    /**
+     * creates a registry with 88KB heap slabs and up to 64MB of them pooled for reuse
+     */
+    public ContactTenants() {
+        this(DEFAULT_SLAB_RECORDS, false, DEFAULT_MAX_POOLED_BYTES);
+    }
+
+
+    /**
+     * @param slabRecords contact records per slab, a power of two. Tenants grow one slab at a time.
+     * @param offHeap true to allocate slabs as direct buffers outside the Java heap
+     * @param maxPooledBytes most bytes of slabs from removed tenants kept for reuse
+     */
+    public ContactTenants(int slabRecords, boolean offHeap, long maxPooledBytes) {
+        this.slabPool = new ContactSlabPool(slabRecords, offHeap, maxPooledBytes);
+    }
+
+
+    /**
+     * adds a tenant with an empty contact service
+     * @param tenantID 1 to 64 letters, digits, '-' or '_'
+     * @param memoryQuotaBytes most bytes of contact records the tenant may hold, adds past it throw
+     *                         IllegalStateException
+     * @return ContactService of the new tenant
+     */
+    public ContactService createTenant(String tenantID, long memoryQuotaBytes) {
+        requireTenantID(tenantID);
+        if (memoryQuotaBytes < slabPool.getSlabBytes()) {
+            throw new IllegalArgumentException("Invalid memory quota. Expected at least one slab of "
+                    + slabPool.getSlabBytes() + " bytes");
+        }
+
+        PackedContactStore store = new PackedContactStore(slabPool, memoryQuotaBytes);
+        Tenant tenant = new Tenant(new ContactService(store, ContactService.DEFAULT_ID_GENERATOR), store,
+                memoryQuotaBytes);
+        if (tenants.putIfAbsent(tenantID, tenant) != null) {
+            throw new IllegalArgumentException("Duplicate tenantID");
+        }
+        return tenant.service;
+    }
+
+
+    /**
+     * @param tenantID tenant to look up
+     * @return ContactService of the tenant
+     */
+    public ContactService getTenant(String tenantID) {
+        return lookupTenant(tenantID).service;
+    }
+
+
+    /**
+     * removes a tenant and gives its slabs back to the pool. Lookups through a service reference kept from before
+     * find nothing and adds through it throw IllegalStateException.
+     * @param tenantID tenant to remove
+     * @return boolean true if the tenant existed
+     */
+    public boolean removeTenant(String tenantID) {
+        Tenant tenant = tenantID == null ? null : tenants.remove(tenantID);
+        if (tenant == null) {
+            return false;
+        }
+        tenant.store.release();
+        return true;
+    }
+
+
+    /**
+     * @return Set of the current tenantIDs, a read only weakly consistent view
+     */
+    public Set<String> getTenantIDs() {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+
+    /**
+     * @param tenantID tenant to report on
+     * @return ContactTenantUsage contact count and memory of the tenant against its quota
+     */
+    public ContactTenantUsage getUsage(String tenantID) {
+        Tenant tenant = lookupTenant(tenantID);
+        return new ContactTenantUsage(tenantID, tenant.store.size(), tenant.store.getAllocatedBytes(),
+                tenant.memoryQuotaBytes);
+    }
+
+
+    /**
+     * @return long bytes of slabs held by tenants
+     */
+    public long getLeasedSlabBytes() {
+        return slabPool.getLeasedBytes();
+    }
+
+
+    /**
+     * @return long bytes of slabs from removed tenants waiting for reuse
+     */
+    public long getPooledSlabBytes() {
+        return slabPool.getPooledBytes();
+    }
+
+
+    private Tenant lookupTenant(String tenantID) {
+        Tenant tenant = tenantID == null ? null : tenants.get(tenantID);
+        if (tenant == null) {
+            throw new IllegalArgumentException("Tenant not found");
+        }
+        return tenant;
+    }
+
+
+    private static void requireTenantID(String tenantID) {
+        boolean valid = tenantID != null && !tenantID.isEmpty() && tenantID.length() <= MAX_TENANT_ID_LENGTH;
+        for (int i = 0; valid && i < tenantID.length(); i++) {
+            char c = tenantID.charAt(i);
+            valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid tenantID. Expected 1 to " + MAX_TENANT_ID_LENGTH
+                    + " letters, digits, '-' or '_'");
+        }
+    }
+
+
+    /*
+     * one tenant's service with the store and quota behind it
+     */
+    private static final class Tenant {
+
+        final ContactService service;
+        final PackedContactStore store;
+        final long memoryQuotaBytes;
+
+
+        Tenant(ContactService service, PackedContactStore store, long memoryQuotaBytes) {
+            this.service = service;
+            this.store = store;
+            this.memoryQuotaBytes = memoryQuotaBytes;
+        }
+    }
+}
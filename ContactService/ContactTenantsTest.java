@@ -0,0 +1,137 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for tenant scoped contact services sharing one slab pool
+ */
+public class ContactTenantsTest {
+
+    private static final int SLAB_RECORDS = 64;
+    private static final int SLAB_BYTES = SLAB_RECORDS * FixedWidthContactRecord.RECORD_BYTES;
+
+
+    private static List<ContactRecord> records(int count, String lastName) {
+        List<ContactRecord> records = new ArrayList<ContactRecord>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new ContactRecord("First" + i, lastName, String.format("555%07d", i), i + " Tenant Way"));
+        }
+        return records;
+    }
+
+
+    /**
+     * Asserts that tenants do not see each other's contacts, IDs or indexes
+     */
+    @Test
+    void tenantsAreIsolated() {
+        ContactTenants testTenants = new ContactTenants(SLAB_RECORDS, false, 0);
+        ContactService acme = testTenants.createTenant("acme", 1 << 20);
+        ContactService globex = testTenants.createTenant("globex-2", 1 << 20);
+
+        String acmeID = acme.addNewContact("Ann", "Acme", "5550000001", "1 Acme Rd").getContactID();
+        globex.addContacts(records(10, "Globex"));
+
+        assertSame(acme, testTenants.getTenant("acme"));
+        assertEquals("Ann", acme.findContactObject(acmeID).getFirstName());
+        assertThrows(IllegalArgumentException.class, () -> globex.findContactObject(acmeID));
+        assertThrows(IllegalArgumentException.class, () -> globex.deleteExistingContact(acmeID));
+        assertEquals(1, acme.getContactStore().size());
+        assertEquals(10, globex.getContactStore().size());
+
+        acme.enableSecondaryIndexes();
+        assertEquals(1, acme.findContactsByLastName("acme").size());
+        assertThrows(IllegalStateException.class, () -> globex.findContactsByLastName("globex"));
+        assertEquals(Set.of("acme", "globex-2"), testTenants.getTenantIDs());
+    }
+
+
+    /**
+     * Asserts that a tenant stops at its memory quota, and that a bulk add that does not fit adds nothing
+     */
+    @Test
+    void tenantStopsAtMemoryQuota() {
+        ContactTenants testTenants = new ContactTenants(SLAB_RECORDS, false, 0);
+        ContactService tenant = testTenants.createTenant("small", 2L * SLAB_BYTES);
+
+        tenant.addContacts(records(2 * SLAB_RECORDS - 1, "Fits"));
+        assertThrows(IllegalStateException.class, () -> tenant.addContacts(records(2, "TooMany")));
+        assertEquals(2 * SLAB_RECORDS - 1, tenant.getContactStore().size(), "the failed batch added nothing");
+
+        tenant.addNewContact("Last", "One", "5559999999", "Fits exactly");
+        assertThrows(IllegalStateException.class,
+                () -> tenant.addNewContact("Over", "Quota", "5559999998", "No room"));
+
+        String contactID = tenant.getContactStore().asList().get(0).getContactID();
+        tenant.deleteExistingContact(contactID); // frees a record, so one more fits again
+        tenant.addNewContact("Again", "Fits", "5559999997", "Reused record");
+
+        ContactTenantUsage usage = testTenants.getUsage("small");
+        assertEquals("small", usage.getTenantID());
+        assertEquals(2 * SLAB_RECORDS, usage.getContactCount());
+        assertEquals(2L * SLAB_BYTES, usage.getMemoryQuotaBytes());
+        assertTrue(usage.getAllocatedBytes() >= 2L * SLAB_BYTES);
+        assertEquals(2L * SLAB_BYTES, testTenants.getLeasedSlabBytes());
+    }
+
+
+    /**
+     * Asserts that removing a tenant returns its slabs to the pool zeroed, that the next tenant reuses them, and
+     * that a leftover reference to the removed service is empty and refuses adds
+     */
+    @Test
+    void removedTenantSlabsAreReused() {
+        ContactTenants testTenants = new ContactTenants(SLAB_RECORDS, true, 4L * SLAB_BYTES);
+        ContactService removed = testTenants.createTenant("removed", 1 << 20);
+        List<ContactRecord> removedRecords = records(3 * SLAB_RECORDS, "Removed");
+        removed.addContacts(removedRecords);
+        String removedID = removed.getContactStore().asList().get(0).getContactID();
+        assertEquals(3L * SLAB_BYTES, testTenants.getLeasedSlabBytes());
+
+        assertTrue(testTenants.removeTenant("removed"));
+        assertFalse(testTenants.removeTenant("removed"));
+        assertEquals(0, testTenants.getLeasedSlabBytes());
+        assertEquals(3L * SLAB_BYTES, testTenants.getPooledSlabBytes());
+        assertThrows(IllegalArgumentException.class, () -> testTenants.getTenant("removed"));
+        assertEquals(0, removed.getContactStore().size());
+        assertThrows(IllegalArgumentException.class, () -> removed.findContactObject(removedID));
+        assertThrows(IllegalStateException.class,
+                () -> removed.addNewContact("Too", "Late", "5550000000", "Gone"));
+
+        ContactService next = testTenants.createTenant("next", 1 << 20);
+        next.addContacts(records(SLAB_RECORDS + 1, "Next"));
+        assertEquals(SLAB_BYTES, testTenants.getPooledSlabBytes(), "two pooled slabs were taken");
+        for (Contact contact : next.getContactStore().asList()) {
+            assertEquals("Next", contact.getLastName(), "no record of the removed tenant shows up");
+        }
+        assertEquals(SLAB_RECORDS + 1, next.getContactStore().asList().size());
+    }
+
+
+    /**
+     * Asserts that bad tenantIDs, duplicates, unknown tenants and quotas under one slab are refused
+     */
+    @Test
+    void invalidTenantThrowsException() {
+        ContactTenants testTenants = new ContactTenants(SLAB_RECORDS, false, 0);
+        testTenants.createTenant("Tenant_1", SLAB_BYTES);
+
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant("Tenant_1", SLAB_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant(null, SLAB_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant("", SLAB_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant("has space", SLAB_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant("x".repeat(65), SLAB_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.createTenant("tiny", SLAB_BYTES - 1));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.getTenant("missing"));
+        assertThrows(IllegalArgumentException.class, () -> testTenants.getUsage(null));
+        assertThrows(IllegalArgumentException.class, () -> new ContactTenants(100, false, 0));
+        assertFalse(testTenants.removeTenant(null));
+    }
+}
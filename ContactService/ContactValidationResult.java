@@ -0,0 +1,43 @@
+package contactService;
+
+/**
+ * outcome of a ContactValidator check. The constants are shared, so a failed check costs no allocation and
+ * callers compare results by identity or switch on them.
+ */
+public enum ContactValidationResult {
+
+    VALID(null),
+    INVALID_CONTACT_ID("Invalid contactID. Expected not null & under 10 characters long"),
+    INVALID_FIRST_NAME("Invalid first name. Expected not null or over 10 characters long"),
+    INVALID_LAST_NAME("Invalid last name. Expected not null or over 10 characters long"),
+    INVALID_PHONE_NUMBER("Invalid phone number. Expected exactly 10 characters & not null"),
+    INVALID_ADDRESS("Invalid Address. Expected not null or over 30 characters long"),
+    NOT_LATIN_1("Invalid contact field. Expected Latin-1 characters only"), // reported for packed and mapped stores
+    NULL_RECORD("Invalid contact record. Expected not null"),
+    CONTACT_NOT_FOUND("Contact not found"), // not a field check, reported for batch updates of missing contacts
+    MALFORMED_RECORD("Invalid contact record. Expected well formed CSV or JSON Lines"); // reported by imports
+
+
+    private final String message;
+
+
+    ContactValidationResult(String message) {
+        this.message = message;
+    }
+
+
+    /**
+     * @return true if the checked input is valid
+     */
+    public boolean isValid() {
+        return this == VALID;
+    }
+
+
+    /**
+     * @return String the message the throwing validators use for this failure, null for VALID
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,207 @@
+package contactService;
+
+/**
+ * non throwing contact field checks for bulk paths where bad rows are expected. Each check returns a shared
+ * ContactValidationResult instead of throwing, and works on any CharSequence or on a UTF-8 byte range, so
+ * callers parsing raw input never build a String just to reject it.
+ *
+ * Lengths are counted in UTF-16 chars for both forms, the same as String.length(), so a field passes here
+ * exactly when the throwing validators in ContactValue accept it. checkLatin1 is separate from the field checks:
+ * only stores that keep fields as one byte per char need it, see ContactStore.requiresLatin1().
+ */
+public final class ContactValidator {
+
+    /*
+     * static checks only
+     */
+    private ContactValidator() {
+    }
+
+
+    /**
+     * @param contactID
+     * @return VALID or INVALID_CONTACT_ID
+     */
+    public static ContactValidationResult checkContactID(CharSequence contactID) {
+        return contactID != null && contactID.length() <= Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_CONTACT_ID;
+    }
+
+
+    /**
+     * @param firstName
+     * @return VALID or INVALID_FIRST_NAME
+     */
+    public static ContactValidationResult checkFirstName(CharSequence firstName) {
+        return firstName != null && firstName.length() <= Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_FIRST_NAME;
+    }
+
+
+    /**
+     * @param lastName
+     * @return VALID or INVALID_LAST_NAME
+     */
+    public static ContactValidationResult checkLastName(CharSequence lastName) {
+        return lastName != null && lastName.length() <= Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_LAST_NAME;
+    }
+
+
+    /**
+     * @param phoneNumber
+     * @return VALID or INVALID_PHONE_NUMBER
+     */
+    public static ContactValidationResult checkPhoneNumber(CharSequence phoneNumber) {
+        return phoneNumber != null && phoneNumber.length() == Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_PHONE_NUMBER;
+    }
+
+
+    /**
+     * @param address
+     * @return VALID or INVALID_ADDRESS
+     */
+    public static ContactValidationResult checkAddress(CharSequence address) {
+        return address != null && address.length() <= Contact.MAX_ADDRESS_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_ADDRESS;
+    }
+
+
+    /**
+     * checks every field of a row in constructor order
+     * @param record row to check
+     * @return VALID, NULL_RECORD or the result for the first invalid field
+     */
+    public static ContactValidationResult checkRecord(ContactRecord record) {
+        if (record == null) {
+            return ContactValidationResult.NULL_RECORD;
+        }
+        return checkFields(record.getFirstName(), record.getLastName(), record.getPhoneNumber(), record.getAddress());
+    }
+
+
+    /**
+     * checks the four caller supplied fields of a new contact in constructor order
+     * @return VALID or the result for the first invalid field
+     */
+    public static ContactValidationResult checkFields(CharSequence firstName, CharSequence lastName,
+                                                      CharSequence phoneNumber, CharSequence address) {
+        ContactValidationResult result = checkFirstName(firstName);
+        if (result.isValid()) {
+            result = checkLastName(lastName);
+        }
+        if (result.isValid()) {
+            result = checkPhoneNumber(phoneNumber);
+        }
+        if (result.isValid()) {
+            result = checkAddress(address);
+        }
+        return result;
+    }
+
+
+    /**
+     * @param text field value, null passes so the field's own check reports it
+     * @return VALID or NOT_LATIN_1
+     */
+    public static ContactValidationResult checkLatin1(CharSequence text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) > 0xFF) {
+                    return ContactValidationResult.NOT_LATIN_1;
+                }
+            }
+        }
+        return ContactValidationResult.VALID;
+    }
+
+
+    /**
+     * checks the four caller supplied fields of a new contact or patch for Latin-1 text, null fields pass
+     * @return VALID or NOT_LATIN_1
+     */
+    public static ContactValidationResult checkLatin1Fields(CharSequence firstName, CharSequence lastName,
+                                                            CharSequence phoneNumber, CharSequence address) {
+        ContactValidationResult result = checkLatin1(firstName);
+        if (result.isValid()) {
+            result = checkLatin1(lastName);
+        }
+        if (result.isValid()) {
+            result = checkLatin1(phoneNumber);
+        }
+        if (result.isValid()) {
+            result = checkLatin1(address);
+        }
+        return result;
+    }
+
+
+    /**
+     * @param utf8 buffer holding the encoded first name
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return VALID or INVALID_FIRST_NAME
+     */
+    public static ContactValidationResult checkFirstName(byte[] utf8, int offset, int length) {
+        return utf16Length(utf8, offset, length) <= Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_FIRST_NAME;
+    }
+
+
+    /**
+     * @param utf8 buffer holding the encoded last name
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return VALID or INVALID_LAST_NAME
+     */
+    public static ContactValidationResult checkLastName(byte[] utf8, int offset, int length) {
+        return utf16Length(utf8, offset, length) <= Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_LAST_NAME;
+    }
+
+
+    /**
+     * @param utf8 buffer holding the encoded phone number
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return VALID or INVALID_PHONE_NUMBER
+     */
+    public static ContactValidationResult checkPhoneNumber(byte[] utf8, int offset, int length) {
+        return utf16Length(utf8, offset, length) == Contact.MAX_VAR_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_PHONE_NUMBER;
+    }
+
+
+    /**
+     * @param utf8 buffer holding the encoded address
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return VALID or INVALID_ADDRESS
+     */
+    public static ContactValidationResult checkAddress(byte[] utf8, int offset, int length) {
+        return utf16Length(utf8, offset, length) <= Contact.MAX_ADDRESS_CHAR_LENGTH
+                ? ContactValidationResult.VALID : ContactValidationResult.INVALID_ADDRESS;
+    }
+
+
+    /**
+     * counts the UTF-16 chars a UTF-8 byte range decodes to, without decoding it. Every byte that does not
+     * continue a sequence starts one char, and four byte sequences become a surrogate pair.
+     * @return int char count, or Integer.MAX_VALUE for a null buffer or a range outside it
+     */
+    static int utf16Length(byte[] utf8, int offset, int length) {
+        if (utf8 == null || offset < 0 || length < 0 || offset > utf8.length - length) {
+            return Integer.MAX_VALUE; // fails every length check
+        }
+
+        int chars = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = utf8[i] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                chars += b >= 0xF0 ? 2 : 1;
+            }
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,84 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the non throwing ContactValidator checks
+ */
+public class ContactValidatorTest {
+
+    /**
+     * Asserts that CharSequence checks accept the same limits as the throwing validators
+     */
+    @Test
+    void charSequenceChecksMatchThrowingValidators() {
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkFirstName(new StringBuilder("0123456789")));
+        assertSame(ContactValidationResult.INVALID_FIRST_NAME, ContactValidator.checkFirstName("0123456789A"));
+        assertSame(ContactValidationResult.INVALID_LAST_NAME, ContactValidator.checkLastName(null));
+        assertSame(ContactValidationResult.INVALID_PHONE_NUMBER, ContactValidator.checkPhoneNumber("012345678"));
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkAddress("123456789012345678901234567890"));
+        assertSame(ContactValidationResult.INVALID_ADDRESS,
+                ContactValidator.checkAddress("1234567890123456789012345678901"));
+        assertSame(ContactValidationResult.INVALID_CONTACT_ID, ContactValidator.checkContactID("01234567890"));
+
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> ContactValue.validatePhoneNumber("012345678"));
+        assertEquals(ContactValidationResult.INVALID_PHONE_NUMBER.getMessage(), thrown.getMessage());
+    }
+
+
+    /**
+     * Asserts that records report the first invalid field in constructor order
+     */
+    @Test
+    void recordCheckReportsFirstInvalidField() {
+        assertSame(ContactValidationResult.VALID,
+                ContactValidator.checkRecord(new ContactRecord("John", "Doe", "0123456789", "1 Main St")));
+        assertSame(ContactValidationResult.INVALID_LAST_NAME,
+                ContactValidator.checkRecord(new ContactRecord("John", null, "01", "1 Main St")));
+        assertSame(ContactValidationResult.NULL_RECORD, ContactValidator.checkRecord(null));
+        assertNull(ContactValidationResult.VALID.getMessage());
+    }
+
+
+    /**
+     * Asserts that UTF-8 byte ranges are measured in the same chars String.length() counts
+     */
+    @Test
+    void utf8ByteRangeChecksCountStringChars() {
+        String name = "\u0416enya\u00e9\ud83d\ude00"; // two byte, one byte, two byte and a four byte surrogate pair
+        byte[] utf8 = ("xx" + name + "yy").getBytes(StandardCharsets.UTF_8);
+        int nameBytes = name.getBytes(StandardCharsets.UTF_8).length;
+
+        assertEquals(name.length(), ContactValidator.utf16Length(utf8, 2, nameBytes));
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkFirstName(utf8, 2, nameBytes));
+
+        byte[] phone = "x0123456789".getBytes(StandardCharsets.US_ASCII);
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkPhoneNumber(phone, 1, 10));
+        assertSame(ContactValidationResult.INVALID_PHONE_NUMBER, ContactValidator.checkPhoneNumber(phone, 0, 10 - 1));
+        assertSame(ContactValidationResult.INVALID_PHONE_NUMBER, ContactValidator.checkPhoneNumber(phone, 5, 10));
+        assertSame(ContactValidationResult.INVALID_ADDRESS, ContactValidator.checkAddress(null, 0, 0));
+        assertSame(ContactValidationResult.INVALID_LAST_NAME, ContactValidator.checkLastName(new byte[11], 0, 11));
+    }
+
+
+    /**
+     * Asserts that the Latin-1 check passes every char up to 0xFF and nulls, and fails anything above
+     */
+    @Test
+    void latin1CheckFailsCharsAboveFF() {
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkLatin1("Zo\u00eb \u00ff"));
+        assertSame(ContactValidationResult.VALID, ContactValidator.checkLatin1(null));
+        assertSame(ContactValidationResult.NOT_LATIN_1, ContactValidator.checkLatin1("\u0141ukasz"));
+        assertSame(ContactValidationResult.VALID,
+                ContactValidator.checkLatin1Fields("John", null, "0123456789", "1 Main St"));
+        assertSame(ContactValidationResult.NOT_LATIN_1,
+                ContactValidator.checkLatin1Fields("John", "Doe", "0123456789", "1 \ud83d\ude00 St"));
+        assertNotNull(ContactValidationResult.NOT_LATIN_1.getMessage());
+    }
+}
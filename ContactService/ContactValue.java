@@ -0,0 +1,278 @@
+package contactService;
+
+import java.util.Objects;
+
+/**
+ * immutable copy of a contact's details at one version.
+ * Every withXxx method validates its argument and returns a new value with the version incremented, so instances
+ * can be cached and shared between threads freely.
+ */
+public final class ContactValue {
+
+    private final String contactID;
+    private final String firstName;
+    private final String lastName;
+    private final String phoneNumber;
+    private final String address;
+    private final long version;
+
+
+    /**
+     * creates the first version of a contact, validating every field
+     * @param contactID
+     * @param firstName
+     * @param lastName
+     * @param phoneNumber
+     * @param address
+     */
+    public ContactValue(String contactID, String firstName, String lastName, String phoneNumber, String address) {
+        this(validateContactID(contactID), validateFirstName(firstName), validateLastName(lastName),
+                validatePhoneNumber(phoneNumber), validateAddress(address), 0L);
+    }
+
+
+    /**
+     * recreates a stored contact at a known version, e.g. when reading it back from disk
+     * @param contactID
+     * @param firstName
+     * @param lastName
+     * @param phoneNumber
+     * @param address
+     * @param version version the contact had when it was written
+     * @return ContactValue with every field validated
+     */
+    static ContactValue restore(String contactID, String firstName, String lastName, String phoneNumber, String address,
+                                long version) {
+        if (version < 0) {
+            throw new IllegalArgumentException("Invalid version. Expected not negative");
+        }
+        return new ContactValue(validateContactID(contactID), validateFirstName(firstName), validateLastName(lastName),
+                validatePhoneNumber(phoneNumber), validateAddress(address), version);
+    }
+
+
+    /**
+     * creates the first version of a contact from fields already checked by ContactValidator, e.g. bulk rows
+     * validated in parallel, without validating them again
+     * @param contactID already validated identifier
+     * @param firstName
+     * @param lastName
+     * @param phoneNumber
+     * @param address
+     * @return ContactValue holding the fields as given
+     */
+    static ContactValue ofValidated(String contactID, String firstName, String lastName, String phoneNumber,
+                                    String address) {
+        return new ContactValue(contactID, firstName, lastName, phoneNumber, address, 0L);
+    }
+
+
+    /*
+     * copy constructor used once fields are known to be valid
+     */
+    private ContactValue(String contactID, String firstName, String lastName, String phoneNumber, String address,
+                         long version) {
+        this.contactID = contactID;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.phoneNumber = phoneNumber;
+        this.address = address;
+        this.version = version;
+    }
+
+
+    /**
+     * @param firstName
+     * @return copy of this value with the new first name and the next version
+     */
+    public ContactValue withFirstName(String firstName) {
+        return new ContactValue(contactID, validateFirstName(firstName), lastName, phoneNumber, address, version + 1);
+    }
+
+
+    /**
+     * @param lastName
+     * @return copy of this value with the new last name and the next version
+     */
+    public ContactValue withLastName(String lastName) {
+        return new ContactValue(contactID, firstName, validateLastName(lastName), phoneNumber, address, version + 1);
+    }
+
+
+    /**
+     * @param phoneNumber
+     * @return copy of this value with the new phone number and the next version
+     */
+    public ContactValue withPhoneNumber(String phoneNumber) {
+        return new ContactValue(contactID, firstName, lastName, validatePhoneNumber(phoneNumber), address, version + 1);
+    }
+
+
+    /**
+     * @param address
+     * @return copy of this value with the new address and the next version
+     */
+    public ContactValue withAddress(String address) {
+        return new ContactValue(contactID, firstName, lastName, phoneNumber, validateAddress(address), version + 1);
+    }
+
+
+    /**
+     * changes several fields as one new version, null arguments keep the current field
+     * @param firstName new first name or null
+     * @param lastName new last name or null
+     * @param phoneNumber new phone number or null
+     * @param address new address or null
+     * @return copy of this value with the changed fields and the next version
+     */
+    ContactValue withFields(String firstName, String lastName, String phoneNumber, String address) {
+        return new ContactValue(contactID,
+                firstName == null ? this.firstName : validateFirstName(firstName),
+                lastName == null ? this.lastName : validateLastName(lastName),
+                phoneNumber == null ? this.phoneNumber : validatePhoneNumber(phoneNumber),
+                address == null ? this.address : validateAddress(address),
+                version + 1);
+    }
+
+
+    /**
+     * validates a contact identifier
+     * @param contactID
+     * @return the unchanged contactID
+     */
+    static String validateContactID(String contactID) {
+        ContactValidationResult result = ContactValidator.checkContactID(contactID);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return contactID;
+    }
+
+
+    /**
+     * validates a first name
+     * @param firstName
+     * @return the unchanged first name
+     */
+    static String validateFirstName(String firstName) {
+        ContactValidationResult result = ContactValidator.checkFirstName(firstName);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return firstName;
+    }
+
+
+    /**
+     * validates a last name
+     * @param lastName
+     * @return the unchanged last name
+     */
+    static String validateLastName(String lastName) {
+        ContactValidationResult result = ContactValidator.checkLastName(lastName);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return lastName;
+    }
+
+
+    /**
+     * validates a phone number
+     * @param phoneNumber
+     * @return the unchanged phone number
+     */
+    static String validatePhoneNumber(String phoneNumber) {
+        ContactValidationResult result = ContactValidator.checkPhoneNumber(phoneNumber);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return phoneNumber;
+    }
+
+
+    /**
+     * validates an address
+     * @param address
+     * @return the unchanged address
+     */
+    static String validateAddress(String address) {
+        ContactValidationResult result = ContactValidator.checkAddress(address);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return address;
+    }
+
+
+    /**
+     * @return String contactID
+     */
+    public String getContactID() {
+        return contactID;
+    }
+
+
+    /**
+     * @return String firstName
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+
+    /**
+     * @return String lastName
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+
+    /**
+     * @return String phoneNumber
+     */
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+
+    /**
+     * @return String address
+     */
+    public String getAddress() {
+        return address;
+    }
+
+
+    /**
+     * @return long version, starting at 0 and incremented by every field update
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ContactValue)) {
+            return false;
+        }
+        ContactValue that = (ContactValue) other;
+        return version == that.version
+                && contactID.equals(that.contactID)
+                && firstName.equals(that.firstName)
+                && lastName.equals(that.lastName)
+                && phoneNumber.equals(that.phoneNumber)
+                && address.equals(that.address);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(contactID, firstName, lastName, phoneNumber, address, version);
+    }
+}
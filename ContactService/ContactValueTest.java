@@ -0,0 +1,72 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ContactValueTest {
+
+
+    /**
+     * creates a ContactValue object for reuse in tests
+     * @return created ContactValue object
+     */
+    private ContactValue createValue() {
+        return new ContactValue("0123456789", "FirstName", "LastName", "0123456789", "123 Test Lane");
+    }
+
+
+    /**
+     * Asserts that withXxx updates return a new value with the next version and leave the original untouched
+     */
+    @Test
+    void withUpdatesCopyAndIncrementVersion() {
+        ContactValue original = createValue();
+        ContactValue updated = original.withPhoneNumber("9876543210").withAddress("1 New Road");
+
+        assertEquals(0, original.getVersion());
+        assertEquals("0123456789", original.getPhoneNumber());
+        assertEquals(2, updated.getVersion());
+        assertEquals("9876543210", updated.getPhoneNumber());
+        assertEquals("1 New Road", updated.getAddress());
+        assertEquals(original.getContactID(), updated.getContactID());
+    }
+
+
+    /**
+     * Asserts that invalid fields are rejected with the same rules the Contact constructor enforces
+     */
+    @Test
+    void invalidUpdatesThrowException() {
+        ContactValue original = createValue();
+
+        assertThrows(IllegalArgumentException.class, () -> original.withFirstName("ThisNameIsPastTheCharacterLimit"));
+        assertThrows(IllegalArgumentException.class, () -> original.withLastName(null));
+        assertThrows(IllegalArgumentException.class, () -> original.withPhoneNumber("12345"));
+        assertThrows(IllegalArgumentException.class, () -> original.withAddress("ThisAddressIsPastTheCharacterLimit"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ContactValue("IdTooLong123", "FirstName", "LastName", "0123456789", "123 Test Lane"));
+    }
+
+
+    /**
+     * Asserts that version checked updates through the service only apply against the current version
+     */
+    @Test
+    void serviceCompareAndSetRejectsStaleVersion() {
+        HashContactStore testStore = new HashContactStore();
+        ContactService testContactService = new ContactService(testStore, new TimestampContactIdGenerator(4));
+        testContactService.addNewContact("FirstName", "LastName", "0123456789", "123 Test Lane");
+        Contact contact = testStore.asList().get(0);
+        ContactValue before = contact.getValue();
+
+        assertTrue(testContactService.updateContactPhoneNumber(contact.getContactID(), "1112223333", before.getVersion()));
+        assertFalse(testContactService.updateContactAddress(contact.getContactID(), "1 Stale Street", before.getVersion()));
+
+        assertEquals("1112223333", contact.getPhoneNumber());
+        assertEquals("123 Test Lane", contact.getAddress());
+        assertEquals(before.getVersion() + 1, contact.getVersion());
+        assertEquals("0123456789", before.getPhoneNumber());
+    }
+}
@@ -0,0 +1,185 @@
+package contactService;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * older contact values kept for open ContactSnapshots, so a snapshot can be opened in O(1) and read while writers
+ * carry on.
+ *
+ * Time is counted in commit stamps. Opening a snapshot pins the current stamp and moves the clock on, with every
+ * writer held back for just that step, so each write either belongs to the snapshot or comes after it. While any
+ * snapshot is open, writers record the value they are about to replace or delete, or that a contact did not exist
+ * before an add, tagged with the stamp they write under, before the store changes. A reader that finds the new value
+ * in the store therefore always finds its record too. A contact's value as of stamp S is the one replaced by its
+ * oldest change stamped after S, or the store's value if it has not changed since.
+ *
+ * Records only matter to snapshots pinned before them. Whenever the oldest snapshot closes, records no open snapshot
+ * can need are cut off, and the last close drops them all and stops recording.
+ */
+final class ContactVersionChains {
+
+    // stamp writers currently tag their changes with, advanced only while every writer is held back
+    private volatile long currentStamp;
+
+    // true while at least one snapshot is open
+    private volatile boolean recording;
+
+    // newest change of every contact changed while snapshots were open
+    private final Map<String, VersionNode> chains = new ConcurrentHashMap<String, VersionNode>();
+
+    // open snapshot count per pinned stamp, guarded by this
+    private final TreeMap<Long, Integer> pinnedStamps = new TreeMap<Long, Integer>();
+
+
+    /**
+     * pins the current stamp for a new snapshot. The caller holds every writer back.
+     * @return long stamp of the new snapshot
+     */
+    synchronized long pin() {
+        long stamp = currentStamp;
+        currentStamp = stamp + 1; // later writes are not part of this snapshot
+        pinnedStamps.merge(stamp, 1, Integer::sum);
+        recording = true;
+        return stamp;
+    }
+
+
+    /**
+     * releases a snapshot's stamp and trims the records no open snapshot needs any more
+     * @param stamp stamp returned by pin()
+     */
+    synchronized void unpin(long stamp) {
+        Integer count = pinnedStamps.get(stamp);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            pinnedStamps.put(stamp, count - 1);
+            return;
+        }
+        pinnedStamps.remove(stamp);
+
+        if (pinnedStamps.isEmpty()) {
+            recording = false; // a writer already past its check may still add a record, it is never read
+            chains.clear();
+        } else if (stamp < pinnedStamps.firstKey()) { // the oldest snapshot closed
+            trimBefore(pinnedStamps.firstKey());
+        }
+    }
+
+
+    /**
+     * records that a contact is about to be added. The caller holds the contact's write lock or the bulk add lock.
+     * @param contactID contact being added
+     */
+    void recordAdd(String contactID) {
+        if (recording) {
+            push(contactID, null);
+        }
+    }
+
+
+    /**
+     * records a value that is about to be replaced or deleted. The caller holds the contact's write lock.
+     * @param previousValue value the store still has
+     */
+    void recordChange(ContactValue previousValue) {
+        if (recording) {
+            push(previousValue.getContactID(), previousValue);
+        }
+    }
+
+
+    /**
+     * @return boolean true while snapshots are open, so writers have to record what they change
+     */
+    boolean isRecording() {
+        return recording;
+    }
+
+
+    /**
+     * @param contactID contact to look up
+     * @param currentValue value read from the store just before, or null if the store does not have the contact
+     * @param stamp snapshot stamp
+     * @return ContactValue the contact had as of the stamp, or null if it did not exist then
+     */
+    ContactValue valueAt(String contactID, ContactValue currentValue, long stamp) {
+        ContactValue value = currentValue;
+        VersionNode node = chains.get(contactID);
+        while (node != null && node.stamp > stamp) { // newest first, ends on the oldest change after the stamp
+            value = node.previousValue;
+            node = node.older;
+        }
+        return value;
+    }
+
+
+    /**
+     * @return Set of the contactIDs that have records, a weakly consistent view
+     */
+    Set<String> changedContactIDs() {
+        return chains.keySet();
+    }
+
+
+    /**
+     * @return int number of values kept, for tests
+     */
+    int recordCount() {
+        int count = 0;
+        for (VersionNode head : chains.values()) {
+            for (VersionNode node = head; node != null; node = node.older) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    private void push(String contactID, ContactValue previousValue) {
+        long stamp = currentStamp;
+        chains.compute(contactID, (id, newest) -> new VersionNode(stamp, previousValue, newest));
+    }
+
+
+    /*
+     * drops records stamped at or before the oldest open snapshot, which no open snapshot reads
+     */
+    private void trimBefore(long oldestStamp) {
+        for (String contactID : chains.keySet()) {
+            chains.computeIfPresent(contactID, (id, newest) -> {
+                if (newest.stamp <= oldestStamp) {
+                    return null;
+                }
+                VersionNode node = newest;
+                while (node.older != null && node.older.stamp > oldestStamp) {
+                    node = node.older;
+                }
+                node.older = null;
+                return newest;
+            });
+        }
+    }
+
+
+    /*
+     * one change of a contact: the value it replaced, or null if the change added the contact
+     */
+    private static final class VersionNode {
+
+        final long stamp;
+        final ContactValue previousValue;
+        volatile VersionNode older;
+
+
+        VersionNode(long stamp, ContactValue previousValue, VersionNode older) {
+            this.stamp = stamp;
+            this.previousValue = previousValue;
+            this.older = older;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package contactService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * append only log of contact mutations with group commit.
+ *
+ * Writers only enqueue their mutation, so their latency never includes disk I/O or fsync. A single writer thread
+ * drains the queue, encodes up to maxGroupCommitRecords mutations into one buffer, writes it, and forces the file
+ * once fsyncBatchRecords records or fsyncIntervalMillis have gone by unsynced. The log is split into segment files
+ * named after the sequence number of their first record, so segments covered by a snapshot can be deleted.
+ */
+final class ContactWriteAheadLog implements ContactMutationListener, Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    // queued by sync() to wake the writer and force the log, never written
+    private static final ContactMutation SYNC_REQUEST = new ContactMutation(ContactMutation.Type.UPDATE, null, null);
+
+    private final Path directory;
+    private final PersistenceOptions options;
+    private final BlockingQueue<ContactMutation> pendingMutations;
+    private final ByteBuffer writeBuffer;
+    private final Thread writerThread;
+    private final AtomicLong enqueuedRecords = new AtomicLong();
+
+    // guards the segment channel, sequence numbers and write counters
+    private final Object segmentLock = new Object();
+    private FileChannel segmentChannel;
+    private long nextLogSequenceNumber;
+    private long writtenRecords;
+    private long lastSyncNanos;
+
+    // guards syncedRecords, notified whenever it grows or the writer fails
+    private final Object syncMonitor = new Object();
+    private long syncedRecords;
+
+    private volatile boolean closed;
+    private volatile IOException writeFailure;
+
+
+    /**
+     * opens a new log segment and starts the writer thread
+     * @param directory folder holding the segment files
+     * @param firstLogSequenceNumber sequence number given to the first record written
+     * @param options fsync and group commit settings
+     */
+    ContactWriteAheadLog(Path directory, long firstLogSequenceNumber, PersistenceOptions options) throws IOException {
+        this.directory = directory;
+        this.options = options;
+        this.pendingMutations = new LinkedBlockingQueue<ContactMutation>(options.getPendingQueueCapacity());
+        this.writeBuffer = ByteBuffer.allocateDirect(
+                Math.max(ContactRecordCodec.MAX_RECORD_BYTES * 64, 1 << 16));
+        this.nextLogSequenceNumber = firstLogSequenceNumber;
+        this.segmentChannel = openSegment(firstLogSequenceNumber);
+        this.lastSyncNanos = System.nanoTime();
+
+        this.writerThread = new Thread(this::runWriter, "contact-wal-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+
+    /**
+     * queues a mutation for the writer thread. Only waits if the writer has fallen pendingQueueCapacity records behind.
+     * Never throws, so listeners registered after the log still see the change: once the log is closed, failed or
+     * interrupted the mutation is dropped and the failure kept for sync(), close() and getWriteFailure().
+     * @param mutation change that was just applied to the store
+     */
+    @Override
+    public void onMutation(ContactMutation mutation) {
+        if (writeFailure != null) {
+            return;
+        }
+        if (closed) {
+            recordFailure(new IOException("Contact log is closed"));
+            return;
+        }
+
+        enqueuedRecords.incrementAndGet();
+        try {
+            pendingMutations.put(mutation);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            recordFailure(new IOException("Interrupted while queueing contact log record", interrupted));
+        }
+    }
+
+
+    /**
+     * @return IOException why the log stopped recording mutations, or null while every mutation is logged. Later
+     *         mutations are only in memory, the log has a gap from the first one it missed.
+     */
+    IOException getWriteFailure() {
+        return writeFailure;
+    }
+
+
+    /**
+     * waits until every mutation queued before this call has been written and forced to disk
+     */
+    void sync() throws IOException {
+        long targetRecords = enqueuedRecords.get();
+
+        try {
+            pendingMutations.put(SYNC_REQUEST);
+
+            synchronized (syncMonitor) {
+                while (syncedRecords < targetRecords && writeFailure == null) {
+                    syncMonitor.wait();
+                }
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for contact log sync", interrupted);
+        }
+
+        if (writeFailure != null) {
+            throw new IOException("Contact log write failed", writeFailure);
+        }
+    }
+
+
+    /**
+     * forces the current segment and starts a new one, used by snapshots to mark where log replay has to begin
+     * @return long sequence number of the first record in the new segment
+     */
+    long rollSegment() throws IOException {
+        synchronized (segmentLock) {
+            forceSegment();
+            segmentChannel.close();
+            segmentChannel = openSegment(nextLogSequenceNumber);
+            return nextLogSequenceNumber;
+        }
+    }
+
+
+    /**
+     * deletes segments whose records all have sequence numbers below the given one
+     * @param logSequenceNumber first sequence number that still has to be kept
+     */
+    void deleteSegmentsBefore(long logSequenceNumber) throws IOException {
+        List<Path> segments = listSegments(directory);
+
+        for (int i = 0; i + 1 < segments.size(); i++) { // a segment ends where the next one starts
+            if (segmentStart(segments.get(i + 1)) <= logSequenceNumber) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+
+    /**
+     * stops accepting mutations, writes and forces everything queued, and closes the segment
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        pendingMutations.offer(SYNC_REQUEST); // wakes the writer if it is waiting for work
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing contact log", interrupted);
+        }
+
+        synchronized (segmentLock) {
+            segmentChannel.close();
+        }
+        if (writeFailure != null) {
+            throw new IOException("Contact log write failed", writeFailure);
+        }
+    }
+
+
+    /*
+     * writer thread loop: drain a group of mutations, write them with one call, fsync when a batch or interval is due
+     */
+    private void runWriter() {
+        List<ContactMutation> group = new ArrayList<ContactMutation>(options.getMaxGroupCommitRecords());
+
+        while (!closed || !pendingMutations.isEmpty()) {
+            try {
+                ContactMutation first = pendingMutations.poll(options.getFsyncIntervalMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    group.add(first);
+                    pendingMutations.drainTo(group, options.getMaxGroupCommitRecords() - 1);
+                }
+
+                writeGroup(group, closed);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException failed) {
+                recordFailure(failed);
+                return;
+            }
+            group.clear();
+        }
+    }
+
+
+    /*
+     * keeps the first failure and wakes anyone waiting in sync()
+     */
+    private void recordFailure(IOException failure) {
+        synchronized (syncMonitor) {
+            if (writeFailure == null) {
+                writeFailure = failure;
+            }
+            syncMonitor.notifyAll();
+        }
+    }
+
+
+    /*
+     * encodes and writes one group of mutations, then forces the segment if a sync is due or was requested
+     */
+    private void writeGroup(List<ContactMutation> group, boolean forceRequested) throws IOException {
+        synchronized (segmentLock) {
+            for (ContactMutation mutation : group) {
+                if (mutation == SYNC_REQUEST) {
+                    forceRequested = true;
+                    continue;
+                }
+                if (writeBuffer.remaining() < ContactRecordCodec.MAX_RECORD_BYTES) {
+                    flushWriteBuffer();
+                }
+                ContactRecordCodec.writeMutation(writeBuffer, mutation, nextLogSequenceNumber++);
+                writtenRecords++;
+            }
+            flushWriteBuffer();
+
+            long unsyncedRecords = writtenRecords - currentSyncedRecords();
+            boolean syncDue = unsyncedRecords >= options.getFsyncBatchRecords()
+                    || (unsyncedRecords > 0 && System.nanoTime() - lastSyncNanos
+                        >= TimeUnit.MILLISECONDS.toNanos(options.getFsyncIntervalMillis()));
+
+            if (forceRequested || syncDue) {
+                forceSegment();
+            }
+        }
+    }
+
+
+    /*
+     * writes out whatever is in the write buffer
+     */
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segmentChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+
+    /*
+     * fsyncs the segment and wakes anyone waiting in sync(). Caller holds segmentLock.
+     */
+    private void forceSegment() throws IOException {
+        segmentChannel.force(false);
+        lastSyncNanos = System.nanoTime();
+
+        synchronized (syncMonitor) {
+            syncedRecords = writtenRecords;
+            syncMonitor.notifyAll();
+        }
+    }
+
+
+    /*
+     * @return long number of records known to be on disk
+     */
+    private long currentSyncedRecords() {
+        synchronized (syncMonitor) {
+            return syncedRecords;
+        }
+    }
+
+
+    /*
+     * creates the segment file whose first record will have the given sequence number, and forces the directory so
+     * forcing the file later is enough to make its records durable
+     */
+    private FileChannel openSegment(long firstLogSequenceNumber) throws IOException {
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLogSequenceNumber, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            forceDirectory(directory);
+        } catch (IOException failed) {
+            channel.close();
+            throw failed;
+        }
+        return channel;
+    }
+
+
+    /**
+     * forces a directory's entries to disk, so files created, renamed or deleted in it survive a crash
+     * @param directory folder to force
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+
+    /**
+     * @param directory folder holding the segment files
+     * @return List of segment files in sequence number order
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort((first, second) -> Long.compare(segmentStart(first), segmentStart(second)));
+        return segments;
+    }
+
+
+    /**
+     * @param segment segment file
+     * @return long sequence number of the segment's first record, taken from its name
+     */
+    static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+
+    /**
+     * reads every intact record of a segment, stopping at the first torn or corrupt one
+     * @param segment segment file
+     * @param recordConsumer receives each decoded record in order
+     * @return long length in bytes of the intact prefix of the file
+     */
+    static long readSegment(Path segment, Consumer<ContactRecordCodec.DecodedMutation> recordConsumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            readBuffer.flip();
+            long intactBytes = 0;
+            boolean endOfFile = false;
+
+            while (true) {
+                if (readBuffer.remaining() < ContactRecordCodec.MAX_RECORD_BYTES && !endOfFile) {
+                    readBuffer.compact();
+                    endOfFile = fill(channel, readBuffer);
+                    readBuffer.flip();
+                }
+
+                int recordStart = readBuffer.position();
+                ContactRecordCodec.DecodedMutation record = ContactRecordCodec.readMutation(readBuffer);
+                if (record == null) {
+                    return intactBytes;
+                }
+
+                intactBytes += readBuffer.position() - recordStart;
+                recordConsumer.accept(record);
+            }
+        }
+    }
+
+
+    /*
+     * reads until the buffer is full or the file ends
+     * @return true if the end of the file was reached
+     */
+    static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,195 @@
+package contactService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * fixed width Latin-1 layout for a single contact, used by the mapped and packed contact stores.
+ *
+ * Every field has a hard length limit, so a contact always fits in RECORD_BYTES:
+ *   byte status | 5 bytes field lengths | 2 bytes padding | long version | ID(10) first(10) last(10) phone(10) address(30)
+ */
+final class FixedWidthContactRecord {
+
+    static final int RECORD_BYTES = 88;
+    static final byte STATUS_LIVE = 1;
+    static final byte STATUS_REMOVED = 2; // removed but kept readable for an open scan, not yet free
+
+    private static final int LENGTHS_OFFSET = 1;
+    private static final int VERSION_OFFSET = 8;
+    private static final int[] FIELD_OFFSETS = { 16, 26, 36, 46, 56 };
+    private static final int[] FIELD_WIDTHS = {
+            Contact.MAX_VAR_CHAR_LENGTH, Contact.MAX_VAR_CHAR_LENGTH, Contact.MAX_VAR_CHAR_LENGTH,
+            Contact.MAX_VAR_CHAR_LENGTH, Contact.MAX_ADDRESS_CHAR_LENGTH };
+
+
+    /*
+     * static helpers only
+     */
+    private FixedWidthContactRecord() {
+    }
+
+
+    /**
+     * writes a contact as a live record at an absolute offset, without moving the buffer's position
+     * @param buffer target buffer
+     * @param base offset of the record
+     * @param value contact to write
+     * @throws IllegalArgumentException if a field holds characters outside Latin-1
+     */
+    static void write(ByteBuffer buffer, int base, ContactValue value) {
+        requireLatin1(value); // checked first so a rejected contact never leaves a half written record
+        String[] fields = { value.getContactID(), value.getFirstName(), value.getLastName(), value.getPhoneNumber(),
+                value.getAddress() };
+
+        buffer.put(base, STATUS_LIVE);
+        buffer.putLong(base + VERSION_OFFSET, value.getVersion());
+
+        for (int field = 0; field < fields.length; field++) {
+            String text = fields[field];
+            buffer.put(base + LENGTHS_OFFSET + field, (byte) text.length());
+
+            for (int i = 0; i < FIELD_WIDTHS[field]; i++) {
+                buffer.put(base + FIELD_OFFSETS[field] + i, (byte) (i < text.length() ? text.charAt(i) : 0));
+            }
+        }
+    }
+
+
+    /**
+     * @param value contact to check
+     * @throws IllegalArgumentException if a field holds characters outside Latin-1
+     */
+    static void requireLatin1(ContactValue value) {
+        ContactValidationResult result = ContactValidator.checkLatin1Fields(value.getFirstName(), value.getLastName(),
+                value.getPhoneNumber(), value.getAddress());
+        if (result.isValid()) {
+            result = ContactValidator.checkLatin1(value.getContactID());
+        }
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+    }
+
+
+    /**
+     * builds the contact stored at an absolute offset
+     * @param buffer source buffer
+     * @param base offset of the record
+     * @return ContactValue with its stored version
+     */
+    static ContactValue read(ByteBuffer buffer, int base) {
+        String[] fields = new String[FIELD_OFFSETS.length];
+        byte[] fieldBytes = new byte[Contact.MAX_ADDRESS_CHAR_LENGTH];
+
+        for (int field = 0; field < fields.length; field++) {
+            int length = buffer.get(base + LENGTHS_OFFSET + field);
+            buffer.get(base + FIELD_OFFSETS[field], fieldBytes, 0, length);
+            fields[field] = new String(fieldBytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+        return ContactValue.restore(fields[0], fields[1], fields[2], fields[3], fields[4],
+                buffer.getLong(base + VERSION_OFFSET));
+    }
+
+
+    /**
+     * @param buffer source buffer
+     * @param base offset of the record
+     * @return byte status of the record, STATUS_LIVE for a stored contact, STATUS_REMOVED for one removed during a scan
+     */
+    static byte status(ByteBuffer buffer, int base) {
+        return buffer.get(base);
+    }
+
+
+    /**
+     * marks the record at an absolute offset as free
+     * @param buffer target buffer
+     * @param base offset of the record
+     */
+    static void clear(ByteBuffer buffer, int base) {
+        buffer.put(base, (byte) 0);
+    }
+
+
+    /**
+     * marks the record at an absolute offset as removed, leaving its fields readable
+     * @param buffer target buffer
+     * @param base offset of the record
+     */
+    static void markRemoved(ByteBuffer buffer, int base) {
+        buffer.put(base, STATUS_REMOVED);
+    }
+
+
+    /**
+     * @param buffer source buffer
+     * @param base offset of the record
+     * @return long version of the stored contact
+     */
+    static long version(ByteBuffer buffer, int base) {
+        return buffer.getLong(base + VERSION_OFFSET);
+    }
+
+
+    /**
+     * compares a record's ID bytes with a contactID without building a String
+     * @param buffer source buffer
+     * @param base offset of the record
+     * @param contactID identifier to compare
+     * @return true if the record holds that contactID
+     */
+    static boolean idMatches(ByteBuffer buffer, int base, String contactID) {
+        if (buffer.get(base + LENGTHS_OFFSET) != contactID.length()) {
+            return false;
+        }
+        for (int i = 0; i < contactID.length(); i++) {
+            if ((buffer.get(base + FIELD_OFFSETS[0] + i) & 0xFF) != contactID.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * hashes the ID stored in a record, giving the same value as hash() on the contactID
+     * @param buffer source buffer
+     * @param base offset of the record
+     * @return long well mixed hash
+     */
+    static long hashRecordID(ByteBuffer buffer, int base) {
+        int length = buffer.get(base + LENGTHS_OFFSET);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.get(base + FIELD_OFFSETS[0] + i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+
+    /**
+     * FNV-1a over the Latin-1 bytes of a contactID with a final mix, used to place records in hash indexes
+     * @param contactID identifier to hash
+     * @return long well mixed hash
+     */
+    static long hash(String contactID) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < contactID.length(); i++) {
+            hash ^= contactID.charAt(i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+
+    /*
+     * spreads FNV output across all bits so masking off low bits gives evenly used slots
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,96 @@
+package contactService;
+
+/**
+ * count-min sketch of 4 bit counters estimating how often each key was seen recently, the admission filter of a
+ * TinyLFU cache. Each long holds 16 counters and every key maps to one counter in each of four places, the
+ * estimate being the smallest of the four. Once the sketch has counted ten times as many additions as the cache
+ * holds, every counter is halved, so old popularity fades.
+ *
+ * Not thread safe, CachingContactStore only uses it while holding its eviction lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long HALVING_MASK = 0x7777777777777777L; // clears the bit shifted in from each neighbour
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+
+    /**
+     * @param maximumSize number of entries the cache holds
+     */
+    FrequencySketch(int maximumSize) {
+        int slots = Integer.highestOneBit(Math.max(16, maximumSize) * 2 - 1); // power of two at or above the size
+        this.table = new long[slots];
+        this.tableMask = slots - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(1, maximumSize));
+    }
+
+
+    /**
+     * @param hash spread hash of the key
+     * @return int estimated recent frequency, 0 to 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long location = location(hash, row);
+            frequency = Math.min(frequency, (int) (table[index(location)] >>> shift(location)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * counts one access to a key
+     * @param hash spread hash of the key
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long location = location(hash, row);
+            int index = index(location);
+            int shift = shift(location);
+
+            if (((table[index] >>> shift) & MAX_COUNT) != MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++additions == sampleSize) {
+            halve();
+        }
+    }
+
+
+    private void halve() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALVING_MASK;
+        }
+        additions /= 2;
+    }
+
+
+    private static long location(int hash, int row) {
+        long location = (hash + SEEDS[row]) * SEEDS[row];
+        return location + (location >>> 32);
+    }
+
+
+    private int index(long location) {
+        return (int) location & tableMask;
+    }
+
+
+    /*
+     * picks one of the 16 counters in the long from bits the index did not use
+     */
+    private static int shift(long location) {
+        return (int) (location >>> 60) << 2;
+    }
+}
@@ -0,0 +1,133 @@
+package contactService;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * ContactStore backed by a hash index on contactID.
+ * Contacts are kept in an array list with a map of contactID to list position, so lookups,
+ * adds, and deletes are all O(1). Deleting moves the last contact into the freed position.
+ */
+public class HashContactStore implements ContactStore {
+
+    private final ArrayList<Contact> contacts = new ArrayList<Contact>();
+    private final Map<String, Integer> positionIndex = new HashMap<String, Integer>();
+    private final List<Contact> readOnlyView = new ContactListView();
+
+
+    /**
+     * looks up a contact by its identifier
+     * @param contactID
+     * @return the stored Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        Integer position = positionIndex.get(contactID);
+        return position == null ? null : contacts.get(position);
+    }
+
+
+    /**
+     * checks whether a contact with the given identifier is stored
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    @Override
+    public boolean contains(String contactID) {
+        return positionIndex.containsKey(contactID);
+    }
+
+
+    /**
+     * stores a new contact at the end of the list
+     * @param contact
+     */
+    @Override
+    public void add(Contact contact) {
+        String contactID = contact.getContactID();
+
+        if (positionIndex.putIfAbsent(contactID, contacts.size()) != null) { // keeps the existing mapping if ID is taken
+            throw new IllegalArgumentException("Duplicate contactID");
+        }
+        contacts.add(contact);
+    }
+
+
+    /**
+     * stores a batch of new contacts, growing the backing list once up front
+     * @param newContacts
+     */
+    @Override
+    public void addAll(List<Contact> newContacts) {
+        contacts.ensureCapacity(contacts.size() + newContacts.size());
+
+        for (Contact contact : newContacts) {
+            add(contact);
+        }
+    }
+
+
+    /**
+     * removes a contact, moving the last contact in the list into its position
+     * @param contactID
+     * @return the removed Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact remove(String contactID) {
+        Integer position = positionIndex.remove(contactID);
+
+        if (position == null) {
+            return null;
+        }
+
+        int lastPosition = contacts.size() - 1;
+        Contact removedContact = contacts.get(position);
+        Contact lastContact = contacts.remove(lastPosition); // removing the tail of an ArrayList does not shift anything
+
+        if (position != lastPosition) { // fills the gap with the previous tail contact
+            contacts.set(position, lastContact);
+            positionIndex.put(lastContact.getContactID(), position);
+        }
+
+        return removedContact;
+    }
+
+
+    /**
+     * @return number of stored contacts
+     */
+    @Override
+    public int size() {
+        return contacts.size();
+    }
+
+
+    /**
+     * @return read only list view of the stored contacts
+     */
+    @Override
+    public List<Contact> asList() {
+        return readOnlyView;
+    }
+
+
+    /**
+     * unmodifiable view over the backing list, writes have to go through the store to keep the index in sync
+     */
+    private class ContactListView extends AbstractList<Contact> implements RandomAccess {
+
+        @Override
+        public Contact get(int index) {
+            return contacts.get(index);
+        }
+
+        @Override
+        public int size() {
+            return contacts.size();
+        }
+    }
+}
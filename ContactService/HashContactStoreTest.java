@@ -0,0 +1,92 @@
+package contactService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HashContactStoreTest {
+
+    private HashContactStore testStore;
+
+
+    /**
+     * creates an empty store for each test
+     */
+    @BeforeEach
+    void setUp() {
+        testStore = new HashContactStore();
+    }
+
+
+    /**
+     * creates a Contact object with the given ID for reuse in tests
+     * @return created Contact object
+     */
+    private Contact createContact(String contactID) {
+        return new Contact(contactID, "FirstName", "LastName", "0123456789", "123 Test Lane");
+    }
+
+
+    /**
+     * Asserts that an added contact can be found by its ID and appears last in the list view
+     */
+    @Test
+    void addedContactIsFoundById() {
+        Contact first = createContact("0000000001");
+        Contact second = createContact("0000000002");
+        testStore.add(first);
+        testStore.add(second);
+
+        assertSame(first, testStore.get("0000000001"));
+        assertSame(second, testStore.asList().get(testStore.size() - 1));
+        assertTrue(testStore.contains("0000000002"));
+        assertNull(testStore.get("5555555555"));
+    }
+
+
+    /**
+     * Asserts that adding a second contact with an existing ID throws an exception and keeps the original
+     */
+    @Test
+    void addDuplicateIdThrowsException() {
+        Contact original = createContact("0000000001");
+        testStore.add(original);
+
+        assertThrows(IllegalArgumentException.class, () -> testStore.add(createContact("0000000001")));
+        assertEquals(1, testStore.size());
+        assertSame(original, testStore.get("0000000001"));
+    }
+
+
+    /**
+     * Asserts that removing from the middle keeps every remaining contact reachable by ID
+     */
+    @Test
+    void removeKeepsIndexConsistent() {
+        for (int i = 0; i < 5; i++) {
+            testStore.add(createContact("000000000" + i));
+        }
+
+        assertNotNull(testStore.remove("0000000001"));
+        assertNull(testStore.remove("0000000001"));
+        assertEquals(4, testStore.size());
+
+        for (Contact contact : testStore.asList()) {
+            assertSame(contact, testStore.get(contact.getContactID()));
+        }
+        assertFalse(testStore.contains("0000000001"));
+    }
+
+
+    /**
+     * Asserts that the list view cannot be used to modify the store
+     */
+    @Test
+    void listViewIsReadOnly() {
+        testStore.add(createContact("0000000001"));
+
+        assertThrows(UnsupportedOperationException.class, () -> testStore.asList().remove(0));
+    }
+}
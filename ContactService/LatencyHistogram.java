@@ -0,0 +1,121 @@
+package contactService;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * lock free log linear histogram of nanosecond latencies, in the style of HdrHistogram. Values below 64 get
+ * exact buckets. Above that, every power of two is split into 32 buckets, which keeps any reported percentile
+ * within about 3% of the true value. Values past about 36 minutes are counted in the last bucket.
+ *
+ * Counts are kept in several stripes picked by thread, so threads recording the same latency do not all
+ * increment the same cache line. Stripes are only merged when a snapshot is taken.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKED_NANOS = (1L << 41) - 1;
+
+    static final int BUCKETS = bucketIndex(MAX_TRACKED_NANOS) + 1;
+
+    // power of two number of stripes, at most 8 so each histogram stays under 80KB
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+
+    /**
+     * @param nanos latency to count, negative values count as 0
+     */
+    @SuppressWarnings("deprecation") // Thread.getId() only picks a stripe
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+
+        counts.incrementAndGet(stripe * BUCKETS + bucketIndex(Math.min(value, MAX_TRACKED_NANOS)));
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+
+    /**
+     * @return long[] count per bucket summed over all stripes, not atomic with concurrent records
+     */
+    long[] bucketCounts() {
+        long[] merged = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                merged[bucket] += counts.get(stripe * BUCKETS + bucket);
+            }
+        }
+        return merged;
+    }
+
+
+    /**
+     * @return long sum of every recorded latency
+     */
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+
+    /**
+     * @return long largest recorded latency
+     */
+    long maxNanos() {
+        return maxNanos.get();
+    }
+
+
+    /**
+     * @param value non negative latency no larger than MAX_TRACKED_NANOS
+     * @return int bucket holding the value
+     */
+    static int bucketIndex(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = Math.max(0, exponent - SUB_BUCKET_BITS); // 0 for the exact buckets below 64
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+
+    /**
+     * @param bucket bucket index
+     * @return long largest value counted in the bucket
+     */
+    static long highestValueIn(int bucket) {
+        int shift = bucket < 2 * SUB_BUCKETS ? 0 : (bucket >> SUB_BUCKET_BITS) - 1;
+        long subBucket = bucket - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+
+    /**
+     * @param bucketCounts merged bucket counts
+     * @param percentile between 0 and 100
+     * @return long value at or below which the given percent of recorded values fall, 0 if none were recorded
+     */
+    static long valueAtPercentile(long[] bucketCounts, double percentile) {
+        long total = 0;
+        for (long count : bucketCounts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank) {
+                return highestValueIn(bucket);
+            }
+        }
+        return highestValueIn(bucketCounts.length - 1);
+    }
+}
@@ -0,0 +1,508 @@
+package contactService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * read mostly ContactStore over a memory mapped file of fixed width contact records.
+ *
+ * Contact fields have hard length limits, so every contact fits in a RECORD_BYTES record of Latin-1 text, and the
+ * file carries an open addressing hash index from contactID to record number. Opening the store only maps the file,
+ * nothing is read into the heap, and get() builds a Contact from its record on demand. The file itself is never
+ * modified: adds, updates and deletes go to an on-heap overlay keyed on contactID, which writeFile() can fold back
+ * into a new file.
+ *
+ * File layout:
+ *   header (HEADER_BYTES)  int magic | int format | long recordCount | long indexSlots
+ *   records                recordCount * RECORD_BYTES, laid out as FixedWidthContactRecord
+ *   index                  indexSlots * int, each 0 for empty or record number + 1
+ */
+public class MappedContactStore implements ContactStore, Closeable {
+
+    private static final int MAGIC = 0x434D4150; // "CMAP"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 64;
+
+    private static final int RECORD_BYTES = FixedWidthContactRecord.RECORD_BYTES;
+
+    // records and index slots are mapped in pieces, a single MappedByteBuffer cannot exceed 2GB
+    private static final int RECORD_CHUNK_SHIFT = 23;
+    private static final int INDEX_CHUNK_SHIFT = 28;
+    private static final int WRITE_BUFFER_BYTES = RECORD_BYTES * 8192;
+
+    // overlay marker for a file record that has been deleted
+    private static final ContactValue DELETED = new ContactValue("deleted", "", "", "0000000000", "");
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] recordChunks;
+    private final MappedByteBuffer[] indexChunks;
+    private final long fileRecordCount;
+    private final long indexMask;
+
+    // contacts added, updated or deleted since the file was written
+    private final Map<String, ContactValue> overlay = new ConcurrentHashMap<String, ContactValue>();
+    private final AtomicLong liveCount;
+
+
+    /*
+     * use open()
+     */
+    private MappedContactStore(FileChannel channel, MappedByteBuffer[] recordChunks, MappedByteBuffer[] indexChunks,
+                               long fileRecordCount, long indexSlots) {
+        this.channel = channel;
+        this.recordChunks = recordChunks;
+        this.indexChunks = indexChunks;
+        this.fileRecordCount = fileRecordCount;
+        this.indexMask = indexSlots - 1;
+        this.liveCount = new AtomicLong(fileRecordCount);
+    }
+
+
+    /**
+     * maps a contact file written by writeFile(). Takes about the same time for ten contacts as for ten million.
+     * @param file contact file
+     * @return MappedContactStore serving the file's contacts
+     */
+    public static MappedContactStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                throw new IOException("Not a mapped contact file: " + file);
+            }
+            long recordCount = header.getLong();
+            long indexSlots = header.getLong();
+            long recordBytes = recordCount * RECORD_BYTES;
+
+            if (channel.size() != HEADER_BYTES + recordBytes + indexSlots * Integer.BYTES) {
+                throw new IOException("Mapped contact file has the wrong size: " + file);
+            }
+
+            return new MappedContactStore(channel,
+                    mapRegion(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES, recordBytes,
+                            (long) RECORD_BYTES << RECORD_CHUNK_SHIFT),
+                    mapRegion(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES + recordBytes,
+                            indexSlots * Integer.BYTES, (long) Integer.BYTES << INDEX_CHUNK_SHIFT),
+                    recordCount, indexSlots);
+        } catch (IOException | RuntimeException failed) {
+            channel.close();
+            throw failed;
+        }
+    }
+
+
+    /**
+     * writes contacts to a new mapped contact file, replacing the file atomically once it is complete
+     * @param file target file
+     * @param contacts contacts to write, every field has to be Latin-1 text
+     * @return long number of contacts written
+     */
+    public static long writeFile(Path file, Iterable<Contact> contacts) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long recordCount = 0;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            long position = HEADER_BYTES;
+
+            for (Contact contact : contacts) {
+                if (!buffer.hasRemaining()) {
+                    position += writeFully(channel, buffer, position);
+                }
+                FixedWidthContactRecord.write(buffer, buffer.position(), contact.getValue());
+                buffer.position(buffer.position() + RECORD_BYTES);
+                recordCount++;
+            }
+            position += writeFully(channel, buffer, position);
+
+            if (recordCount >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many contacts for a mapped contact file");
+            }
+
+            long indexSlots = Long.highestOneBit(Math.max(recordCount * 2, 2) - 1) << 1; // at most half full
+            buildIndex(channel, recordCount, indexSlots);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(recordCount).putLong(indexSlots).position(HEADER_BYTES);
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return recordCount;
+    }
+
+
+    /**
+     * looks up a contact by its identifier, building it from its record if it has not been changed
+     * @param contactID
+     * @return a Contact view of the current details, or null if no contact has that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        ContactValue value = currentValue(contactID);
+        return value == null ? null : new Contact(value);
+    }
+
+
+    /**
+     * checks whether a contact with the given identifier is stored
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    @Override
+    public boolean contains(String contactID) {
+        ContactValue overlaid = overlay.get(contactID);
+
+        if (overlaid != null) {
+            return overlaid != DELETED;
+        }
+        return findRecord(contactID) >= 0;
+    }
+
+
+    /**
+     * stores a new contact in the overlay
+     * @param contact
+     */
+    @Override
+    public void add(Contact contact) {
+        ContactValue value = contact.getValue();
+        boolean[] added = { false };
+
+        overlay.compute(value.getContactID(), (contactID, overlaid) -> {
+            if (overlaid == DELETED || (overlaid == null && findRecord(contactID) < 0)) {
+                added[0] = true;
+                return value;
+            }
+            return overlaid; // ID already in use
+        });
+
+        if (!added[0]) {
+            throw new IllegalArgumentException("Duplicate contactID");
+        }
+        liveCount.incrementAndGet();
+    }
+
+
+    /**
+     * records new details for a contact in the overlay if its current details are still the expected ones
+     * @param contact Contact view returned by get()
+     * @param expectedValue value the update was based on
+     * @param newValue replacement value
+     * @return true if the value was replaced
+     */
+    @Override
+    public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        boolean[] replaced = { false };
+
+        overlay.compute(expectedValue.getContactID(), (contactID, overlaid) -> {
+            ContactValue current = overlaid != null ? overlaid : readRecord(findRecord(contactID));
+
+            if (current == null || current == DELETED || !current.equals(expectedValue)) {
+                return overlaid;
+            }
+            replaced[0] = true;
+            return newValue;
+        });
+
+        if (replaced[0]) {
+            contact.compareAndSetValue(expectedValue, newValue); // keeps the caller's view current
+        }
+        return replaced[0];
+    }
+
+
+    /**
+     * removes a contact, hiding its file record behind an overlay marker
+     * @param contactID
+     * @return a Contact view of the removed details, or null if no contact has that ID
+     */
+    @Override
+    public Contact remove(String contactID) {
+        if (contactID == null) {
+            return null;
+        }
+
+        ContactValue[] removed = { null };
+        overlay.compute(contactID, (id, overlaid) -> {
+            if (overlaid == DELETED) {
+                return overlaid;
+            }
+
+            long record = findRecord(id);
+            removed[0] = overlaid != null ? overlaid : readRecord(record);
+            return record >= 0 ? DELETED : null; // only file records need a marker
+        });
+
+        if (removed[0] == null) {
+            return null;
+        }
+        liveCount.decrementAndGet();
+        return new Contact(removed[0]);
+    }
+
+
+    /**
+     * @return number of stored contacts
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(liveCount.get(), Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * @return true, overlay contacts have to fit the file's Latin-1 records when writeFile() folds them in
+     */
+    @Override
+    public boolean requiresLatin1() {
+        return true;
+    }
+
+
+    /**
+     * builds every contact, file records first. Meant for compaction and exports, not for lookups.
+     * @return read only snapshot list of the stored contacts
+     */
+    @Override
+    public List<Contact> asList() {
+        List<Contact> contacts = new ArrayList<Contact>(size());
+        boolean hasOverlay = !overlay.isEmpty();
+
+        for (long record = 0; record < fileRecordCount; record++) {
+            ContactValue value = readRecord(record);
+            ContactValue overlaid = hasOverlay ? overlay.get(value.getContactID()) : null;
+
+            if (overlaid != DELETED) {
+                contacts.add(new Contact(overlaid != null ? overlaid : value));
+            }
+        }
+
+        for (Map.Entry<String, ContactValue> entry : overlay.entrySet()) { // contacts added since the file was written
+            if (entry.getValue() != DELETED && findRecord(entry.getKey()) < 0) {
+                contacts.add(new Contact(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableList(contacts);
+    }
+
+
+    /**
+     * scans the file records in place, a record number per position, with one last position for the contacts added
+     * since the file was written. The file never changes, and a file contact deleted since is handed over as null.
+     * @return Scan of the file records and the contacts added as of now
+     */
+    @Override
+    public Scan openScan() {
+        List<ContactValue> added = new ArrayList<ContactValue>();
+        for (Map.Entry<String, ContactValue> entry : overlay.entrySet()) { // already on the heap, only referenced
+            if (entry.getValue() != DELETED && findRecord(entry.getKey()) < 0) {
+                added.add(entry.getValue());
+            }
+        }
+        int addedPosition = (int) fileRecordCount;
+
+        return new Scan() {
+            @Override
+            public int positionCount() {
+                return addedPosition + 1;
+            }
+
+            @Override
+            public void forEach(int from, int to, BiConsumer<String, ContactValue> action) {
+                for (long record = from; record < Math.min(to, addedPosition); record++) {
+                    ContactValue value = readRecord(record);
+                    String contactID = value.getContactID();
+                    ContactValue overlaid = overlay.get(contactID);
+                    if (overlaid != null) {
+                        value = overlaid == DELETED ? null : overlaid;
+                    }
+                    action.accept(contactID, value);
+                }
+                if (from <= addedPosition && addedPosition < to) {
+                    for (ContactValue value : added) {
+                        action.accept(value.getContactID(), overlay.get(value.getContactID()));
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+
+    /**
+     * @return long number of contacts in the mapped file, including any deleted since
+     */
+    public long getFileRecordCount() {
+        return fileRecordCount;
+    }
+
+
+    /**
+     * @return int number of contacts added, updated or deleted since the file was written
+     */
+    public int getOverlaySize() {
+        return overlay.size();
+    }
+
+
+    /**
+     * closes the file, mapped pages are released once the buffers are garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /*
+     * current details for a contactID, from the overlay or the file
+     */
+    private ContactValue currentValue(String contactID) {
+        ContactValue overlaid = overlay.get(contactID);
+
+        if (overlaid != null) {
+            return overlaid == DELETED ? null : overlaid;
+        }
+        return readRecord(findRecord(contactID));
+    }
+
+
+    /*
+     * probes the mapped index for a contactID
+     * @return long record number, or -1 if the file has no such contact
+     */
+    private long findRecord(String contactID) {
+        if (contactID == null || contactID.length() > Contact.MAX_VAR_CHAR_LENGTH) {
+            return -1;
+        }
+
+        long slot = FixedWidthContactRecord.hash(contactID) & indexMask;
+        while (true) {
+            int entry = indexChunks[(int) (slot >>> INDEX_CHUNK_SHIFT)]
+                    .getInt((int) (slot & ((1 << INDEX_CHUNK_SHIFT) - 1)) * Integer.BYTES);
+
+            if (entry == 0) {
+                return -1;
+            }
+            long record = entry - 1L;
+            if (idMatches(record, contactID)) {
+                return record;
+            }
+            slot = (slot + 1) & indexMask; // linear probing
+        }
+    }
+
+
+    /*
+     * compares a record's ID bytes with a contactID without building a String
+     */
+    private boolean idMatches(long record, String contactID) {
+        return FixedWidthContactRecord.idMatches(recordChunk(record), recordOffset(record), contactID);
+    }
+
+
+    /*
+     * builds the details stored in a record
+     * @return ContactValue, or null for record -1
+     */
+    private ContactValue readRecord(long record) {
+        return record < 0 ? null : FixedWidthContactRecord.read(recordChunk(record), recordOffset(record));
+    }
+
+
+    private MappedByteBuffer recordChunk(long record) {
+        return recordChunks[(int) (record >>> RECORD_CHUNK_SHIFT)];
+    }
+
+
+    private static int recordOffset(long record) {
+        return (int) (record & ((1 << RECORD_CHUNK_SHIFT) - 1)) * RECORD_BYTES;
+    }
+
+
+    /*
+     * grows the file by the index region and fills it by mapping records and index read/write
+     */
+    private static void buildIndex(FileChannel channel, long recordCount, long indexSlots) throws IOException {
+        long recordBytes = recordCount * RECORD_BYTES;
+        MappedByteBuffer[] recordChunks = mapRegion(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES, recordBytes,
+                (long) RECORD_BYTES << RECORD_CHUNK_SHIFT);
+        MappedByteBuffer[] indexChunks = mapRegion(channel, FileChannel.MapMode.READ_WRITE, HEADER_BYTES + recordBytes,
+                indexSlots * Integer.BYTES, (long) Integer.BYTES << INDEX_CHUNK_SHIFT); // mapping extends the file
+        MappedContactStore building = new MappedContactStore(channel, recordChunks, indexChunks, recordCount, indexSlots);
+
+        for (long record = 0; record < recordCount; record++) {
+            String contactID = building.readRecord(record).getContactID();
+            if (building.findRecord(contactID) >= 0) {
+                throw new IllegalArgumentException("Duplicate contactID");
+            }
+
+            long slot = FixedWidthContactRecord.hash(contactID) & (indexSlots - 1);
+            while (indexChunks[(int) (slot >>> INDEX_CHUNK_SHIFT)]
+                    .getInt((int) (slot & ((1 << INDEX_CHUNK_SHIFT) - 1)) * Integer.BYTES) != 0) {
+                slot = (slot + 1) & (indexSlots - 1);
+            }
+            indexChunks[(int) (slot >>> INDEX_CHUNK_SHIFT)]
+                    .putInt((int) (slot & ((1 << INDEX_CHUNK_SHIFT) - 1)) * Integer.BYTES, (int) (record + 1));
+        }
+
+        for (MappedByteBuffer indexChunk : indexChunks) {
+            indexChunk.force();
+        }
+    }
+
+
+    /*
+     * maps a region of the file as a series of buffers of at most chunkBytes each
+     */
+    private static MappedByteBuffer[] mapRegion(FileChannel channel, FileChannel.MapMode mode, long offset,
+                                                long totalBytes, long chunkBytes) throws IOException {
+        int chunkCount = (int) Math.max(1, (totalBytes + chunkBytes - 1) / chunkBytes);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+
+        for (int i = 0; i < chunkCount; i++) {
+            long chunkStart = i * chunkBytes;
+            chunks[i] = channel.map(mode, offset + chunkStart, Math.max(0, Math.min(chunkBytes, totalBytes - chunkStart)));
+        }
+        return chunks;
+    }
+
+
+    /*
+     * writes the buffer's contents at a file position
+     * @return int number of bytes written
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+}
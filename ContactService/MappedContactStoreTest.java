@@ -0,0 +1,149 @@
+package contactService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the memory mapped contact store
+ */
+public class MappedContactStoreTest {
+
+    private static final int CONTACT_COUNT = 20000;
+
+    @TempDir
+    Path dataDirectory;
+
+    private Path contactFile;
+    private List<Contact> writtenContacts;
+    private MappedContactStore testStore;
+
+
+    /**
+     * writes a contact file and maps it for each test
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        writtenContacts = new ArrayList<Contact>();
+        TimestampContactIdGenerator generator = new TimestampContactIdGenerator(8);
+
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            writtenContacts.add(new Contact(generator.nextContactID(), "First" + (i % 100), "Last",
+                    String.format("%010d", i), i + " Mapped Avenue"));
+        }
+
+        contactFile = dataDirectory.resolve("contacts.map");
+        assertEquals(CONTACT_COUNT, MappedContactStore.writeFile(contactFile, writtenContacts));
+        testStore = MappedContactStore.open(contactFile);
+    }
+
+
+    /**
+     * closes the mapped file
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        testStore.close();
+    }
+
+
+    /**
+     * Asserts that every written contact is found by ID with all of its fields
+     */
+    @Test
+    void everyContactIsFoundThroughMappedIndex() {
+        assertEquals(CONTACT_COUNT, testStore.size());
+
+        for (Contact written : writtenContacts) {
+            Contact found = testStore.get(written.getContactID());
+            assertNotNull(found);
+            assertEquals(written.getValue(), found.getValue());
+        }
+        assertNull(testStore.get("missingID0"));
+        assertFalse(testStore.contains("missingID0"));
+        assertEquals(0, testStore.getOverlaySize());
+    }
+
+
+    /**
+     * Asserts that a ContactService over the mapped store applies adds, updates and deletes through the overlay
+     */
+    @Test
+    void serviceWritesGoToOverlay() {
+        ContactService testContactService = new ContactService(testStore, new TimestampContactIdGenerator(8));
+        String updatedID = writtenContacts.get(5).getContactID();
+        String deletedID = writtenContacts.get(6).getContactID();
+
+        testContactService.updateContactPhoneNumber(updatedID, "5555555555");
+        testContactService.updateContactAddress(updatedID, "1 Overlay Road");
+        testContactService.deleteExistingContact(deletedID);
+        testContactService.addNewContact("New", "Contact", "0123456789", "2 Overlay Road");
+
+        assertEquals("5555555555", testContactService.findContactObject(updatedID).getPhoneNumber());
+        assertEquals(2, testContactService.findContactObject(updatedID).getVersion());
+        assertThrows(IllegalArgumentException.class, () -> testContactService.findContactObject(deletedID));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.deleteExistingContact(deletedID));
+        assertEquals(CONTACT_COUNT, testStore.size());
+        assertEquals(CONTACT_COUNT, testStore.asList().size());
+        assertEquals(CONTACT_COUNT, testStore.getFileRecordCount());
+    }
+
+
+    /**
+     * Asserts that a stale version checked update is rejected even though every get() returns a new view
+     */
+    @Test
+    void compareAndSetUsesStoredVersion() {
+        ContactService testContactService = new ContactService(testStore, new TimestampContactIdGenerator(8));
+        String contactID = writtenContacts.get(0).getContactID();
+
+        assertTrue(testContactService.updateContactFirstName(contactID, "Winner", 0));
+        assertFalse(testContactService.updateContactFirstName(contactID, "Loser", 0));
+        assertEquals("Winner", testStore.get(contactID).getFirstName());
+    }
+
+
+    /**
+     * Asserts that writing the store's contents back out folds the overlay into a new file
+     */
+    @Test
+    void rewritingFileFoldsOverlay() throws IOException {
+        String deletedID = writtenContacts.get(1).getContactID();
+        testStore.remove(deletedID);
+        testStore.add(new Contact("addedID001", "Added", "Later", "0123456789", "3 Overlay Road"));
+
+        Path compactedFile = dataDirectory.resolve("compacted.map");
+        MappedContactStore.writeFile(compactedFile, testStore.asList());
+
+        try (MappedContactStore compacted = MappedContactStore.open(compactedFile)) {
+            assertEquals(CONTACT_COUNT, compacted.getFileRecordCount());
+            assertNull(compacted.get(deletedID));
+            assertEquals("Added", compacted.get("addedID001").getFirstName());
+            assertEquals(0, compacted.getOverlaySize());
+        }
+    }
+
+
+    /**
+     * Asserts that contacts with text outside Latin-1, or duplicate IDs, cannot be written to a mapped file
+     */
+    @Test
+    void invalidContentsAreRejected() {
+        List<Contact> nonLatin = List.of(new Contact("0000000001", "\u0416enya", "Last", "0123456789", "1 Road"));
+        List<Contact> duplicates = List.of(writtenContacts.get(0), writtenContacts.get(0));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MappedContactStore.writeFile(dataDirectory.resolve("bad.map"), nonLatin));
+        assertThrows(IllegalArgumentException.class,
+                () -> MappedContactStore.writeFile(dataDirectory.resolve("dup.map"), duplicates));
+    }
+}
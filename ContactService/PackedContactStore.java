@@ -0,0 +1,666 @@
+package contactService;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * thread safe ContactStore that packs contacts into fixed width Latin-1 records inside large byte slabs.
+ *
+ * A heap Contact costs a handle, a value object and five Strings with their own arrays, well over 200 bytes for
+ * about 70 bytes of text. Here each contact is one FixedWidthContactRecord in a slab (on heap or direct memory)
+ * plus two int slots of an open addressing contactID index, and nothing else per contact lives on the heap.
+ * get() builds a Contact view on demand, and updates are written back into the record through replace().
+ *
+ * Lookups use StampedLock optimistic reads and only fall back to a read lock if a writer got in the way.
+ *
+ * Stores made for a ContactTenants registry take smaller slabs from a shared ContactSlabPool, stop growing at a
+ * memory quota and give their slabs back when their tenant is removed.
+ */
+public class PackedContactStore implements ContactStore {
+
+    private static final int RECORD_BYTES = FixedWidthContactRecord.RECORD_BYTES;
+    private static final int DEFAULT_SLAB_SHIFT = 14;
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+
+    // pooled stores are made by the thousand for tenants, many of them small
+    private static final int POOLED_INITIAL_INDEX_SLOTS = 64;
+
+    // records a scan reads per read lock, then hands over with the lock released
+    private static final int SCAN_BLOCK_RECORDS = 256;
+
+    private final boolean offHeap;
+    private final StampedLock lock = new StampedLock();
+
+    // source of slabs, null to allocate them directly
+    private final ContactSlabPool slabPool;
+    private final int slabShift;
+    private final int slabRecords;
+
+    // most bytes of slabs the store may hold
+    private final long memoryQuotaBytes;
+
+    // all guarded by lock, optimistic readers copy the references they use
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+    private int[] index; // 0 for an empty slot, otherwise record number + 1
+    private int[] freeRecords = new int[16];
+    private int freeRecordCount;
+    private int[] heldRecords = new int[0]; // removed while scans were open, freed when the last one closes
+    private int heldRecordCount;
+    private int openScans;
+    private int nextUnusedRecord;
+    private int size;
+    private boolean released;
+
+
+    /**
+     * creates an empty store with its slabs on the Java heap
+     */
+    public PackedContactStore() {
+        this(false);
+    }
+
+
+    /**
+     * creates an empty store
+     * @param offHeap true to allocate slabs as direct buffers outside the Java heap
+     */
+    public PackedContactStore(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.slabPool = null;
+        this.slabShift = DEFAULT_SLAB_SHIFT;
+        this.slabRecords = 1 << DEFAULT_SLAB_SHIFT;
+        this.memoryQuotaBytes = Long.MAX_VALUE;
+        this.index = new int[INITIAL_INDEX_SLOTS];
+    }
+
+
+    /**
+     * creates an empty store that takes its slabs from a shared pool
+     * @param slabPool pool to take slabs from and give them back to on release()
+     * @param memoryQuotaBytes most bytes of slabs the store may hold, adds that need more fail
+     */
+    PackedContactStore(ContactSlabPool slabPool, long memoryQuotaBytes) {
+        if (memoryQuotaBytes < 1) {
+            throw new IllegalArgumentException("Invalid memory quota. Expected at least 1 byte");
+        }
+        this.offHeap = slabPool.isOffHeap();
+        this.slabPool = slabPool;
+        this.slabShift = slabPool.getSlabShift();
+        this.slabRecords = 1 << slabShift;
+        this.memoryQuotaBytes = memoryQuotaBytes;
+        this.index = new int[POOLED_INITIAL_INDEX_SLOTS];
+    }
+
+
+    /**
+     * looks up a contact by its identifier
+     * @param contactID
+     * @return a Contact view of the stored details, or null if no contact has that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        if (contactID == null) {
+            return null;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                ContactValue value = readValue(findRecord(contactID));
+                if (lock.validate(stamp)) {
+                    return value == null ? null : new Contact(value);
+                }
+            } catch (RuntimeException tornRead) { // a writer changed the slabs mid read, retry under the lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            ContactValue value = readValue(findRecord(contactID));
+            return value == null ? null : new Contact(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * checks whether a contact with the given identifier is stored
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    @Override
+    public boolean contains(String contactID) {
+        if (contactID == null) {
+            return false;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean found = findRecord(contactID) >= 0;
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            } catch (RuntimeException tornRead) {
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findRecord(contactID) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * packs a new contact into a free record
+     * @param contact
+     * @throws IllegalStateException if the store is over its memory quota or was released
+     */
+    @Override
+    public void add(Contact contact) {
+        long stamp = lock.writeLock();
+        try {
+            reserveRecords(1);
+            addRecord(contact.getValue());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * packs a batch of new contacts under a single write lock. The batch is all or nothing: a contact that does not
+     * fit the memory quota, holds text outside Latin-1 or repeats a contactID leaves the store as it was.
+     * @param contacts
+     * @throws IllegalArgumentException if a contact is not Latin-1 text or its ID is already stored
+     * @throws IllegalStateException if the store is over its memory quota or was released
+     */
+    @Override
+    public void addAll(List<Contact> contacts) {
+        long stamp = lock.writeLock();
+        try {
+            reserveRecords(contacts.size());
+            for (Contact contact : contacts) { // every contact is checked before the first one is written
+                FixedWidthContactRecord.requireLatin1(contact.getValue());
+            }
+
+            int added = 0;
+            try {
+                for (Contact contact : contacts) {
+                    addRecord(contact.getValue());
+                    added++;
+                }
+            } catch (IllegalArgumentException duplicate) { // readers never saw the earlier records, take them out
+                for (Contact contact : contacts) {
+                    if (added-- == 0) {
+                        break;
+                    }
+                    removeRecord(findSlot(contact.getContactID()));
+                }
+                throw duplicate;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * writes new details into a contact's record if its stored version is still the expected one
+     * @param contact Contact view returned by get()
+     * @param expectedValue value the update was based on
+     * @param newValue replacement value
+     * @return true if the record was rewritten
+     */
+    @Override
+    public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        long stamp = lock.writeLock();
+        try {
+            int record = findRecord(expectedValue.getContactID());
+
+            // every change bumps the version, so a matching version means the details are unchanged
+            if (record < 0 || FixedWidthContactRecord.version(slab(record), recordOffset(record))
+                    != expectedValue.getVersion()) {
+                return false;
+            }
+            FixedWidthContactRecord.write(slab(record), recordOffset(record), newValue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        contact.compareAndSetValue(expectedValue, newValue); // keeps the caller's view current
+        return true;
+    }
+
+
+    /**
+     * removes a contact and frees its record for reuse
+     * @param contactID
+     * @return a Contact view of the removed details, or null if no contact has that ID
+     */
+    @Override
+    public Contact remove(String contactID) {
+        if (contactID == null) {
+            return null;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(contactID);
+            return slot < 0 ? null : new Contact(removeRecord(slot));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * @return number of stored contacts
+     */
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * builds every stored contact. Meant for exports and snapshots, not for lookups.
+     * @return read only snapshot list of the stored contacts
+     */
+    @Override
+    public List<Contact> asList() {
+        long stamp = lock.readLock();
+        try {
+            List<Contact> contacts = new ArrayList<Contact>(size);
+
+            for (int record = 0; record < nextUnusedRecord; record++) {
+                if (FixedWidthContactRecord.status(slab(record), recordOffset(record)) == FixedWidthContactRecord.STATUS_LIVE) {
+                    contacts.add(new Contact(readValue(record)));
+                }
+            }
+            return Collections.unmodifiableList(contacts);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * scans records in place, a record number per position. Records removed while a scan is open keep their fields
+     * and are only reused once every scan has closed, so a removed contact is still handed over, as null.
+     * @return Scan of the records in use now
+     */
+    @Override
+    public Scan openScan() {
+        long stamp = lock.writeLock();
+        try {
+            openScans++;
+            return new RecordScan(nextUnusedRecord);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * @return true, records hold one byte per char
+     */
+    @Override
+    public boolean requiresLatin1() {
+        return true;
+    }
+
+
+    /**
+     * @return long bytes allocated for slabs, index and free lists
+     */
+    public long getAllocatedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) slabs.length * slabRecords * RECORD_BYTES
+                    + (long) index.length * Integer.BYTES
+                    + (long) freeRecords.length * Integer.BYTES
+                    + (long) heldRecords.length * Integer.BYTES;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * @return true if slabs are allocated outside the Java heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+
+    /**
+     * empties the store for good and gives its slabs back to the pool. Lookups find nothing afterwards and adds
+     * throw IllegalStateException.
+     */
+    void release() {
+        ByteBuffer[] releasedSlabs;
+        long stamp = lock.writeLock();
+        try {
+            releasedSlabs = slabs;
+            slabs = new ByteBuffer[0];
+            index = new int[POOLED_INITIAL_INDEX_SLOTS];
+            freeRecords = new int[16];
+            freeRecordCount = 0;
+            heldRecords = new int[0];
+            heldRecordCount = 0;
+            nextUnusedRecord = 0;
+            size = 0;
+            released = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (slabPool != null) { // optimistic readers still holding a slab fail validation and retry
+            slabPool.giveBack(releasedSlabs);
+        }
+    }
+
+
+    /*
+     * makes sure the next count adds have records to go into, without taking any. Caller holds the write lock.
+     */
+    private void reserveRecords(int count) {
+        if (released) {
+            throw new IllegalStateException("Contact store was released");
+        }
+        long needed = (long) nextUnusedRecord + Math.max(0, count - freeRecordCount);
+        long slabsNeeded = (needed + slabRecords - 1) >>> slabShift;
+        if (slabsNeeded <= slabs.length) {
+            return;
+        }
+        if (slabsNeeded * slabRecords * RECORD_BYTES > memoryQuotaBytes) {
+            throw new IllegalStateException("Memory quota exceeded. Expected at most " + memoryQuotaBytes
+                    + " bytes of contact records");
+        }
+        while (slabs.length < slabsNeeded) {
+            growSlabs();
+        }
+    }
+
+
+    /*
+     * writes a contact into a free record and indexes it. Caller holds the write lock.
+     */
+    private void addRecord(ContactValue value) {
+        if (findRecord(value.getContactID()) >= 0) {
+            throw new IllegalArgumentException("Duplicate contactID");
+        }
+
+        int record = freeRecordCount > 0 ? freeRecords[--freeRecordCount] : nextUnusedRecord++; // reserved already
+
+        try {
+            FixedWidthContactRecord.write(slab(record), recordOffset(record), value);
+        } catch (IllegalArgumentException notLatin1) {
+            pushFreeRecord(record); // write() rejects the contact before touching the record
+            throw notLatin1;
+        }
+
+        if ((size + 1) * 2L > index.length) { // keeps the index at most half full
+            resizeIndex(index.length * 2);
+        }
+        insertSlot(index, record);
+        size++;
+    }
+
+
+    /*
+     * frees the record in an index slot for reuse, or holds it back while scans are open. Caller holds the write lock.
+     * @return ContactValue the record held
+     */
+    private ContactValue removeRecord(int slot) {
+        int record = index[slot] - 1;
+        ContactValue removedValue = readValue(record);
+        deleteSlot(slot);
+        size--;
+
+        if (openScans > 0) { // an open scan may not have reached it yet
+            FixedWidthContactRecord.markRemoved(slab(record), recordOffset(record));
+            if (heldRecordCount == heldRecords.length) {
+                heldRecords = Arrays.copyOf(heldRecords, Math.max(16, heldRecords.length * 2));
+            }
+            heldRecords[heldRecordCount++] = record;
+        } else {
+            FixedWidthContactRecord.clear(slab(record), recordOffset(record));
+            pushFreeRecord(record);
+        }
+        return removedValue;
+    }
+
+
+    /*
+     * probes the index for a contactID
+     * @return int record number, or -1 if not stored
+     */
+    private int findRecord(String contactID) {
+        int[] currentIndex = index;
+        ByteBuffer[] currentSlabs = slabs;
+        int mask = currentIndex.length - 1;
+        int slot = (int) FixedWidthContactRecord.hash(contactID) & mask;
+
+        while (true) {
+            int entry = currentIndex[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int record = entry - 1;
+            if (FixedWidthContactRecord.idMatches(currentSlabs[record >>> slabShift], recordOffset(record), contactID)) {
+                return record;
+            }
+            slot = (slot + 1) & mask; // linear probing
+        }
+    }
+
+
+    /*
+     * probes the index for a contactID. Caller holds the write lock.
+     * @return int slot holding the contact, or -1 if not stored
+     */
+    private int findSlot(String contactID) {
+        int mask = index.length - 1;
+        int slot = (int) FixedWidthContactRecord.hash(contactID) & mask;
+
+        while (index[slot] != 0) {
+            int record = index[slot] - 1;
+            if (FixedWidthContactRecord.idMatches(slab(record), recordOffset(record), contactID)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+
+    /*
+     * puts a record number into the first free slot from its home slot
+     */
+    private void insertSlot(int[] targetIndex, int record) {
+        int mask = targetIndex.length - 1;
+        int slot = homeSlot(record, mask);
+
+        while (targetIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        targetIndex[slot] = record + 1;
+    }
+
+
+    /*
+     * empties a slot with backward shift deletion, so probes never need tombstones
+     */
+    private void deleteSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        int probe = (slot + 1) & mask;
+
+        while (index[probe] != 0) {
+            int home = homeSlot(index[probe] - 1, mask);
+            boolean homeBetweenHoleAndProbe = hole <= probe
+                    ? (home > hole && home <= probe)
+                    : (home > hole || home <= probe);
+
+            if (!homeBetweenHoleAndProbe) { // entry may move back into the hole without breaking its probe chain
+                index[hole] = index[probe];
+                hole = probe;
+            }
+            probe = (probe + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+
+    /*
+     * rebuilds the index at a new size into a fresh array so optimistic readers keep a consistent old copy
+     */
+    private void resizeIndex(int newSlots) {
+        int[] resized = new int[newSlots];
+
+        for (int entry : index) {
+            if (entry != 0) {
+                insertSlot(resized, entry - 1);
+            }
+        }
+        index = resized;
+    }
+
+
+    /*
+     * adds one slab, copying the slab array so optimistic readers keep a consistent old copy
+     */
+    private void growSlabs() {
+        ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+        if (slabPool != null) {
+            grown[slabs.length] = slabPool.take();
+        } else {
+            grown[slabs.length] = offHeap
+                    ? ByteBuffer.allocateDirect(slabRecords * RECORD_BYTES)
+                    : ByteBuffer.allocate(slabRecords * RECORD_BYTES);
+        }
+        slabs = grown;
+    }
+
+
+    private void pushFreeRecord(int record) {
+        if (freeRecordCount == freeRecords.length) {
+            freeRecords = Arrays.copyOf(freeRecords, freeRecords.length * 2);
+        }
+        freeRecords[freeRecordCount++] = record;
+    }
+
+
+    private int homeSlot(int record, int mask) {
+        return (int) FixedWidthContactRecord.hashRecordID(slab(record), recordOffset(record)) & mask;
+    }
+
+
+    private ContactValue readValue(int record) {
+        return record < 0 ? null : FixedWidthContactRecord.read(slabs[record >>> slabShift], recordOffset(record));
+    }
+
+
+    private ByteBuffer slab(int record) {
+        return slabs[record >>> slabShift];
+    }
+
+
+    private int recordOffset(int record) {
+        return (record & (slabRecords - 1)) * RECORD_BYTES;
+    }
+
+
+    /*
+     * scan over the record numbers below nextUnusedRecord as it was when the scan opened
+     */
+    private final class RecordScan implements Scan {
+
+        private final int recordCount;
+        private boolean closed;
+
+
+        RecordScan(int recordCount) {
+            this.recordCount = recordCount;
+        }
+
+
+        @Override
+        public int positionCount() {
+            return recordCount;
+        }
+
+
+        @Override
+        public void forEach(int from, int to, BiConsumer<String, ContactValue> action) {
+            String[] contactIDs = new String[SCAN_BLOCK_RECORDS];
+            ContactValue[] values = new ContactValue[SCAN_BLOCK_RECORDS];
+
+            for (int blockStart = from; blockStart < to; blockStart += SCAN_BLOCK_RECORDS) {
+                int count = 0;
+                long stamp = lock.readLock();
+                try {
+                    if (released) {
+                        return;
+                    }
+                    for (int record = blockStart; record < Math.min(to, blockStart + SCAN_BLOCK_RECORDS); record++) {
+                        byte status = FixedWidthContactRecord.status(slab(record), recordOffset(record));
+                        if (status == FixedWidthContactRecord.STATUS_LIVE
+                                || status == FixedWidthContactRecord.STATUS_REMOVED) {
+                            ContactValue value = readValue(record);
+                            contactIDs[count] = value.getContactID();
+                            values[count++] = status == FixedWidthContactRecord.STATUS_LIVE ? value : null;
+                        }
+                    }
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+
+                for (int i = 0; i < count; i++) { // handed over without the lock, writers may go on meanwhile
+                    action.accept(contactIDs[i], values[i]);
+                }
+            }
+        }
+
+
+        /*
+         * frees the held back records once the last open scan closes
+         */
+        @Override
+        public void close() {
+            long stamp = lock.writeLock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (--openScans == 0) {
+                    for (int i = 0; i < heldRecordCount; i++) {
+                        FixedWidthContactRecord.clear(slab(heldRecords[i]), recordOffset(heldRecords[i]));
+                        pushFreeRecord(heldRecords[i]);
+                    }
+                    heldRecordCount = 0;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the byte packed contact store
+ */
+public class PackedContactStoreTest {
+
+
+    /**
+     * creates a Contact object with the given ID for reuse in tests
+     * @return created Contact object
+     */
+    private static Contact createContact(String contactID, int number) {
+        return new Contact(contactID, "First", "Last" + (number % 100), String.format("%010d", number), number + " Packed Way");
+    }
+
+
+    /**
+     * Asserts that contacts survive many removals, index shifts and record reuse, on and off heap
+     */
+    @Test
+    void addRemoveAndReuseKeepsIndexConsistent() {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            PackedContactStore testStore = new PackedContactStore(offHeap);
+            String[] contactIDs = new TimestampContactIdGenerator(10).nextContactIDs(50000);
+
+            for (int i = 0; i < contactIDs.length; i++) {
+                testStore.add(createContact(contactIDs[i], i));
+            }
+            for (int i = 0; i < contactIDs.length; i += 3) {
+                assertEquals(String.format("%010d", i), testStore.remove(contactIDs[i]).getPhoneNumber());
+            }
+            long allocatedBeforeReuse = testStore.getAllocatedBytes();
+            for (int i = 0; i < contactIDs.length; i += 3) {
+                testStore.add(createContact(contactIDs[i], i + 1)); // reuses the freed records
+            }
+
+            assertEquals(contactIDs.length, testStore.size());
+            assertEquals(allocatedBeforeReuse, testStore.getAllocatedBytes());
+            for (int i = 0; i < contactIDs.length; i++) {
+                int expectedNumber = i % 3 == 0 ? i + 1 : i;
+                assertEquals(createContact(contactIDs[i], expectedNumber).getValue(), testStore.get(contactIDs[i]).getValue());
+            }
+            assertEquals(contactIDs.length, testStore.asList().size());
+            assertEquals(offHeap, testStore.isOffHeap());
+        }
+    }
+
+
+    /**
+     * Asserts that a scan hands over each contact stored when it opened exactly once, a contact removed meanwhile as
+     * null, and that removed records are only reused once the scan is closed
+     */
+    @Test
+    void scanKeepsRemovedRecordsUntilClosed() {
+        PackedContactStore testStore = new PackedContactStore();
+        String[] contactIDs = new TimestampContactIdGenerator(10).nextContactIDs(6);
+        for (int i = 0; i < 4; i++) {
+            testStore.add(createContact(contactIDs[i], i));
+        }
+
+        Map<String, ContactValue> scanned = new HashMap<String, ContactValue>();
+        try (ContactStore.Scan scan = testStore.openScan()) {
+            testStore.remove(contactIDs[1]);
+            testStore.add(createContact(contactIDs[4], 4)); // may not take the removed record
+            testStore.replace(testStore.get(contactIDs[2]), testStore.get(contactIDs[2]).getValue(),
+                    createContact(contactIDs[2], 22).getValue());
+
+            assertEquals(4, scan.positionCount());
+            scan.forEach(0, 2, (contactID, value) -> assertNull(scanned.put(contactID, value)));
+            scan.forEach(2, scan.positionCount(), (contactID, value) -> assertNull(scanned.put(contactID, value)));
+        }
+
+        assertEquals(4, scanned.size());
+        assertTrue(scanned.containsKey(contactIDs[1]));
+        assertNull(scanned.get(contactIDs[1]));
+        assertEquals("0000000022", scanned.get(contactIDs[2]).getPhoneNumber());
+        assertFalse(scanned.containsKey(contactIDs[4]));
+
+        testStore.add(createContact(contactIDs[5], 5)); // the scan is closed, so the removed record is reused
+        try (ContactStore.Scan scan = testStore.openScan()) {
+            assertEquals(5, scan.positionCount());
+        }
+        assertEquals(5, testStore.size());
+    }
+
+
+    /**
+     * Asserts that a ContactService over the packed store writes updates back into the records
+     */
+    @Test
+    void serviceUpdatesAreWrittenBack() {
+        PackedContactStore testStore = new PackedContactStore();
+        ContactService testContactService = new ContactService(testStore, new TimestampContactIdGenerator(10));
+        testContactService.addNewContact("FirstName", "LastName", "0123456789", "123 Test Lane");
+        String contactID = testStore.asList().get(0).getContactID();
+
+        testContactService.updateContactFirstName(contactID, "Fred");
+        assertTrue(testContactService.updateContactPhoneNumber(contactID, "5555555555", 1));
+        assertFalse(testContactService.updateContactPhoneNumber(contactID, "6666666666", 1));
+
+        Contact stored = testContactService.findContactObject(contactID);
+        assertEquals("Fred", stored.getFirstName());
+        assertEquals("5555555555", stored.getPhoneNumber());
+        assertEquals(2, stored.getVersion());
+
+        testContactService.deleteExistingContact(contactID);
+        assertEquals(0, testStore.size());
+    }
+
+
+    /**
+     * Asserts that contacts with text outside Latin-1 are rejected without leaving anything behind
+     */
+    @Test
+    void nonLatinContactIsRejected() {
+        PackedContactStore testStore = new PackedContactStore();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> testStore.add(new Contact("0000000001", "\u0416enya", "Last", "0123456789", "1 Road")));
+        assertEquals(0, testStore.size());
+        assertNull(testStore.get("0000000001"));
+        assertEquals(0, testStore.asList().size());
+        assertThrows(IllegalArgumentException.class, () -> {
+            testStore.add(createContact("0000000002", 2));
+            testStore.add(createContact("0000000002", 3));
+        });
+    }
+
+
+    /**
+     * Asserts that a batch holding a non Latin-1 contact or a repeated contactID adds nothing
+     */
+    @Test
+    void rejectedBatchAddsNothing() {
+        PackedContactStore testStore = new PackedContactStore();
+        testStore.add(createContact("0000000001", 1));
+
+        List<Contact> nonLatin = new ArrayList<Contact>();
+        for (int i = 2; i < 12; i++) {
+            nonLatin.add(i == 7 ? new Contact("0000000007", "Jan", "\u0141ukasz", "0123456789", "1 Road")
+                    : createContact(String.format("%010d", i), i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> testStore.addAll(nonLatin));
+        assertEquals(1, testStore.size());
+        assertNull(testStore.get("0000000002"));
+
+        List<Contact> duplicate = new ArrayList<Contact>();
+        for (int i = 2; i < 12; i++) {
+            duplicate.add(createContact(String.format("%010d", i == 7 ? 1 : i), i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> testStore.addAll(duplicate));
+        assertEquals(1, testStore.size());
+        assertEquals(1, testStore.asList().size());
+        assertNull(testStore.get("0000000002"));
+
+        testStore.addAll(nonLatin.subList(0, 5)); // the freed records are usable again
+        assertEquals(6, testStore.size());
+        assertEquals(createContact("0000000006", 6).getValue(), testStore.get("0000000006").getValue());
+    }
+
+
+    /**
+     * Asserts that a service over packed shards rejects non Latin-1 text as a validation failure on every path,
+     * before an ID is handed out, and adds and publishes every other row of a batch
+     */
+    @Test
+    void serviceRejectsNonLatinText() {
+        ContactService testContactService = new ContactService(
+                new ShardedContactStore(4, PackedContactStore::new), new TimestampContactIdGenerator(10));
+        ContactChangeStream.Subscription events = testContactService.enableChangeStream().subscribeFromLatest();
+
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        for (int i = 0; i < 10; i++) {
+            records.add(new ContactRecord("First" + i, i == 5 ? "\u0141ukasz" : "Last", String.format("%010d", i),
+                    i + " Packed Way"));
+        }
+        ContactBatchResult result = testContactService.addContacts(records);
+
+        assertEquals(9, result.getAddedCount());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(5, result.getFailures().get(0).getRowIndex());
+        assertEquals(ContactValidationResult.NOT_LATIN_1, result.getFailures().get(0).getError());
+        assertEquals(9, testContactService.getContactStore().size());
+        assertEquals(9, events.poll(100).size(), "every added contact was published");
+
+        String contactID = result.getAddedContactIDs().get(0);
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.addNewContact("\u0416enya", "Last", "0123456789", "1 Road"));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.updateContactLastName(contactID, "\u0141ukasz"));
+        assertThrows(IllegalArgumentException.class,
+                () -> testContactService.updateContactAddress(contactID, "1 \u0141\u00f3d\u017a Rd", 0));
+        assertThrows(IllegalArgumentException.class, () -> testContactService.updateContact(
+                ContactPatch.forContact(contactID).withFirstName("Zo\u00eb").withLastName("\u0141ukasz")));
+        assertEquals(9, testContactService.getContactStore().size());
+        assertEquals("Last", testContactService.findContactObject(contactID).getLastName());
+        assertTrue(events.poll(100).isEmpty());
+
+        testContactService.updateContactFirstName(contactID, "Zo\u00eb"); // Latin-1 beyond ASCII is fine
+        assertEquals("Zo\u00eb", testContactService.findContactObject(contactID).getFirstName());
+    }
+
+
+    /**
+     * Asserts that optimistic readers always see complete contacts while a writer adds, updates and removes
+     */
+    @Test
+    void readersSeeConsistentContactsDuringWrites() throws Exception {
+        PackedContactStore testStore = new PackedContactStore();
+        String[] contactIDs = new TimestampContactIdGenerator(10).nextContactIDs(20000);
+        for (int i = 0; i < 1000; i++) {
+            testStore.add(createContact(contactIDs[i], i));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+
+        for (int r = 0; r < 3; r++) {
+            readers.add(executor.submit(() -> {
+                int reads = 0;
+                while (writing.get()) {
+                    Contact found = testStore.get(contactIDs[reads % 1000]);
+                    if (found != null) {
+                        String number = found.getPhoneNumber();
+                        assertTrue(found.getAddress().startsWith(Integer.parseInt(number) + " "));
+                    }
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+
+        for (int i = 1000; i < contactIDs.length; i++) {
+            testStore.add(createContact(contactIDs[i], i)); // forces index and slab growth under the readers
+            Contact updated = testStore.get(contactIDs[i % 1000]);
+            if (updated != null) {
+                int number = i + 7;
+                testStore.replace(updated, updated.getValue(), updated.getValue()
+                        .withPhoneNumber(String.format("%010d", number)).withAddress(number + " Packed Way"));
+            }
+            if (i % 10 == 0) {
+                testStore.remove(contactIDs[i - 500]);
+            }
+        }
+        writing.set(false);
+
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+        }
+        executor.shutdown();
+    }
+}
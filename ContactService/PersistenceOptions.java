@@ -0,0 +1,142 @@
+package contactService;
+
+/**
+ * immutable settings for ContactPersistence. Start from defaults() and adjust with the withXxx methods.
+ */
+public final class PersistenceOptions {
+
+    private static final PersistenceOptions DEFAULTS = new PersistenceOptions(1000, 10, 4096, 0, 65536);
+
+    private final int fsyncBatchRecords;
+    private final long fsyncIntervalMillis;
+    private final int maxGroupCommitRecords;
+    private final long snapshotIntervalMillis;
+    private final int pendingQueueCapacity;
+
+
+    /*
+     * use defaults() and the withXxx methods
+     */
+    private PersistenceOptions(int fsyncBatchRecords, long fsyncIntervalMillis, int maxGroupCommitRecords,
+                               long snapshotIntervalMillis, int pendingQueueCapacity) {
+        if (fsyncBatchRecords < 1) {
+            throw new IllegalArgumentException("Invalid fsync batch size. Expected at least 1 record");
+        }
+        if (fsyncIntervalMillis < 1) {
+            throw new IllegalArgumentException("Invalid fsync interval. Expected at least 1 millisecond");
+        }
+        if (maxGroupCommitRecords < 1) {
+            throw new IllegalArgumentException("Invalid group commit size. Expected at least 1 record");
+        }
+        if (snapshotIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid snapshot interval. Expected 0 (disabled) or more milliseconds");
+        }
+        if (pendingQueueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid pending queue capacity. Expected at least 1 record");
+        }
+        this.fsyncBatchRecords = fsyncBatchRecords;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxGroupCommitRecords = maxGroupCommitRecords;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.pendingQueueCapacity = pendingQueueCapacity;
+    }
+
+
+    /**
+     * fsync after 1000 records or 10ms, group commit up to 4096 records per write, no automatic snapshots
+     * @return PersistenceOptions default settings
+     */
+    public static PersistenceOptions defaults() {
+        return DEFAULTS;
+    }
+
+
+    /**
+     * @param fsyncBatchRecords number of unsynced log records that triggers an fsync
+     * @return copy of these options with the new fsync batch size
+     */
+    public PersistenceOptions withFsyncBatchRecords(int fsyncBatchRecords) {
+        return new PersistenceOptions(fsyncBatchRecords, fsyncIntervalMillis, maxGroupCommitRecords,
+                snapshotIntervalMillis, pendingQueueCapacity);
+    }
+
+
+    /**
+     * @param fsyncIntervalMillis longest time a written log record may stay unsynced
+     * @return copy of these options with the new fsync interval
+     */
+    public PersistenceOptions withFsyncIntervalMillis(long fsyncIntervalMillis) {
+        return new PersistenceOptions(fsyncBatchRecords, fsyncIntervalMillis, maxGroupCommitRecords,
+                snapshotIntervalMillis, pendingQueueCapacity);
+    }
+
+
+    /**
+     * @param maxGroupCommitRecords most records the log writer encodes into a single write
+     * @return copy of these options with the new group commit size
+     */
+    public PersistenceOptions withMaxGroupCommitRecords(int maxGroupCommitRecords) {
+        return new PersistenceOptions(fsyncBatchRecords, fsyncIntervalMillis, maxGroupCommitRecords,
+                snapshotIntervalMillis, pendingQueueCapacity);
+    }
+
+
+    /**
+     * @param snapshotIntervalMillis time between automatic snapshots, 0 disables them. Needs a thread safe store.
+     * @return copy of these options with the new snapshot interval
+     */
+    public PersistenceOptions withSnapshotIntervalMillis(long snapshotIntervalMillis) {
+        return new PersistenceOptions(fsyncBatchRecords, fsyncIntervalMillis, maxGroupCommitRecords,
+                snapshotIntervalMillis, pendingQueueCapacity);
+    }
+
+
+    /**
+     * @param pendingQueueCapacity most mutations waiting for the log writer before writers are made to wait
+     * @return copy of these options with the new queue capacity
+     */
+    public PersistenceOptions withPendingQueueCapacity(int pendingQueueCapacity) {
+        return new PersistenceOptions(fsyncBatchRecords, fsyncIntervalMillis, maxGroupCommitRecords,
+                snapshotIntervalMillis, pendingQueueCapacity);
+    }
+
+
+    /**
+     * @return int number of unsynced log records that triggers an fsync
+     */
+    public int getFsyncBatchRecords() {
+        return fsyncBatchRecords;
+    }
+
+
+    /**
+     * @return long longest time in milliseconds a written log record may stay unsynced
+     */
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+
+    /**
+     * @return int most records encoded into a single write
+     */
+    public int getMaxGroupCommitRecords() {
+        return maxGroupCommitRecords;
+    }
+
+
+    /**
+     * @return long milliseconds between automatic snapshots, 0 when disabled
+     */
+    public long getSnapshotIntervalMillis() {
+        return snapshotIntervalMillis;
+    }
+
+
+    /**
+     * @return int most mutations waiting for the log writer
+     */
+    public int getPendingQueueCapacity() {
+        return pendingQueueCapacity;
+    }
+}
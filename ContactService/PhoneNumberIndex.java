@@ -0,0 +1,269 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * thread safe multimap from phone number to contactIDs.
+ *
+ * Phone numbers are exactly 10 characters, so all-digit numbers are kept as primitive long keys in an open
+ * addressing table with no boxing. Each slot's value is a single contactID String, or a String[] when several
+ * contacts share the number. Numbers holding other characters fall back to an ordinary map.
+ */
+final class PhoneNumberIndex {
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final StampedLock lock = new StampedLock();
+
+    // guarded by lock
+    private long[] keys = newKeyTable(INITIAL_SLOTS);
+    private Object[] values = new Object[INITIAL_SLOTS];
+    private int size;
+
+    private final Map<String, Set<String>> nonNumericNumbers = new ConcurrentHashMap<String, Set<String>>();
+
+
+    /**
+     * @param phoneNumber number to look up
+     * @return List of contactIDs indexed under the number, empty if none
+     */
+    List<String> get(String phoneNumber) {
+        long key = toKey(phoneNumber);
+        if (key == EMPTY_KEY) {
+            Set<String> contactIDs = phoneNumber == null ? null : nonNumericNumbers.get(phoneNumber);
+            return contactIDs == null ? Collections.<String>emptyList() : new ArrayList<String>(contactIDs);
+        }
+
+        long stamp = lock.readLock();
+        try {
+            int slot = findSlot(keys, key);
+            return slot < 0 ? Collections.<String>emptyList() : asList(values[slot]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * indexes a contactID under a phone number, doing nothing if it is already there
+     * @param phoneNumber
+     * @param contactID
+     */
+    void add(String phoneNumber, String contactID) {
+        long key = toKey(phoneNumber);
+        if (key == EMPTY_KEY) {
+            nonNumericNumbers.computeIfAbsent(phoneNumber, number -> ConcurrentHashMap.newKeySet()).add(contactID);
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(keys, key);
+            if (slot >= 0) {
+                values[slot] = withContactID(values[slot], contactID);
+                return;
+            }
+
+            if ((size + 1) * 2L > keys.length) { // keeps the table at most half full
+                resize(keys.length * 2);
+            }
+            slot = insertSlot(keys, key);
+            values[slot] = contactID;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     * removes a contactID from a phone number's entry
+     * @param phoneNumber
+     * @param contactID
+     */
+    void remove(String phoneNumber, String contactID) {
+        long key = toKey(phoneNumber);
+        if (key == EMPTY_KEY) {
+            nonNumericNumbers.computeIfPresent(phoneNumber, (number, contactIDs) -> {
+                contactIDs.remove(contactID);
+                return contactIDs.isEmpty() ? null : contactIDs;
+            });
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(keys, key);
+            if (slot < 0) {
+                return;
+            }
+
+            Object remaining = withoutContactID(values[slot], contactID);
+            if (remaining != null) {
+                values[slot] = remaining;
+            } else {
+                deleteSlot(slot);
+                size--;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /*
+     * @return long key for an all-digit 10 character number, EMPTY_KEY otherwise
+     */
+    private static long toKey(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.length() != Contact.MAX_VAR_CHAR_LENGTH) {
+            return EMPTY_KEY;
+        }
+
+        long key = 0;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char digit = phoneNumber.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return EMPTY_KEY;
+            }
+            key = key * 10 + (digit - '0');
+        }
+        return key;
+    }
+
+
+    private static int findSlot(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = homeSlot(key, mask);
+
+        while (table[slot] != EMPTY_KEY) {
+            if (table[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+
+    private static int insertSlot(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = homeSlot(key, mask);
+
+        while (table[slot] != EMPTY_KEY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+        return slot;
+    }
+
+
+    /*
+     * empties a slot with backward shift deletion, so probes never need tombstones
+     */
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int probe = (slot + 1) & mask;
+
+        while (keys[probe] != EMPTY_KEY) {
+            int home = homeSlot(keys[probe], mask);
+            boolean homeBetweenHoleAndProbe = hole <= probe
+                    ? (home > hole && home <= probe)
+                    : (home > hole || home <= probe);
+
+            if (!homeBetweenHoleAndProbe) {
+                keys[hole] = keys[probe];
+                values[hole] = values[probe];
+                hole = probe;
+            }
+            probe = (probe + 1) & mask;
+        }
+        keys[hole] = EMPTY_KEY;
+        values[hole] = null;
+    }
+
+
+    private void resize(int newSlots) {
+        long[] resizedKeys = newKeyTable(newSlots);
+        Object[] resizedValues = new Object[newSlots];
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY_KEY) {
+                int newSlot = insertSlot(resizedKeys, keys[slot]);
+                resizedValues[newSlot] = values[slot];
+            }
+        }
+        keys = resizedKeys;
+        values = resizedValues;
+    }
+
+
+    private static int homeSlot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential numbers
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+
+    private static long[] newKeyTable(int slots) {
+        long[] table = new long[slots];
+        Arrays.fill(table, EMPTY_KEY);
+        return table;
+    }
+
+
+    /*
+     * slot values are a single contactID or an array of them
+     */
+    private static List<String> asList(Object value) {
+        return value instanceof String
+                ? Collections.singletonList((String) value)
+                : Arrays.asList(((String[]) value).clone());
+    }
+
+
+    private static Object withContactID(Object value, String contactID) {
+        if (value instanceof String) {
+            return value.equals(contactID) ? value : new String[] { (String) value, contactID };
+        }
+
+        String[] contactIDs = (String[]) value;
+        for (String existing : contactIDs) {
+            if (existing.equals(contactID)) {
+                return value;
+            }
+        }
+        String[] grown = Arrays.copyOf(contactIDs, contactIDs.length + 1);
+        grown[contactIDs.length] = contactID;
+        return grown;
+    }
+
+
+    /*
+     * @return the value without the contactID, or null if nothing is left
+     */
+    private static Object withoutContactID(Object value, String contactID) {
+        if (value instanceof String) {
+            return value.equals(contactID) ? null : value;
+        }
+
+        String[] contactIDs = (String[]) value;
+        List<String> remaining = new ArrayList<String>(contactIDs.length);
+        for (String existing : contactIDs) {
+            if (!existing.equals(contactID)) {
+                remaining.add(existing);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        return remaining.size() == 1 ? remaining.get(0) : remaining.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,341 @@
+package contactService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * thread safe ContactStore that partitions contacts by contactID hash over independent shard stores.
+ *
+ * Each shard has its own storage and its own locks, so writers to different shards never touch the same lock or
+ * cache lines. This matters most for stores with a single writer lock such as PackedContactStore, whose writes
+ * otherwise serialize across every contact. Point operations go straight to the owning shard; size() and asList()
+ * gather from every shard, and large bulk adds and snapshots work on the shards in parallel.
+ *
+ * The shard is picked from the high bits of a multiplicative hash, so it stays independent of the low bits that
+ * ContactService lock stripes and the shards' own hash indexes use.
+ */
+public class ShardedContactStore implements ContactStore {
+
+    // largest number of shards, keeps the per shard arrays reasonable
+    public static final int MAX_SHARDS = 1 << 12;
+
+    // batches and snapshots smaller than this are handled on the calling thread
+    private static final int PARALLEL_THRESHOLD = 65536;
+
+    // 2^32 divided by the golden ratio, spreads String hash codes across the high bits
+    private static final int FIBONACCI_MULTIPLIER = 0x9E3779B9;
+
+    private final ContactStore[] shards;
+    private final int shardShift;
+
+    // true if any shard stores Latin-1 bytes, see requiresLatin1()
+    private final boolean latin1Only;
+
+
+    /**
+     * creates an empty store
+     * @param shardCount number of shards, a power of two between 1 and MAX_SHARDS
+     * @param shardFactory creates each shard's empty store. Shards must be thread safe if the store is shared.
+     */
+    public ShardedContactStore(int shardCount, Supplier<? extends ContactStore> shardFactory) {
+        if (shardCount < 1 || shardCount > MAX_SHARDS || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Invalid shard count. Expected a power of two up to " + MAX_SHARDS);
+        }
+        if (shardFactory == null) {
+            throw new IllegalArgumentException("Invalid shard factory. Expected not null");
+        }
+
+        this.shards = new ContactStore[shardCount];
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(shardCount);
+
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = shardFactory.get();
+            if (shards[i] == null) {
+                throw new IllegalArgumentException("Invalid shard factory. Expected a new store for every shard");
+            }
+        }
+
+        boolean anyLatin1Only = false;
+        for (ContactStore shard : shards) {
+            anyLatin1Only |= shard.requiresLatin1();
+        }
+        this.latin1Only = anyLatin1Only;
+    }
+
+
+    /**
+     * looks up a contact in its shard
+     * @param contactID
+     * @return the stored Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact get(String contactID) {
+        return contactID == null ? null : shardFor(contactID).get(contactID);
+    }
+
+
+    /**
+     * checks whether a contact is stored in its shard
+     * @param contactID
+     * @return true if a contact with that ID exists
+     */
+    @Override
+    public boolean contains(String contactID) {
+        return contactID != null && shardFor(contactID).contains(contactID);
+    }
+
+
+    /**
+     * stores a new contact in its shard
+     * @param contact
+     */
+    @Override
+    public void add(Contact contact) {
+        shardFor(contact.getContactID()).add(contact);
+    }
+
+
+    /**
+     * splits a batch by shard and hands each shard its part in one call, in parallel for large batches. Text a
+     * shard cannot store is rejected before any shard adds anything; each shard's part is as atomic as that shard's
+     * own addAll, a duplicate contactID in one shard does not undo the others.
+     * @param contacts
+     */
+    @Override
+    public void addAll(List<Contact> contacts) {
+        if (latin1Only) {
+            for (Contact contact : contacts) {
+                FixedWidthContactRecord.requireLatin1(contact.getValue());
+            }
+        }
+
+        List<List<Contact>> contactsByShard = new ArrayList<List<Contact>>(shards.length);
+        int expectedPerShard = contacts.size() / shards.length + 16;
+        for (int i = 0; i < shards.length; i++) {
+            contactsByShard.add(new ArrayList<Contact>(expectedPerShard));
+        }
+        for (Contact contact : contacts) {
+            contactsByShard.get(shardIndex(contact.getContactID())).add(contact);
+        }
+
+        if (contacts.size() < PARALLEL_THRESHOLD || shards.length == 1) {
+            for (int i = 0; i < shards.length; i++) {
+                if (!contactsByShard.get(i).isEmpty()) {
+                    shards[i].addAll(contactsByShard.get(i));
+                }
+            }
+            return;
+        }
+
+        List<Callable<Void>> shardAdds = new ArrayList<Callable<Void>>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            ContactStore shard = shards[i];
+            List<Contact> shardContacts = contactsByShard.get(i);
+            if (!shardContacts.isEmpty()) {
+                shardAdds.add(() -> {
+                    shard.addAll(shardContacts);
+                    return null;
+                });
+            }
+        }
+        invokeAllShards(shardAdds);
+    }
+
+
+    /**
+     * replaces a contact's details in its shard
+     * @param contact Contact returned by get() for the contact being changed
+     * @param expectedValue value the update was based on
+     * @param newValue replacement value
+     * @return true if the value was replaced
+     */
+    @Override
+    public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        return shardFor(contact.getContactID()).replace(contact, expectedValue, newValue);
+    }
+
+
+    /**
+     * removes a contact from its shard
+     * @param contactID
+     * @return the removed Contact, or null if no contact has that ID
+     */
+    @Override
+    public Contact remove(String contactID) {
+        return contactID == null ? null : shardFor(contactID).remove(contactID);
+    }
+
+
+    /**
+     * @return number of stored contacts summed over every shard
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (ContactStore shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+
+    /**
+     * gathers every shard's contacts, shard by shard. Each shard is a consistent snapshot of itself, the shards are
+     * not captured at one instant. Large stores are gathered in parallel.
+     * @return read only snapshot list of the stored contacts
+     */
+    @Override
+    public List<Contact> asList() {
+        List<List<Contact>> shardLists = new ArrayList<List<Contact>>(shards.length);
+
+        if (size() < PARALLEL_THRESHOLD || shards.length == 1) {
+            for (ContactStore shard : shards) {
+                shardLists.add(shard.asList());
+            }
+        } else {
+            List<Callable<List<Contact>>> shardSnapshots = new ArrayList<Callable<List<Contact>>>(shards.length);
+            for (ContactStore shard : shards) {
+                shardSnapshots.add(shard::asList);
+            }
+            shardLists = invokeAllShards(shardSnapshots);
+        }
+
+        int size = 0;
+        for (List<Contact> shardList : shardLists) {
+            size += shardList.size();
+        }
+        List<Contact> contacts = new ArrayList<Contact>(size);
+        for (List<Contact> shardList : shardLists) {
+            contacts.addAll(shardList);
+        }
+        return Collections.unmodifiableList(contacts);
+    }
+
+
+    /**
+     * scans every shard's own scan in turn, shard by shard, so ranges split across shards and within large ones
+     * @return Scan of every shard
+     */
+    @Override
+    public Scan openScan() {
+        Scan[] shardScans = new Scan[shards.length];
+        int[] offsets = new int[shards.length + 1]; // shard i holds the positions from offsets[i] up to offsets[i + 1]
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shardScans[i] = shards[i].openScan();
+                offsets[i + 1] = offsets[i] + shardScans[i].positionCount();
+            }
+        } catch (RuntimeException failed) {
+            closeAll(shardScans);
+            throw failed;
+        }
+
+        return new Scan() {
+            @Override
+            public int positionCount() {
+                return offsets[shards.length];
+            }
+
+            @Override
+            public void forEach(int from, int to, BiConsumer<String, ContactValue> action) {
+                for (int i = 0; i < shards.length; i++) {
+                    int shardFrom = Math.max(from, offsets[i]);
+                    int shardTo = Math.min(to, offsets[i + 1]);
+                    if (shardFrom < shardTo) {
+                        shardScans[i].forEach(shardFrom - offsets[i], shardTo - offsets[i], action);
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+                closeAll(shardScans);
+            }
+        };
+    }
+
+
+    /**
+     * @return true if any shard keeps fields as Latin-1 bytes
+     */
+    @Override
+    public boolean requiresLatin1() {
+        return latin1Only;
+    }
+
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+
+    /**
+     * @return number of contacts in each shard, useful for checking the hash spreads contacts evenly
+     */
+    public int[] getShardSizes() {
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            sizes[i] = shards[i].size();
+        }
+        return sizes;
+    }
+
+
+    /**
+     * @param contactID non null contact identifier
+     * @return int index of the shard owning the contactID
+     */
+    int shardIndex(String contactID) {
+        return shards.length == 1 ? 0 : (contactID.hashCode() * FIBONACCI_MULTIPLIER) >>> shardShift;
+    }
+
+
+    /*
+     * @return the shard store owning a non null contactID
+     */
+    private ContactStore shardFor(String contactID) {
+        return shards[shardIndex(contactID)];
+    }
+
+
+    private static void closeAll(Scan[] shardScans) {
+        for (Scan shardScan : shardScans) {
+            if (shardScan != null) {
+                shardScan.close();
+            }
+        }
+    }
+
+
+    /*
+     * runs one task per shard on the common fork join pool and waits for all of them
+     * @return results in task order
+     */
+    private static <T> List<T> invokeAllShards(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause(); // e.g. a duplicate contactID from a shard's addAll
+            }
+            throw new IllegalStateException("Shard task failed", e.getCause());
+        }
+        return results;
+    }
+}
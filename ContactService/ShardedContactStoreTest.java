@@ -0,0 +1,182 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * tests for the hash partitioned ShardedContactStore
+ */
+public class ShardedContactStoreTest {
+
+    /**
+     * creates a Contact object with the given ID and phone number for reuse in tests
+     * @return created Contact object
+     */
+    private Contact createContact(String contactID, int number) {
+        return new Contact(contactID, "FirstName", "LastName", String.format("%010d", number), number + " Shard Way");
+    }
+
+
+    /**
+     * Asserts that point operations reach the owning shard and only that shard
+     */
+    @Test
+    void pointOperationsAreRouted() {
+        ShardedContactStore testStore = new ShardedContactStore(8, PackedContactStore::new);
+        String[] contactIDs = new TimestampContactIdGenerator(11).nextContactIDs(1000);
+
+        for (int i = 0; i < contactIDs.length; i++) {
+            testStore.add(createContact(contactIDs[i], i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> testStore.add(createContact(contactIDs[0], 0)));
+
+        Contact found = testStore.get(contactIDs[5]);
+        assertTrue(testStore.replace(found, found.getValue(), found.getValue().withFirstName("Sharded")));
+        assertEquals("Sharded", testStore.get(contactIDs[5]).getFirstName());
+        assertEquals("0000000007", testStore.remove(contactIDs[7]).getPhoneNumber());
+        assertFalse(testStore.contains(contactIDs[7]));
+        assertNull(testStore.get(null));
+        assertNull(testStore.remove(null));
+
+        int[] shardSizes = testStore.getShardSizes();
+        int total = 0;
+        for (int shardSize : shardSizes) {
+            assertTrue(shardSize > 60, "contacts should spread over every shard"); // 125 expected per shard
+            total += shardSize;
+        }
+        assertEquals(999, total);
+        assertEquals(999, testStore.size());
+        assertEquals(8, testStore.getShardCount());
+    }
+
+
+    /**
+     * Asserts that large bulk adds and snapshots gathered from every shard see every contact
+     */
+    @Test
+    void bulkAddAndSnapshotSpanAllShards() {
+        ShardedContactStore testStore = new ShardedContactStore(16, ConcurrentContactStore::new);
+        String[] contactIDs = new TimestampContactIdGenerator(11).nextContactIDs(100000);
+        List<Contact> contacts = new ArrayList<Contact>();
+        for (int i = 0; i < contactIDs.length; i++) {
+            contacts.add(createContact(contactIDs[i], i));
+        }
+
+        testStore.addAll(contacts); // above the parallel threshold
+        assertEquals(contactIDs.length, testStore.size());
+
+        Set<String> snapshotIDs = new HashSet<String>();
+        for (Contact contact : testStore.asList()) {
+            snapshotIDs.add(contact.getContactID());
+        }
+        assertEquals(contactIDs.length, snapshotIDs.size());
+        assertThrows(IllegalArgumentException.class, () -> testStore.addAll(contacts.subList(0, 70000)));
+        assertThrows(UnsupportedOperationException.class, () -> testStore.asList().clear());
+    }
+
+
+    /**
+     * Asserts that shard counts must be powers of two and shard factories must produce stores
+     */
+    @Test
+    void invalidConfigurationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardedContactStore(0, ConcurrentContactStore::new));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedContactStore(6, ConcurrentContactStore::new));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedContactStore(ShardedContactStore.MAX_SHARDS * 2, ConcurrentContactStore::new));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedContactStore(4, null));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedContactStore(4, () -> null));
+
+        ShardedContactStore single = new ShardedContactStore(1, HashContactStore::new);
+        single.add(createContact("0000000001", 1));
+        assertEquals(0, single.shardIndex("0000000001"));
+        assertEquals(1, single.asList().size());
+    }
+
+
+    /**
+     * Asserts that a service over sharded packed stores stays consistent with writers on several threads
+     */
+    @Test
+    void concurrentServiceWritesAcrossShards() throws Exception {
+        ShardedContactStore testStore = new ShardedContactStore(8, PackedContactStore::new);
+        ContactService testContactService = new ContactService(testStore, new TimestampContactIdGenerator(11));
+        String sharedID = testContactService.addContacts(List.of(new ContactRecord("Shared", "Last", "0123456789",
+                "1 Road"))).getAddedContactIDs().get(0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+
+        for (int w = 0; w < 4; w++) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    testContactService.addNewContact("First", "Last", "0123456789", i + " Road");
+                    testContactService.updateContact(ContactPatch.forContact(sharedID).withAddress(i + " Shared Road"));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(2001, testStore.size());
+        assertEquals(2001, testStore.asList().size());
+        assertEquals(2000, testContactService.findContactObject(sharedID).getVersion());
+        assertNotSame(ContactService.getConcurrentServiceInstance(), ContactService.getShardedServiceInstance());
+        assertSame(ContactService.getShardedServiceInstance(), ContactService.getShardedServiceInstance());
+    }
+
+
+    /**
+     * Asserts that a row outside Latin-1 is stored by the default instance and rejected cleanly by the sharded one,
+     * which still adds the batch's other rows
+     */
+    @Test
+    void shardedInstanceRejectsNonLatinRowCleanly() {
+        List<ContactRecord> records = List.of(
+                new ContactRecord("Anna", "Nowak", "4800000001", "1 Rynek"),
+                new ContactRecord("Jan", "\u0141ukasz", "4800000002", "2 Rynek"),
+                new ContactRecord("Zo\u00eb", "Kowal", "4800000003", "3 Rynek"));
+
+        ContactService defaultService = ContactService.getServiceInstance();
+        ContactService shardedService = ContactService.getShardedServiceInstance();
+        int shardedSizeBefore = shardedService.getContactStore().size();
+
+        ContactBatchResult defaultResult = defaultService.addContacts(records);
+        ContactBatchResult shardedResult = shardedService.addContacts(records);
+        try {
+            assertEquals(3, defaultResult.getAddedCount());
+            assertTrue(defaultResult.getFailures().isEmpty());
+
+            assertEquals(2, shardedResult.getAddedCount());
+            assertEquals(1, shardedResult.getFailures().size());
+            assertEquals(1, shardedResult.getFailures().get(0).getRowIndex());
+            assertEquals(ContactValidationResult.NOT_LATIN_1, shardedResult.getFailures().get(0).getError());
+            assertEquals(shardedSizeBefore + 2, shardedService.getContactStore().size());
+            assertEquals("Zo\u00eb", shardedService.findContactObject(shardedResult.getAddedContactIDs().get(1))
+                    .getFirstName());
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> shardedService.addNewContact("Jan", "\u0141ukasz", "4800000002", "2 Rynek"));
+            assertEquals(shardedSizeBefore + 2, shardedService.getContactStore().size());
+        } finally { // both instances are shared with other tests
+            for (String contactID : defaultResult.getAddedContactIDs()) {
+                defaultService.deleteExistingContact(contactID);
+            }
+            for (String contactID : shardedResult.getAddedContactIDs()) {
+                shardedService.deleteExistingContact(contactID);
+            }
+        }
+    }
+}
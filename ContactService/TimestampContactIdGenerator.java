@@ -0,0 +1,167 @@
+package contactService;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ContactIdGenerator that builds IDs from a millisecond timestamp, a node number and a per millisecond sequence.
+ * The 59 bit value is written as 10 base 62 characters, so IDs are unique without checking existing contacts,
+ * sort in creation order, and stay unique across restarts as long as the system clock does not run backwards.
+ */
+public class TimestampContactIdGenerator implements ContactIdGenerator {
+
+    private static final int ID_LENGTH = 10;
+    private static final char[] BASE_62_DIGITS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private static final int NODE_BITS = 6;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_BITS = 41;
+
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+    // 2024-01-01T00:00:00Z, 41 bits of milliseconds from here lasts until 2093
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private final long nodeBits;
+
+    // last used timestamp in the upper bits and last used sequence in the lower bits
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    // lost CAS races plus spins waiting for the next millisecond
+    private final LongAdder retries = new LongAdder();
+
+
+    /**
+     * creates a generator for a single node
+     * @param nodeID number between 0 and MAX_NODE_ID, unique for every process writing to the same contacts
+     */
+    public TimestampContactIdGenerator(int nodeID) {
+        if (nodeID < 0 || nodeID > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Invalid node ID. Expected between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = ((long) nodeID) << SEQUENCE_BITS;
+    }
+
+
+    /**
+     * creates a new identifier. Safe to call from many threads at once without locking.
+     * @return String 10 character identifier
+     */
+    @Override
+    public String nextContactID() {
+        return encode(nextRawID());
+    }
+
+
+    /**
+     * creates a block of identifiers, reserving up to a whole millisecond of sequence numbers per CAS
+     * @param count number of identifiers wanted
+     * @return String array of count identifiers
+     */
+    @Override
+    public String[] nextContactIDs(int count) {
+        String[] contactIDs = new String[count];
+        int filled = 0;
+
+        while (filled < count) {
+            long firstRawID = claimRawIDs(count - filled);
+            int claimed = claimedCount(firstRawID, count - filled);
+
+            for (int i = 0; i < claimed; i++) {
+                contactIDs[filled++] = encode(firstRawID + i); // sequence is the low bits, so IDs in a block are consecutive
+            }
+        }
+        return contactIDs;
+    }
+
+
+    /**
+     * claims the next timestamp/sequence pair and combines it with the node number
+     * @return long raw 59 bit identifier
+     */
+    long nextRawID() {
+        return claimRawIDs(1);
+    }
+
+
+    /**
+     * @return long number of lost CAS races and spins waiting for the clock since the generator was created
+     */
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+
+    /**
+     * claims up to wanted consecutive sequence numbers from a single millisecond
+     * @param wanted number of sequence numbers the caller would like
+     * @return long first raw identifier of the claimed run, see claimedCount for its length
+     */
+    private long claimRawIDs(int wanted) {
+        while (true) {
+            long last = lastTimestampAndSequence.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = currentTimestamp();
+            long first;
+
+            if (now > lastTimestamp) {
+                first = now << SEQUENCE_BITS; // new millisecond, sequence starts back at 0
+            } else if ((last & MAX_SEQUENCE) < MAX_SEQUENCE) {
+                first = last + 1; // same millisecond (or clock moved back), take the next sequence number
+            } else {
+                retries.increment();
+                Thread.onSpinWait(); // sequence used up, wait for the clock instead of borrowing future timestamps
+                continue;
+            }
+
+            long next = first + claimedCount(first, wanted) - 1;
+
+            if (lastTimestampAndSequence.compareAndSet(last, next)) {
+                long timestamp = first >>> SEQUENCE_BITS;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (first & MAX_SEQUENCE);
+            }
+            retries.increment();
+        }
+    }
+
+
+    /*
+     * number of sequence numbers that fit between the first claimed one and the end of its millisecond
+     */
+    private static int claimedCount(long first, int wanted) {
+        return (int) Math.min(wanted, MAX_SEQUENCE - (first & MAX_SEQUENCE) + 1);
+    }
+
+
+    /*
+     * milliseconds since the generator epoch
+     */
+    private static long currentTimestamp() {
+        long timestamp = System.currentTimeMillis() - EPOCH_MILLIS;
+
+        if (timestamp < 0 || timestamp > MAX_TIMESTAMP) {
+            throw new IllegalStateException("System clock is outside the contact ID range");
+        }
+        return timestamp;
+    }
+
+
+    /**
+     * writes a raw identifier as fixed width base 62 text
+     * @param rawID
+     * @return String 10 character identifier
+     */
+    static String encode(long rawID) {
+        char[] digits = new char[ID_LENGTH];
+
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            digits[i] = BASE_62_DIGITS[(int) (rawID % 62)];
+            rawID /= 62;
+        }
+        return new String(digits);
+    }
+}
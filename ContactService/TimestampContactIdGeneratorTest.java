@@ -0,0 +1,103 @@
+package contactService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TimestampContactIdGeneratorTest {
+
+
+    /**
+     * Asserts that generated IDs are 10 characters long, unique, and sort in creation order
+     */
+    @Test
+    void generatedIdsAreUniqueAndOrdered() {
+        TimestampContactIdGenerator generator = new TimestampContactIdGenerator(1);
+        Set<String> seenIDs = new HashSet<String>();
+        String previousID = "";
+
+        for (int i = 0; i < 100000; i++) {
+            String contactID = generator.nextContactID();
+
+            assertEquals(10, contactID.length());
+            assertTrue(seenIDs.add(contactID), "duplicate ID " + contactID);
+            assertTrue(contactID.compareTo(previousID) > 0);
+            previousID = contactID;
+        }
+    }
+
+
+    /**
+     * Asserts that many threads sharing one generator, and two generators with different nodes, never collide
+     */
+    @Test
+    void concurrentGeneratorsDoNotCollide() throws Exception {
+        TimestampContactIdGenerator nodeOne = new TimestampContactIdGenerator(1);
+        TimestampContactIdGenerator nodeTwo = new TimestampContactIdGenerator(2);
+        Set<String> seenIDs = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+        for (int t = 0; t < 8; t++) {
+            TimestampContactIdGenerator generator = (t % 2 == 0) ? nodeOne : nodeTwo;
+            results.add(executor.submit(() -> {
+                boolean allUnique = true;
+                for (int i = 0; i < 20000; i++) {
+                    allUnique &= seenIDs.add(generator.nextContactID());
+                }
+                return allUnique;
+            }));
+        }
+
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(160000, seenIDs.size());
+    }
+
+
+    /**
+     * Asserts that block allocation hands out the requested number of unique IDs, ordered after single IDs
+     */
+    @Test
+    void blockAllocationIsUniqueAndOrdered() {
+        TimestampContactIdGenerator generator = new TimestampContactIdGenerator(5);
+        String singleID = generator.nextContactID();
+        String[] block = generator.nextContactIDs(20000);
+        Set<String> seenIDs = new HashSet<String>();
+        String previousID = singleID;
+
+        assertEquals(20000, block.length);
+        for (String contactID : block) {
+            assertEquals(10, contactID.length());
+            assertTrue(seenIDs.add(contactID));
+            assertTrue(contactID.compareTo(previousID) > 0);
+            previousID = contactID;
+        }
+        assertTrue(generator.nextContactID().compareTo(previousID) > 0);
+    }
+
+
+    /**
+     * Asserts that node numbers outside the supported range throw an exception
+     */
+    @Test
+    void invalidNodeIdThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new TimestampContactIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimestampContactIdGenerator(TimestampContactIdGenerator.MAX_NODE_ID + 1));
+    }
+}
@@ -0,0 +1,68 @@
+package contactService;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * entry point of benchmarks.jar. Runs the selected benchmarks once per thread count with the GC profiler attached,
+ * so every score comes with its allocation rate, and writes all runs to a single JSON file.
+ *
+ * Usage: java [-DcontactService.benchmark.threads=1,4,16] [-DcontactService.benchmark.result=out.json]
+ *        -jar benchmarks.jar [JMH options, e.g. ContactLookup -p storeSize=1000,1000000]
+ */
+public final class ContactBenchmarkRunner {
+
+    // comma separated thread counts every benchmark is run with
+    private static final String THREADS_PROPERTY = "contactService.benchmark.threads";
+
+    // file the combined JSON results are written to
+    private static final String RESULT_PROPERTY = "contactService.benchmark.result";
+
+
+    /*
+     * static entry point only
+     */
+    private ContactBenchmarkRunner() {
+    }
+
+
+    /**
+     * @param args JMH command line options, which override the defaults here except the thread count
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args); // lets JMH print its own help and listings
+            return;
+        }
+
+        String resultFile = System.getProperty(RESULT_PROPERTY, "jmh-result.json");
+        List<RunResult> results = new ArrayList<RunResult>();
+
+        for (String threadCount : System.getProperty(THREADS_PROPERTY, "1,4").split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(threadCount.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultFile) // rewritten below with every thread count's runs
+                    .build();
+            results.addAll(new Runner(options).run());
+        }
+
+        try (PrintStream out = new PrintStream(resultFile, "UTF-8")) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Wrote " + results.size() + " results to " + resultFile);
+    }
+}
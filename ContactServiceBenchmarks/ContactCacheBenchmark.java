@@ -0,0 +1,119 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zipfian lookups through ContactService over a backend with a fixed lookup latency, without a cache and with a
+ * CachingContactStore under each eviction policy. The cacheHits and cacheMisses counters in the results give the
+ * hit rate behind each throughput score.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+public class ContactCacheBenchmark {
+
+    /**
+     * a service over a delayed backend, optionally fronted by a cache
+     */
+    @State(Scope.Benchmark)
+    public static class CachedService {
+
+        @Param({ "100000", "1000000" })
+        public int storeSize;
+
+        // cache capacity as a share of the store size
+        @Param({ "0.01" })
+        public double cacheRatio;
+
+        @Param({ "NONE", "LRU", "WINDOW_TINY_LFU" })
+        public String policy;
+
+        @Param({ "0.99" })
+        public double zipfExponent;
+
+        @Param({ "2000" })
+        public long backendLookupNanos;
+
+        ContactService service;
+        ZipfianGenerator ranks;
+
+        // contactIDs in popularity order, shuffled so hot contacts are not neighbours in the store
+        String[] contactIDsByRank;
+
+
+        @Setup(Level.Trial)
+        public void populate() {
+            PackedContactStore packedStore = new PackedContactStore();
+            ContactStore backend = new DelayedContactStore(packedStore, backendLookupNanos);
+            ContactStore store = "NONE".equals(policy) ? backend : new CachingContactStore(backend,
+                    (int) Math.max(1, storeSize * cacheRatio), CachingContactStore.EvictionPolicy.valueOf(policy));
+
+            service = new ContactService(store, new TimestampContactIdGenerator(60));
+            List<String> contactIDs = new ArrayList<String>(service.addContacts(IntStream.range(0, storeSize)
+                    .mapToObj(i -> new ContactRecord("First", "Last", String.format("%010d", i), i + " Zipf Way")))
+                    .getAddedContactIDs());
+
+            Collections.shuffle(contactIDs, new Random(42));
+            contactIDsByRank = contactIDs.toArray(new String[0]);
+            ranks = new ZipfianGenerator(storeSize, zipfExponent);
+        }
+    }
+
+
+    /**
+     * per thread hit and miss counts, reported next to the throughput score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HitCounters {
+
+        public long cacheHits;
+        public long cacheMisses;
+
+        long[] backendLoads;
+
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cacheHits = 0;
+            cacheMisses = 0;
+            backendLoads = DelayedContactStore.loadsOnThread.get(); // setup runs on the benchmark thread
+        }
+    }
+
+
+    @Benchmark
+    public Contact zipfianLookup(CachedService state, HitCounters counters) {
+        long loadsBefore = counters.backendLoads[0];
+        Contact contact = state.service.findContactObject(state.contactIDsByRank[state.ranks.next()]);
+
+        if (counters.backendLoads[0] == loadsBefore) {
+            counters.cacheHits++;
+        } else {
+            counters.cacheMisses++;
+        }
+        return contact;
+    }
+}
@@ -0,0 +1,104 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of the change stream on the update path, with no consumer and with a consumer draining it alongside the
+ * writers. Writers never wait for the consumer; what they do pay for is the garbage collector copying the events a
+ * larger ring keeps alive, compare the capacities.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactChangeStreamBenchmark {
+
+    /**
+     * a populated service with the change stream on or off per the stream parameter
+     */
+    @State(Scope.Benchmark)
+    public static class StreamingService extends ContactServiceState {
+
+        @Param({ "off", "on" })
+        public String stream;
+
+        @Param({ "4096", "65536" })
+        public int capacity;
+
+
+        @Override
+        @Setup(Level.Trial)
+        public void populate() {
+            super.populate(); // the stream starts after setup, so the bulk load is not published
+            if ("on".equals(stream)) {
+                service.enableChangeStream(capacity);
+            }
+        }
+    }
+
+
+    /**
+     * one consumer's cursor, resubscribing from the oldest event if the writers lap it
+     */
+    @State(Scope.Thread)
+    public static class Consumer {
+
+        ContactChangeStream.Subscription subscription;
+
+
+        List<ContactChangeEvent> drain(StreamingService state) {
+            if (!"on".equals(state.stream)) {
+                return List.of();
+            }
+            if (subscription == null) {
+                subscription = state.service.getChangeStream().subscribeFromLatest();
+            }
+            try {
+                return subscription.poll(256);
+            } catch (IllegalStateException overrun) {
+                subscription = state.service.getChangeStream().subscribe(
+                        state.service.getChangeStream().getOldestSequence());
+                return List.of();
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void updatePhoneNumber(StreamingService state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+
+
+    @Benchmark
+    @Group("drained")
+    @GroupThreads(3)
+    public void drainedUpdate(StreamingService state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+
+
+    @Benchmark
+    @Group("drained")
+    @GroupThreads(1)
+    public List<ContactChangeEvent> drainedConsume(StreamingService state, Consumer consumer) {
+        return consumer.drain(state);
+    }
+}
@@ -0,0 +1,51 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add and delete churn against a populated store. Each operation adds one contact and deletes it again, so the
+ * store stays at storeSize for the whole trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx12g" })
+public class ContactChurnBenchmark {
+
+    /**
+     * addNewContact followed by deleteExistingContact of the same contact
+     */
+    @Benchmark
+    public void addThenDelete(ContactServiceState state) {
+        state.service.deleteExistingContact(state.addContact());
+    }
+
+
+    /**
+     * updateContactPhoneNumber on a random contact, the locked write path
+     */
+    @Benchmark
+    public void updatePhoneNumber(ContactServiceState state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+
+
+    /**
+     * versioned compare and set update on a random contact, the lock free write path
+     */
+    @Benchmark
+    public boolean updatePhoneNumberIfVersion(ContactServiceState state) {
+        Contact contact = state.service.findContactObject(state.randomContactID());
+        return state.service.updateContactPhoneNumber(contact.getContactID(), state.randomPhoneNumber(),
+                contact.getVersion());
+    }
+}
@@ -0,0 +1,67 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * time and allocation of a full point in time export per format, written to a channel that only counts bytes so
+ * disk speed does not hide the encoding cost
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactExportBenchmark {
+
+    @Param({ "CSV", "JSON_LINES", "BINARY" })
+    public ContactExportFormat format;
+
+
+    /**
+     * channel that discards what it is given
+     */
+    static final class CountingChannel implements WritableByteChannel {
+
+        long bytes;
+
+        @Override
+        public int write(ByteBuffer source) {
+            int written = source.remaining();
+            source.position(source.limit());
+            bytes += written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    @Benchmark
+    public long exportContacts(ContactServiceState state) throws IOException {
+        CountingChannel channel = new CountingChannel();
+        state.service.exportContacts(format, channel);
+        return channel.bytes;
+    }
+}
@@ -0,0 +1,94 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * top 10 typo tolerant name search through the trigram index, against the scan over every contact it replaces.
+ * Queries are setup's last names with two neighbouring letters swapped, which takes two edits to undo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx12g" })
+@State(Scope.Benchmark)
+public class ContactFuzzySearchBenchmark {
+
+    private static final int MAX_DISTANCE = 2;
+    private static final int LIMIT = 10;
+
+    private String[] queries;
+
+
+    /**
+     * builds the index over the populated service and picks the queries
+     */
+    @Setup(Level.Trial)
+    public void enableIndex(ContactServiceState state) {
+        state.service.enableFuzzyNameSearch();
+
+        Random random = new Random(21);
+        queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            char[] name = ("last" + random.nextInt(10000)).toCharArray();
+            int swap = random.nextInt(name.length - 1);
+            char swapped = name[swap];
+            name[swap] = name[swap + 1];
+            name[swap + 1] = swapped;
+            queries[i] = new String(name);
+        }
+    }
+
+
+    /**
+     * findContactsByFuzzyName for a random misspelled last name
+     */
+    @Benchmark
+    public List<Contact> indexedSearch(ContactServiceState state) {
+        return state.service.findContactsByFuzzyName(randomQuery(), MAX_DISTANCE, LIMIT);
+    }
+
+
+    /**
+     * the same search as a loop over every contact scoring both names, keeping the first LIMIT matches
+     */
+    @Benchmark
+    public List<Contact> scanSearch(ContactServiceState state) {
+        char[] query = randomQuery().toCharArray();
+        List<Contact> matches = new ArrayList<Contact>(LIMIT);
+        for (Contact contact : state.service.getContactStore().asList()) {
+            if (ContactFuzzyNameIndex.substringDistance(query, contact.getLastName().toLowerCase(Locale.ROOT),
+                    MAX_DISTANCE) <= MAX_DISTANCE
+                    || ContactFuzzyNameIndex.substringDistance(query, contact.getFirstName().toLowerCase(Locale.ROOT),
+                    MAX_DISTANCE) <= MAX_DISTANCE) {
+                matches.add(contact);
+                if (matches.size() == LIMIT) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+
+    private String randomQuery() {
+        return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+    }
+}
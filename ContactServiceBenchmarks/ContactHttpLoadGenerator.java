@@ -0,0 +1,240 @@
+package contactService;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * closed loop load generator for ContactHttpServer reporting throughput and p50/p99 latency per request type.
+ * Every client keeps one request in flight and sends the next as soon as the answer arrives: 80% GET, 15% PATCH of
+ * the address and 5% POST, all on contacts created before the run. Requests go through HttpClient's asynchronous
+ * API, so 10k clients need 10k connections but not 10k client threads. Latency is measured from send to the end of
+ * the response; being closed loop, it does not include time a request would have waited to be sent.
+ *
+ * Usage: java [-DcontactService.load.clients=10000] [-DcontactService.load.seconds=30]
+ *        [-DcontactService.load.warmupSeconds=5] [-DcontactService.load.contacts=100000]
+ *        [-DcontactService.load.url=http://host:port] -cp benchmarks.jar contactService.ContactHttpLoadGenerator
+ *
+ * Without a url the server runs in this process over a concurrent store. Run on Java 21 or later so the server uses
+ * virtual threads. Every connection uses a file descriptor at each end, so 10k in process clients need ulimit -n
+ * above 20k; otherwise start the server on its own with java contactService.ContactHttpServer and pass its url.
+ */
+public final class ContactHttpLoadGenerator {
+
+    private static final String PROPERTY_PREFIX = "contactService.load.";
+
+    // node number the in process service stamps into its IDs
+    private static final int LOAD_NODE_ID = 60;
+
+    // requests in flight while creating the contacts through a remote server
+    private static final int SEED_CONCURRENCY = 256;
+
+    private static final String[] OPERATIONS = { "GET", "PATCH", "POST" };
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String contactsUrl;
+    private final List<String> contactIDs;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+
+    private volatile boolean measuring;
+    private volatile boolean stopping;
+
+
+    private ContactHttpLoadGenerator(String contactsUrl, List<String> contactIDs) {
+        this.contactsUrl = contactsUrl;
+        this.contactIDs = contactIDs;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * runs the load and prints one row per request type
+     * @param args unused, see the class comment for the properties
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger(PROPERTY_PREFIX + "clients", 10000);
+        int seconds = Integer.getInteger(PROPERTY_PREFIX + "seconds", 30);
+        int warmupSeconds = Integer.getInteger(PROPERTY_PREFIX + "warmupSeconds", 5);
+        int contactCount = Integer.getInteger(PROPERTY_PREFIX + "contacts", 100000);
+        String url = System.getProperty(PROPERTY_PREFIX + "url");
+
+        ContactHttpServer.applyRecommendedServerProperties(); // before the in process server is created
+        ContactHttpServer server = null;
+        String contactsUrl;
+        List<String> contactIDs;
+
+        if (url == null) {
+            ContactService service = new ContactService(new ConcurrentContactStore(),
+                    new TimestampContactIdGenerator(LOAD_NODE_ID));
+            contactIDs = service.addContacts(IntStream.range(0, contactCount)
+                    .mapToObj(i -> new ContactRecord("First" + i % 1000, "Last" + i % 10000, "0123456789",
+                            i + " Load Way"))).getAddedContactIDs();
+            server = new ContactHttpServer(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            server.start();
+            contactsUrl = "http://localhost:" + server.getAddress().getPort() + ContactHttpServer.CONTACTS_PATH;
+            System.out.println("In process server, " + (server.usesVirtualThreads() ? "virtual" : "platform")
+                    + " threads");
+        } else {
+            contactsUrl = url + ContactHttpServer.CONTACTS_PATH;
+            contactIDs = createContacts(contactsUrl, contactCount);
+        }
+
+        ContactHttpLoadGenerator generator = new ContactHttpLoadGenerator(contactsUrl, contactIDs);
+        generator.run(clients, warmupSeconds, seconds);
+        generator.printReport(clients, seconds);
+
+        if (server != null) {
+            server.stop(0);
+        }
+        System.exit(0); // HttpClient threads would keep the JVM alive until idle connections time out
+    }
+
+
+    /*
+     * creates the contacts the load works on through a remote server
+     * @return List of their IDs
+     */
+    private static List<String> createContacts(String contactsUrl, int contactCount) throws InterruptedException {
+        HttpClient seedClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Semaphore inFlight = new Semaphore(SEED_CONCURRENCY);
+        List<CompletableFuture<String>> created = new ArrayList<CompletableFuture<String>>(contactCount);
+
+        for (int i = 0; i < contactCount; i++) {
+            inFlight.acquire();
+            created.add(seedClient.sendAsync(createRequest(contactsUrl, i), HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> {
+                        String location = response.headers().firstValue("Location").orElseThrow(
+                                () -> new IllegalStateException("Create failed with status " + response.statusCode()));
+                        return location.substring(location.lastIndexOf('/') + 1);
+                    })
+                    .whenComplete((contactID, error) -> inFlight.release()));
+        }
+
+        List<String> contactIDs = new ArrayList<String>(contactCount);
+        for (CompletableFuture<String> contactID : created) {
+            contactIDs.add(contactID.join());
+        }
+        return contactIDs;
+    }
+
+
+    /*
+     * starts every client, measures after the warmup and waits for the last answers
+     */
+    private void run(int clients, int warmupSeconds, int seconds) throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            sendNext(stopped);
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        measuring = true;
+        TimeUnit.SECONDS.sleep(seconds);
+        measuring = false;
+        stopping = true;
+
+        if (!stopped.await(60, TimeUnit.SECONDS)) {
+            System.out.println(stopped.getCount() + " clients still waiting for an answer");
+        }
+    }
+
+
+    /*
+     * sends one client's next request, and the one after that when it is answered
+     */
+    private void sendNext(CountDownLatch stopped) {
+        if (stopping) {
+            stopped.countDown();
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int roll = random.nextInt(100);
+        int operation = roll < 80 ? 0 : roll < 95 ? 1 : 2;
+        String contactID = contactIDs.get(random.nextInt(contactIDs.size()));
+        HttpRequest request;
+        if (operation == 0) {
+            request = HttpRequest.newBuilder(URI.create(contactsUrl + "/" + contactID)).GET().build();
+        } else if (operation == 1) {
+            request = HttpRequest.newBuilder(URI.create(contactsUrl + "/" + contactID))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                            "{\"address\":\"" + random.nextInt(100000) + " Load Way\"}"))
+                    .build();
+        } else {
+            request = createRequest(contactsUrl, random.nextInt(100000));
+        }
+
+        long startNanos = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (measuring) {
+                latencies[operation].record(System.nanoTime() - startNanos);
+                if (error != null || response.statusCode() >= 400) {
+                    errors[operation].increment();
+                }
+            }
+            sendNext(stopped);
+        });
+    }
+
+
+    private static HttpRequest createRequest(String contactsUrl, int i) {
+        return HttpRequest.newBuilder(URI.create(contactsUrl))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"firstName\":\"First" + i % 1000
+                        + "\",\"lastName\":\"Last" + i % 10000 + "\",\"phoneNumber\":\"0123456789\",\"address\":\""
+                        + i + " Load Way\"}"))
+                .build();
+    }
+
+
+    /*
+     * prints requests, errors, throughput and latency percentiles per request type and for all of them together
+     */
+    private void printReport(int clients, int seconds) {
+        System.out.printf("%d clients, %d s measured%n", clients, seconds);
+        System.out.printf("%-6s %10s %8s %10s %9s %9s %9s %9s%n", "op", "requests", "errors", "req/s", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms");
+
+        long[] allBuckets = new long[LatencyHistogram.BUCKETS];
+        long allErrors = 0;
+        long allMax = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            long[] buckets = latencies[i].bucketCounts();
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                allBuckets[bucket] += buckets[bucket];
+            }
+            allErrors += errors[i].sum();
+            allMax = Math.max(allMax, latencies[i].maxNanos());
+            printRow(OPERATIONS[i], buckets, errors[i].sum(), latencies[i].maxNanos(), seconds);
+        }
+        printRow("ALL", allBuckets, allErrors, allMax, seconds);
+    }
+
+
+    private static void printRow(String name, long[] buckets, long errorCount, long maxNanos, int seconds) {
+        long requests = 0;
+        for (long count : buckets) {
+            requests += count;
+        }
+        System.out.printf("%-6s %10d %8d %10.0f %9.2f %9.2f %9.2f %9.2f%n", name, requests, errorCount,
+                (double) requests / seconds, LatencyHistogram.valueAtPercentile(buckets, 50) / 1e6,
+                LatencyHistogram.valueAtPercentile(buckets, 99) / 1e6,
+                LatencyHistogram.valueAtPercentile(buckets, 99.9) / 1e6, maxNanos / 1e6);
+    }
+}
@@ -0,0 +1,55 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * contact ID generation, single IDs and the blocks reserved by bulk adds. Single IDs are capped at 4096 per
+ * millisecond by the generator's sequence field, so the single ID score shows that ceiling once threads contend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactIdBenchmark {
+
+    private ContactService service;
+    private TimestampContactIdGenerator generator;
+
+
+    @Setup
+    public void createService() {
+        generator = new TimestampContactIdGenerator(61);
+        service = new ContactService(new ConcurrentContactStore(), generator);
+    }
+
+
+    /**
+     * createUniqueContactID through the service
+     */
+    @Benchmark
+    public String createUniqueContactID() {
+        return service.createUniqueContactID();
+    }
+
+
+    /**
+     * a block of 1024 IDs as reserved by one bulk add chunk
+     */
+    @Benchmark
+    public String[] nextContactIDBlock() {
+        return generator.nextContactIDs(1024);
+    }
+}
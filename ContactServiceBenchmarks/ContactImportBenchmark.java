@@ -0,0 +1,66 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * time of a full file import per format and parser thread count. The file is an export of the shared state's
+ * contacts and every invocation imports it into a new empty service of the same store type; divide storeSize by the
+ * score for rows per second. Each invocation holds a second full copy of the contacts, so run large store sizes with
+ * one benchmark thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactImportBenchmark {
+
+    @Param({ "CSV", "JSON_LINES" })
+    public ContactExportFormat format;
+
+    @Param({ "1", "4" })
+    public int parserThreads;
+
+    private Path directory;
+    private Path file;
+
+
+    @Setup(Level.Trial)
+    public void writeFile(ContactServiceState state) throws IOException {
+        directory = Files.createTempDirectory("contact-import-benchmark");
+        file = state.service.exportContacts(format, directory, 1).get(0);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+
+    @Benchmark
+    public long importContacts(ContactServiceState state) throws IOException {
+        ContactService service = new ContactService(ContactServiceState.newStore(state.storeType),
+                new TimestampContactIdGenerator(61));
+        return service.importContacts(format, file, parserThreads).getImportedCount();
+    }
+}
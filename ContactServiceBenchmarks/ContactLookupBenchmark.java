@@ -0,0 +1,39 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single contact lookups by contactID against stores of different sizes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx12g" })
+public class ContactLookupBenchmark {
+
+    /**
+     * findContactObject for a random existing contact
+     */
+    @Benchmark
+    public Contact findContactObject(ContactServiceState state) {
+        return state.service.findContactObject(state.randomContactID());
+    }
+
+
+    /**
+     * the same lookup reading one field, so views built on demand are not optimized away
+     */
+    @Benchmark
+    public String findContactPhoneNumber(ContactServiceState state) {
+        return state.service.findContactObject(state.randomContactID()).getPhoneNumber();
+    }
+}
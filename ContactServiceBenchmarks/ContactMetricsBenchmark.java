@@ -0,0 +1,62 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * overhead of ContactService metrics on the hottest read and write paths: off, the default sampling of one call
+ * in 64, and measuring every call
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactMetricsBenchmark {
+
+    /**
+     * a populated service with metrics configured per the metrics parameter
+     */
+    @State(Scope.Benchmark)
+    public static class MeasuredService extends ContactServiceState {
+
+        @Param({ "off", "sampled", "every" })
+        public String metrics;
+
+
+        @Override
+        @Setup(Level.Trial)
+        public void populate() {
+            super.populate(); // metrics start after setup, so the bulk load is not counted
+            if ("sampled".equals(metrics)) {
+                service.enableMetrics();
+            } else if ("every".equals(metrics)) {
+                service.enableMetrics(1);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public Contact findContactObject(MeasuredService state) {
+        return state.service.findContactObject(state.randomContactID());
+    }
+
+
+    @Benchmark
+    public void updatePhoneNumber(MeasuredService state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+}
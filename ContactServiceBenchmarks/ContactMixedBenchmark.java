@@ -0,0 +1,70 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * readers and writers running against the same store at once. JMH reports each role separately and the group
+ * total, and the thread count given to the runner is rounded up to a multiple of the group size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx12g" })
+public class ContactMixedBenchmark {
+
+    /**
+     * read mostly: three lookup threads per updating thread
+     */
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public Contact readMostlyLookup(ContactServiceState state) {
+        return state.service.findContactObject(state.randomContactID());
+    }
+
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyUpdate(ContactServiceState state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+
+
+    /**
+     * read write: one lookup thread, one updating thread and one churning thread
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Contact readWriteLookup(ContactServiceState state) {
+        return state.service.findContactObject(state.randomContactID());
+    }
+
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteUpdate(ContactServiceState state) {
+        state.service.updateContactPhoneNumber(state.randomContactID(), state.randomPhoneNumber());
+    }
+
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteChurn(ContactServiceState state) {
+        state.service.deleteExistingContact(state.addContact());
+    }
+}
@@ -0,0 +1,103 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * a ContactService filled with storeSize contacts, shared by every thread of a benchmark trial
+ */
+@State(Scope.Benchmark)
+public class ContactServiceState {
+
+    // node number the benchmark generator stamps into its IDs
+    private static final int BENCHMARK_NODE_ID = 62;
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int storeSize;
+
+    @Param({ "concurrent", "packed", "sharded" })
+    public String storeType;
+
+    ContactService service;
+
+    // IDs of the contacts added during setup, read only while benchmarks run
+    String[] contactIDs;
+
+    // precomputed phone numbers so updates do not measure String formatting
+    String[] phoneNumbers;
+
+
+    /**
+     * builds the store and adds storeSize contacts through the bulk path
+     */
+    @Setup(Level.Trial)
+    public void populate() {
+        service = new ContactService(newStore(storeType), new TimestampContactIdGenerator(BENCHMARK_NODE_ID));
+
+        List<String> addedContactIDs = service.addContacts(IntStream.range(0, storeSize)
+                .mapToObj(i -> new ContactRecord("First" + (i % 1000), "Last" + (i % 10000),
+                        phoneNumber(i), i + " Benchmark Way"))).getAddedContactIDs();
+        contactIDs = addedContactIDs.toArray(new String[0]);
+
+        phoneNumbers = new String[1024];
+        for (int i = 0; i < phoneNumbers.length; i++) {
+            phoneNumbers[i] = phoneNumber(storeSize + i);
+        }
+    }
+
+
+    /**
+     * @param storeType "concurrent", "packed" or "sharded" (packed shards, four per core)
+     * @return a new empty thread safe ContactStore
+     */
+    static ContactStore newStore(String storeType) {
+        switch (storeType) {
+            case "concurrent":
+                return new ConcurrentContactStore();
+            case "packed":
+                return new PackedContactStore();
+            case "sharded":
+                return new ShardedContactStore(ContactService.defaultShardCount(), PackedContactStore::new);
+            default:
+                throw new IllegalArgumentException("Unknown store type " + storeType);
+        }
+    }
+
+
+    /**
+     * @return String contactID of a random contact added during setup
+     */
+    String randomContactID() {
+        return contactIDs[ThreadLocalRandom.current().nextInt(contactIDs.length)];
+    }
+
+
+    /**
+     * @return String one of the precomputed phone numbers
+     */
+    String randomPhoneNumber() {
+        return phoneNumbers[ThreadLocalRandom.current().nextInt(phoneNumbers.length)];
+    }
+
+
+    /**
+     * adds a contact through addNewContact
+     * @return String contactID of the new contact
+     */
+    String addContact() {
+        return service.addNewContact("Churn", "Contact", "5550000000", "1 Churn Way").getContactID();
+    }
+
+
+    private static String phoneNumber(long i) {
+        String digits = Long.toString(i % 10_000_000_000L);
+        return "0000000000".substring(digits.length()) + digits;
+    }
+}
@@ -0,0 +1,65 @@
+package contactService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * validating a row with the throwing ContactValue validators versus the non throwing ContactValidator, for a
+ * valid row and for a row with a bad phone number
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactValidationBenchmark {
+
+    @Param({ "valid", "invalid" })
+    public String row;
+
+    private ContactRecord record;
+
+
+    @Setup
+    public void createRecord() {
+        record = new ContactRecord("John", "Doe", "valid".equals(row) ? "0123456789" : "12345", "1 Main St");
+    }
+
+
+    /**
+     * the pre ContactValidator bulk path, catching the validator's exception
+     */
+    @Benchmark
+    public String throwingValidators() {
+        try {
+            ContactValue.validateFirstName(record.getFirstName());
+            ContactValue.validateLastName(record.getLastName());
+            ContactValue.validatePhoneNumber(record.getPhoneNumber());
+            ContactValue.validateAddress(record.getAddress());
+            return null;
+        } catch (IllegalArgumentException invalidField) {
+            return invalidField.getMessage();
+        }
+    }
+
+
+    /**
+     * ContactValidator.checkRecord as used by addContacts
+     */
+    @Benchmark
+    public ContactValidationResult resultCodes() {
+        return ContactValidator.checkRecord(record);
+    }
+}
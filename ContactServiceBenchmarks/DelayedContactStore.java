@@ -0,0 +1,75 @@
+package contactService;
+
+import java.util.List;
+
+/**
+ * ContactStore stand in for a slower backend such as a local database: every lookup spins for a fixed time
+ * before reading the wrapped store, and loads are counted per thread so benchmarks can tell hits from misses
+ */
+final class DelayedContactStore implements ContactStore {
+
+    // lookups that reached this store, one counter per benchmark thread
+    static final ThreadLocal<long[]> loadsOnThread = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ContactStore store;
+    private final long lookupNanos;
+
+
+    DelayedContactStore(ContactStore store, long lookupNanos) {
+        this.store = store;
+        this.lookupNanos = lookupNanos;
+    }
+
+
+    @Override
+    public Contact get(String contactID) {
+        loadsOnThread.get()[0]++;
+        long until = System.nanoTime() + lookupNanos;
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait(); // stands in for the round trip, keeps the thread busy like a synchronous driver
+        }
+        return store.get(contactID);
+    }
+
+
+    @Override
+    public boolean contains(String contactID) {
+        return store.contains(contactID);
+    }
+
+
+    @Override
+    public void add(Contact contact) {
+        store.add(contact);
+    }
+
+
+    @Override
+    public void addAll(List<Contact> contacts) {
+        store.addAll(contacts);
+    }
+
+
+    @Override
+    public boolean replace(Contact contact, ContactValue expectedValue, ContactValue newValue) {
+        return store.replace(contact, expectedValue, newValue);
+    }
+
+
+    @Override
+    public Contact remove(String contactID) {
+        return store.remove(contactID);
+    }
+
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+
+    @Override
+    public List<Contact> asList() {
+        return store.asList();
+    }
+}
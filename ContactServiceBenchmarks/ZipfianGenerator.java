@@ -0,0 +1,55 @@
+package contactService;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * draws ranks 0 to itemCount - 1 with Zipfian popularity, rank 0 being the most popular, using the method from
+ * Gray et al., "Quickly Generating Billion-Record Synthetic Databases" as popularized by YCSB
+ */
+final class ZipfianGenerator {
+
+    private final int itemCount;
+    private final double theta;
+    private final double alpha;
+    private final double eta;
+    private final double zetaN;
+
+
+    /**
+     * @param itemCount number of distinct ranks
+     * @param theta skew, 0.99 is the YCSB default
+     */
+    ZipfianGenerator(int itemCount, double theta) {
+        this.itemCount = itemCount;
+        this.theta = theta;
+        this.zetaN = zeta(itemCount, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+    }
+
+
+    /**
+     * @return int next rank, safe to call from many threads
+     */
+    int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetaN;
+
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(itemCount - 1, (int) (itemCount * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}